@@ -21,5 +21,6 @@ module pile.lang {
 	requires org.objectweb.asm;
 	requires org.objectweb.asm.util;
 	requires org.objectweb.asm.commons;
+	requires jdk.jfr;
 	
 }
\ No newline at end of file
@@ -60,6 +60,53 @@ public class PersistentArrayVector<V> extends PersistentVector<V> implements POb
         this(PersistentMap.EMPTY, new Node(new Object[NODE_SIZE]), 0, 0, 0, NODE_SIZE);
     }
 
+    /**
+     * Create a vector from a range of an array in a single pass, building the
+     * tree bottom up rather than copying a path per element as {@link #push(Object)}
+     * would.
+     *
+     * @param values
+     * @param offset
+     * @param length
+     * @return A new vector containing the values in the range.
+     */
+    public static <V> PersistentArrayVector<V> of(Object[] values, int offset, int length) {
+        if (length == 0) {
+            return new PersistentArrayVector<>();
+        }
+
+        // Same shape push would produce: min < count <= max
+        int levels = 0;
+        int max = NODE_SIZE;
+        while (max < length) {
+            ++levels;
+            max <<= SHIFT;
+        }
+        int min = levels == 0 ? 0 : max >>> SHIFT;
+
+        int width = (length + MASK) >>> SHIFT;
+        Node[] nodes = new Node[width];
+        for (int i = 0; i < width; ++i) {
+            Object[] leaf = new Object[NODE_SIZE];
+            int start = i << SHIFT;
+            System.arraycopy(values, offset + start, leaf, 0, Math.min(NODE_SIZE, length - start));
+            nodes[i] = new Node(leaf);
+        }
+        for (int level = 0; level < levels; ++level) {
+            int parentWidth = (width + MASK) >>> SHIFT;
+            Node[] parents = new Node[parentWidth];
+            for (int i = 0; i < parentWidth; ++i) {
+                Object[] data = new Object[NODE_SIZE];
+                int start = i << SHIFT;
+                System.arraycopy(nodes, start, data, 0, Math.min(NODE_SIZE, width - start));
+                parents[i] = new Node(data);
+            }
+            nodes = parents;
+            width = parentWidth;
+        }
+        return new PersistentArrayVector<>(PersistentMap.EMPTY, nodes[0], length, levels, min, max);
+    }
+
     @Override
     public int count() {
         return count;
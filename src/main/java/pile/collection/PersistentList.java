@@ -31,6 +31,7 @@ import pile.core.Cons;
 import pile.core.ISeq;
 import pile.core.PObj;
 import pile.core.Seqable;
+import pile.core.print.Printer;
 import pile.nativebase.NativeCore;
 
 public class PersistentList<T> implements PObj<PersistentList<T>>, Conjable<T>, Counted, Seqable<T>, Iterable<T> {
@@ -105,22 +106,7 @@ public class PersistentList<T> implements PObj<PersistentList<T>>, Conjable<T>,
 
 	@Override
 	public String toString() {
-		StringBuilder sb = new StringBuilder();
-
-		Iterator it = iterator();
-
-		sb.append("(");
-
-		while (it.hasNext()) {
-			sb.append(it.next());
-			if (it.hasNext()) {
-				sb.append(" ");
-			}
-		}
-
-		sb.append(")");
-
-		return sb.toString();
+		return Printer.printString(this);
 	}
 
 	@Override
@@ -38,6 +38,7 @@ import pile.compiler.form.CollectionLiteralForm;
 import pile.core.Conjable;
 import pile.core.ISeq;
 import pile.core.PCall;
+import pile.core.print.Printer;
 import pile.nativebase.NativeCore;
 
 @SuppressWarnings("rawtypes")
@@ -100,10 +101,7 @@ public abstract class PersistentMap<K, V> extends AbstractMap<K, V>
 
     @Override
     public String toString() {
-        if (count() == 0) {
-            return "{}";
-        }
-        return super.toString();
+        return Printer.printString(this);
     }
 
     @Override
@@ -34,6 +34,7 @@ import pile.compiler.form.CollectionLiteralForm;
 import pile.core.Conjable;
 import pile.core.ISeq;
 import pile.core.exception.PileException;
+import pile.core.print.Printer;
 
 public abstract class PersistentSet<E> extends AbstractSet<E>
 		implements PersistentCollection<E>, Conjable<E>, FMap<PersistentSet> {
@@ -72,6 +73,11 @@ public abstract class PersistentSet<E> extends AbstractSet<E>
 		return false;
 	}
 
+	@Override
+	public String toString() {
+		return Printer.printString(this);
+	}
+
 	@Override
 	public boolean contains(Object o) {
 		return inner.containsKey(o);
@@ -43,6 +43,7 @@ import pile.core.ISeq;
 import pile.core.PCall;
 import pile.core.exception.ShouldntHappenException;
 import pile.core.indy.PersistentLiteralLinker;
+import pile.core.print.Printer;
 import pile.core.runtime.generated_classes.LookupHolder;
 import pile.nativebase.NativeCore;
 
@@ -74,6 +75,11 @@ public abstract class PersistentVector<E> extends AbstractList<E>
         return arity == 1;
     }
 
+    @Override
+    public String toString() {
+        return Printer.printString(this);
+    }
+
     @Override
     public abstract PersistentVector<E> conj(E t);
 
@@ -23,6 +23,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodHandles.Lookup.ClassOption;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
@@ -51,6 +53,9 @@ import pile.core.Namespace;
 import pile.core.binding.NativeDynamicBinding;
 import pile.core.compiler.aot.AOTHandler;
 import pile.core.compiler.aot.AOTHandler.AOTType;
+import pile.core.compiler.cache.CompileCache;
+import pile.core.compiler.stats.CompileStats;
+import pile.core.compiler.stats.CompileStats.FormStats;
 import pile.core.exception.PileInternalException;
 import pile.core.log.LogLevel;
 import pile.core.log.Logger;
@@ -79,7 +84,11 @@ public abstract class AbstractClassCompiler {
     protected List<Class<?>> interfaces;
 
     private Class<?> generatedClass;
-    private boolean hasFieldScope = false;
+    private boolean hasFieldScope = false;
+    private boolean allowHidden = false;
+    private boolean hidden = false;
+    private FormStats stats;
+    private boolean generating = false;
 
     public AbstractClassCompiler(Namespace ns) {
         this(ns, "fclass$" + ns.getSuffix(), CoreConstants.GEN_PACKAGE);
@@ -87,7 +96,7 @@ public abstract class AbstractClassCompiler {
 
     public AbstractClassCompiler(Namespace ns, String className, String internalName) {
         this.ns = NativeDynamicBinding.NAMESPACE.getValue();
-        this.className = className;
+        this.className = CompileCache.className(className);
         this.packageName = internalName;
     }
 
@@ -100,10 +109,21 @@ public abstract class AbstractClassCompiler {
     }
     
     public CloseNoThrow enterClass(CompilerState cs, Class<?> superType, List<Class<?>> interfaces) {
-        cs.enterClass(getInternalName(), superType, interfaces);
+        this.hidden = allowHidden && NativeDynamicBinding.HIDDEN_CLASSES.getValue()
+                && AOTHandler.getAotType() != AOTType.WRITE && !CompileCache.isRecording() && cs.isHiddenContext();
+        cs.enterClass(getInternalName(), superType, interfaces, hidden);
+        this.stats = CompileStats.current();
+        if (stats != null) {
+            stats.enterClass();
+        }
+        this.generating = true;
         this.superType = superType;
         this.interfaces = interfaces;
-        return () -> cs.leaveClass();
+        return () -> {
+            // Still generating if the class failed to compile
+            leaveClassGeneration();
+            cs.leaveClass();
+        };
     }
     
     
@@ -227,6 +247,17 @@ public abstract class AbstractClassCompiler {
         return packageName + "/" + className;
     }
 
+    /**
+     * Allow this class to be defined as a hidden class when
+     * {@link NativeDynamicBinding#HIDDEN_CLASSES} is set. Hidden classes cannot be
+     * referenced by name, so only call this for classes which are only ever
+     * referred to through their {@link Class} object. Must be called before
+     * entering the class.
+     */
+    public void allowHidden() {
+        this.allowHidden = true;
+    }
+
     /**
      * Get the compiled class. Only call after {@link #exitClass(CompilerState)}.
      * 
@@ -263,8 +294,18 @@ public abstract class AbstractClassCompiler {
         this.hasFieldScope = true;
     }
 
+    private void leaveClassGeneration() {
+        if (generating) {
+            generating = false;
+            if (stats != null) {
+                stats.leaveClassGeneration();
+            }
+        }
+    }
+
     private void createClass(CompilerState cs) throws IllegalAccessException {
         byte[] classArray = cs.compileClass();
+        leaveClassGeneration();
 
         printDebug(classArray);
         
@@ -272,7 +313,22 @@ public abstract class AbstractClassCompiler {
             AOTHandler.writeAOTClass(packageName, className, classArray);
         }
 
-        generatedClass = LookupHolder.PRIVATE_LOOKUP.defineClass(classArray);
+        long defineStart = System.nanoTime();
+        if (hidden) {
+            // Not STRONG, so the class may be unloaded once unreachable
+            List<Object> classData = cs.getClassData();
+            Lookup hiddenLookup = classData.isEmpty()
+                    ? LookupHolder.PRIVATE_LOOKUP.defineHiddenClass(classArray, false, ClassOption.NESTMATE)
+                    : LookupHolder.PRIVATE_LOOKUP.defineHiddenClassWithClassData(classArray, List.copyOf(classData),
+                            false, ClassOption.NESTMATE);
+            generatedClass = hiddenLookup.lookupClass();
+        } else {
+            generatedClass = LookupHolder.PRIVATE_LOOKUP.defineClass(classArray);
+            CompileCache.classDefined(getInternalName(), classArray);
+        }
+        if (stats != null) {
+            stats.classDefined(classArray.length, System.nanoTime() - defineStart);
+        }
     }    
 
     protected List<MethodParameter> toArgRecord(Map<String, ClosureRecord> closureSymbols) {
@@ -41,6 +41,8 @@ import pile.compiler.form.SymbolForm;
 import pile.core.ISeq;
 import pile.core.Keyword;
 import pile.core.Metadata;
+import pile.core.compiler.cache.CompileCache;
+import pile.core.compiler.stats.CompileStats;
 import pile.core.exception.PileSyntaxErrorException;
 import pile.core.parse.LexicalEnvironment;
 import pile.core.parse.TypeTag;
@@ -51,7 +53,9 @@ public class Compiler {
 		CompilerState cs = new CompilerState();
 		Object last = null;
 		for (Object form : forms) {
-			last = evaluate(cs, form);
+			try (var stats = CompileStats.enterForm(form); var topLevel = CompileCache.enterTopLevel()) {
+				last = evaluate(cs, form);
+			}
 //			var meta = ((Metadata)form).meta();
 //			System.out.println(meta);
 //			System.out.println(form);
@@ -61,8 +65,9 @@ public class Compiler {
 
 	public static Object evaluate(CompilerState cs, Object arg) throws Throwable {
     	Form form = getForm(arg);
-    	Object o = form.evaluateForm(cs);
-    	return o;
+    	try (var nested = CompileCache.enterForm()) {
+    		return form.evaluateForm(cs);
+    	}
     }
 
     public static List<Object> evaluateArgs(CompilerState cs, ISeq args) throws Throwable {
@@ -62,7 +62,8 @@ import pile.core.binding.NativeDynamicBinding;
 public class CompilerState {
 	
 	private record ClassDataRecord(ClassVisitor classVisitor, ClassWriter classWriter, 
-			Map<String, ClosureRecord> closureSymbols, String currentInternalName) {
+			Map<String, ClosureRecord> closureSymbols, String currentInternalName, boolean hidden,
+			List<Object> classData) {
 	}
 	
 			
@@ -139,7 +140,21 @@ public class CompilerState {
 	}
 
     public void enterClass(String internalName, Class<?> parent, List<Class<?>> interfaces) {
-        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        enterClass(internalName, parent, interfaces, false);
+    }
+
+    /**
+     * 
+     * @param internalName
+     * @param parent
+     * @param interfaces
+     * @param hidden       True if this class will be defined as a hidden class.
+     *                     Other hidden classes it refers to are then carried in
+     *                     its {@link #getClassData() class data} rather than
+     *                     referenced by name.
+     */
+    public void enterClass(String internalName, Class<?> parent, List<Class<?>> interfaces, boolean hidden) {
+        ClassWriter writer = new PileClassWriter();
         
         String filename = NativeDynamicBinding.COMPILE_FILENAME.deref();
         if (filename != null) {
@@ -154,11 +169,12 @@ public class CompilerState {
         visitor.visit(Opcodes.V15, ACC_PUBLIC, internalName, null, Type.getType(parent).getInternalName(),
                 interfaces.stream().map(c -> getInternalName(c)).toArray(String[]::new));
 
-        classDataRecords.add(new ClassDataRecord(visitor, writer, new LinkedHashMap<>(), internalName));
+        classDataRecords.add(new ClassDataRecord(visitor, writer, new LinkedHashMap<>(), internalName, hidden,
+                new ArrayList<>()));
     }
 	
 	public void enterInterface(String internalName) {
-		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+		ClassWriter writer = new PileClassWriter();
 
 		// No stacks, currently
 		ClassVisitor visitor = writer;
@@ -166,7 +182,8 @@ public class CompilerState {
 		visitor.visit(Opcodes.V15, ACC_PUBLIC | ACC_INTERFACE | ACC_ABSTRACT, internalName, null,
 				Type.getType(Object.class).getInternalName(), null);
 		
-		classDataRecords.add(new ClassDataRecord(visitor, writer, new LinkedHashMap<>(), internalName));
+		classDataRecords.add(new ClassDataRecord(visitor, writer, new LinkedHashMap<>(), internalName, false,
+				new ArrayList<>()));
 	}
 	
 	public void leaveInterface() {
@@ -276,6 +293,41 @@ public class CompilerState {
 		return lastCdr().currentInternalName();
 	}
 
+	/**
+	 * 
+	 * @return True if a class entered now could be hidden, which is only the case
+	 *         if every enclosing class is also hidden (or there are none).
+	 */
+	public boolean isHiddenContext() {
+		for (var cdr : classDataRecords) {
+			if (!cdr.hidden()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Add a value to the class data of the current (hidden) class.
+	 * 
+	 * @param o
+	 * @return The index of the value, for use with
+	 *         {@link java.lang.invoke.MethodHandles#classDataAt}.
+	 */
+	public int addClassData(Object o) {
+		List<Object> data = lastCdr().classData();
+		int idx = data.indexOf(o);
+		if (idx == -1) {
+			idx = data.size();
+			data.add(o);
+		}
+		return idx;
+	}
+
+	public List<Object> getClassData() {
+		return lastCdr().classData();
+	}
+
 	public void pushLoopEvalTarget(LoopEvaluationTarget loopEvaluationTarget) {
 		letRecords.addLast(loopEvaluationTarget);
 	}
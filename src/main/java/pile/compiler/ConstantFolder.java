@@ -0,0 +1,218 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.compiler;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.Set;
+
+import pile.collection.PersistentList;
+import pile.collection.PersistentMap;
+import pile.collection.PersistentSet;
+import pile.collection.PersistentVector;
+import pile.compiler.Scopes.ScopeLookupResult;
+import pile.compiler.form.VarScope;
+import pile.core.Keyword;
+import pile.core.PileMethod;
+import pile.core.Symbol;
+import pile.core.binding.Binding;
+import pile.core.binding.BindingType;
+import pile.core.indy.PileMethodLinker;
+import pile.core.log.Logger;
+import pile.core.log.LoggerSupplier;
+import pile.core.parse.TypeTag;
+import pile.nativebase.PureFunction;
+
+/**
+ * Compile time constant folding. <br>
+ * <br>
+ * A form is constant if it is:
+ * <ul>
+ * <li>A literal: nil, a boolean, character, number, string or keyword.
+ * <li>A vector, map or set literal of constants.
+ * <li>A local bound by {@code let} to a constant.
+ * <li>A call to a final, {@link PureFunction pure} function where all of the
+ * arguments are constants.
+ * </ul>
+ * Calls are folded by calling the function while compiling and loading the
+ * result as a constant instead. Calls which throw are left to throw at runtime.
+ * {@code if} forms with a constant test only compile the branch which is taken.
+ * <br>
+ * <br>
+ * Disabled with {@code -Dpile.compile.fold=false}.
+ */
+public final class ConstantFolder {
+
+    private static final Logger LOG = LoggerSupplier.getLogger(ConstantFolder.class);
+
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("pile.compile.fold", "true"));
+
+    // Numbers which compile the same way they would as literals
+    private static final Set<Class<?>> LITERAL_NUMBERS = Set.of(Integer.class, Long.class, Double.class, Float.class,
+            BigInteger.class, BigDecimal.class);
+
+    /**
+     * A constant value, which may be null.
+     */
+    public record Constant(Object value) {
+    }
+
+    private ConstantFolder() {
+    }
+
+    /**
+     *
+     * @param cs
+     * @param form
+     * @return The constant value of the form, or null if it is not constant.
+     */
+    public static Constant fold(CompilerState cs, Object form) {
+        if (!ENABLED) {
+            return null;
+        }
+        return value(cs, form);
+    }
+
+    /**
+     * Attempt to fold a call form.
+     *
+     * @param cs
+     * @param form A macro expanded call form.
+     * @return A compilation loading the folded value, or empty if the call
+     *         couldn't be folded.
+     */
+    public static Optional<DeferredCompilation> foldCall(CompilerState cs, PersistentList form) {
+        if (!ENABLED) {
+            return Optional.empty();
+        }
+        Constant folded = call(cs, form);
+        if (folded == null) {
+            return Optional.empty();
+        }
+        return load(cs, folded.value());
+    }
+
+    private static Optional<DeferredCompilation> load(CompilerState cs, Object value) {
+        switch (value) {
+            case null -> {
+                return Optional.of(Compiler.compileDefer(cs, null));
+            }
+            case Boolean _, Character _, String _, Keyword _ -> {
+                return Optional.of(Compiler.compileDefer(cs, value));
+            }
+            case Number n when LITERAL_NUMBERS.contains(n.getClass()) -> {
+                return Optional.of(Compiler.compileDefer(cs, value));
+            }
+            case Number _ -> {
+                return Optional.empty();
+            }
+            default -> {
+                Optional<?> maybeConst = Constants.toConst(value);
+                if (maybeConst.isEmpty()) {
+                    return Optional.empty();
+                }
+                Object ldc = maybeConst.get();
+                Class<?> type = value.getClass();
+                return Optional.of(new DeferredCompilation(TypeTag.SEXP, value, Optional.of(ldc), c -> {
+                    c.getCurrentMethodVisitor().visitLdcInsn(ldc);
+                    c.getMethodStack().pushConstant(type);
+                }));
+            }
+        }
+    }
+
+    private static Constant value(CompilerState cs, Object form) {
+        return switch (form) {
+            case null -> new Constant(null);
+            case Boolean _, Character _, String _, Keyword _, Number _ -> new Constant(form);
+            case Symbol sym -> cs.getScope().lookupConstant(sym);
+            case PersistentVector<?> vec -> {
+                List<Object> values = values(cs, vec);
+                yield values == null ? null : new Constant(PersistentVector.fromList(values));
+            }
+            case PersistentSet<?> set -> {
+                List<Object> values = values(cs, set);
+                yield values == null ? null : new Constant(PersistentSet.fromList(values));
+            }
+            case PersistentMap<?, ?> map -> {
+                List<Object> values = new ArrayList<>();
+                for (Entry<?, ?> entry : map.entrySet()) {
+                    values.add(entry.getKey());
+                    values.add(entry.getValue());
+                }
+                values = values(cs, values);
+                yield values == null ? null : new Constant(PersistentMap.create(values.toArray()));
+            }
+            case PersistentList<?> list -> call(cs, list);
+            default -> null;
+        };
+    }
+
+    private static List<Object> values(CompilerState cs, Iterable<?> forms) {
+        List<Object> out = new ArrayList<>();
+        for (Object form : forms) {
+            Constant c = value(cs, form);
+            if (c == null) {
+                return null;
+            }
+            out.add(c.value());
+        }
+        return out;
+    }
+
+    private static Constant call(CompilerState cs, PersistentList<?> list) {
+        if (list.count() == 0 || !(list.head() instanceof Symbol sym)) {
+            return null;
+        }
+
+        ScopeLookupResult slr;
+        try {
+            slr = cs.getScope().lookupSymbolScope(sym);
+        } catch (RuntimeException e) {
+            return null;
+        }
+        if (slr == null || slr.scope() != VarScope.NAMESPACE || !(slr.val() instanceof Binding binding)) {
+            return null;
+        }
+        if (Binding.getType(binding) != BindingType.VALUE || !PileMethodLinker.isFinal(binding)
+                || binding.isMacro()) {
+            return null;
+        }
+        if (!(binding.getValue() instanceof PileMethod method) || !method.isPure()
+                || !method.acceptsArity(list.count() - 1)) {
+            return null;
+        }
+
+        List<Object> args = values(cs, list.pop());
+        if (args == null) {
+            return null;
+        }
+        try {
+            Object result = method.invoke(args.toArray());
+            LOG.trace("Folded %s to %s", list, result);
+            return new Constant(result);
+        } catch (Throwable t) {
+            // Leave it to fail at runtime
+            LOG.trace("Could not fold %s: %s", list, t.getMessage());
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,343 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.compiler;
+
+import static pile.nativebase.NativeCore.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import pile.collection.PersistentList;
+import pile.collection.PersistentMap;
+import pile.collection.PersistentVector;
+import pile.compiler.Scopes.ScopeLookupResult;
+import pile.compiler.form.VarScope;
+import pile.core.Keyword;
+import pile.core.Namespace;
+import pile.core.Symbol;
+import pile.core.binding.Binding;
+import pile.core.binding.BindingType;
+import pile.core.binding.IntrinsicBinding;
+import pile.core.indy.PileMethodLinker;
+import pile.core.log.Logger;
+import pile.core.log.LoggerSupplier;
+import pile.core.parse.ParserConstants;
+
+/**
+ * Compile time inlining of small functions. <br>
+ * <br>
+ * A function is inlined if it is defined with {@code ^:inline} (which implies
+ * {@code ^:final}), or is {@code ^:final} and its body is at most
+ * {@code -Dpile.compile.inline.size} (default 8) forms. The function must have
+ * a single arity with plain symbol arguments, and its body may only be made of
+ * literals, its arguments, {@code if}, {@code do} and calls to other namespace
+ * functions. <br>
+ * <br>
+ * Calls to an inlined function are compiled as:
+ *
+ * <pre>
+ * (inc x)
+ * ;; =>
+ * (let* [P__1 x] (pile.core/+ P__1 1))
+ * </pre>
+ *
+ * So arguments are evaluated once, in order, and the locals carry their types
+ * into the body. Symbols in the body are resolved where the function is defined
+ * so locals at the call site cannot capture them. <br>
+ * <br>
+ * Disabled with {@code -Dpile.compile.inline=false}.
+ */
+public final class Inliner {
+
+    private static final Logger LOG = LoggerSupplier.getLogger(Inliner.class);
+
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("pile.compile.inline", "true"));
+
+    private static final int MAX_SIZE = Integer.getInteger("pile.compile.inline.size", 8);
+
+    public static final Keyword INLINE_KEY = Keyword.of("inline");
+
+    private static final Keyword INLINE_BODY_KEY = Keyword.of(ParserConstants.PILE_CORE_NS, "inline-body");
+
+    private static final Symbol LET = new Symbol(ParserConstants.PILE_CORE_NS, "let*");
+
+    private static final Symbol AMPERSAND = new Symbol("&");
+
+    /**
+     * The body of an inlined function.
+     *
+     * @param args    The argument symbols, as declared.
+     * @param body    The body, with all non-argument symbols fully qualified.
+     * @param globals The qualified symbols the body refers to.
+     */
+    private record InlineBody(List<Symbol> args, Object body, Set<Symbol> globals) {
+    }
+
+    private Inliner() {
+    }
+
+    /**
+     *
+     * @param sym
+     * @return True if the symbol is annotated with {@code ^:inline}
+     */
+    public static boolean isInline(Symbol sym) {
+        return (boolean) sym.meta().get(INLINE_KEY, false);
+    }
+
+    /**
+     * Record the body of a function being defined, if it can be inlined.
+     *
+     * @param cs
+     * @param ns          The namespace the function is defined in.
+     * @param sym         The defined symbol.
+     * @param valueSyntax The syntax of the defined value.
+     * @param meta        The binding metadata.
+     * @return The binding metadata, including the inline body if the function can
+     *         be inlined.
+     */
+    public static PersistentMap define(CompilerState cs, Namespace ns, Symbol sym, Object valueSyntax,
+            PersistentMap meta) {
+        boolean explicit = isInline(sym);
+        if (explicit) {
+            meta = meta.assoc(PileMethodLinker.FINAL_KEY, true);
+        }
+        if (!ENABLED || !(explicit || PileMethodLinker.isFinal(sym))) {
+            return meta;
+        }
+
+        InlineBody body = parse(cs, ns, sym, valueSyntax, explicit);
+        if (body == null) {
+            if (explicit) {
+                LOG.debug("Cannot inline %s/%s", ns.getName(), sym.getName());
+            }
+            return meta;
+        }
+        LOG.trace("Inlining %s/%s: %s", ns.getName(), sym.getName(), body.body());
+        return meta.assoc(INLINE_BODY_KEY, body);
+    }
+
+    /**
+     * Attempt to inline a call form.
+     *
+     * @param cs
+     * @param form A macro expanded call form.
+     * @return A compilation of the inlined body, or empty if the call couldn't be
+     *         inlined.
+     */
+    public static Optional<DeferredCompilation> inline(CompilerState cs, PersistentList form) {
+        if (!ENABLED || form.count() == 0 || !(form.head() instanceof Symbol sym)) {
+            return Optional.empty();
+        }
+        ScopeLookupResult slr = lookup(cs, sym);
+        if (slr == null || slr.scope() != VarScope.NAMESPACE || !(slr.val() instanceof Binding binding)
+                || !(binding.meta().get(INLINE_BODY_KEY) instanceof InlineBody inline)) {
+            return Optional.empty();
+        }
+        if (inline.args().size() != form.count() - 1) {
+            // Let the call fail as it normally would
+            return Optional.empty();
+        }
+        for (Symbol global : inline.globals()) {
+            ScopeLookupResult gslr = lookup(cs, global);
+            if (gslr == null || gslr.scope() != VarScope.NAMESPACE) {
+                return Optional.empty();
+            }
+        }
+
+        // Fresh locals for each call so argument forms can't see them.
+        Map<Symbol, Symbol> renamed = new HashMap<>();
+        List<Object> bindings = new ArrayList<>();
+        var args = form.pop();
+        for (Symbol arg : inline.args()) {
+            Symbol local = gensym("P__").withMeta(arg.meta());
+            renamed.put(arg, local);
+            bindings.add(local);
+            bindings.add(args.head());
+            args = args.pop();
+        }
+
+        Object body = rename(inline.body(), renamed);
+        PersistentList expanded = PersistentList.of(LET, PersistentVector.fromList(bindings), body)
+                                                .withMeta(form.meta());
+        LOG.trace("Inlined %s => %s", form, expanded);
+        return Optional.of(Compiler.compileDefer(cs, expanded));
+    }
+
+    private static InlineBody parse(CompilerState cs, Namespace ns, Symbol sym, Object valueSyntax,
+            boolean explicit) {
+        // (fn* name? [args] body...)
+        // (fn name? doc? meta? [args] body...)
+        if (!(valueSyntax instanceof PersistentList fn) || !(fn.head() instanceof Symbol head)
+                || !isFnSymbol(head)) {
+            return null;
+        }
+        var rest = fn.pop();
+        while (rest.count() > 0 && !(rest.head() instanceof PersistentVector)) {
+            Object part = rest.head();
+            if (!(part instanceof Symbol || part instanceof String || part instanceof PersistentMap)) {
+                return null;
+            }
+            rest = rest.pop();
+        }
+        if (rest.count() < 2) {
+            return null;
+        }
+
+        List<Symbol> args = new ArrayList<>();
+        for (Object arg : (PersistentVector<?>) rest.head()) {
+            if (!(arg instanceof Symbol argSym) || argSym.getNamespace() != null || AMPERSAND.equals(argSym)) {
+                return null;
+            }
+            // Resolve hints here, the call site may import different classes.
+            Symbol hinted = Helpers.getTypeHint(argSym, ns).map(argSym::withTypeAnnotation).orElse(argSym);
+            args.add(hinted);
+        }
+
+        PersistentList body = rest.pop();
+        Object bodyForm = body.count() == 1 ? body.head() : body.conj(new Symbol(ParserConstants.PILE_CORE_NS, "do"));
+
+        Set<Symbol> globals = new HashSet<>();
+        int[] size = new int[1];
+        Object qualified;
+        try {
+            qualified = qualify(cs, new Symbol(ns.getName(), sym.getName()), args, bodyForm, false, globals, size);
+        } catch (RuntimeException e) {
+            return null;
+        }
+        if (qualified == null || (!explicit && size[0] > MAX_SIZE)) {
+            return null;
+        }
+        return new InlineBody(List.copyOf(args), qualified, Set.copyOf(globals));
+    }
+
+    private static boolean isFnSymbol(Symbol head) {
+        String hns = head.getNamespace();
+        return (hns == null || ParserConstants.PILE_CORE_NS.equals(hns))
+                && ("fn*".equals(head.getName()) || "fn".equals(head.getName()));
+    }
+
+    private static Object qualify(CompilerState cs, Symbol self, List<Symbol> args, Object form, boolean isHead,
+            Set<Symbol> globals, int[] size) {
+        ++size[0];
+        switch (form) {
+            case null -> {
+                return null;
+            }
+            case Symbol s -> {
+                if (!isHead && s.getNamespace() == null && args.contains(s)) {
+                    return s;
+                }
+                ScopeLookupResult slr = cs.getScope().lookupSymbolScope(s);
+                if (slr == null || slr.scope() != VarScope.NAMESPACE || !(slr.val() instanceof Binding binding)
+                        || binding.isMacro()) {
+                    return null;
+                }
+                if (binding instanceof IntrinsicBinding ib) {
+                    // Special forms which don't bind anything
+                    if (isHead && (ib == IntrinsicBinding.IF || ib == IntrinsicBinding.DO)) {
+                        return new Symbol(ParserConstants.PILE_CORE_NS, s.getName());
+                    }
+                    return null;
+                }
+                if (Binding.getType(binding) != BindingType.VALUE) {
+                    return null;
+                }
+                Symbol q = new Symbol(binding.namespace(), s.getName());
+                if (q.equals(self)) {
+                    return null;
+                }
+                globals.add(q);
+                return q;
+            }
+            case PersistentList<?> list -> {
+                if (list.count() == 0) {
+                    return null;
+                }
+                List<Object> out = new ArrayList<>();
+                boolean head = true;
+                for (Object part : list) {
+                    Object q = qualify(cs, self, args, part, head, globals, size);
+                    if (q == null && (head || !isLiteral(part))) {
+                        return null;
+                    }
+                    out.add(q);
+                    head = false;
+                }
+                return PersistentList.fromList(out);
+            }
+            case PersistentVector<?> vec -> {
+                List<Object> out = new ArrayList<>();
+                for (Object part : vec) {
+                    Object q = qualify(cs, self, args, part, false, globals, size);
+                    if (q == null && !isLiteral(part)) {
+                        return null;
+                    }
+                    out.add(q);
+                }
+                return PersistentVector.fromList(out);
+            }
+            default -> {
+                return isHead || !isLiteral(form) ? null : form;
+            }
+        }
+    }
+
+    private static boolean isLiteral(Object form) {
+        if (form == null) {
+            return true;
+        }
+        return switch (Helpers.getTag(form)) {
+            case NUMBER, STRING, CHAR, TRUE, FALSE, KEYWORD, NIL -> true;
+            default -> false;
+        };
+    }
+
+    private static Object rename(Object form, Map<Symbol, Symbol> renamed) {
+        return switch (form) {
+            case Symbol s when s.getNamespace() == null && renamed.containsKey(s) -> renamed.get(s);
+            case PersistentList<?> list -> {
+                List<Object> out = new ArrayList<>();
+                for (Object part : list) {
+                    out.add(rename(part, renamed));
+                }
+                yield PersistentList.fromList(out);
+            }
+            case PersistentVector<?> vec -> {
+                List<Object> out = new ArrayList<>();
+                for (Object part : vec) {
+                    out.add(rename(part, renamed));
+                }
+                yield PersistentVector.fromList(out);
+            }
+            case null, default -> form;
+        };
+    }
+
+    private static ScopeLookupResult lookup(CompilerState cs, Symbol sym) {
+        try {
+            return cs.getScope().lookupSymbolScope(sym);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+}
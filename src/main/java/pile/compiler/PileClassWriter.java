@@ -0,0 +1,108 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Type;
+
+import pile.core.CoreConstants;
+
+/**
+ * A {@link ClassWriter} computing frames which answers
+ * {@link #getCommonSuperClass(String, String)} from a cache of class
+ * hierarchies rather than loading both classes at every merge point, as the
+ * default implementation does.
+ * <p>
+ * Hierarchies of generated classes are not cached since they may be redefined.
+ * Classes which cannot be loaded (eg. generated classes which are not defined
+ * yet) merge to {@link Object}, as interfaces do.
+ */
+public class PileClassWriter extends ClassWriter {
+
+    private static final String OBJECT = Type.getInternalName(Object.class);
+
+    private static final Map<String, Hierarchy> HIERARCHIES = new ConcurrentHashMap<>();
+
+    private static final Hierarchy UNKNOWN = new Hierarchy(true, List.of());
+
+    public PileClassWriter() {
+        super(ClassWriter.COMPUTE_FRAMES);
+    }
+
+    @Override
+    protected String getCommonSuperClass(String type1, String type2) {
+        if (type1.equals(type2)) {
+            return type1;
+        }
+        if (OBJECT.equals(type1) || OBJECT.equals(type2)) {
+            return OBJECT;
+        }
+
+        Hierarchy first = hierarchy(type1);
+        Hierarchy second = hierarchy(type2);
+        if (first.isInterface() || second.isInterface()) {
+            return OBJECT;
+        }
+
+        // Supers are ordered nearest first, so the first match is the closest.
+        for (String sup : first.supers()) {
+            if (second.supers().contains(sup)) {
+                return sup;
+            }
+        }
+        return OBJECT;
+    }
+
+    private Hierarchy hierarchy(String internalName) {
+        Hierarchy cached = HIERARCHIES.get(internalName);
+        if (cached != null) {
+            return cached;
+        }
+
+        Class<?> clazz;
+        try {
+            clazz = Class.forName(internalName.replace('/', '.'), false, getClassLoader());
+        } catch (ClassNotFoundException | LinkageError e) {
+            return UNKNOWN;
+        }
+
+        List<String> supers = new ArrayList<>();
+        for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+            supers.add(Type.getInternalName(c));
+        }
+        Hierarchy created = new Hierarchy(clazz.isInterface(), List.copyOf(supers));
+
+        if (!internalName.startsWith(CoreConstants.GEN_PACKAGE)) {
+            HIERARCHIES.put(internalName, created);
+        }
+        return created;
+    }
+
+    @Override
+    protected ClassLoader getClassLoader() {
+        // Generated classes are defined alongside the compiler.
+        return PileClassWriter.class.getClassLoader();
+    }
+
+    private record Hierarchy(boolean isInterface, List<String> supers) {
+    }
+
+}
@@ -20,9 +20,12 @@ import static pile.compiler.Helpers.*;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
+import pile.compiler.ConstantFolder.Constant;
 import pile.compiler.form.VarScope;
 import pile.core.Namespace;
 import pile.core.RuntimeRoot;
@@ -56,13 +59,19 @@ public class Scopes {
     }
 
 	private final Deque<Pair<VarScope, List<LocalRecord>>> scope = new ArrayDeque<>();
+	
+	// Locals known to be bound to a constant
+	private final Map<LocalRecord, Constant> constants = new IdentityHashMap<>();
 
 	public void enterScope(VarScope vs) {
 		scope.addLast(new Pair<>(vs, new ArrayList<>()));
 	}
 	
 	public void leaveScope() {
-		scope.removeLast();
+		var removed = scope.removeLast();
+		if (!constants.isEmpty()) {
+		    removed.right().forEach(constants::remove);
+		}
 	}
 	
 	public void addCurrent(String sym, Class<?> type) {
@@ -74,6 +83,44 @@ public class Scopes {
 		scope.getLast().right().add(lr);
 	}
 	
+	/**
+	 * Add a local which is never rebound and whose value is known at compile
+	 * time.
+	 * 
+	 * @param sym
+	 * @param type
+	 * @param slot
+	 * @param val
+	 * @param constant The value of the local.
+	 */
+	public void addConstant(String sym, Class<?> type, int slot, Object val, Constant constant) {
+	    LocalRecord lr = new LocalRecord(sym, type, slot, val);
+	    scope.getLast().right().add(lr);
+	    constants.put(lr, constant);
+	}
+	
+	/**
+	 * 
+	 * @param symbol
+	 * @return The constant value of the local the symbol refers to, or null if it
+	 *         doesn't refer to a local or the local is not a constant.
+	 */
+	public Constant lookupConstant(Symbol symbol) {
+	    if (symbol.getNamespace() != null || constants.isEmpty()) {
+	        return null;
+	    }
+	    String name = symbol.getName();
+	    Iterator<Pair<VarScope, List<LocalRecord>>> it = scope.descendingIterator();
+	    while (it.hasNext()) {
+	        for (LocalRecord lr : it.next().right()) {
+	            if (lr.name().equals(name)) {
+	                return constants.get(lr);
+	            }
+	        }
+	    }
+	    return null;
+	}
+	
 	public Deque<Pair<VarScope, List<LocalRecord>>> getScope() {
 		return scope;
 	}
@@ -27,19 +27,21 @@ import pile.collection.PersistentVector;
 import pile.compiler.Compiler;
 import pile.compiler.CompilerState;
 import pile.compiler.DeferredCompilation;
+import pile.compiler.Inliner;
 import pile.core.Keyword;
 import pile.core.Metadata;
 import pile.core.Namespace;
 import pile.core.Symbol;
 import pile.core.binding.Binding;
 import pile.core.binding.BindingType;
+import pile.core.binding.DynamicBinding;
 import pile.core.binding.ImmutableBinding;
 import pile.core.binding.NativeDynamicBinding;
 import pile.core.binding.ScopedBinding;
-import pile.core.binding.ThreadLocalBinding;
 import pile.core.binding.Unbound;
 import pile.core.compiler.aot.AOTHandler;
 import pile.core.compiler.aot.AOTHandler.AOTType;
+import pile.core.compiler.cache.CompileCache;
 import pile.core.exception.PileCompileException;
 import pile.core.exception.PileSyntaxErrorException;
 import pile.core.indy.PileMethodLinker;
@@ -78,7 +80,7 @@ public class DefForm implements Form {
         }
         
         Symbol sym = expect(nth(form, 1), IS_SYMBOL, "Defined name must be a symbol."); 
-        boolean isFinal = PileMethodLinker.isFinal(sym);
+        boolean isFinal = PileMethodLinker.isFinal(sym) || Inliner.isInline(sym);
         boolean isMacro = PileMethodLinker.isMacro(sym);
 
         String name = sym.getName();
@@ -90,6 +92,7 @@ public class DefForm implements Form {
         
         // 
         BindingType type = determineType(sym);
+        String cacheKey = CompileCache.key(ns, name, form);
 
         try (var cursym = NativeDynamicBinding.CURRENT_FN_SYM.with(old -> old.conj(sym))) {
         
@@ -120,6 +123,9 @@ public class DefForm implements Form {
                         LOG.trace("AOT not found for %s/%s", ns.getName(), name);
                     }                
                 }
+                if (eval == null && CompileCache.isCacheable(type, valueSyntax)) {
+                    eval = CompileCache.evaluate(cacheKey, () -> Compiler.evaluate(cs, valueSyntax));
+                }
                 if (eval == null) {
                     // No read AOT, actually compile.
                     eval = Compiler.evaluate(cs, valueSyntax);
@@ -129,16 +135,20 @@ public class DefForm implements Form {
                     
                 }
                 initializerValue = eval; //Compiler.evaluate(cs, valueSyntax);
+                if (type == BindingType.VALUE) {
+                    meta = Inliner.define(cs, ns, sym, valueSyntax, meta);
+                }
             }
             meta = meta.assoc(Binding.BINDING_TYPE_KEY, type);
             
             final Binding bind = switch (type) {
                 case VALUE -> new ImmutableBinding(ns.getName(), BindingType.VALUE, initializerValue, meta, new SwitchPoint());
-                case DYNAMIC -> new ThreadLocalBinding<>(ns.getName(), name, initializerValue, meta, new SwitchPoint()); 
+                case DYNAMIC -> new DynamicBinding<>(ns.getName(), name, initializerValue, meta, new SwitchPoint()); 
                 case SCOPED -> new ScopedBinding<>(ns.getName(), initializerValue, meta); 
                 default -> throw new PileCompileException("Unexpected binding type: " + type, LexicalEnvironment.extract(form));                   
             };
             ns.define(name, bind);
+            CompileCache.defined(ns.getName(), name, cacheKey);
 
             return VarForm.getIn(ns, name);
         } catch (Throwable e) {
@@ -160,7 +170,8 @@ public class DefForm implements Form {
     private void writeAOT(Namespace ns, String name, Object maybeHcm) throws Exception {    
         if (maybeHcm instanceof AbstractCompiledMethod hcm) {        
             Class<?> base = hcm.getBacking();
-            if (base != null) {
+            // Closures need their captured values, which can't be replayed
+            if (base != null && base.getDeclaredConstructors()[0].getParameterCount() == 0) {
                 prn("Writing aot map entry: " + ns.getName() + "/" + name + "=" + base);
                 AOTHandler.writeAotFunction(ns.getName(), name, base);
             }   
@@ -179,6 +190,9 @@ public class DefForm implements Form {
             ;; This symbol cannot be redefined
             (def ^:final symbol value)   
             
+            ;; This function is final and calls to it are expanded in place
+            (def ^:inline symbol (fn* [a] ...))
+            
             ;; This symbol's value will be thread-local.
             ;; It can be changed with (set! ...) or (binding ...)
             (def ^:dynamic symbol value)
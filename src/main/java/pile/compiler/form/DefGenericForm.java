@@ -48,6 +48,7 @@ import pile.core.CoreConstants;
 import pile.core.Namespace;
 import pile.core.Symbol;
 import pile.core.binding.ImmutableBinding;
+import pile.core.compiler.cache.CompileCache;
 import pile.core.exception.PileCompileException;
 import pile.core.method.GenericMethod;
 import pile.core.method.GenericMethod.GenericMethodTargets;
@@ -176,6 +177,7 @@ public class DefGenericForm extends AbstractListForm {
 
             byte[] classArray = cs.compileClass();
             AbstractClassCompiler.printDebug(classArray);
+            CompileCache.uncacheable();
             Class<?> clazz = LookupHolder.PRIVATE_LOOKUP.defineClass(classArray);
             MethodCollector coll = new MethodCollector(clazz, LookupHolder.PRIVATE_LOOKUP);
             Map<String, MethodArity> methodMap = coll.collectPileMethods();
@@ -55,6 +55,7 @@ import pile.core.RuntimeRoot;
 import pile.core.RuntimeRoot.ProtocolMethodDescriptor;
 import pile.core.binding.BindingType;
 import pile.core.binding.ImmutableBinding;
+import pile.core.compiler.cache.CompileCache;
 import pile.core.exception.PileCompileException;
 import pile.core.method.HiddenCompiledMethod;
 import pile.core.parse.LexicalEnvironment;
@@ -112,6 +113,7 @@ public class DefProtocolForm extends AbstractListForm {
 
             byte[] classArray = cs.compileClass();
             AbstractClassCompiler.printDebug(classArray);
+            CompileCache.uncacheable();
             clazz = LookupHolder.PRIVATE_LOOKUP.defineClass(classArray);
         } finally {
             cs.leaveInterface();
@@ -202,6 +204,7 @@ public class DefProtocolForm extends AbstractListForm {
             
             byte[] classArray = cs.compileClass();
             AbstractClassCompiler.printDebug(classArray);
+            CompileCache.uncacheable();
             return LookupHolder.PRIVATE_LOOKUP.defineClass(classArray);
         } finally {
             cs.leaveClass();
@@ -50,6 +50,7 @@ import pile.core.ISeq;
 import pile.core.Keyword;
 import pile.core.Symbol;
 import pile.core.binding.Binding;
+import pile.core.compiler.cache.CompileCache;
 import pile.core.exception.PileCompileException;
 import pile.core.exception.PileSyntaxErrorException;
 import pile.core.method.GenericMethod;
@@ -117,6 +118,8 @@ public class DefTypeForm extends AbstractListForm {
         // FIXME Should we use the name of the type the user wanted?
         ParameterParser consArgs = new ParameterParser(ns, ISeq.iter(seq(nth(form, 2))));
         ParameterList parsedCons = consArgs.parse();
+        // Named types can only be defined once
+        CompileCache.uncacheable();
         var comp = new DefTypeClassCompiler(ns, typeName, CoreConstants.GEN_PACKAGE);
         Class superType = superArgs == null ? Object.class : superArgs.superType();
         try (var exit = comp.enterClass(cs, superType, interfaces)) {
@@ -31,6 +31,8 @@ import org.objectweb.asm.commons.GeneratorAdapter;
 import pile.collection.PersistentList;
 import pile.compiler.Compiler;
 import pile.compiler.CompilerState;
+import pile.compiler.ConstantFolder;
+import pile.compiler.ConstantFolder.Constant;
 import pile.compiler.DeferredCompilation;
 import pile.compiler.Helpers;
 import pile.compiler.MethodStack;
@@ -55,7 +57,12 @@ public class IfForm implements Form {
 	@Override
 	public DeferredCompilation compileForm(CompilerState complierState) {
 		return new DeferredCompilation(TypeTag.SEXP, IntrinsicBinding.IF, (cs) -> {
-		    compile(cs, Compiler::compile);
+		    Constant test = ConstantFolder.fold(cs, second(form));
+		    if (test != null) {
+		        compileTaken(cs, ifCheck(test.value()));
+		    } else {
+		        compile(cs, Compiler::compile);
+		    }
 		});
 	}
 	
@@ -164,6 +171,31 @@ public class IfForm implements Form {
         }
     }
 
+    /**
+     * Compile only the branch taken for a constant test.
+     * 
+     * @param cs
+     * @param test
+     */
+    private void compileTaken(CompilerState cs, boolean test) {
+        MethodVisitor mv = cs.getCurrentMethodVisitor();
+        MethodStack stack = cs.getMethodStack();
+
+        if (!test && form.count() != 4) {
+            mv.visitInsn(Opcodes.ACONST_NULL);
+            stack.push(Any.class);
+            return;
+        }
+
+        Object branch = test ? ssecond(form) : fnext(nnext(form));
+        handleLineNumber(mv, branch);
+        Compiler.compile(cs, branch);
+        switch (stack.popR()) {
+            case TypeRecord tr -> stack.push(box(cs, tr.javaClass()));
+            case InfiniteRecord _ -> stack.pushInfiniteLoop();
+        }
+    }
+
     private Class<?> box(CompilerState cs, Class<?> thenClass) {
         Class<?> wrapper = Helpers.primitiveToWrapper(thenClass);
         if (wrapper != null) {
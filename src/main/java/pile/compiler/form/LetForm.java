@@ -33,6 +33,8 @@ import pile.collection.PersistentList;
 import pile.collection.PersistentVector;
 import pile.compiler.Compiler;
 import pile.compiler.CompilerState;
+import pile.compiler.ConstantFolder;
+import pile.compiler.ConstantFolder.Constant;
 import pile.compiler.DeferredCompilation;
 import pile.compiler.Helpers;
 import pile.compiler.MethodStack;
@@ -173,6 +175,8 @@ public class LetForm implements Form {
 			    }
 			}
 						
+            // Hinted locals may be coerced, so only propagate unhinted ones
+            Constant constant = Helpers.getTypeHint(sym, ns).isEmpty() ? ConstantFolder.fold(cs, rhs) : null;
             DeferredCompilation defer = Compiler.compileDefer(cs, rhs);
             handleLineNumber(mv, rhs);
 			defer.compile().accept(cs);
@@ -212,7 +216,11 @@ public class LetForm implements Form {
 			LOG.trace("Creating local variable %s [%s] with type %s", symbolName, index, javaType);
 
 			var scopeClass = (typeRecord.clazz() == Any.class && localClass == Object.class) ? Any.class : localClass;
-			scope.addCurrent(symbolName, scopeClass, index, defer.ref());
+			if (constant != null) {
+			    scope.addConstant(symbolName, scopeClass, index, defer.ref(), constant);
+			} else {
+			    scope.addCurrent(symbolName, scopeClass, index, defer.ref());
+			}
 			scopes.add(new LetScopeRecord(symbolName, typeRecord, null, startLabel, index));
 		}
 
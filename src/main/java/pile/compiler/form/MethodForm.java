@@ -26,6 +26,7 @@ import static pile.nativebase.NativeCore.*;
 import java.lang.invoke.CallSite;
 import java.lang.invoke.ConstantCallSite;
 import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodHandles.Lookup;
 import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
@@ -34,6 +35,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import org.objectweb.asm.ConstantDynamic;
 import org.objectweb.asm.Handle;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Type;
@@ -75,6 +77,11 @@ public class MethodForm implements Form {
     
 	private static final Type HCM_TYPE = getType(PileMethod.class);
 
+    private static final Handle CLASS_DATA_AT = new Handle(H_INVOKESTATIC,
+            Type.getInternalName(MethodHandles.class), "classDataAt", getMethodDescriptor(OBJECT_TYPE,
+                    getType(Lookup.class), STRING_TYPE, getType(Class.class), INT_TYPE),
+            false);
+
     private final Namespace ns;
     private final PersistentList form;
     private final String targetPackage;
@@ -146,6 +153,8 @@ public class MethodForm implements Form {
 		}
 		
 		var compiler = new ClosureClassCompiler(ns, className, targetPackage);
+		// Only referred to by Class object, see compileCallClosure
+		compiler.allowHidden();
 
         try (var ignored = compiler.enterClass(cs)) {
             Class<?> anno = Helpers.getTypeHint(form, ns).orElse(Any.class);
@@ -188,13 +197,14 @@ public class MethodForm implements Form {
     	
     	return new DeferredCompilation(TypeTag.SEXP, clazz, (cs) -> {
     		MethodVisitor mv = cs.getCurrentMethodVisitor();
+    		Object classConst = toClassConst(cs, clazz);
     
     		Handle h = new Handle(H_INVOKESTATIC, Type.getType(MethodForm.class).getInternalName(), "bootstrap",
     		getBootstrapDescriptor(getType(Class.class)), false);
     
     		if (symbols.isEmpty()) {
     			mv.visitInvokeDynamicInsn("instantiateClass", Type.getMethodDescriptor(HCM_TYPE), h,
-    					toConst(clazz).get());
+    					classConst);
     		} else {
     			// Closures
     			int count = 0;
@@ -204,13 +214,25 @@ public class MethodForm implements Form {
     			}
     			List<TypeRecord> popN = cs.getMethodStack().popN(count);
     			mv.visitInvokeDynamicInsn("instantiateClass", getMethodDescriptor(HCM_TYPE, getJavaTypeArray(popN)), h,
-    					toConst(clazz).get());
+    					classConst);
     		}
     		
     		cs.getMethodStack().push(PileMethod.class);
     	});
     }
 
+    /**
+     * Hidden classes cannot be loaded by name, so they are instead carried in the
+     * class data of the (also hidden) class being compiled.
+     */
+    private static Object toClassConst(CompilerState cs, Class<?> clazz) {
+        if (clazz.isHidden()) {
+            int index = cs.addClassData(clazz);
+            return new ConstantDynamic("_", getDescriptor(Class.class), CLASS_DATA_AT, index);
+        }
+        return toConst(clazz).get();
+    }
+
     private static HiddenCompiledMethod toCompiledMethod(MethodArity m, Object instance) {
         HiddenCompiledMethod compiled = new HiddenCompiledMethod(instance.getClass(), m.bind(instance));
 		return compiled;
@@ -46,8 +46,10 @@ import pile.collection.PersistentMap;
 import pile.collection.PersistentVector;
 import pile.compiler.Compiler;
 import pile.compiler.CompilerState;
+import pile.compiler.ConstantFolder;
 import pile.compiler.DeferredCompilation;
 import pile.compiler.Helpers;
+import pile.compiler.Inliner;
 import pile.compiler.MacroEvaluated;
 import pile.compiler.MethodStack;
 import pile.compiler.MethodStack.TypeRecord;
@@ -68,7 +70,9 @@ import pile.core.Symbol;
 import pile.core.binding.Binding;
 import pile.core.binding.BindingType;
 import pile.core.binding.IntrinsicBinding;
-import pile.core.binding.NativeDynamicBinding;
+import pile.core.binding.NativeDynamicBinding;
+import pile.core.compiler.stats.CompileStats;
+import pile.core.compiler.stats.CompileStats.FormStats;
 import pile.core.exception.PileException;
 import pile.core.exception.PileExecutionException;
 import pile.core.exception.PileInternalException;
@@ -138,6 +142,14 @@ public class SExpr implements Form {
         }
         var list = (PersistentList) expanded;
         if (form == list) {
+            Optional<DeferredCompilation> folded = ConstantFolder.foldCall(cs, list);
+            if (folded.isPresent()) {
+                return folded.get();
+            }
+            Optional<DeferredCompilation> inlined = Inliner.inline(cs, list);
+            if (inlined.isPresent()) {
+                return inlined.get();
+            }
             Object first = first(list);
             DeferredCompilation firstArg = Compiler.compileDefer(cs, first);
             // TODO Propagate first arg?
@@ -414,10 +426,16 @@ public class SExpr implements Form {
                 if (bind.isMacro() && Binding.getType(bind) != BindingType.INTRINSIC) {
                     PCall base = (PCall) bind.getValue();
                     requireNonNull(base, () -> "Cannot expand macro:" + sym);
+                    FormStats stats = CompileStats.current();
+                    long start = stats == null ? 0 : System.nanoTime();
                     try {
                         return base.invoke(pl.pop().toArray());
                     } catch (Throwable e) {
                         throw new PileException("Error during macro expansion while calling " + slr.namespace() + "/" + slr.sym(), e);
+                    } finally {
+                        if (stats != null) {
+                            stats.macroExpanded(slr.fullSym(), System.nanoTime() - start);
+                        }
                     }
                 }
             }
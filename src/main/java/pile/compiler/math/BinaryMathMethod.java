@@ -73,6 +73,11 @@ public class BinaryMathMethod implements PileMethod {
     public boolean acceptsArity(int arity) {
         return arity == 2;
     }
+
+    @Override
+    public boolean isPure() {
+        return true;
+    }
     
     @Override
     public Optional<CallSite> staticLink(CallSiteType csType, MethodType staticTypes, long anyMask) {
@@ -51,6 +51,11 @@ public class UnaryMathMethod implements PileMethod {
         return arity == 1;
     }
 
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
     @Override
     public Optional<CallSite> staticLink(CallSiteType csType, MethodType staticTypes, long anyMask) {
         Class<?> firstParameterType = staticTypes.parameterType(0);
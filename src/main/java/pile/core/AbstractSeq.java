@@ -16,12 +16,13 @@
 package pile.core;
 
 import pile.collection.PersistentList;
+import pile.core.print.Printer;
 
 public abstract class AbstractSeq<T> implements ISeq<T> {
 
     @Override
     public String toString() {
-        return ISeq.toString(new StringBuilder(), this);
+        return Printer.printString(this);
     }
 
     @Override
@@ -24,9 +24,9 @@ import java.util.Optional;
 
 import pile.core.binding.Binding;
 import pile.core.binding.BindingType;
+import pile.core.binding.DynamicBinding;
 import pile.core.binding.ImmutableBinding;
 import pile.core.binding.ScopedBinding;
-import pile.core.binding.ThreadLocalBinding;
 import pile.core.indy.CallSiteType;
 import pile.core.indy.CompilerFlags;
 import pile.core.method.LinkableMethod;
@@ -70,18 +70,37 @@ public abstract class AbstractVar<T> implements Var<T> {
         BindingType type = Binding.getType(bind);
         switch (type) {
             case VALUE -> ns.define(name, new ImmutableBinding(ns.getName(), newRef));
-            case DYNAMIC -> ((ThreadLocalBinding) bind).set(newRef);
+            case DYNAMIC -> setDynamic((SettableRef<T>) bind, newRef);
             default -> throw new PileInvocationException("Cannot set value of binding with type:" + type);
         }        
     }
 
+    private void setDynamic(SettableRef<T> bind, T newRef) {
+        Watches watches = ns.peekVarWatches(name);
+        if (watches == null) {
+            bind.set(newRef);
+        } else {
+            watches.validate(newRef);
+            T oldRef = bind.deref();
+            bind.set(newRef);
+            watches.notify(this, oldRef, newRef);
+        }
+    }
+
     @Override
     public void update(PCall fn) throws Throwable {
         Binding bind = bind();
         BindingType type = Binding.getType(bind);
         switch (type) {
 //            case VALUE -> ns.define(name, new ImmutableBinding(nsStr, newRef));
-            case DYNAMIC -> ((ThreadLocalBinding) bind).update(fn);
+            case DYNAMIC -> {
+                SettableRef<T> ref = (SettableRef<T>) bind;
+                if (ns.peekVarWatches(name) == null) {
+                    ref.update(fn);
+                } else {
+                    setDynamic(ref, (T) fn.invoke(ref.deref()));
+                }
+            }
             default -> throw new PileInvocationException("Cannot update value of binding with type:" + type);
         }  
     }
@@ -91,7 +110,11 @@ public abstract class AbstractVar<T> implements Var<T> {
         Binding bind = bind();
         BindingType type = Binding.getType(bind);
         return switch (type) {
-            case VALUE, DYNAMIC -> prev.withVar(this, val);
+            case DYNAMIC -> switch (bind) {
+                case DynamicBinding db -> prev.withFrameValue(db, val);
+                default -> prev.withVar(this, val);
+            };
+            case VALUE -> prev.withVar(this, val);
             case SCOPED -> {
                 var pc = prev.getCarrier();
                 ScopedValue sv = ((ScopedBinding)bind).getScopedValue();
@@ -106,6 +129,35 @@ public abstract class AbstractVar<T> implements Var<T> {
     }
     
     
+    @Override
+    public void addWatch(Object key, PCall fn, boolean async) {
+        ns.getVarWatches(name).add(key, fn, async);
+    }
+    
+    @Override
+    public void removeWatch(Object key) {
+        ns.getVarWatches(name).remove(key);
+    }
+    
+    @Override
+    public void setValidator(PCall fn) {
+        Watches watches = ns.getVarWatches(name);
+        watches.setValidator(fn);
+        if (fn != null) {
+            try {
+                watches.validate(deref());
+            } catch (IllegalStateException e) {
+                watches.setValidator(null);
+                throw e;
+            }
+        }
+    }
+    
+    @Override
+    public PCall getValidator() {
+        return ns.getVarWatches(name).getValidator();
+    }
+    
     @Override
     public String toString() {
         return String.format("#'%s/%s", ns.getName(), name);
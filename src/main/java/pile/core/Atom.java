@@ -18,9 +18,19 @@ package pile.core;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
-public class Atom<T> implements SettableRef<T> {
+/**
+ * A reference which is updated by a compare-and-set retry loop. The validator
+ * is checked on every attempted change and watches are notified after each
+ * successful change.
+ * 
+ * @see BackoffAtom
+ * @see CombiningAtom
+ * @see CounterAtom
+ */
+public class Atom<T> implements SettableRef<T>, Watchable {
 
-	private final AtomicReference<T> ref;
+	protected final AtomicReference<T> ref;
+	protected final Watches watches = new Watches();
 
 	public Atom() {
 		ref = new AtomicReference<>();
@@ -32,7 +42,9 @@ public class Atom<T> implements SettableRef<T> {
 
 	@Override
 	public void set(T newRef) {
-		ref.set(newRef);
+		watches.validate(newRef);
+		T old = ref.getAndSet(newRef);
+		watches.notify(this, old, newRef);
 	}
 
 	@Override
@@ -50,10 +62,56 @@ public class Atom<T> implements SettableRef<T> {
 		for (;;) {
 			T local = ref.get();
 			T out = (T) fn.invoke(local);
-			if (ref.compareAndSet(local, out)) {
+			if (compareAndSet(local, out)) {
 				break;
 			}
 		}
 	}
 
+	/**
+	 * Attempt to swap the current value of this atom.
+	 * 
+	 * @param expected The value the update function was called with.
+	 * @param out      The new value.
+	 * @return True if the value was swapped, false otherwise.
+	 */
+	protected boolean compareAndSet(T expected, T out) {
+		watches.validate(out);
+		if (ref.compareAndSet(expected, out)) {
+			watches.notify(this, expected, out);
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public void addWatch(Object key, PCall fn, boolean async) {
+		watches.add(key, fn, async);
+	}
+
+	@Override
+	public void removeWatch(Object key) {
+		watches.remove(key);
+	}
+
+	@Override
+	public void setValidator(PCall fn) {
+		if (fn != null) {
+			watches.setValidator(fn);
+			try {
+				watches.validate(ref.get());
+			} catch (IllegalStateException e) {
+				watches.setValidator(null);
+				throw e;
+			}
+		} else {
+			watches.setValidator(null);
+		}
+	}
+
+	@Override
+	public PCall getValidator() {
+		return watches.getValidator();
+	}
+
 }
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import pile.collection.PersistentMap;
+
+/**
+ * Update counters for the contention aware atoms. Counters are striped so
+ * recording them does not become a point of contention itself.
+ * 
+ * @see BackoffAtom
+ * @see CombiningAtom
+ */
+public class AtomStats {
+
+    private static final Keyword UPDATES = Keyword.of("updates");
+    private static final Keyword RETRIES = Keyword.of("retries");
+    private static final Keyword CONTENDED = Keyword.of("contended");
+    private static final Keyword BATCHES = Keyword.of("batches");
+
+    // Successful updates
+    private final LongAdder updates = new LongAdder();
+    // Update function calls which lost the CAS race
+    private final LongAdder retries = new LongAdder();
+    // Updates which had to retry at least once
+    private final LongAdder contended = new LongAdder();
+    // Combining passes
+    private final LongAdder batches = new LongAdder();
+
+    void recordUpdate(int retryCount) {
+        updates.increment();
+        if (retryCount > 0) {
+            retries.add(retryCount);
+            contended.increment();
+        }
+    }
+
+    void recordBatch() {
+        batches.increment();
+    }
+
+    /**
+     * 
+     * @return A map of {:updates :retries :contended :batches}
+     */
+    public PersistentMap toMap() {
+        return PersistentMap.createArr(UPDATES, updates.sum(), RETRIES, retries.sum(), CONTENDED, contended.sum(),
+                BATCHES, batches.sum());
+    }
+
+    public void reset() {
+        updates.reset();
+        retries.reset();
+        contended.reset();
+        batches.reset();
+    }
+
+}
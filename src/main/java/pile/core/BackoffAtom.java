@@ -0,0 +1,78 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An {@link Atom} which backs off exponentially after losing a CAS race rather
+ * than immediately recomputing the update function. Under heavy contention this
+ * keeps threads from repeatedly recomputing expensive updates (eg. assoc into
+ * large maps) only to lose again.
+ * <ol>
+ * <li>The first few retries spin with {@link Thread#onSpinWait()}.
+ * <li>Further retries park for a randomized, exponentially increasing time
+ * capped at {@link #MAX_PARK_NANOS}.
+ * </ol>
+ * 
+ */
+public class BackoffAtom<T> extends Atom<T> {
+
+    private static final int SPIN_RETRIES = 4;
+    private static final long MIN_PARK_NANOS = 1_000;
+    private static final long MAX_PARK_NANOS = 1_000_000;
+
+    private final AtomStats stats = new AtomStats();
+
+    public BackoffAtom() {
+        super();
+    }
+
+    public BackoffAtom(T t) {
+        super(t);
+    }
+
+    @Override
+    public void update(PCall fn) throws Throwable {
+        for (int retry = 0;; ++retry) {
+            T local = ref.get();
+            T out = (T) fn.invoke(local);
+            if (compareAndSet(local, out)) {
+                stats.recordUpdate(retry);
+                break;
+            }
+            backoff(retry);
+        }
+    }
+
+    public AtomStats getStats() {
+        return stats;
+    }
+
+    private static void backoff(int retry) {
+        if (retry < SPIN_RETRIES) {
+            for (int i = 0; i < (1 << retry); ++i) {
+                Thread.onSpinWait();
+            }
+        } else {
+            int shift = Math.min(retry - SPIN_RETRIES, 10);
+            long ceiling = Math.min(MIN_PARK_NANOS << shift, MAX_PARK_NANOS);
+            LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(MIN_PARK_NANOS, ceiling + 1));
+        }
+    }
+
+}
@@ -4,7 +4,9 @@ import java.lang.ScopedValue.Carrier;
 import java.util.ArrayList;
 import java.util.List;
 
+import pile.core.binding.BindingFrame;
 import pile.core.binding.BindingType;
+import pile.core.binding.DynamicBinding;
 import pile.core.exception.PileExecutionException;
 
 /**
@@ -12,21 +14,25 @@ import pile.core.exception.PileExecutionException;
  * and can execute a function call which will see those bound var values as set.
  * This is typically useful with {@link BindingType#SCOPED} and
  * {@link BindingType#DYNAMIC} vars. In these cases only the current thread will
- * see those vars bound to those values.
+ * see those vars bound to those values. {@link DynamicBinding Dynamic} values
+ * are pushed as a new {@link BindingFrame} rather than being set and restored.
  */
 public class BindingInvocation {
 
     private final Carrier carrier;
     private final List<VarVal> vars;
+    private final List<FrameVal> frameVals;
 
     public BindingInvocation() {
         this.carrier = null;
         this.vars = List.of();
+        this.frameVals = List.of();
     }
 
     private BindingInvocation(BindingInvocation other, Carrier carrier) {
         this.carrier = carrier;
         this.vars = other.vars;
+        this.frameVals = other.frameVals;
     }
 
     private BindingInvocation(BindingInvocation other, Var var, Object varVal) {
@@ -34,6 +40,15 @@ public class BindingInvocation {
         copy.add(new VarVal(var, varVal));
         this.carrier = other.carrier;
         this.vars = copy;
+        this.frameVals = other.frameVals;
+    }
+
+    private BindingInvocation(BindingInvocation other, DynamicBinding<?> binding, Object val) {
+        List<FrameVal> copy = new ArrayList<>(other.frameVals);
+        copy.add(new FrameVal(binding, val));
+        this.carrier = other.carrier;
+        this.vars = other.vars;
+        this.frameVals = copy;
     }
 
     /**
@@ -53,6 +68,10 @@ public class BindingInvocation {
         return new BindingInvocation(this, var, newValue);
     }
 
+    public BindingInvocation withFrameValue(DynamicBinding<?> binding, Object newValue) {
+        return new BindingInvocation(this, binding, newValue);
+    }
+
     public Object call(PCall fn) throws Exception {
         List<VarVal> befores = null;
         if (!vars.isEmpty()) {
@@ -64,6 +83,15 @@ public class BindingInvocation {
                 pair.var().set(pair.val());
             }
         }
+        Carrier carrier = this.carrier;
+        if (!frameVals.isEmpty()) {
+            BindingFrame frame = BindingFrame.CURRENT.orElse(BindingFrame.EMPTY);
+            for (var fv : frameVals) {
+                frame = frame.with(fv.binding(), fv.val());
+            }
+            carrier = carrier == null ? ScopedValue.where(BindingFrame.CURRENT, frame)
+                    : carrier.where(BindingFrame.CURRENT, frame);
+        }
         try {
             if (carrier != null) {
                 return carrier.call(() -> {
@@ -99,4 +127,7 @@ public class BindingInvocation {
     private record VarVal(Var var, Object val) {
     };
 
+    private record FrameVal(DynamicBinding<?> binding, Object val) {
+    };
+
 }
@@ -0,0 +1,146 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An {@link Atom} which uses flat combining for updates. Updating threads
+ * enqueue their update function and then one thread (the combiner) applies all
+ * pending functions in order, publishing the result once for the whole batch.
+ * Update functions are never retried, so each function is called exactly once
+ * per update.
+ * <br>
+ * Threads which fail to become the combiner park until their update has been
+ * applied by another thread. The validator is checked after each update
+ * function, while watches are notified once per batch. <br>
+ * <br>
+ * Update functions may not update (or set) the same atom, as the nested update
+ * would be overwritten by the batch. Doing so fails the outer update with an
+ * {@link IllegalStateException}.
+ * 
+ */
+public class CombiningAtom<T> extends Atom<T> {
+
+    // Upper bound on the updates applied in a single pass so one combiner isn't
+    // stuck servicing everyone else indefinitely.
+    private static final int MAX_BATCH = 256;
+    private static final long PARK_NANOS = 50_000;
+
+    private final ConcurrentLinkedQueue<Request> pending = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock combiner = new ReentrantLock();
+    private final AtomStats stats = new AtomStats();
+
+    public CombiningAtom() {
+        super();
+    }
+
+    public CombiningAtom(T t) {
+        super(t);
+    }
+
+    @Override
+    public void set(T newRef) {
+        checkNotCombining();
+        combiner.lock();
+        try {
+            super.set(newRef);
+        } finally {
+            combiner.unlock();
+        }
+    }
+
+    @Override
+    public void update(PCall fn) throws Throwable {
+        checkNotCombining();
+        Request req = new Request(fn, Thread.currentThread());
+        pending.add(req);
+        while (!req.done) {
+            if (combiner.tryLock()) {
+                try {
+                    combine();
+                } finally {
+                    combiner.unlock();
+                }
+            } else {
+                LockSupport.parkNanos(this, PARK_NANOS);
+            }
+        }
+        if (req.error != null) {
+            throw req.error;
+        }
+    }
+
+    public AtomStats getStats() {
+        return stats;
+    }
+
+    private void checkNotCombining() {
+        if (combiner.isHeldByCurrentThread()) {
+            throw new IllegalStateException("Cannot update a combining atom from one of its own update functions");
+        }
+    }
+
+    // Guarded by combiner
+    private void combine() {
+        List<Request> applied = new ArrayList<>();
+        final T old = ref.get();
+        T value = old;
+        Request req;
+        while (applied.size() < MAX_BATCH && (req = pending.poll()) != null) {
+            try {
+                T out = (T) req.fn.invoke(value);
+                watches.validate(out);
+                value = out;
+                stats.recordUpdate(0);
+            } catch (Throwable t) {
+                // Only the failing update is discarded.
+                req.error = t;
+            }
+            applied.add(req);
+        }
+        if (applied.isEmpty()) {
+            return;
+        }
+        ref.set(value);
+        stats.recordBatch();
+        if (value != old) {
+            watches.notify(this, old, value);
+        }
+        for (Request done : applied) {
+            done.done = true;
+            LockSupport.unpark(done.waiter);
+        }
+    }
+
+    private static final class Request {
+        private final PCall fn;
+        private final Thread waiter;
+        // Written before done
+        private Throwable error;
+        private volatile boolean done = false;
+
+        private Request(PCall fn, Thread waiter) {
+            this.fn = fn;
+            this.waiter = waiter;
+        }
+    }
+
+}
@@ -5,6 +5,7 @@ import static java.util.Objects.*;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
+import pile.core.binding.BindingFrame;
 import pile.core.exception.PileExecutionException;
 import pile.core.exception.PileInternalException;
 
@@ -25,7 +26,7 @@ public class Coroutine {
      * the first call to {@link #resume()}.
      */
     public void run() {
-        Thread.startVirtualThread(() -> {
+        Thread.startVirtualThread(BindingFrame.convey(() -> {
             ScopedValue.where(SYNC_LOCAL, sync)
                 .run(() -> {
                     try {
@@ -37,7 +38,7 @@ public class Coroutine {
                         sync.signalEnd();
                     }
                 });
-        });
+        }));
     }
 
     /**
@@ -0,0 +1,76 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import pile.nativebase.method.PileInvocationException;
+
+/**
+ * A striped long accumulator ({@link LongAdder}) which can be used anywhere a
+ * {@link SettableRef} can. Intended for counters which are written far more
+ * often than they are read.
+ * <br>
+ * {@link #update(PCall)} calls the function with the current sum and adds the
+ * difference between the result and that sum. This is exact for additive
+ * updates (inc, dec, (+ n)) even when they race, but not for updates which
+ * depend on the absolute value. {@link #set(Number)} is likewise not atomic with
+ * respect to concurrent updates.
+ */
+public class CounterAtom implements SettableRef<Number> {
+
+    private final LongAdder adder = new LongAdder();
+
+    public CounterAtom() {
+    }
+
+    public CounterAtom(long initial) {
+        adder.add(initial);
+    }
+
+    @Override
+    public Long deref() {
+        return adder.sum();
+    }
+
+    @Override
+    public Long deref(long time, TimeUnit unit) {
+        return deref();
+    }
+
+    @Override
+    public void set(Number newRef) {
+        long next = newRef == null ? 0L : newRef.longValue();
+        adder.add(next - adder.sumThenReset());
+    }
+
+    @Override
+    public void update(PCall fn) throws Throwable {
+        long current = adder.sum();
+        Object out = fn.invoke(current);
+        if (out instanceof Number n) {
+            adder.add(n.longValue() - current);
+        } else {
+            throw new PileInvocationException("Counter update must return a number, found: " + out);
+        }
+    }
+
+    public void add(long delta) {
+        adder.add(delta);
+    }
+
+}
@@ -169,21 +169,6 @@ public interface ISeq<T> extends Iterable<T>, Conjable<T> {
         return StreamSupport.stream(iter.spliterator(), false);
     }
 
-    static <T> String toString(StringBuilder sb, ISeq<T> seq) {
-        sb.append("(");
-        while (seq != null) {
-            sb.append(seq.first());
-
-            if (seq.next() != null) {
-                sb.append(" ");
-            }
-            seq = seq.next();
-
-        }
-        sb.append(")");
-        return sb.toString();
-
-    }
 
     /**
      * Unroll an {@link ISeq} into an array of the provided size. The last argument
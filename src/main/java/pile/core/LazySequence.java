@@ -17,41 +17,87 @@ package pile.core;
 
 import java.util.Iterator;
 
+import pile.core.print.Printer;
 import pile.nativebase.NativeCore;
 import pile.nativebase.method.PileInvocationException;
 
 /**
- * 
+ * A sequence which is produced by calling a function the first time it is
+ * needed. Once realized, {@link #seq()} is a single volatile read; only the
+ * first realization is synchronized.
+ * <br>
+ * If the function returns another lazy sequence (eg. nested lazy-seq or deep
+ * concat chains) the nested sequences are unwrapped iteratively rather than
+ * recursively realizing through {@link NativeCore#seq(Object)}.
  * 
  * @param <T>
  */
-public class LazySequence<T> implements Seqable<T>/*, ISeq<T>*/ {
+public class LazySequence<T> implements Seqable<T>, Realizable/*, ISeq<T>*/ {
+
+    private static final Object UNREALIZED = new Object();
 
+    // Guarded by this
     private PCall afn;
-    private ISeq<T> seq = null;
-    private boolean reified = false;
+    // The raw function result, guarded by this
+    private Object sval = UNREALIZED;
+    private volatile Object seq = UNREALIZED;
 
     public LazySequence(PCall afn) {
         this.afn = afn;
     }
 
     @Override
-    public synchronized ISeq<T> seq() {
-        if (! reified) {
+    public ISeq<T> seq() {
+        Object local = seq;
+        if (local != UNREALIZED) {
+            return (ISeq<T>) local;
+        }
+        return realize();
+    }
+
+    @Override
+    public boolean isRealized() {
+        return seq != UNREALIZED;
+    }
+
+    private synchronized ISeq<T> realize() {
+        Object local = seq;
+        if (local == UNREALIZED) {
+            Object val = sval();
+            while (val instanceof LazySequence<?> inner) {
+                val = inner.sval();
+            }
+            local = NativeCore.seq(val);
+            sval = null;
+            seq = local;
+        }
+        return (ISeq<T>) local;
+    }
+
+    /**
+     * 
+     * @return The realized sequence if this is already realized, otherwise the
+     *         (cached) unconverted result of calling the function.
+     */
+    private synchronized Object sval() {
+        Object local = seq;
+        if (local != UNREALIZED) {
+            return local;
+        }
+        if (sval == UNREALIZED) {
             try {
-                seq = NativeCore.seq(afn.invoke());
+                sval = afn.invoke();
             } catch (Throwable e) {
                 throw new PileInvocationException("Error while calling function for lazy sequence", e);
             }
             afn = null;
-            reified = true;
         }
-        return seq;
+        return sval;
     }
     
     @Override
     public String toString() {
-        return ISeq.toString(new StringBuilder(), this.seq());
+        return Printer.printString(this);
     }
 
 }
@@ -64,6 +64,9 @@ public class Namespace {
 
 	private final Map<String, Wrapper> ourBindings = new ConcurrentHashMap<>();
 	
+	// Watches/validators of vars in this namespace, created on first use.
+	private final Map<String, Watches> varWatches = new ConcurrentHashMap<>();
+	
 	private final String name;
 
 	public Namespace(String name) {
@@ -84,6 +87,12 @@ public class Namespace {
 	 */
 	public void define(String name, Binding newValue) {
 		AtomicReference<SwitchPoint> sp = new AtomicReference<>();
+		AtomicReference<Object> oldVal = new AtomicReference<>();
+		
+		Watches watches = varWatches.get(name);
+		if (watches != null && newValue != null) {
+		    watches.validate(newValue.getValue());
+		}
 
 		ourBindings.compute(name, (k, oldValue) -> {
 		
@@ -103,6 +112,9 @@ public class Namespace {
 					// supplanted
 					SwitchPoint toInvalidate = oldValue.binding().getSwitchPoint();
 					if (! Unbound.isUnbound(oldValue.binding())) {
+					    if (watches != null) {
+					        oldVal.set(oldValue.binding().getValue());
+					    }
 					    if (newValue != null && (oldValue.binding().isMacro() ^ newValue.isMacro())) {
 					        throw new IllegalArgumentException("Old and new bindings must both be macros or both not.");
 					    }
@@ -128,6 +140,30 @@ public class Namespace {
 		    LOG.trace("Invalidating switchpoint for %s/%s", getName(), name);
 			SwitchPoint.invalidateAll(new SwitchPoint[] { toInvalidate });
 		}
+		
+		if (watches != null && newValue != null && ! watches.isEmpty()) {
+		    watches.notify(getVar(new Symbol(name)), oldVal.get(), newValue.getValue());
+		}
+	}
+	
+	/**
+	 * Get the watches/validator for a var in this namespace, creating them if
+	 * necessary.
+	 * 
+	 * @param name The var name
+	 * @return The watches for the var
+	 */
+	public Watches getVarWatches(String name) {
+	    return varWatches.computeIfAbsent(name, k -> new Watches());
+	}
+
+	/**
+	 * 
+	 * @param name The var name
+	 * @return The watches for the var, or null if none were ever added.
+	 */
+	Watches peekVarWatches(String name) {
+	    return varWatches.get(name);
 	}
 	
 	public void defineIfAbsent(String name, Binding v) {
@@ -167,7 +203,7 @@ public class Namespace {
 		    // TODO Use below instead
 			Wrapper wrapper = entry.getValue();
             if (wrapper.ours()) {
-			    LOG.trace("Importing [%s <- %s]: %s (%s)", this.getName(), other.getName(), symName, wrapper.binding().getValue());
+			    LOG.trace("Importing [%s <- %s]: %s", this.getName(), other.getName(), symName);
                 Binding ref = new ReferenceBinding(this, other, symName, PersistentMap.empty());
 			    Wrapper bt = new Wrapper(ref, wrapper.ns(), false);
                 ourBindings.put(symName, bt);
@@ -178,7 +214,7 @@ public class Namespace {
 	public void referOne(Namespace other, String symName, String thisSymName) {
 	    Wrapper wrapper = other.ourBindings.get(symName);
         if (wrapper.ours()) {
-            LOG.trace("Importing [%s <- %s]: %s (%s)", this.getName(), other.getName(), symName, wrapper.binding().getValue());
+            LOG.trace("Importing [%s <- %s]: %s", this.getName(), other.getName(), symName);
             Binding ref = new ReferenceBinding(this, other, symName, PersistentMap.empty());
             Wrapper bt = new Wrapper(ref, wrapper.ns(), false);
             ourBindings.put(thisSymName, bt);
@@ -0,0 +1,306 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import pile.collection.PersistentList;
+import pile.collection.PersistentVector;
+import pile.core.binding.BindingFrame;
+import pile.core.binding.NativeDynamicBinding;
+import pile.core.compiler.aot.AOTHandler;
+import pile.core.log.Logger;
+import pile.core.log.LoggerSupplier;
+import pile.core.parse.PileParser;
+
+/**
+ * Loads classpath namespaces in dependency order, compiling namespaces which do
+ * not depend on each other concurrently.
+ * <ol>
+ * <li>Starting from the namespace being defined, each source file is read and
+ * parsed and the requires in its leading {@code ns} form are collected into a
+ * graph.
+ * <li>Each required namespace is loaded on a {@link ForkJoinPool} once all of
+ * the namespaces it requires have loaded.
+ * <li>The namespace being defined is then loaded by the calling thread.
+ * </ol>
+ * Every namespace is still loaded through
+ * {@link RuntimeRoot#defineOrGet(String)}, so the latches which keep a
+ * namespace from being loaded twice are unchanged. Namespaces required outside
+ * of the {@code ns} form are simply loaded when they are required, and a graph
+ * containing a cycle is loaded serially, as before.
+ * <p>
+ * Disabled with {@code -Dpile.load.parallel=false}.
+ */
+final class NamespaceLoader {
+
+    private static final Logger LOG = LoggerSupplier.getLogger(NamespaceLoader.class);
+
+    private static final boolean PARALLEL = Boolean
+            .parseBoolean(System.getProperty("pile.load.parallel", "true"));
+
+    private static final Symbol NS_SYM = new Symbol("ns");
+    private static final Keyword REQUIRE_KEY = Keyword.of("require");
+
+    /**
+     * Sources which were parsed while building the graph, waiting to be compiled.
+     */
+    private static final Map<String, PersistentList> PARSED = new ConcurrentHashMap<>();
+
+    private NamespaceLoader() {
+    }
+
+    /**
+     * Load any classpath namespaces required by the provided namespace, which
+     * should not already be loading.
+     *
+     * @param name The namespace about to be loaded by the calling thread.
+     */
+    static void loadRequires(String name) {
+        if (!PARALLEL) {
+            return;
+        }
+
+        // name -> requires, only for namespaces not yet loading
+        Map<String, List<String>> graph = new LinkedHashMap<>();
+        Deque<String> toScan = new ArrayDeque<>();
+        toScan.add(name);
+        while (!toScan.isEmpty()) {
+            String next = toScan.poll();
+            if (graph.containsKey(next)) {
+                continue;
+            }
+            if (StandardLibraryLoader.isExtraLibrary(next)) {
+                graph.put(next, List.of());
+                continue;
+            }
+            PersistentList forms = scan(next);
+            if (forms == null) {
+                continue;
+            }
+            List<String> requires = requires(forms);
+            graph.put(next, requires);
+            for (String req : requires) {
+                if (!RuntimeRoot.isLoading(req)) {
+                    toScan.add(req);
+                }
+            }
+        }
+
+        // Only the namespace itself and a single require, no reason to fork.
+        if (graph.size() <= 2 || hasCycle(name, graph, new HashSet<>(), new HashSet<>())) {
+            return;
+        }
+
+        LOG.debug("Loading %d namespaces required by %s", graph.size() - 1, name);
+
+        BindingFrame frame = conveyedFrame();
+        Map<String, CompletableFuture<Void>> loads = new HashMap<>();
+        for (String req : graph.get(name)) {
+            schedule(req, graph, loads, frame);
+        }
+
+        try {
+            CompletableFuture.allOf(loads.values().toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     *
+     * @param name
+     * @return The forms parsed for the namespace while building the graph, or
+     *         null if it was not parsed ahead of time.
+     */
+    static PersistentList takeParsed(String name) {
+        return PARSED.remove(name);
+    }
+
+    /**
+     * Read, checksum and parse the provided classpath source.
+     *
+     * @param name
+     * @param resourceName
+     * @param resource
+     * @return
+     * @throws IOException
+     */
+    static PersistentList parse(String name, String resourceName, URL resource) throws IOException {
+        try (InputStream stream = resource.openStream()) {
+            byte[] source = stream.readAllBytes();
+            AOTHandler.checkSource(name, resourceName, source);
+            return PileParser.parse(new ByteArrayInputStream(source), resourceName);
+        }
+    }
+
+    private static boolean hasCycle(String name, Map<String, List<String>> graph, Set<String> visiting,
+            Set<String> done) {
+        if (done.contains(name)) {
+            return false;
+        }
+        if (!visiting.add(name)) {
+            return true;
+        }
+        for (String req : graph.getOrDefault(name, List.of())) {
+            if (hasCycle(req, graph, visiting, done)) {
+                return true;
+            }
+        }
+        visiting.remove(name);
+        done.add(name);
+        return false;
+    }
+
+    private static CompletableFuture<Void> schedule(String name, Map<String, List<String>> graph,
+            Map<String, CompletableFuture<Void>> loads, BindingFrame frame) {
+        CompletableFuture<Void> existing = loads.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        List<String> requires = graph.get(name);
+        if (requires == null) {
+            // Already loading elsewhere, or not on the classpath.
+            return CompletableFuture.completedFuture(null);
+        }
+
+        List<CompletableFuture<Void>> deps = new ArrayList<>();
+        for (String req : requires) {
+            deps.add(schedule(req, graph, loads, frame));
+        }
+
+        CompletableFuture<Void> load = CompletableFuture.allOf(deps.toArray(CompletableFuture[]::new))
+                .thenRunAsync(() -> ScopedValue.where(BindingFrame.CURRENT, frame.fork())
+                                               .run(() -> RuntimeRoot.defineOrGet(name)),
+                              PoolHolder.POOL);
+        loads.put(name, load);
+        return load;
+    }
+
+    private static PersistentList scan(String name) {
+        String resourceName = RuntimeRoot.resourceName(name);
+        URL resource = RuntimeRoot.class.getResource(resourceName);
+        if (resource == null) {
+            return null;
+        }
+        PersistentList forms = PARSED.get(name);
+        if (forms == null) {
+            try {
+                forms = parse(name, resourceName, resource);
+            } catch (Throwable t) {
+                // Report the error when the namespace is actually loaded.
+                LOG.debug("Could not parse %s ahead of loading: %s", resourceName, t.getMessage());
+                return null;
+            }
+            PARSED.put(name, forms);
+        }
+        return forms;
+    }
+
+    /**
+     * Collect the namespaces named by {@code (:require ...)} in the first form,
+     * if it is an {@code ns} form.
+     *
+     * @param forms
+     * @return
+     */
+    private static List<String> requires(PersistentList forms) {
+        List<String> out = new ArrayList<>();
+        if (forms.count() == 0 || !(forms.head() instanceof PersistentList nsForm)) {
+            return out;
+        }
+        if (!(nsForm.head() instanceof Symbol sym) || !NS_SYM.getName().equals(sym.getName())) {
+            return out;
+        }
+        for (Object extra : nsForm) {
+            if (extra instanceof PersistentList clause && REQUIRE_KEY.equals(clause.head())) {
+                for (Object spec : clause.pop()) {
+                    addRequire(spec, out);
+                }
+            }
+        }
+        return out;
+    }
+
+    private static void addRequire(Object spec, List<String> out) {
+        if (spec instanceof Symbol sym) {
+            out.add(sym.getName());
+        } else if (spec instanceof PersistentVector vec && !vec.isEmpty() && vec.get(0) instanceof Symbol first) {
+            if (vec.size() > 1 && vec.get(1) instanceof PersistentVector) {
+                // [prefix [suffix ...] ...]
+                for (int i = 1; i < vec.size(); ++i) {
+                    if (vec.get(i) instanceof PersistentVector suffix && !suffix.isEmpty()
+                            && suffix.get(0) instanceof Symbol suffixSym) {
+                        out.add(first.getName() + "." + suffixSym.getName());
+                    }
+                }
+            } else {
+                out.add(first.getName());
+            }
+        }
+    }
+
+    /**
+     * Loads run with the dynamic bindings of the thread which required them, each
+     * in its own frame so that the {@code ns} form of one namespace cannot change
+     * {@code *ns*} in another.
+     *
+     * @return
+     */
+    private static BindingFrame conveyedFrame() {
+        BindingFrame frame = BindingFrame.current();
+        if (frame == null) {
+            frame = BindingFrame.EMPTY;
+        }
+        for (var dyn : NativeDynamicBinding.values()) {
+            frame = frame.with(dyn, dyn.getValue());
+        }
+        return frame;
+    }
+
+    /**
+     * 
+     * @return The pool namespaces are loaded on.
+     */
+    static ForkJoinPool pool() {
+        return PoolHolder.POOL;
+    }
+
+    private static final class PoolHolder {
+        private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+
+}
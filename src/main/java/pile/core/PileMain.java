@@ -26,6 +26,7 @@ import java.util.Arrays;
 
 import pile.collection.PersistentHashMap;
 import pile.core.binding.Binding;
+import pile.core.compiler.stats.CompileStats;
 import pile.core.parse.PileParser;
 
 /**
@@ -33,17 +34,30 @@ import pile.core.parse.PileParser;
  * to load first. Expects a function named '-main' in that namespace and it
  * calls that function. The function receives as arguments the rest of the
  * command line arguments.
+ * <p>
+ * If the first argument is {@code --compile-stats} then compile statistics are
+ * collected while loading and a summary is printed to stderr before calling
+ * '-main'.
  *
  */
 public class PileMain {
 
     public static void main(String[] args) throws Throwable {
 
+        boolean stats = args.length > 0 && "--compile-stats".equals(args[0]);
+        if (stats) {
+            CompileStats.setEnabled(true);
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+
         Namespace namespace = RuntimeRoot.defineOrGet(args[0]);
         if (namespace == null) {
             System.err.println("No namespace found: " + args[0]);
             System.exit(1);
         }
+        if (stats) {
+            CompileStats.printSummary(System.err, 10);
+        }
         Binding local = namespace.getLocal("-main");
         Object deref = local.getValue();
         if (deref instanceof PCall method) {
@@ -17,7 +17,6 @@ package pile.core;
 
 import static pile.util.CollectionUtils.*;
 
-import java.io.InputStream;
 import java.lang.invoke.SwitchPoint;
 import java.net.URL;
 import java.util.Collections;
@@ -41,11 +40,11 @@ import pile.compiler.MethodCollector.MethodArity;
 import pile.compiler.form.Nil;
 import pile.compiler.typed.TypedHelpers;
 import pile.core.binding.NativeDynamicBinding;
+import pile.core.compiler.stats.CompileStats;
 import pile.core.exception.UnlinkableMethodException;
 import pile.core.log.Logger;
 import pile.core.log.LoggerSupplier;
 import pile.core.method.HiddenCompiledMethod;
-import pile.core.parse.PileParser;
 
 /**
  * Holds all the {@link Namespace}s that make up the runtime of this language.
@@ -90,7 +89,10 @@ public class RuntimeRoot {
                     try {
                         // Natives first
                         NAMESPACES.putIfAbsent(name, new Namespace(name, ROOTS));
-                        loadClasspathFile(name);
+                        if (!StandardLibraryLoader.loadExtraLibrary(NAMESPACES.get(name))) {
+                            NamespaceLoader.loadRequires(name);
+                            loadClasspathFile(name);
+                        }
                     } finally {
                         ourLatch.countDown();
                         LOG.debug("Completed creating namespace: %s", name);
@@ -117,6 +119,10 @@ public class RuntimeRoot {
     }
     
     public static Namespace get(String name) {
+        if (!LOADING_NS.containsKey(name) && StandardLibraryLoader.isExtraLibrary(name)) {
+            // Extra libraries are loaded when first referred to
+            return defineOrGet(name);
+        }
         var maybeDefining = Helpers.orElse(DEFINING_NS, null);
         if (!name.equals(maybeDefining)) {
             try {
@@ -167,6 +173,19 @@ public class RuntimeRoot {
         defineOrGet(name);
     }
 
+    /**
+     * 
+     * @param name
+     * @return True if the namespace has been defined, or is being defined.
+     */
+    static boolean isLoading(String name) {
+        return LOADING_NS.containsKey(name);
+    }
+
+    static String resourceName(String name) {
+        return "/" + name.replace('.', '/').concat(".pile");
+    }
+
     public static ProtocolRecord getProtocolMetadata(Class<?> protocol) {
         return PROTOCOLS.get(protocol);
     }
@@ -266,13 +285,18 @@ public class RuntimeRoot {
      */
     private static boolean loadClasspathFile(String name) {
         // Load rest, if any
-        String resourceName = "/" + name.replace('.', '/').concat(".pile");
+        String resourceName = resourceName(name);
         URL resource = RuntimeRoot.class.getResource(resourceName);
 
         try (var fname = NativeDynamicBinding.COMPILE_FILENAME.withUpdate(name + ".pile")) {
             if (resource != null) {
-                try (InputStream stream = resource.openStream()) {
-                    PersistentList forms = PileParser.parse(stream, resourceName);
+                try (var load = CompileStats.beginNamespace(name, resourceName)) {
+                    // May have been parsed already while finding its requires
+                    PersistentList forms = NamespaceLoader.takeParsed(name);
+                    if (forms == null) {
+                        forms = NamespaceLoader.parse(name, resourceName, resource);
+                    }
+                    load.parsed(forms.count());
                     Compiler.evaluate(forms);
                     return true;
                 }
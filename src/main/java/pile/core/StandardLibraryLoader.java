@@ -17,8 +17,11 @@ package pile.core;
 
 import static pile.util.CollectionUtils.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodHandles.Lookup;
@@ -40,8 +43,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import pile.collection.PersistentCollection;
@@ -66,7 +71,10 @@ import pile.compiler.math.finder.UnaryMathMethodFinder;
 import pile.core.binding.Binding;
 import pile.core.binding.BindingType;
 import pile.core.binding.ImmutableBinding;
+import pile.core.binding.LazyBinding;
 import pile.core.binding.NativeDynamicBinding;
+import pile.core.compiler.aot.AOTHandler;
+import pile.core.compiler.stats.CompileStats;
 import pile.core.exception.PileCompileException;
 import pile.core.exception.PileInternalException;
 import pile.core.exception.UnlinkableMethodException;
@@ -84,6 +92,7 @@ import pile.nativebase.NativeAsync;
 import pile.nativebase.NativeBinding;
 import pile.nativebase.NativeCore;
 import pile.nativebase.NativeData;
+import pile.nativebase.NativeJson;
 import pile.nativebase.NativeMacro;
 import pile.nativebase.NativeMath;
 import pile.nativebase.NativeString;
@@ -114,14 +123,25 @@ public class StandardLibraryLoader {
     private static final Library CORE_LIBRARY = 
             new Library(CommonConstants.PILE_CORE_NS, List.of(NativeMath.class, NativeCore.class, NativeArrays.class), "/pile/core.pile");
 
+    /**
+     * Create native function bindings and load the extra libraries on first use.
+     * Disabled with {@code -Dpile.stdlib.lazy=false}.
+     */
+    private static final boolean LAZY_STDLIB = Boolean.parseBoolean(System.getProperty("pile.stdlib.lazy", "true"));
+
     // @formatter:off
     private static final List<Library> EXTRA_LIBRARIES = List.of(
             new Library("pile.core.time", List.of(NativeTime.class), "/pile/time.pile"),
             new Library("pile.core.string", List.of(NativeString.class), "/pile/string.pile"),
             new Library("pile.core.async", List.of(NativeAsync.class), "/pile/async.pile"),
             new Library("pile.core.io", List.of(), "/pile/io.pile"),
-            new Library("pile.core.data", List.of(NativeData.class))
+            new Library("pile.core.data", List.of(NativeData.class)),
+            new Library("pile.core.json", List.of(NativeJson.class))
     ); 
+    // @formatter:on
+
+    private static final Map<String, Library> EXTRA_LIBRARY_MAP = EXTRA_LIBRARIES.stream()
+            .collect(Collectors.toUnmodifiableMap(Library::ns, lib -> lib));
     
     // Symbols will exist as their short name
     private static final Set<Class<?>> CLASS_SYMBOLS = Set.of(String.class, Integer.class, Long.class, 
@@ -247,17 +267,37 @@ public class StandardLibraryLoader {
             long parseTime = 0;
             long compileTime = 0;
 
+            // The extra libraries can't be compiled concurrently since this runs while
+            // RuntimeRoot is being initialized, but parsing doesn't touch it so their
+            // sources are parsed while core compiles.
+            Map<String, CompletableFuture<ParsedSource>> extraSources = new HashMap<>();
+            for (var extraLib : LAZY_STDLIB ? List.<Library>of() : EXTRA_LIBRARIES) {
+                for (var resourceName : extraLib.sourceFiles()) {
+                    URL resource = RuntimeRoot.class.getResource(resourceName);
+                    if (resource != null) {
+                        extraSources.put(resourceName, CompletableFuture.supplyAsync(() -> {
+                            try {
+                                return parseSource(resource, resourceName);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }, NamespaceLoader.pool()));
+                    }
+                }
+            }
+
             // Core: native + source
-            var lr = loadLibrary(lookup, namespaces, CORE_LIBRARY);
+            var lr = loadLibrary(lookup, namespaces, CORE_LIBRARY, Map.of());
             nativeTime += lr.nativeTime();
             parseTime += lr.parseTime();
             compileTime += lr.compiledTime();
 
-            for (var extraLib : EXTRA_LIBRARIES) {
+            // Otherwise loaded by RuntimeRoot when first referred to.
+            for (var extraLib : LAZY_STDLIB ? List.<Library>of() : EXTRA_LIBRARIES) {
                 Namespace ns = new Namespace(extraLib.ns(), List.of(rootNs));
                 namespaces.put(ns.getName(), ns);
                 RuntimeRoot.define(ns.getName(), ns);
-                var cl = loadLibrary(lookup, namespaces, extraLib);
+                var cl = loadLibrary(lookup, namespaces, extraLib, extraSources);
 
                 nativeTime += cl.nativeTime();
                 parseTime += cl.parseTime();
@@ -277,8 +317,51 @@ public class StandardLibraryLoader {
         }
     }
 
-    private static LoadResult loadLibrary(Lookup lookup, Map<String, Namespace> nativeNamespaces, Library lib)
-            throws IllegalAccessException, InvocationTargetException {
+    /**
+     * 
+     * @param name
+     * @return True if the namespace is an extra library which has not been loaded
+     *         at startup.
+     */
+    static boolean isExtraLibrary(String name) {
+        return LAZY_STDLIB && EXTRA_LIBRARY_MAP.containsKey(name);
+    }
+
+    /**
+     * 
+     * @return The names of all the extra (non-core) library namespaces.
+     */
+    public static Set<String> getExtraLibraries() {
+        return EXTRA_LIBRARY_MAP.keySet();
+    }
+
+    /**
+     * Load an extra library into its newly created namespace the first time it is
+     * referred to.
+     * 
+     * @param ns
+     * @return True if the namespace was an extra library.
+     */
+    static boolean loadExtraLibrary(Namespace ns) {
+        if (!isExtraLibrary(ns.getName())) {
+            return false;
+        }
+        Library lib = EXTRA_LIBRARY_MAP.get(ns.getName());
+        Map<String, Namespace> namespaces = new HashMap<>();
+        namespaces.put(ns.getName(), ns);
+        try {
+            var lr = loadLibrary(MethodHandles.lookup(), namespaces, lib, Map.of());
+            LOG.debug("Loaded %s in %d ms [native=%dms, parsed=%dms, compiled=%dms]", ns.getName(),
+                    lr.nativeTime() + lr.parseTime() + lr.compiledTime(), lr.nativeTime(), lr.parseTime(),
+                    lr.compiledTime());
+        } catch (ReflectiveOperationException e) {
+            throw new PileInternalException("Could not load library: " + ns.getName(), e);
+        }
+        return true;
+    }
+
+    private static LoadResult loadLibrary(Lookup lookup, Map<String, Namespace> nativeNamespaces, Library lib,
+            Map<String, CompletableFuture<ParsedSource>> parsedSources) throws ReflectiveOperationException {
         Namespace ns = nativeNamespaces.computeIfAbsent(lib.ns(), Namespace::new);
 
         try (var curNs = NativeDynamicBinding.NAMESPACE.withUpdate(ns)) {
@@ -292,10 +375,13 @@ public class StandardLibraryLoader {
             }
             
             for (var e : results.methods().entrySet()) {
-                define(ns, lookup, e.getKey(), e.getValue());
-            }
-            for (var e : results.indirectMethods().entrySet()) {
-                defineIndirect(ns, lookup, e.getKey(), e.getValue());
+                String name = e.getKey();
+                List<Method> methods = e.getValue();
+                defineNative(ns, name, () -> createNative(ns, lookup, name, methods));
+            }
+            for (var e : results.indirectMethods().entrySet()) {
+                Method method = e.getValue();
+                defineNative(ns, e.getKey(), () -> createIndirect(ns, method));
             }
 
             // native bindings
@@ -322,15 +408,18 @@ public class StandardLibraryLoader {
 
                 // Who thought this API was a good idea
                 if (resource != null) {
-                    try (InputStream stream = resource.openStream();
-                            var ig = NativeDynamicBinding.COMPILE_FILENAME.withUpdate(fname)) {
-                        PileParser parser = new PileParser();
-
+                    try (var ig = NativeDynamicBinding.COMPILE_FILENAME.withUpdate(fname);
+                            var load = CompileStats.beginNamespace(lib.ns(), resourceName)) {
                         long startParse = System.currentTimeMillis();
                         LOG.debug("Parsing %s", resourceName);
-                        PersistentList forms = parser.parse(stream, resourceName);
+                        var maybeParsed = parsedSources.get(resourceName);
+                        ParsedSource parsed = maybeParsed == null ? parseSource(resource, resourceName)
+                                : maybeParsed.join();
+                        AOTHandler.checkSource(lib.ns(), resourceName, parsed.source());
+                        PersistentList forms = parsed.forms();
                         long libParseTime = System.currentTimeMillis() - startParse;
                         parseTime += libParseTime;
+                        load.parsed(forms.count());
                         LOG.debug("Parsed %s in %d ms", resourceName, libParseTime);
 
                         long startCompile = System.currentTimeMillis();
@@ -466,7 +555,31 @@ public class StandardLibraryLoader {
         return new LibraryMethods(methodNames, indirectMethods);
     }
 
-    private static void define(Namespace ns, Lookup lookup, String name, List<Method> methods)
+    /**
+     * Define a native function binding. Unless the stdlib is loaded eagerly the
+     * binding is only a {@link LazyBinding stub} until it is first used.
+     * 
+     * @param ns
+     * @param name
+     * @param factory
+     * @throws ReflectiveOperationException
+     */
+    private static void defineNative(Namespace ns, String name, NativeFactory factory)
+            throws ReflectiveOperationException {
+        if (LAZY_STDLIB) {
+            ns.define(name, new LazyBinding(ns.getName(), () -> {
+                try {
+                    return factory.create();
+                } catch (ReflectiveOperationException e) {
+                    throw new PileInternalException("Could not create native: " + ns.getName() + "/" + name, e);
+                }
+            }));
+        } else {
+            ns.define(name, factory.create());
+        }
+    }
+
+    private static Binding createNative(Namespace ns, Lookup lookup, String name, List<Method> methods)
             throws IllegalAccessException {
 
         Map<Integer, List<Method>> mm = methods.stream()
@@ -557,12 +670,10 @@ public class StandardLibraryLoader {
         if (doc != null) {
             meta = meta.assoc(CommonConstants.DOC, doc);
         }
-        Binding meth = new ImmutableBinding(ns.getName(), BindingType.VALUE, nativeMethod, meta, new SwitchPoint());
-
-        ns.define(name, meth);
+        return new ImmutableBinding(ns.getName(), BindingType.VALUE, nativeMethod, meta, new SwitchPoint());
     }
 
-    private static void defineIndirect(Namespace ns, Lookup lookup, String methodName, Method method) throws IllegalAccessException, InvocationTargetException  {
+    private static Binding createIndirect(Namespace ns, Method method) throws IllegalAccessException, InvocationTargetException  {
         LinkableMethod fn = (LinkableMethod) method.invoke(null);
         
         String doc = null;
@@ -581,8 +692,7 @@ public class StandardLibraryLoader {
             meta = meta.assoc(CommonConstants.DOC, doc);
         }
         
-        Binding meth = new ImmutableBinding(ns.getName(), BindingType.VALUE, fn, meta, new SwitchPoint());
-        ns.define(methodName, meth);
+        return new ImmutableBinding(ns.getName(), BindingType.VALUE, fn, meta, new SwitchPoint());
     }
 
     private static PersistentVector<Symbol> createArgList(Method method) {
@@ -638,9 +748,24 @@ public class StandardLibraryLoader {
         }
     }
 
+    private static ParsedSource parseSource(URL resource, String resourceName) throws IOException {
+        try (InputStream stream = resource.openStream()) {
+            byte[] source = stream.readAllBytes();
+            return new ParsedSource(source, PileParser.parse(new ByteArrayInputStream(source), resourceName));
+        }
+    }
+
     private static record LoadResult(Namespace loadedNs, long parseTime, long nativeTime, long compiledTime) {
     }
 
+    private record ParsedSource(byte[] source, PersistentList forms) {
+    }
+
+    @FunctionalInterface
+    private interface NativeFactory {
+        Binding create() throws ReflectiveOperationException;
+    }
+
     /**
      * Native + sources
      * 
@@ -15,7 +15,7 @@
  */
 package pile.core;
 
-public interface Var<T> extends SettableRef<T>, Metadata, PileMethod {
+public interface Var<T> extends SettableRef<T>, Metadata, PileMethod, Watchable {
 
     public Namespace getNamespace();
 
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core;
+
+/**
+ * A reference whose changes may be observed and constrained.
+ * <ul>
+ * <li>Watch functions are called with (key ref old-value new-value) after the
+ * reference changes.
+ * <li>A validator function is called with the proposed new value before the
+ * reference changes. If it returns a falsey value or throws the change is
+ * rejected.
+ * </ul>
+ *
+ * @see Watches
+ */
+public interface Watchable {
+
+    /**
+     * Add (or replace) the watch function under the provided key.
+     * 
+     * @param key   The key used to identify the watch for removal.
+     * @param fn    The watch function.
+     * @param async If true, the watch is called on a virtual thread and only the
+     *              most recent change is delivered if changes arrive faster than
+     *              the watch can process them.
+     */
+    void addWatch(Object key, PCall fn, boolean async);
+
+    /**
+     * Add (or replace) a synchronous watch function under the provided key.
+     * 
+     * @param key The key used to identify the watch for removal.
+     * @param fn  The watch function.
+     */
+    default void addWatch(Object key, PCall fn) {
+        addWatch(key, fn, false);
+    }
+
+    /**
+     * Remove the watch function with the provided key, if present.
+     * 
+     * @param key
+     */
+    void removeWatch(Object key);
+
+    /**
+     * Set the validator function, or null to remove it.
+     * 
+     * @param fn
+     */
+    void setValidator(PCall fn);
+
+    PCall getValidator();
+
+}
@@ -0,0 +1,197 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core;
+
+import static pile.compiler.Helpers.*;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import pile.core.log.Logger;
+import pile.core.log.LoggerSupplier;
+
+/**
+ * The watch functions and validator attached to a {@link Watchable}. The
+ * watches are held in an immutable array which is replaced by CAS when watches
+ * are added/removed so notification is a single volatile read, and free when
+ * there are no watchers.
+ * <br>
+ * Asynchronous watches are delivered on a virtual thread. Changes made while a
+ * delivery is outstanding are coalesced so the watch is called with the oldest
+ * undelivered old value and the latest new value.
+ */
+public class Watches {
+
+    private static final Logger LOG = LoggerSupplier.getLogger(Watches.class);
+
+    private static final Watch[] EMPTY = new Watch[0];
+
+    private final AtomicReference<Watch[]> watches = new AtomicReference<>(EMPTY);
+    private volatile PCall validator;
+
+    public void add(Object key, PCall fn, boolean async) {
+        Objects.requireNonNull(fn, "Watch function may not be null");
+        Watch watch = async ? new AsyncWatch(key, fn) : new Watch(key, fn);
+        for (;;) {
+            Watch[] current = watches.get();
+            Watch[] next;
+            int idx = indexOf(current, key);
+            if (idx >= 0) {
+                next = current.clone();
+            } else {
+                next = Arrays.copyOf(current, current.length + 1);
+                idx = current.length;
+            }
+            next[idx] = watch;
+            if (watches.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    public void remove(Object key) {
+        for (;;) {
+            Watch[] current = watches.get();
+            int idx = indexOf(current, key);
+            if (idx < 0) {
+                return;
+            }
+            Watch[] next = new Watch[current.length - 1];
+            System.arraycopy(current, 0, next, 0, idx);
+            System.arraycopy(current, idx + 1, next, idx, current.length - idx - 1);
+            if (watches.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return watches.get().length == 0;
+    }
+
+    public PCall getValidator() {
+        return validator;
+    }
+
+    public void setValidator(PCall validator) {
+        this.validator = validator;
+    }
+
+    /**
+     * Check the proposed value against the validator, if any.
+     * 
+     * @param newVal
+     * @throws IllegalStateException If the validator rejects the value.
+     */
+    public void validate(Object newVal) {
+        PCall fn = validator;
+        if (fn != null) {
+            boolean valid;
+            try {
+                valid = ifCheck(fn.invoke(newVal));
+            } catch (Throwable t) {
+                throw new IllegalStateException("Invalid reference state", t);
+            }
+            if (!valid) {
+                throw new IllegalStateException("Invalid reference state");
+            }
+        }
+    }
+
+    /**
+     * Call each watch function with the change. Exceptions thrown by watches are
+     * logged and do not prevent other watches from being called.
+     * 
+     * @param ref    The reference which changed
+     * @param oldVal
+     * @param newVal
+     */
+    public void notify(Object ref, Object oldVal, Object newVal) {
+        for (Watch w : watches.get()) {
+            w.deliver(ref, oldVal, newVal);
+        }
+    }
+
+    private static int indexOf(Watch[] current, Object key) {
+        for (int i = 0; i < current.length; ++i) {
+            if (Objects.equals(current[i].key, key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static class Watch {
+        protected final Object key;
+        protected final PCall fn;
+
+        private Watch(Object key, PCall fn) {
+            this.key = key;
+            this.fn = fn;
+        }
+
+        protected void deliver(Object ref, Object oldVal, Object newVal) {
+            call(ref, oldVal, newVal);
+        }
+
+        protected void call(Object ref, Object oldVal, Object newVal) {
+            try {
+                fn.invoke(key, ref, oldVal, newVal);
+            } catch (Throwable t) {
+                LOG.warnEx("Error while calling watch %s", t, key);
+            }
+        }
+    }
+
+    private static class AsyncWatch extends Watch {
+
+        private final AtomicReference<Change> pending = new AtomicReference<>();
+        private final AtomicBoolean running = new AtomicBoolean();
+
+        private AsyncWatch(Object key, PCall fn) {
+            super(key, fn);
+        }
+
+        @Override
+        protected void deliver(Object ref, Object oldVal, Object newVal) {
+            pending.getAndUpdate(p -> p == null ? new Change(ref, oldVal, newVal)
+                    : new Change(ref, p.oldVal(), newVal));
+            if (running.compareAndSet(false, true)) {
+                Thread.startVirtualThread(this::drain);
+            }
+        }
+
+        private void drain() {
+            for (;;) {
+                Change c;
+                while ((c = pending.getAndSet(null)) != null) {
+                    call(c.ref(), c.oldVal(), c.newVal());
+                }
+                running.set(false);
+                // A change may have arrived after the last take but before we stopped running.
+                if (pending.get() == null || !running.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private record Change(Object ref, Object oldVal, Object newVal) {
+    }
+
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.binding;
+
+import java.util.Arrays;
+
+import pile.core.PCall;
+import pile.core.exception.PileExecutionException;
+
+/**
+ * An immutable set of {@link DynamicBinding} values established by a
+ * {@code binding} form. The current frame is carried in a single
+ * {@link ScopedValue} so a lookup is one scoped value read plus a short scan
+ * rather than a {@link ThreadLocal} hash probe per var. Each entry holds a
+ * mutable {@link Box} so that {@code set!} inside the binding is visible to the
+ * rest of the binding body.
+ * <p>
+ * Frames are conveyed to other threads with {@link #convey(Runnable)} and
+ * {@link #convey(PCall)}, which give the new thread its own copy of the
+ * boxes.
+ */
+public final class BindingFrame {
+
+    public static final ScopedValue<BindingFrame> CURRENT = ScopedValue.newInstance();
+
+    private static final DynamicBinding<?>[] NO_KEYS = new DynamicBinding<?>[0];
+    private static final Box[] NO_BOXES = new Box[0];
+
+    public static final BindingFrame EMPTY = new BindingFrame(NO_KEYS, NO_BOXES);
+
+    private final DynamicBinding<?>[] keys;
+    private final Box[] boxes;
+
+    private BindingFrame(DynamicBinding<?>[] keys, Box[] boxes) {
+        this.keys = keys;
+        this.boxes = boxes;
+    }
+
+    /**
+     * 
+     * @return The frame for the current thread, or null if no binding is in
+     *         effect.
+     */
+    public static BindingFrame current() {
+        return CURRENT.orElse(null);
+    }
+
+    Box lookup(DynamicBinding<?> binding) {
+        // Frames are small, scan newest first.
+        for (int i = keys.length - 1; i >= 0; --i) {
+            if (keys[i] == binding) {
+                return boxes[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Create a new frame with the provided binding set to the value. Any existing
+     * entry for the binding is shadowed.
+     * 
+     * @param binding
+     * @param val
+     * @return
+     */
+    public BindingFrame with(DynamicBinding<?> binding, Object val) {
+        for (int i = 0; i < keys.length; ++i) {
+            if (keys[i] == binding) {
+                Box[] newBoxes = boxes.clone();
+                newBoxes[i] = new Box(val);
+                return new BindingFrame(keys, newBoxes);
+            }
+        }
+        DynamicBinding<?>[] newKeys = Arrays.copyOf(keys, keys.length + 1);
+        Box[] newBoxes = Arrays.copyOf(boxes, boxes.length + 1);
+        newKeys[keys.length] = binding;
+        newBoxes[boxes.length] = new Box(val);
+        return new BindingFrame(newKeys, newBoxes);
+    }
+
+    /**
+     * Copy this frame with fresh boxes holding the current values, so that a
+     * {@code set!} in another thread does not leak back into this one.
+     * 
+     * @return
+     */
+    public BindingFrame fork() {
+        if (keys.length == 0) {
+            return this;
+        }
+        Box[] newBoxes = new Box[boxes.length];
+        for (int i = 0; i < boxes.length; ++i) {
+            newBoxes[i] = new Box(boxes[i].val);
+        }
+        return new BindingFrame(keys, newBoxes);
+    }
+
+    /**
+     * Wrap the provided runnable so that it runs with a copy of the caller's
+     * current frame, if any.
+     * 
+     * @param r
+     * @return
+     */
+    public static Runnable convey(Runnable r) {
+        BindingFrame frame = current();
+        if (frame == null) {
+            return r;
+        }
+        return () -> ScopedValue.where(CURRENT, frame.fork()).run(r);
+    }
+
+    /**
+     * Wrap the provided function so that it runs with a copy of the caller's
+     * current frame, if any.
+     * 
+     * @param fn
+     * @return
+     */
+    public static PCall convey(PCall fn) {
+        BindingFrame frame = current();
+        if (frame == null) {
+            return fn;
+        }
+        return args -> ScopedValue.where(CURRENT, frame.fork()).call(() -> {
+            try {
+                return fn.invoke(args);
+            } catch (Exception e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new PileExecutionException(t);
+            }
+        });
+    }
+
+    static final class Box {
+        volatile Object val;
+
+        Box(Object val) {
+            this.val = val;
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.binding;
+
+import java.lang.invoke.SwitchPoint;
+import java.util.concurrent.TimeUnit;
+
+import pile.collection.PersistentMap;
+import pile.core.PCall;
+import pile.core.SettableRef;
+import pile.core.binding.BindingFrame.Box;
+
+/**
+ * The default binding for {@link BindingType#DYNAMIC} vars. Values established
+ * by {@code binding} live in the current {@link BindingFrame}, which is carried
+ * in a {@link ScopedValue} and conveyed to async tasks. Reads of a var which is
+ * not bound in the current frame return the root value without touching a
+ * {@link ThreadLocal}.
+ * <p>
+ * Setting the var outside of any {@code binding} keeps the historical
+ * thread-local semantics: the value is only visible to the calling thread. The
+ * backing {@link ThreadLocal} is only created the first time this happens.
+ *
+ * @param <T>
+ */
+public class DynamicBinding<T> implements Binding<T>, SettableRef<T> {
+
+    private final String ns;
+    private final String name;
+    private final T initial;
+    private final PersistentMap meta;
+    private final SwitchPoint sp;
+
+    private volatile ThreadLocal<T> threadRoot;
+
+    public DynamicBinding(String ns, String name, T initial, PersistentMap meta, SwitchPoint sp) {
+        this.ns = ns;
+        this.name = name;
+        this.initial = initial;
+        this.meta = meta.assoc(Binding.BINDING_TYPE_KEY, BindingType.DYNAMIC);
+        this.sp = sp;
+    }
+
+    @Override
+    public PersistentMap meta() {
+        return meta;
+    }
+
+    @Override
+    public DynamicBinding<T> withMeta(PersistentMap newMeta) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SwitchPoint getSwitchPoint() {
+        return sp;
+    }
+
+    @Override
+    public T getValue() {
+        BindingFrame frame = BindingFrame.CURRENT.orElse(null);
+        if (frame != null) {
+            Box box = frame.lookup(this);
+            if (box != null) {
+                return (T) box.val;
+            }
+        }
+        ThreadLocal<T> local = threadRoot;
+        return local == null ? initial : local.get();
+    }
+
+    @Override
+    public T deref() {
+        return getValue();
+    }
+
+    @Override
+    public T deref(long time, TimeUnit unit) {
+        return deref();
+    }
+
+    @Override
+    public void set(T newRef) {
+        BindingFrame frame = BindingFrame.CURRENT.orElse(null);
+        if (frame != null) {
+            Box box = frame.lookup(this);
+            if (box != null) {
+                box.val = newRef;
+                return;
+            }
+        }
+        threadRoot().set(newRef);
+    }
+
+    @Override
+    public void update(PCall fn) throws Throwable {
+        // no contention
+        T t = getValue();
+        T out = (T) fn.invoke(t);
+        set(out);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String namespace() {
+        return ns;
+    }
+
+    private ThreadLocal<T> threadRoot() {
+        ThreadLocal<T> local = threadRoot;
+        if (local == null) {
+            synchronized (this) {
+                local = threadRoot;
+                if (local == null) {
+                    local = ThreadLocal.withInitial(() -> initial);
+                    threadRoot = local;
+                }
+            }
+        }
+        return local;
+    }
+
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.binding;
+
+import java.lang.invoke.SwitchPoint;
+import java.util.function.Supplier;
+
+import pile.collection.PersistentMap;
+import pile.core.Metadata;
+
+/**
+ * A stub binding which only creates the real binding the first time it is
+ * used. The standard library defines one of these for each native function so
+ * that unreflecting, building the native method and its metadata is only done
+ * for functions which are actually referred to.
+ * <p>
+ * Only the {@link #namespace() namespace} is known without creating the real
+ * binding.
+ */
+@SuppressWarnings("rawtypes")
+public class LazyBinding implements Binding {
+
+    private final String ns;
+    private Supplier<Binding> factory;
+    private volatile Binding binding;
+
+    public LazyBinding(String ns, Supplier<Binding> factory) {
+        this.ns = ns;
+        this.factory = factory;
+    }
+
+    /**
+     *
+     * @return The real binding, creating it if necessary.
+     */
+    public Binding force() {
+        Binding local = binding;
+        if (local == null) {
+            synchronized (this) {
+                local = binding;
+                if (local == null) {
+                    local = factory.get();
+                    binding = local;
+                    factory = null;
+                }
+            }
+        }
+        return local;
+    }
+
+    @Override
+    public PersistentMap meta() {
+        return force().meta();
+    }
+
+    @Override
+    public Metadata withMeta(PersistentMap newMeta) {
+        return force().withMeta(newMeta);
+    }
+
+    @Override
+    public Object getValue() {
+        return force().getValue();
+    }
+
+    @Override
+    public SwitchPoint getSwitchPoint() {
+        return force().getSwitchPoint();
+    }
+
+    @Override
+    public boolean isMacro() {
+        return force().isMacro();
+    }
+
+    @Override
+    public String namespace() {
+        return ns;
+    }
+
+}
@@ -30,11 +30,12 @@ import pile.core.indy.PileMethodLinker;
 import pile.core.log.LogLevel;
 
 /**
- * A {@link ThreadLocal}, essentially.
+ * Dynamic bindings defined natively by the runtime.
  *
+ * @see DynamicBinding
  * @param <T>
  */
-public class NativeDynamicBinding<T> extends ThreadLocalBinding<T> {
+public class NativeDynamicBinding<T> extends DynamicBinding<T> {
 
     private static final String DEFAULT_LOG_LEVEL_STR = "INFO";
 
@@ -52,13 +53,20 @@ public class NativeDynamicBinding<T> extends ThreadLocalBinding<T> {
     // Try to compile errors into runtime exceptions (usually only on during development)
     public static NativeDynamicBinding<Boolean> DEFER_ERRORS = new NativeDynamicBinding<>("*defer-errors*", false);
     public static NativeDynamicBinding<String> COMPILE_FILENAME = new NativeDynamicBinding<>("*filename*"); 
+    // Define eval'd function classes as unloadable hidden classes
+    public static NativeDynamicBinding<Boolean> HIDDEN_CLASSES = new NativeDynamicBinding<>("*hidden-classes*",
+            PileProperties.getBool(Keyword.of(null, "hidden-classes"), false));
+    // Max items of each collection to print, nil for all
+    public static NativeDynamicBinding<Number> PRINT_LENGTH = new NativeDynamicBinding<>("*print-length*");
+    // Max collection depth to print, nil for all
+    public static NativeDynamicBinding<Number> PRINT_LEVEL = new NativeDynamicBinding<>("*print-level*");
     public static NativeDynamicBinding<LogLevel> ROOT_LOG_LEVEL = new NativeDynamicBinding<>("*log-level*",
             LogLevel.valueOf((String)PileProperties.PROPERTIES.get(Keyword.of(null, "log-level"), DEFAULT_LOG_LEVEL_STR)));
     //@formatter:on
 
     public static NativeDynamicBinding[] values() {
         return new NativeDynamicBinding[] { NAMESPACE, STANDARD_IN, STANDARD_OUT, STANDARD_ERR, COMPLILER_FLAGS,
-                BOXED_NUMBERS, DEFER_ERRORS, COMPILE_FILENAME, ROOT_LOG_LEVEL };
+                BOXED_NUMBERS, DEFER_ERRORS, COMPILE_FILENAME, HIDDEN_CLASSES, PRINT_LENGTH, PRINT_LEVEL, ROOT_LOG_LEVEL };
     }
 
     public NativeDynamicBinding(String name) {
@@ -24,17 +24,19 @@ import static pile.compiler.Helpers.*;
 import static pile.nativebase.NativeCore.*;
 
 import java.io.IOException;
-import java.io.PrintStream;
 import java.lang.reflect.Field;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
 
-import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
@@ -42,40 +44,62 @@ import org.objectweb.asm.commons.GeneratorAdapter;
 import org.objectweb.asm.commons.Method;
 
 import pile.compiler.AbstractClassCompiler;
+import pile.compiler.PileClassWriter;
 import pile.core.CoreConstants;
-import pile.core.binding.NativeDynamicBinding;
-import pile.core.runtime.generated_classes.LookupHolder;
+import pile.core.log.Logger;
+import pile.core.log.LoggerSupplier;
 
 /**
  * This class manages the AOT compilation. <br>
  * <br>
  * 
- * We're creating a synthetic class containing class names of compile functions
- * in our namespaces. The class will roughly look like:
+ * While writing, every class the compiler generates is written to the AOT
+ * directory. Additionally, for each namespace loaded we create a synthetic init
+ * class containing the class names of the compiled functions defined in that
+ * namespace and a checksum of each source file it was compiled from. The class
+ * will roughly look like:
  * 
  * <pre>
- * package pile.core.runtime;
+ * package pile.core.runtime.generated_classes;
  * 
- * class AOT {
- *     private static final Map<MethodKey, String> METHODS = new HashMap<>();
+ * class $AOT$pile$core {
+ *     public static final Map<String, String> METHODS = new HashMap<>();
+ *     public static final Map<String, String> SOURCES = new HashMap<>();
  *     static {
  *         // Each call to (def ...) some function would result in a
  *         // compilation in the open cinit here to something like
- *         METHODS.put(new MethodKey("pile.core", "map"), "pile.core.runtime.Map$1");
+ *         METHODS.put("map", "pile.core.runtime.generated_classes.aot$map$1");
+ *         SOURCES.put("/pile/core.pile", "1f2e3d4c");
  *     }
  * }
  * </pre>
  * 
- * We can then load the CDS archive of this class. When the compiler is
- * evaluating (def map ...) in "pile.core" it can just shortcut load
- * "pile.core.runtime.Map$1" which should also be in the archive too.
+ * An index class ({@value #AOT_GEN_CLASS_NAME}) lists all the namespaces which
+ * were written. <br>
+ * <br>
+ * While reading, the init class of a namespace is loaded the first time the
+ * namespace is. When the compiler is evaluating (def map ...) in "pile.core" it
+ * can then just shortcut load the recorded class instead of compiling the
+ * function. If a source file no longer matches its recorded checksum the
+ * namespace is compiled from source instead. <br>
+ * <br>
+ * This only removes the compilation of functions and macros. Every top-level
+ * form is still read and evaluated, since the compiler has no bytecode form of
+ * def, ns, import, defprotocol, deftype, extend or defgeneric to replay them
+ * from.
  *
  */
 public class AOTHandler {
 
+    private static final Logger LOG = LoggerSupplier.getLogger(AOTHandler.class);
+
     private static final String AOT_GEN_CLASS_NAME = "$AOT";
     
-    private static final String MAP_FIELD_NAME = "METHODS";
+    private static final String NAMESPACES_FIELD_NAME = "NAMESPACES";
+    private static final String METHODS_FIELD_NAME = "METHODS";
+    private static final String SOURCES_FIELD_NAME = "SOURCES";
+    private static final String STATIC_INIT_FN_NAME = "<clinit>";
+
     private static final AOTType AOT_TYPE;
     private static final String AOT_DIR;
     
@@ -88,54 +112,38 @@ public class AOTHandler {
     }
 
     static final String CLASSNAME = CoreConstants.GEN_PACKAGE + "/" + AOT_GEN_CLASS_NAME;
-    private static final String CLASS_DESCRIPTOR = "L" + CLASSNAME + ";";
-    private static final String INTERNAL_NAME = getType(CLASS_DESCRIPTOR).getInternalName();
+
+    private static final Map<String, NamespaceTable> WRITE_TABLES = new ConcurrentHashMap<>();
+    private static final Map<String, NamespaceTable> READ_TABLES = new ConcurrentHashMap<>();
+
+    // Writing
+
+    public static void writeAotFunction(String ns, String fname, Class<?> clz) {
+        WRITE_TABLES.computeIfAbsent(ns, k -> new NamespaceTable()).putMethod(fname, clz.getName());
+    }
     
-    enum WrittenState { ONCE, DISABLED; }
-    private static final Map<MethodKey, WrittenState> WRITTEN = new ConcurrentHashMap<>();
-
-    public static void writeAotFunction(String ns, String fname, Class<?> clz) throws Exception {
-        MethodKey key = new MethodKey(ns, fname);
-        WrittenState state = WRITTEN.get(key);
-        if (state == WrittenState.DISABLED) {
-            return;
-        }
-        var m = WriteHolder.METHOD;
-        
-        m.getStatic(getType(CLASS_DESCRIPTOR), MAP_FIELD_NAME, getType(Map.class));
-        // (map)
-        
-        Type mtype = getType(MethodKey.class);
-        // new
-        m.newInstance(mtype);
-        // dup
-        m.dup();
-        // args
-        m.visitLdcInsn(ns);
-        m.visitLdcInsn(fname);
-        m.invokeConstructor(getType(MethodKey.class),
-                Method.getMethod(MethodKey.class.getConstructor(String.class, String.class)));
-        // invokespecial
-        // (map, methodKey)
-        
-        if (state == null) { 
-            WRITTEN.put(key, WrittenState.ONCE);
-            
-            m.visitLdcInsn(clz.getName());
-            // (map, methodKey, className)
-            m.invokeInterface(getType(Map.class), Method.getMethod(Map.class.getMethod("put", Object.class, Object.class)));
-            m.pop();
-        } else if (state == WrittenState.ONCE) {
-            WRITTEN.put(key, WrittenState.DISABLED);
-            
-            m.invokeInterface(getType(Map.class), Method.getMethod(Map.class.getMethod("remove", Object.class)));
-            m.pop();
-        } else {
-            throw new UnsupportedOperationException("Unexpected AOT state: " + state);
+    /**
+     * Record (when writing) or verify (when reading) the checksum of a source file
+     * loaded into a namespace.
+     * 
+     * @param ns           The namespace the source is loaded into.
+     * @param resourceName The name of the source file.
+     * @param source       The contents of the source file.
+     */
+    public static void checkSource(String ns, String resourceName, byte[] source) {
+        switch (AOT_TYPE) {
+            case WRITE -> WRITE_TABLES.computeIfAbsent(ns, k -> new NamespaceTable()).putSource(resourceName,
+                    checksum(source));
+            case READ -> {
+                NamespaceTable table = readTable(ns);
+                String expected = table.sources.get(resourceName);
+                if (expected != null && !expected.equals(checksum(source))) {
+                    LOG.warn("AOT classes for %s are out of date with %s, compiling from source", ns, resourceName);
+                    table.stale = true;
+                }
+            }
+            case NONE -> {}
         }
-            
-
-        
     }
     
     public static void writeAOTClass(String packageName, String clazz, byte[] classArray) {        
@@ -155,22 +163,30 @@ public class AOTHandler {
         
     }
 
+    /**
+     * Write the init class for every namespace loaded so far, and the index class
+     * listing them.
+     * 
+     * @throws Exception
+     */
     public static void closeAOT() throws Exception {
-        var ga = WriteHolder.METHOD;
-        ga.visitInsn(Opcodes.RETURN);
-        ga.visitMaxs(0, 0);
-        ga.visitEnd();
+        for (var entry : WRITE_TABLES.entrySet()) {
+            String ns = entry.getKey();
+            byte[] classArray = writeInitClass(ns, entry.getValue());
+            AbstractClassCompiler.printDebug(classArray);
+            writeAOTClass(CoreConstants.GEN_PACKAGE_DOT, initClassName(ns), classArray);
+            LOG.info("Wrote AOT init class for %s (%d functions)", ns, entry.getValue().methods.size());
+        }
 
-        var writer = WriteHolder.WRITER;
+        ClassWriter writer = new PileClassWriter();
+        writer.visit(Opcodes.V15, ACC_PUBLIC, CLASSNAME, null, OBJECT_TYPE.getInternalName(), null);
+        writer.visitField(ACC_PUBLIC | ACC_STATIC | ACC_FINAL, NAMESPACES_FIELD_NAME, STRING_TYPE.getDescriptor(),
+                null, String.join(",", WRITE_TABLES.keySet())).visitEnd();
         writer.visitEnd();
 
         byte[] classArray = writer.toByteArray();
-        
         AbstractClassCompiler.printDebug(classArray);
-        
         writeAOTClass(CoreConstants.GEN_PACKAGE_DOT, AOT_GEN_CLASS_NAME, classArray);
-        
-        LookupHolder.PRIVATE_LOOKUP.defineClass(classArray);
     }
 
     public static AOTType getAotType() {
@@ -184,7 +200,8 @@ public class AOTHandler {
     // Reading
 
     public static Class<?> getAotFunctionClass(String ns, String name) throws ClassNotFoundException {
-        String maybeClassStr = ReadHolder.READ_CLASSES.get(new MethodKey(ns, name));
+        NamespaceTable table = readTable(ns);
+        String maybeClassStr = table.stale ? null : table.methods.get(name);
         if (maybeClassStr == null) {
             return null; 
         } else {
@@ -192,64 +209,148 @@ public class AOTHandler {
         }        
     }
 
-    @SuppressWarnings("unused")
-    private static final class WriteHolder {
-        private static final String STATIC_INIT_FN_NAME = "<clinit>";
-        private static ClassWriter WRITER;
-        private static GeneratorAdapter METHOD;
-
-        static {
-            WRITER = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
-            
-
-            ClassVisitor visitor = WRITER;
-            // private static Map METHODS;
-            visitor.visitField(ACC_PUBLIC | ACC_STATIC, MAP_FIELD_NAME, getType(Map.class).getDescriptor(), null, null).visitEnd();
-            
-
-
-            visitor.visit(Opcodes.V15, ACC_PUBLIC, INTERNAL_NAME, null, OBJECT_TYPE.getInternalName(), null);
-            var methodVisitor = visitor.visitMethod(ACC_PUBLIC | ACC_STATIC, STATIC_INIT_FN_NAME,
-                    methodType(void.class).descriptorString(), null, null);
-            GeneratorAdapter gen = new GeneratorAdapter(methodVisitor, ACC_PUBLIC | ACC_STATIC, STATIC_INIT_FN_NAME,
-                    getMethodType(VOID_TYPE).getDescriptor());
-                    
-            // static { METHODS = new HashMap(); }
-            try {
-                gen.visitTypeInsn(Opcodes.NEW, getType(ConcurrentHashMap.class).getInternalName());
-                gen.visitInsn(Opcodes.DUP);
-                gen.invokeConstructor(getType(ConcurrentHashMap.class), Method.getMethod(ConcurrentHashMap.class.getConstructor()));
-            } catch (NoSuchMethodException | SecurityException e) {
-                throw new IllegalArgumentException("Shouldn't happen", e);
+    /**
+     * Load the init classes of every written namespace and all of the function
+     * classes they refer to.
+     * 
+     * @return The number of function classes loaded.
+     * @throws ClassNotFoundException If there is no AOT index class.
+     */
+    public static int loadAll() throws ClassNotFoundException {
+        Class<?> index = Class.forName(CoreConstants.GEN_PACKAGE_DOT + "." + AOT_GEN_CLASS_NAME);
+        String namespaces;
+        try {
+            namespaces = (String) index.getField(NAMESPACES_FIELD_NAME).get(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Malformed AOT index class", e);
+        }
+        int count = 0;
+        for (String ns : namespaces.split(",")) {
+            if (ns.isEmpty()) {
+                continue;
+            }
+            for (String className : readTable(ns).methods.values()) {
+                Class.forName(className);
+                ++count;
             }
-            gen.putStatic(getType(CLASS_DESCRIPTOR), MAP_FIELD_NAME, getType(Map.class));
-                
+        }
+        return count;
+    }
+
+    private static NamespaceTable readTable(String ns) {
+        return READ_TABLES.computeIfAbsent(ns, AOTHandler::loadTable);
+    }
 
-            METHOD = gen;
+    @SuppressWarnings("unchecked")
+    private static NamespaceTable loadTable(String ns) {
+        try {
+            Class<?> clazz = Class.forName(CoreConstants.GEN_PACKAGE_DOT + "." + initClassName(ns));
+            Field methods = clazz.getField(METHODS_FIELD_NAME);
+            Field sources = clazz.getField(SOURCES_FIELD_NAME);
+            LOG.debug("Loaded AOT init class for %s", ns);
+            return new NamespaceTable((Map<String, String>) methods.get(null), (Map<String, String>) sources.get(null));
+        } catch (ClassNotFoundException e) {
+            LOG.trace("No AOT init class for %s", ns);
+        } catch (ReflectiveOperationException | IllegalArgumentException e) {
+            LOG.warnEx("Could not read AOT init class for %s", e, ns);
         }
+        return new NamespaceTable(Collections.emptyMap(), Collections.emptyMap());
     }
 
-    public static final record MethodKey(String ns, String className) {
+    private static String initClassName(String ns) {
+        return AOT_GEN_CLASS_NAME + "$" + ns.replace('.', '$');
     }
 
-    // Reading
+    private static String checksum(byte[] source) {
+        CRC32C crc = new CRC32C();
+        crc.update(source);
+        return Long.toHexString(crc.getValue());
+    }
+
+    private static byte[] writeInitClass(String ns, NamespaceTable table) throws NoSuchMethodException {
+        String internalName = CoreConstants.GEN_PACKAGE + "/" + initClassName(ns);
+        Type classType = getObjectType(internalName);
+        Type mapType = getType(Map.class);
+
+        ClassWriter writer = new PileClassWriter();
+        writer.visit(Opcodes.V15, ACC_PUBLIC, internalName, null, OBJECT_TYPE.getInternalName(), null);
+        writer.visitField(ACC_PUBLIC | ACC_STATIC | ACC_FINAL, METHODS_FIELD_NAME, mapType.getDescriptor(), null, null)
+                .visitEnd();
+        writer.visitField(ACC_PUBLIC | ACC_STATIC | ACC_FINAL, SOURCES_FIELD_NAME, mapType.getDescriptor(), null, null)
+                .visitEnd();
+
+        var methodVisitor = writer.visitMethod(ACC_PUBLIC | ACC_STATIC, STATIC_INIT_FN_NAME,
+                methodType(void.class).descriptorString(), null, null);
+        GeneratorAdapter gen = new GeneratorAdapter(methodVisitor, ACC_PUBLIC | ACC_STATIC, STATIC_INIT_FN_NAME,
+                getMethodType(VOID_TYPE).getDescriptor());
+        gen.visitCode();
+
+        Method put = Method.getMethod(Map.class.getMethod("put", Object.class, Object.class));
+        synchronized (table) {
+            writeMap(gen, classType, METHODS_FIELD_NAME, table.methods, put);
+            writeMap(gen, classType, SOURCES_FIELD_NAME, table.sources, put);
+        }
+
+        gen.visitInsn(Opcodes.RETURN);
+        gen.visitMaxs(0, 0);
+        gen.visitEnd();
+        writer.visitEnd();
+
+        return writer.toByteArray();
+    }
 
-    private static final class ReadHolder {
-        private static final Map<MethodKey, String> READ_CLASSES;
-        static {
-            Map<MethodKey, String> local = new HashMap<>();
-            try {
-                Class<?> clazz = Class.forName(CoreConstants.GEN_PACKAGE_DOT + "." + AOT_GEN_CLASS_NAME);
-//                System.out.println("fields:" + Arrays.toString(clazz.getFields()));
-                Field field = clazz.getField(MAP_FIELD_NAME);
-                local.putAll((Map<MethodKey, String>) field.get(null));
-            } catch (ClassNotFoundException | IllegalArgumentException | IllegalAccessException | NoSuchFieldException
-                    | SecurityException e) {
-//                e.printStackTrace(System.err);
-//                System.err.print("AOT didn't load or doesn't exist");
+    private static void writeMap(GeneratorAdapter gen, Type classType, String fieldName, Map<String, String> values,
+            Method put) throws NoSuchMethodException {
+        Type mapType = getType(Map.class);
+        Type hashMapType = getType(HashMap.class);
+
+        // static { FIELD = new HashMap(); }
+        gen.newInstance(hashMapType);
+        gen.dup();
+        gen.invokeConstructor(hashMapType, Method.getMethod(HashMap.class.getConstructor()));
+        gen.putStatic(classType, fieldName, mapType);
+
+        for (var entry : values.entrySet()) {
+            gen.getStatic(classType, fieldName, mapType);
+            gen.push(entry.getKey());
+            gen.push(entry.getValue());
+            gen.invokeInterface(mapType, put);
+            gen.pop();
+        }
+    }
+
+    /**
+     * The AOT state of a single namespace.
+     */
+    private static final class NamespaceTable {
+        private final Map<String, String> methods;
+        private final Map<String, String> sources;
+        private final Set<String> redefined = new HashSet<>();
+        private volatile boolean stale = false;
+
+        NamespaceTable() {
+            this(new LinkedHashMap<>(), new LinkedHashMap<>());
+        }
+
+        NamespaceTable(Map<String, String> methods, Map<String, String> sources) {
+            this.methods = methods;
+            this.sources = sources;
+        }
+
+        synchronized void putMethod(String name, String className) {
+            if (redefined.contains(name)) {
+                return;
             }
-//            System.out.println("AOT loaded map:" + local);
-            READ_CLASSES = Collections.synchronizedMap(local);
+            // Redefined functions can't be replayed from a single class
+            if (methods.remove(name) != null) {
+                redefined.add(name);
+            } else {
+                methods.put(name, className);
+            }
+        }
+
+        synchronized void putSource(String resourceName, String checksum) {
+            sources.put(resourceName, checksum);
         }
     }
 }
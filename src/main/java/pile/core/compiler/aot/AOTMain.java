@@ -15,21 +15,40 @@
  */
 package pile.core.compiler.aot;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import pile.core.RuntimeRoot;
+import pile.core.StandardLibraryLoader;
+import pile.core.log.Logger;
+import pile.core.log.LoggerSupplier;
 
+/**
+ * Entry point for the AOT phases. While writing, the namespaces to compile are
+ * taken from the arguments and the comma separated {@code pile.aot.namespaces}
+ * property. The standard library is always compiled.
+ */
 public class AOTMain {
 
+    private static final Logger LOG = LoggerSupplier.getLogger(AOTMain.class);
+
     public static void main(String[] args) throws Exception {
         switch (AOTHandler.getAotType()) {
             case WRITE:
                 RuntimeRoot.get("pile.core");
+                for (String lib : StandardLibraryLoader.getExtraLibraries()) {
+                    RuntimeRoot.defineOrGet(lib);
+                }
+                for (String ns : namespaces(args)) {
+                    RuntimeRoot.defineOrGet(ns);
+                }
                 AOTHandler.closeAOT();
                 break;
             case READ:
-                // Loads AOT Class which should load all the related classes and then archive
+                // Loads AOT classes which should load all the related classes and then archive
                 // them.
-                var cname = AOTHandler.CLASSNAME.replace('/', '.');
-                Class.forName(cname);
+                int count = AOTHandler.loadAll();
+                LOG.debug("Loaded %d AOT function classes", count);
                 break;
             default:
                 System.err.println("Unknown AOT phase");
@@ -38,4 +57,14 @@ public class AOTMain {
        
     }
 
+    private static List<String> namespaces(String[] args) {
+        List<String> out = new ArrayList<>(List.of(args));
+        for (String ns : System.getProperty("pile.aot.namespaces", "").split(",")) {
+            if (!ns.isBlank()) {
+                out.add(ns.strip());
+            }
+        }
+        return out;
+    }
+
 }
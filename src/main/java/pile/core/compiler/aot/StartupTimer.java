@@ -0,0 +1,82 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.compiler.aot;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures the wall clock startup time of running a namespace with
+ * {@code pile.core.PileMain}, with and without an AOT cache. Each run is a new
+ * JVM using the same classpath as this one, which must match the classpath the
+ * cache was trained with.
+ * <p>
+ * Arguments: {@code <aot cache> [namespace] [runs]}
+ */
+public class StartupTimer {
+
+    public static void main(String[] args) throws Exception {
+        Path cache = Path.of(args[0]);
+        String ns = args.length > 1 && !args[1].isBlank() ? args[1] : "pile.training";
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        report("without cache", measure(ns, runs, null));
+        if (Files.exists(cache)) {
+            report("with cache", measure(ns, runs, cache));
+        } else {
+            System.out.println("No AOT cache at " + cache + ", run a training run first.");
+        }
+    }
+
+    private static long[] measure(String ns, int runs, Path cache) throws IOException, InterruptedException {
+        String java = ProcessHandle.current().info().command().orElse("java");
+
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        if (cache != null) {
+            command.add("-XX:AOTCache=" + cache);
+        }
+        command.add("-Dpile.aot=read");
+        command.add("--enable-preview");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("pile.core.PileMain");
+        command.add(ns);
+
+        long[] times = new long[runs];
+        for (int i = 0; i < runs; ++i) {
+            long start = System.nanoTime();
+            Process proc = new ProcessBuilder(command).inheritIO().start();
+            int exit = proc.waitFor();
+            times[i] = (System.nanoTime() - start) / 1_000_000;
+            if (exit != 0) {
+                throw new IllegalStateException("Startup run failed with exit code " + exit + ": " + command);
+            }
+        }
+        Arrays.sort(times);
+        return times;
+    }
+
+    private static void report(String name, long[] times) {
+        System.out.printf("Startup %s: median=%dms min=%dms max=%dms (%d runs)%n", name, times[times.length / 2],
+                times[0], times[times.length - 1], times.length);
+    }
+
+}
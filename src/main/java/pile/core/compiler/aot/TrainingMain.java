@@ -0,0 +1,135 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.compiler.aot;
+
+import static pile.nativebase.NativeCore.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import pile.collection.PersistentList;
+import pile.compiler.Compiler;
+import pile.core.Namespace;
+import pile.core.PCall;
+import pile.core.RuntimeRoot;
+import pile.core.StandardLibraryLoader;
+import pile.core.binding.Binding;
+import pile.core.binding.NativeDynamicBinding;
+import pile.core.log.Logger;
+import pile.core.log.LoggerSupplier;
+import pile.core.parse.FormReader;
+import pile.core.parse.PileParser;
+
+/**
+ * Entry point for an AOT cache training run. When run with
+ * {@code -XX:AOTCacheOutput=<file>} and {@code -Dpile.aot=read} the classes
+ * loaded and call sites linked by the workload, including the AOT compiled
+ * function classes, are recorded in the cache. The {@code pile} launcher uses
+ * the cache when it exists.
+ * <p>
+ * The workload is selected by the arguments, and defaults to the built-in
+ * {@code pile.training} namespace:
+ * <ul>
+ * <li>{@code --main ns [args...]}: Call {@code ns/-main} with the remaining
+ * arguments.
+ * <li>{@code --replay file}: Evaluate each form of a REPL session recorded with
+ * {@code -Dpile.repl.record=file}.
+ * <li>{@code --load ns}: Load a namespace.
+ * </ul>
+ * The whole standard library is always loaded, since it is otherwise only
+ * loaded when used.
+ */
+public class TrainingMain {
+
+    private static final Logger LOG = LoggerSupplier.getLogger(TrainingMain.class);
+
+    private static final String DEFAULT_WORKLOAD = "pile.training";
+
+    public static void main(String[] args) throws Throwable {
+        long start = System.currentTimeMillis();
+
+        // From maven all the arguments arrive as a single, possibly empty, argument.
+        args = Arrays.stream(args)
+                     .flatMap(arg -> Arrays.stream(arg.strip().split("\\s+")))
+                     .filter(arg -> !arg.isEmpty())
+                     .toArray(String[]::new);
+
+        for (String lib : StandardLibraryLoader.getExtraLibraries()) {
+            RuntimeRoot.defineOrGet(lib);
+        }
+
+        boolean ran = false;
+        for (int i = 0; i < args.length; ++i) {
+            switch (args[i]) {
+                case "--main" -> {
+                    String ns = args[++i];
+                    runMain(ns, Arrays.copyOfRange(args, i + 1, args.length));
+                    i = args.length;
+                    ran = true;
+                }
+                case "--replay" -> {
+                    replay(Path.of(args[++i]));
+                    ran = true;
+                }
+                case "--load" -> {
+                    RuntimeRoot.defineOrGet(args[++i]);
+                    ran = true;
+                }
+                default -> throw new IllegalArgumentException("Unknown training argument: " + args[i]);
+            }
+        }
+
+        if (!ran) {
+            runMain(DEFAULT_WORKLOAD, new String[0]);
+        }
+
+        System.out.println("Training run completed in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    private static void runMain(String ns, String[] args) throws Throwable {
+        Namespace namespace = RuntimeRoot.defineOrGet(ns);
+        Binding local = namespace.getLocal("-main");
+        if (local != null && local.getValue() instanceof PCall method) {
+            method.applyInvoke(seq(args));
+        } else {
+            throw new IllegalArgumentException("No method at " + ns + "/-main");
+        }
+    }
+
+    private static void replay(Path session) throws IOException {
+        Namespace replns = RuntimeRoot.defineOrGet("pile.repl");
+        NativeDynamicBinding.NAMESPACE.set(replns);
+
+        int count = 0;
+        int failed = 0;
+        try (FormReader forms = PileParser.forms(Files.newBufferedReader(session), session.toString())) {
+            while (forms.hasNext()) {
+                ++count;
+                try {
+                    Compiler.evaluate(PersistentList.createArr(forms.next()));
+                } catch (Throwable t) {
+                    // Sessions may contain mistakes, keep going.
+                    LOG.debug("Replayed form failed: %s", t.getMessage());
+                    ++failed;
+                }
+            }
+        }
+        LOG.info("Replayed %d forms from %s (%d failed)", count, session, failed);
+    }
+
+}
@@ -0,0 +1,576 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.compiler.cache;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import pile.collection.PersistentList;
+import pile.collection.PersistentMap;
+import pile.compiler.CloseNoThrow;
+import pile.compiler.Compiler;
+import pile.compiler.form.DefForm;
+import pile.compiler.form.MethodForm;
+import pile.core.Metadata;
+import pile.core.Namespace;
+import pile.core.Symbol;
+import pile.core.Var;
+import pile.core.binding.Binding;
+import pile.core.binding.BindingType;
+import pile.core.compiler.aot.AOTHandler;
+import pile.core.compiler.aot.AOTHandler.AOTType;
+import pile.core.log.Logger;
+import pile.core.log.LoggerSupplier;
+import pile.core.method.AbstractCompiledMethod;
+import pile.core.parse.ParserConstants;
+import pile.core.runtime.generated_classes.LookupHolder;
+
+/**
+ * A persistent cache of the classes compiled for top-level function
+ * definitions, so that reloading a namespace only compiles the forms which
+ * changed. Enabled with {@code -Dpile.compile.cache=<dir>}. <br>
+ * <br>
+ * Each {@code (def name (fn ...))} is keyed by a hash of:
+ * <ul>
+ * <li>The def form, including metadata such as type hints but excluding line
+ * numbers.
+ * <li>The namespace it is defined in.
+ * <li>The keys of the defs (including macros) the form refers to, so that
+ * changing a macro or function invalidates everything compiled against it.
+ * <li>The classes the form's symbols resolve to, so that changing an import
+ * invalidates everything compiled against it.
+ * <li>The compiler build and settings.
+ * </ul>
+ * Every class the form generates is recorded under that key, both in memory
+ * and in the cache directory. When the same key is seen again, in this process
+ * or a later one, the recorded classes are reused instead of compiling the
+ * form. Like AOT functions, only definitions which don't close over anything
+ * are cached, and classes are never defined as hidden classes while being
+ * recorded. Defs nested in other forms, eg. {@code (let [...] (def ...))}, are
+ * never cached as their value may depend on the enclosing form. <br>
+ * <br>
+ * Classes generated while recording are prefixed with the key, so that classes
+ * restored from the cache directory never collide with those compiled in this
+ * process.
+ */
+public final class CompileCache {
+
+    private static final Logger LOG = LoggerSupplier.getLogger(CompileCache.class);
+
+    private static final int MAGIC = 0x50494C43;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final CloseNoThrow NO_SCOPE = () -> {};
+
+    private static volatile Path DIR;
+    private static volatile String COMPILER_STAMP;
+
+    static {
+        String dir = System.getProperty("pile.compile.cache");
+        DIR = dir == null || dir.isBlank() || AOTHandler.getAotType() != AOTType.NONE ? null : Path.of(dir);
+        COMPILER_STAMP = DIR == null ? null : compilerStamp();
+    }
+
+    private static final ThreadLocal<Recording> CURRENT = new ThreadLocal<>();
+
+    /**
+     * How deeply nested the form currently being evaluated is, 1 for a top-level
+     * form.
+     */
+    private static final ThreadLocal<int[]> DEPTH = ThreadLocal.withInitial(() -> new int[1]);
+
+    /**
+     * ns/name -> key of its most recent def
+     */
+    private static final Map<String, String> DEFINED = new ConcurrentHashMap<>();
+
+    /**
+     * key -> function class, for classes already defined in this process.
+     */
+    private static final Map<String, Class<?>> CLASSES = new ConcurrentHashMap<>();
+
+    private CompileCache() {
+    }
+
+    /**
+     * Evaluates a cached definition.
+     */
+    @FunctionalInterface
+    public interface Evaluation {
+        Object evaluate() throws Throwable;
+    }
+
+    public static boolean isEnabled() {
+        return DIR != null;
+    }
+
+    /**
+     * Enter a form read from a file or the repl, which is top level regardless of
+     * what is currently being evaluated (eg. a {@code (require ...)}).
+     *
+     * @return A scope which restores the enclosing form when closed.
+     */
+    public static CloseNoThrow enterTopLevel() {
+        if (DIR == null) {
+            return NO_SCOPE;
+        }
+        int[] depth = DEPTH.get();
+        int previous = depth[0];
+        depth[0] = 0;
+        return () -> depth[0] = previous;
+    }
+
+    /**
+     * Enter the evaluation of a form.
+     *
+     * @return A scope which leaves the form when closed.
+     */
+    public static CloseNoThrow enterForm() {
+        if (DIR == null) {
+            return NO_SCOPE;
+        }
+        int[] depth = DEPTH.get();
+        depth[0]++;
+        return () -> depth[0]--;
+    }
+
+    /**
+     * Point the cache at another directory, forgetting everything cached so far.
+     *
+     * @param dir The cache directory, or null to disable the cache.
+     */
+    static void reset(Path dir) {
+        DIR = dir;
+        COMPILER_STAMP = dir == null ? null : compilerStamp();
+        DEFINED.clear();
+        CLASSES.clear();
+    }
+
+    /**
+     * Compute the cache key of a def form.
+     *
+     * @param ns   The namespace the form is being defined in.
+     * @param name The defined name.
+     * @param form The whole def form.
+     * @return The key, or null if the cache is disabled. Defs which aren't top
+     *         level get a unique key, so that neither they nor the forms
+     *         referring to them are reused.
+     */
+    public static String key(Namespace ns, String name, PersistentList form) {
+        if (DIR == null) {
+            return null;
+        }
+        if (!isTopLevel()) {
+            return hash(UUID.randomUUID().toString());
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(FORMAT_VERSION).append('\n').append(COMPILER_STAMP).append('\n').append(ns.getName()).append('\n');
+        canonical(form, sb);
+        sb.append('\n');
+
+        Set<Symbol> symbols = new HashSet<>();
+        collectSymbols(form, symbols);
+        Set<String> deps = new TreeSet<>();
+        String self = ns.getName() + "/" + name;
+        for (Symbol sym : symbols) {
+            String className = resolveClass(ns, sym);
+            if (className != null) {
+                deps.add(sym + "=class:" + className);
+                continue;
+            }
+            String resolved = resolve(ns, sym);
+            if (resolved != null && !resolved.equals(self)) {
+                String depKey = DEFINED.get(resolved);
+                if (depKey != null) {
+                    deps.add(resolved + "=" + depKey);
+                }
+            }
+        }
+        for (String dep : deps) {
+            sb.append(dep).append('\n');
+        }
+        return hash(sb.toString());
+    }
+
+    /**
+     * Record the key of a completed def, so that forms referring to it are keyed
+     * on it.
+     *
+     * @param ns
+     * @param name
+     * @param key  The key of the def form, may be null.
+     */
+    public static void defined(String ns, String name, String key) {
+        if (key != null) {
+            DEFINED.put(ns + "/" + name, key);
+        }
+    }
+
+    /**
+     *
+     * @param type        The type of binding being defined.
+     * @param valueSyntax The value of the def form.
+     * @return True if the value is a plain top-level {@code (fn ...)}, which can
+     *         be cached without skipping any other evaluation.
+     */
+    public static boolean isCacheable(BindingType type, Object valueSyntax) {
+        if (DIR == null || type != BindingType.VALUE || !isTopLevel()) {
+            return false;
+        }
+        if (valueSyntax instanceof PersistentList list && list.count() > 0 && list.head() instanceof Symbol sym) {
+            String symNs = sym.getNamespace();
+            return "fn".equals(sym.getName()) && (symNs == null || ParserConstants.PILE_CORE_NS.equals(symNs));
+        }
+        return false;
+    }
+
+    /**
+     * Reuse the function compiled for the key if there is one, otherwise evaluate
+     * and record it.
+     *
+     * @param key
+     * @param eval Evaluates the value of the def.
+     * @return The defined value.
+     * @throws Throwable
+     */
+    public static Object evaluate(String key, Evaluation eval) throws Throwable {
+        Class<?> cached = CLASSES.computeIfAbsent(key, CompileCache::restore);
+        if (cached != null) {
+            LOG.trace("Reusing cached %s for %s", cached, key);
+            return MethodForm.collectAndCreateInstance(cached, List.of());
+        }
+
+        Object value;
+        Recording recording = new Recording(CURRENT.get(), key);
+        CURRENT.set(recording);
+        try {
+            value = eval.evaluate();
+        } finally {
+            CURRENT.set(recording.previous);
+        }
+        recording.store(value);
+        return value;
+    }
+
+    /**
+     *
+     * @return True if classes generated now will be recorded, and so must not be
+     *         hidden.
+     */
+    public static boolean isRecording() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     *
+     * @param className
+     * @return The name to give a class generated now.
+     */
+    public static String className(String className) {
+        Recording recording = CURRENT.get();
+        if (recording == null || recording.uncacheable) {
+            return className;
+        }
+        return "c" + recording.key.substring(0, 16) + "$" + className;
+    }
+
+    /**
+     * Record a generated class which was defined.
+     *
+     * @param internalName
+     * @param classArray
+     */
+    public static void classDefined(String internalName, byte[] classArray) {
+        Recording recording = CURRENT.get();
+        if (recording != null) {
+            recording.classes.add(new GeneratedClass(internalName.replace('/', '.'), classArray));
+        }
+    }
+
+    /**
+     * Mark the form currently being recorded as uncacheable, eg. because it
+     * defined a named type which cannot be defined again.
+     */
+    public static void uncacheable() {
+        Recording recording = CURRENT.get();
+        if (recording != null) {
+            recording.uncacheable = true;
+        }
+    }
+
+    private static boolean isTopLevel() {
+        return DEPTH.get()[0] <= 1;
+    }
+
+    private static Class<?> restore(String key) {
+        Path path = path(key);
+        try (InputStream is = Files.newInputStream(path); DataInputStream in = new DataInputStream(is)) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            String mainClass = in.readUTF();
+            int count = in.readInt();
+            List<GeneratedClass> classes = new ArrayList<>(count);
+            for (int i = 0; i < count; ++i) {
+                String name = in.readUTF();
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                classes.add(new GeneratedClass(name, bytes));
+            }
+
+            Class<?> main = null;
+            for (GeneratedClass gen : classes) {
+                Class<?> clazz = LookupHolder.PRIVATE_LOOKUP.defineClass(gen.bytes());
+                if (gen.name().equals(mainClass)) {
+                    main = clazz;
+                }
+            }
+            LOG.debug("Restored %d cached classes for %s", count, key);
+            return main;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | IllegalAccessException | LinkageError e) {
+            LOG.warnEx("Could not restore cached classes from %s, compiling instead", e, path);
+            return null;
+        }
+    }
+
+    private static Path path(String key) {
+        return DIR.resolve(key.substring(0, 2)).resolve(key + ".classes");
+    }
+
+    private static void canonical(Object form, StringBuilder sb) {
+        if (form instanceof Metadata m && m.meta() != null) {
+            PersistentMap meta = m.meta()
+                    .dissoc(ParserConstants.LINE_NUMBER_KEY)
+                    .dissoc(ParserConstants.COLUMN_KEY)
+                    .dissoc(ParserConstants.FILENAME_KEY);
+            if (meta.size() > 0) {
+                sb.append('^');
+                canonical(meta, sb);
+            }
+        }
+        switch (form) {
+            case null -> sb.append("nil");
+            case Map<?, ?> map -> {
+                List<String> entries = new ArrayList<>();
+                for (var entry : map.entrySet()) {
+                    StringBuilder esb = new StringBuilder();
+                    canonical(entry.getKey(), esb);
+                    esb.append(' ');
+                    canonical(entry.getValue(), esb);
+                    entries.add(esb.toString());
+                }
+                entries.sort(null);
+                sb.append('{').append(String.join(" ", entries)).append('}');
+            }
+            case Set<?> set -> {
+                List<String> entries = new ArrayList<>();
+                for (Object o : set) {
+                    StringBuilder esb = new StringBuilder();
+                    canonical(o, esb);
+                    entries.add(esb.toString());
+                }
+                entries.sort(null);
+                sb.append("#{").append(String.join(" ", entries)).append('}');
+            }
+            case List<?> list -> {
+                sb.append('[');
+                for (Object o : list) {
+                    canonical(o, sb);
+                    sb.append(' ');
+                }
+                sb.append(']');
+            }
+            case Iterable<?> seq -> {
+                sb.append('(');
+                for (Object o : seq) {
+                    canonical(o, sb);
+                    sb.append(' ');
+                }
+                sb.append(')');
+            }
+            case String s -> sb.append('"').append(s.replace("\"", "\\\"")).append('"');
+            default -> sb.append(form.getClass().getName()).append(':').append(form);
+        }
+    }
+
+    private static void collectSymbols(Object form, Set<Symbol> out) {
+        switch (form) {
+            case Symbol sym -> out.add(new Symbol(sym.getNamespace(), sym.getName()));
+            case Map<?, ?> map -> {
+                for (var entry : map.entrySet()) {
+                    collectSymbols(entry.getKey(), out);
+                    collectSymbols(entry.getValue(), out);
+                }
+            }
+            case Iterable<?> seq -> {
+                for (Object o : seq) {
+                    collectSymbols(o, out);
+                }
+            }
+            case null, default -> {}
+        }
+    }
+
+    private static String resolve(Namespace ns, Symbol sym) {
+        try {
+            if (sym.getNamespace() == null) {
+                Binding binding = Namespace.getIn(ns, sym.getName());
+                if (binding == null || binding.namespace() == null) {
+                    return null;
+                }
+                return binding.namespace() + "/" + sym.getName();
+            }
+            Var<?> var = ns.getVar(sym);
+            return var.getNamespace().getName() + "/" + var.getName();
+        } catch (RuntimeException e) {
+            // Locals, interop, classes etc.
+            return null;
+        }
+    }
+
+    /**
+     * Foo, Foo. and Foo/bar all refer to the class Foo.
+     *
+     * @return The name of the class the symbol refers to, or null if it isn't a
+     *         class or interop symbol.
+     */
+    private static String resolveClass(Namespace ns, Symbol sym) {
+        String name = sym.getName();
+        Symbol classSym;
+        if (sym.getNamespace() != null) {
+            classSym = new Symbol(sym.getNamespace());
+        } else if (name.length() > 1 && name.endsWith(".")) {
+            classSym = new Symbol(name.substring(0, name.length() - 1));
+        } else {
+            classSym = sym;
+        }
+        try {
+            return classSym.tryGetAsClass(ns).map(Class::getName).orElse(null);
+        } catch (RuntimeException | LinkageError e) {
+            return null;
+        }
+    }
+
+    private static String hash(String material) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(material.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Identifies the compiler build and settings, so that upgrading, rebuilding or
+     * reconfiguring the compiler doesn't reuse classes it compiled differently.
+     */
+    private static String compilerStamp() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(Runtime.version().feature()).append(':');
+        sb.append(CompileCache.class.getPackage().getImplementationVersion());
+        // Constant folding and inlining change the generated code
+        sb.append(':').append(System.getProperty("pile.compile.fold", "true"));
+        sb.append(':').append(System.getProperty("pile.compile.inline", "true"));
+        sb.append(':').append(Integer.getInteger("pile.compile.inline.size", 8));
+        for (Class<?> clazz : List.of(Compiler.class, DefForm.class, MethodForm.class, CompileCache.class)) {
+            URL resource = clazz.getResource(clazz.getSimpleName() + ".class");
+            try {
+                sb.append(':').append(resource == null ? 0 : resource.openConnection().getLastModified());
+            } catch (IOException e) {
+                sb.append(":0");
+            }
+        }
+        return sb.toString();
+    }
+
+    private record GeneratedClass(String name, byte[] bytes) {
+    }
+
+    /**
+     * The classes generated while evaluating a single def form.
+     */
+    private static final class Recording {
+        private final Recording previous;
+        private final String key;
+        private final List<GeneratedClass> classes = new ArrayList<>();
+        private boolean uncacheable;
+
+        Recording(Recording previous, String key) {
+            this.previous = previous;
+            this.key = key;
+            if (previous != null) {
+                // Evaluated while compiling another def, which can't be replayed then.
+                previous.uncacheable = true;
+            }
+        }
+
+        void store(Object value) {
+            if (uncacheable || !(value instanceof AbstractCompiledMethod acm)) {
+                return;
+            }
+            Class<?> backing = acm.getBacking();
+            if (backing == null || backing.isHidden() || backing.getDeclaredConstructors()[0].getParameterCount() != 0
+                    || classes.stream().noneMatch(gen -> gen.name().equals(backing.getName()))) {
+                return;
+            }
+            CLASSES.put(key, backing);
+
+            Path path = path(key);
+            try {
+                Files.createDirectories(path.getParent());
+                Path temp = Files.createTempFile(path.getParent(), key, ".tmp");
+                try (OutputStream os = Files.newOutputStream(temp); DataOutputStream out = new DataOutputStream(os)) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(FORMAT_VERSION);
+                    out.writeUTF(backing.getName());
+                    out.writeInt(classes.size());
+                    for (GeneratedClass gen : classes) {
+                        out.writeUTF(gen.name());
+                        out.writeInt(gen.bytes().length);
+                        out.write(gen.bytes());
+                    }
+                }
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                LOG.trace("Cached %d classes for %s", classes.size(), key);
+            } catch (IOException e) {
+                LOG.warnEx("Could not write cached classes to %s", e, path);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,463 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.compiler.stats;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import pile.collection.PersistentList;
+import pile.collection.PersistentMap;
+import pile.collection.PersistentVector;
+import pile.compiler.CloseNoThrow;
+import pile.core.Keyword;
+import pile.core.Namespace;
+import pile.core.Symbol;
+import pile.core.binding.NativeDynamicBinding;
+import pile.core.parse.LexicalEnvironment;
+
+/**
+ * Instrumentation of namespace loading and compilation. <br>
+ * <br>
+ * Timings are emitted as the JFR events {@code pile.NamespaceLoad} and
+ * {@code pile.FormCompile} whenever those are enabled in a recording.
+ * Additionally, when enabled with {@code -Dpile.compile.stats=true} (or
+ * {@link #setEnabled(boolean)}) they are accumulated here and available as
+ * {@link #toMap() data} or as a {@link #printSummary(PrintStream, int) summary}.
+ * Only the slowest top-level forms are kept, 1000 by default or
+ * {@code -Dpile.compile.stats.forms}. Namespace totals include every form.
+ * <br>
+ * <br>
+ * Times for a top-level form are split into:
+ * <ul>
+ * <li>Parsing: Reading the form from its source file.
+ * <li>Macro expansion: Calling macro functions.
+ * <li>Bytecode generation: Generating classes, excluding macro expansion and
+ * class definition within them.
+ * <li>Class definition: Defining the generated classes.
+ * </ul>
+ */
+public final class CompileStats {
+
+    private static final Keyword NAMESPACES_KEY = Keyword.of("namespaces");
+    private static final Keyword FORMS_KEY = Keyword.of("forms");
+    private static final Keyword MACROS_KEY = Keyword.of("macros");
+    private static final Keyword NS_KEY = Keyword.of("ns");
+    private static final Keyword FORM_KEY = Keyword.of("form");
+    private static final Keyword SOURCE_KEY = Keyword.of("source");
+    private static final Keyword LINE_KEY = Keyword.of("line");
+    private static final Keyword COUNT_KEY = Keyword.of("count");
+    private static final Keyword LOADS_KEY = Keyword.of("loads");
+    private static final Keyword PARSE_KEY = Keyword.of("parse-ns");
+    private static final Keyword EVAL_KEY = Keyword.of("eval-ns");
+    private static final Keyword TOTAL_KEY = Keyword.of("total-ns");
+    private static final Keyword MACRO_KEY = Keyword.of("macroexpand-ns");
+    private static final Keyword CODEGEN_KEY = Keyword.of("codegen-ns");
+    private static final Keyword DEFINE_KEY = Keyword.of("define-ns");
+    private static final Keyword CLASSES_KEY = Keyword.of("classes");
+    private static final Keyword BYTES_KEY = Keyword.of("bytes");
+
+    private static final int MAX_FORMS = Integer.getInteger("pile.compile.stats.forms", 1000);
+
+    private static volatile boolean enabled = Boolean.getBoolean("pile.compile.stats");
+
+    private static final ThreadLocal<FormStats> CURRENT = new ThreadLocal<>();
+
+    private static final Map<String, NamespaceStats> NAMESPACES = new ConcurrentHashMap<>();
+    private static final Map<Symbol, MacroStats> MACROS = new ConcurrentHashMap<>();
+    // Fastest retained form first, so it is the one evicted
+    private static final PriorityQueue<FormRecord> FORMS = new PriorityQueue<>(
+            Comparator.comparingLong(FormRecord::totalNanos));
+    // Parse times of forms not yet evaluated, by source:line
+    private static final Map<String, Long> PARSED = new ConcurrentHashMap<>();
+
+    private CompileStats() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        CompileStats.enabled = enabled;
+    }
+
+    /**
+     * Clear all accumulated stats.
+     */
+    public static void reset() {
+        NAMESPACES.clear();
+        MACROS.clear();
+        PARSED.clear();
+        synchronized (FORMS) {
+            FORMS.clear();
+        }
+    }
+
+    /**
+     * Start loading a namespace source file. Call
+     * {@link NamespaceLoad#parsed(int)} once the source is parsed and close once
+     * it has been evaluated.
+     * 
+     * @param ns
+     * @param source
+     * @return
+     */
+    public static NamespaceLoad beginNamespace(String ns, String source) {
+        return new NamespaceLoad(ns, source);
+    }
+
+    /**
+     * Record the time taken to parse a top-level form, to be reported once the
+     * form is evaluated.
+     * 
+     * @param form
+     * @param nanos
+     */
+    public static void formParsed(Object form, long nanos) {
+        if (enabled && PARSED.size() < MAX_FORMS) {
+            var lex = LexicalEnvironment.extract(form);
+            if (lex.isPresent()) {
+                PARSED.merge(parseKey(lex.get().getSource(), lex.get().getLineAt()), nanos, Long::sum);
+            }
+        }
+    }
+
+    private static String parseKey(String source, int line) {
+        return source + ":" + line;
+    }
+
+    private static void addForm(FormRecord record) {
+        synchronized (FORMS) {
+            FORMS.add(record);
+            if (FORMS.size() > MAX_FORMS) {
+                FORMS.poll();
+            }
+        }
+    }
+
+    private static List<FormRecord> slowestForms() {
+        List<FormRecord> forms;
+        synchronized (FORMS) {
+            forms = new ArrayList<>(FORMS);
+        }
+        forms.sort(Comparator.comparingLong(r -> -r.totalNanos()));
+        return forms;
+    }
+
+    /**
+     * Start evaluating a top-level form.
+     * 
+     * @param form
+     * @return The stats for the form, to be closed after it is evaluated, or null
+     *         if nothing is being recorded.
+     */
+    public static FormStats enterForm(Object form) {
+        FormCompileEvent event = new FormCompileEvent();
+        if (!enabled && !event.isEnabled()) {
+            return null;
+        }
+        FormStats stats = new FormStats(CURRENT.get(), event, form);
+        CURRENT.set(stats);
+        event.begin();
+        return stats;
+    }
+
+    /**
+     * 
+     * @return The stats of the top-level form currently being evaluated by this
+     *         thread, or null.
+     */
+    public static FormStats current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 
+     * @return A map of {:namespaces {ns-name stats} :forms [form-stats] :macros
+     *         {macro-sym {:count :total-ns}}}, with the forms slowest first.
+     */
+    public static PersistentMap toMap() {
+        PersistentMap namespaces = PersistentMap.empty();
+        for (var entry : NAMESPACES.entrySet()) {
+            namespaces = namespaces.assoc(entry.getKey(), entry.getValue().toMap());
+        }
+        List<Object> forms = new ArrayList<>();
+        for (var record : slowestForms()) {
+            forms.add(record.toMap());
+        }
+        PersistentMap macros = PersistentMap.empty();
+        for (var entry : MACROS.entrySet()) {
+            macros = macros.assoc(entry.getKey(), entry.getValue().toMap());
+        }
+        return PersistentMap.createArr(NAMESPACES_KEY, namespaces, FORMS_KEY, PersistentVector.fromList(forms),
+                MACROS_KEY, macros);
+    }
+
+    /**
+     * Print the slowest namespaces, top-level forms and macros.
+     * 
+     * @param out
+     * @param top How many of each to print.
+     */
+    public static void printSummary(PrintStream out, int top) {
+        out.println("Namespaces:");
+        out.println(String.format("  %-32s %9s %9s %9s %9s %9s %7s %9s", "namespace", "parse", "eval", "macro",
+                "codegen", "define", "classes", "bytes"));
+        NAMESPACES.entrySet().stream()
+                .sorted(Comparator.comparingLong(e -> -e.getValue().evalNanos))
+                .limit(top)
+                .forEach(e -> {
+                    NamespaceStats ns = e.getValue();
+                    synchronized (ns) {
+                        out.println(String.format("  %-32s %9s %9s %9s %9s %9s %7d %9d", e.getKey(),
+                                ms(ns.parseNanos), ms(ns.evalNanos), ms(ns.macroNanos), ms(ns.genNanos),
+                                ms(ns.defineNanos), ns.classes, ns.bytes));
+                    }
+                });
+
+        out.println("Top-level forms:");
+        slowestForms().stream()
+                .limit(top)
+                .forEach(r -> out.println(String.format(
+                        "  %9s %-40s %s:%d (parse %s, macro %s, codegen %s, define %s)", ms(r.totalNanos()),
+                        r.form(), r.source(), r.line(), ms(r.parseNanos()), ms(r.macroNanos()), ms(r.genNanos()),
+                        ms(r.defineNanos()))));
+
+        out.println("Macros:");
+        MACROS.entrySet().stream()
+                .sorted(Comparator.comparingLong(e -> -e.getValue().nanos))
+                .limit(top)
+                .forEach(e -> out.println(String.format("  %9s %6d x %s", ms(e.getValue().nanos),
+                        e.getValue().count, e.getKey())));
+    }
+
+    private static String ms(long nanos) {
+        return String.format("%.1fms", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    private static String describe(Object form) {
+        String out;
+        if (form instanceof PersistentList<?> list && list.count() > 0) {
+            StringBuilder sb = new StringBuilder("(");
+            int i = 0;
+            for (Object part : list) {
+                if (i == 2) {
+                    sb.append(" ...");
+                    break;
+                }
+                if (i > 0) {
+                    sb.append(' ');
+                }
+                sb.append(part instanceof PersistentList ? "(...)" : String.valueOf(part));
+                ++i;
+            }
+            out = sb.append(')').toString();
+        } else {
+            out = String.valueOf(form);
+        }
+        return out.length() > 60 ? out.substring(0, 57) + "..." : out;
+    }
+
+    private static String currentNamespace() {
+        Namespace ns = NativeDynamicBinding.NAMESPACE.getValue();
+        return ns == null ? null : ns.getName();
+    }
+
+    /**
+     * Timings for the load of a single namespace source file.
+     */
+    public static final class NamespaceLoad implements CloseNoThrow {
+        private final NamespaceLoadEvent event = new NamespaceLoadEvent();
+        private final String ns;
+        private final String source;
+        private final long start;
+        private long parsed;
+        private int forms;
+
+        private NamespaceLoad(String ns, String source) {
+            this.ns = ns;
+            this.source = source;
+            this.event.begin();
+            this.start = System.nanoTime();
+            this.parsed = start;
+        }
+
+        public void parsed(int forms) {
+            this.parsed = System.nanoTime();
+            this.forms = forms;
+        }
+
+        @Override
+        public void close() {
+            long end = System.nanoTime();
+            event.end();
+            long parseNanos = parsed - start;
+            long evalNanos = end - parsed;
+            if (event.shouldCommit()) {
+                event.namespace = ns;
+                event.source = source;
+                event.parse = parseNanos;
+                event.evaluation = evalNanos;
+                event.forms = forms;
+                event.commit();
+            }
+            if (enabled) {
+                NAMESPACES.computeIfAbsent(ns, k -> new NamespaceStats()).addLoad(parseNanos, evalNanos);
+            }
+        }
+    }
+
+    /**
+     * Timings for the evaluation of a single top-level form.
+     */
+    public static final class FormStats implements CloseNoThrow {
+        private final FormStats previous;
+        private final FormCompileEvent event;
+        private final Object form;
+        private final long start = System.nanoTime();
+
+        private long macroNanos, genNanos, defineNanos, bytes;
+        private int classes;
+
+        // Outermost class being generated
+        private int classDepth;
+        private long classStart, classExcluded;
+
+        private FormStats(FormStats previous, FormCompileEvent event, Object form) {
+            this.previous = previous;
+            this.event = event;
+            this.form = form;
+        }
+
+        public void macroExpanded(Symbol macro, long nanos) {
+            macroNanos += nanos;
+            if (enabled && macro != null) {
+                MACROS.computeIfAbsent(macro, k -> new MacroStats()).add(nanos);
+            }
+        }
+
+        public void enterClass() {
+            if (classDepth++ == 0) {
+                classStart = System.nanoTime();
+                classExcluded = macroNanos + defineNanos;
+            }
+        }
+
+        public void leaveClassGeneration() {
+            if (--classDepth == 0) {
+                long excluded = macroNanos + defineNanos - classExcluded;
+                genNanos += System.nanoTime() - classStart - excluded;
+            }
+        }
+
+        public void classDefined(int size, long nanos) {
+            ++classes;
+            bytes += size;
+            defineNanos += nanos;
+        }
+
+        @Override
+        public void close() {
+            long total = System.nanoTime() - start;
+            event.end();
+            CURRENT.set(previous);
+
+            String ns = currentNamespace();
+            var lex = LexicalEnvironment.extract(form);
+            String source = lex.map(LexicalEnvironment::getSource).orElse(null);
+            int line = lex.map(LexicalEnvironment::getLineAt).orElse(-1);
+            Long parsed = lex.isPresent() ? PARSED.remove(parseKey(source, line)) : null;
+            long parseNanos = parsed == null ? 0 : parsed;
+
+            if (event.shouldCommit()) {
+                event.namespace = ns;
+                event.form = describe(form);
+                event.source = source;
+                event.line = line;
+                event.parse = parseNanos;
+                event.macroExpansion = macroNanos;
+                event.bytecodeGeneration = genNanos;
+                event.classDefinition = defineNanos;
+                event.classes = classes;
+                event.generatedBytes = bytes;
+                event.commit();
+            }
+            if (enabled) {
+                addForm(new FormRecord(ns, describe(form), source, line, total, parseNanos, macroNanos, genNanos,
+                        defineNanos, classes, bytes));
+                if (ns != null) {
+                    NAMESPACES.computeIfAbsent(ns, k -> new NamespaceStats()).addForm(this);
+                }
+            }
+        }
+    }
+
+    private record FormRecord(String ns, String form, String source, int line, long totalNanos, long parseNanos,
+            long macroNanos, long genNanos, long defineNanos, int classes, long bytes) {
+
+        PersistentMap toMap() {
+            return PersistentMap.createArr(NS_KEY, ns, FORM_KEY, form, SOURCE_KEY, source, LINE_KEY, line, TOTAL_KEY,
+                    totalNanos, PARSE_KEY, parseNanos, MACRO_KEY, macroNanos, CODEGEN_KEY, genNanos, DEFINE_KEY, defineNanos, CLASSES_KEY,
+                    classes, BYTES_KEY, bytes);
+        }
+    }
+
+    private static final class NamespaceStats {
+        private long parseNanos, evalNanos, macroNanos, genNanos, defineNanos, bytes;
+        private int loads, forms, classes;
+
+        synchronized void addLoad(long parse, long eval) {
+            ++loads;
+            parseNanos += parse;
+            evalNanos += eval;
+        }
+
+        synchronized void addForm(FormStats fs) {
+            ++forms;
+            macroNanos += fs.macroNanos;
+            genNanos += fs.genNanos;
+            defineNanos += fs.defineNanos;
+            classes += fs.classes;
+            bytes += fs.bytes;
+        }
+
+        synchronized PersistentMap toMap() {
+            return PersistentMap.createArr(LOADS_KEY, loads, FORMS_KEY, forms, PARSE_KEY, parseNanos, EVAL_KEY,
+                    evalNanos, MACRO_KEY, macroNanos, CODEGEN_KEY, genNanos, DEFINE_KEY, defineNanos, CLASSES_KEY,
+                    classes, BYTES_KEY, bytes);
+        }
+    }
+
+    private static final class MacroStats {
+        private long count, nanos;
+
+        synchronized void add(long n) {
+            ++count;
+            nanos += n;
+        }
+
+        synchronized PersistentMap toMap() {
+            return PersistentMap.createArr(COUNT_KEY, count, TOTAL_KEY, nanos);
+        }
+    }
+
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.compiler.stats;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("pile.NamespaceLoad")
+@Label("Pile Namespace Load")
+@Category({ "Pile", "Compiler" })
+@Description("Parsing and evaluation of a namespace source file")
+final class NamespaceLoadEvent extends Event {
+
+    @Label("Namespace")
+    String namespace;
+
+    @Label("Source")
+    String source;
+
+    @Label("Parse")
+    @Timespan(Timespan.NANOSECONDS)
+    long parse;
+
+    @Label("Evaluation")
+    @Timespan(Timespan.NANOSECONDS)
+    long evaluation;
+
+    @Label("Forms")
+    int forms;
+
+}
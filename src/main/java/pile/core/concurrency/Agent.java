@@ -0,0 +1,284 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.concurrency;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import pile.core.PCall;
+import pile.core.Ref;
+import pile.core.Watchable;
+import pile.core.Watches;
+import pile.core.log.Logger;
+import pile.core.log.LoggerSupplier;
+import pile.nativebase.method.PileInvocationException;
+
+/**
+ * A reference whose state is changed asynchronously by actions sent to it.
+ * Actions for a single agent are applied one at a time in the order they were
+ * sent.
+ * <br>
+ * Each agent has a mailbox which is drained in batches on the executor of the
+ * action at the head of the mailbox. No thread is held by an agent with an
+ * empty mailbox.
+ * <ul>
+ * <li>{@link #send(PCall, Object...)} runs actions on the common fork/join pool
+ * and should be used for CPU bound actions.
+ * <li>{@link #sendOff(PCall, Object...)} runs actions on virtual threads and
+ * should be used for actions which may block.
+ * </ul>
+ * If an action throws while in {@link ErrorMode#FAIL} the agent stops
+ * processing actions and rejects new ones until
+ * {@link #restart(Object)} is called. In {@link ErrorMode#CONTINUE} the error
+ * handler (if any) is called and processing continues.
+ */
+public class Agent implements Ref, Watchable {
+
+    private static final Logger LOG = LoggerSupplier.getLogger(Agent.class);
+
+    // Max actions processed before yielding the executor thread.
+    private static final int BATCH_SIZE = 64;
+
+    public enum ErrorMode {
+        FAIL, CONTINUE;
+    }
+
+    private static class VirtualHolder {
+        private static final ExecutorService EXEC = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    private final ConcurrentLinkedQueue<Action> mailbox = new ConcurrentLinkedQueue<>();
+    // Actions enqueued but not yet completed. The thread that moves this from 0->1
+    // owns scheduling the drain.
+    private final AtomicLong pending = new AtomicLong();
+    // Set when a drain stops because the agent failed. Whoever clears this
+    // (restart or the drain itself) owns scheduling.
+    private final AtomicBoolean suspended = new AtomicBoolean();
+    private final Watches watches = new Watches();
+
+    private volatile Object state;
+    private volatile Throwable error;
+    private volatile ErrorMode errorMode = ErrorMode.FAIL;
+    private volatile PCall errorHandler;
+
+    public Agent(Object state) {
+        this.state = state;
+    }
+
+    @Override
+    public Object deref() {
+        return state;
+    }
+
+    @Override
+    public Object deref(long time, TimeUnit unit) {
+        return deref();
+    }
+
+    public Agent send(PCall fn, Object... args) {
+        return dispatch(new Action(fn, args, ForkJoinPool.commonPool()));
+    }
+
+    public Agent sendOff(PCall fn, Object... args) {
+        return dispatch(new Action(fn, args, VirtualHolder.EXEC));
+    }
+
+    /**
+     * 
+     * @return A future which completes once all actions sent to this agent prior
+     *         to this call have been applied, or completes exceptionally if the
+     *         agent fails first.
+     */
+    public CompletableFuture<Object> barrier() {
+        CompletableFuture<Object> cf = new CompletableFuture<>();
+        PCall complete = args -> {
+            cf.complete(null);
+            return args[0];
+        };
+        if (error == null) {
+            try {
+                dispatch(new Action(complete, new Object[0], ForkJoinPool.commonPool(), cf));
+            } catch (PileInvocationException e) {
+                // failed concurrently
+            }
+        }
+        // Also covers a failure which stopped the drain before this was queued
+        Throwable t = error;
+        if (t != null) {
+            cf.completeExceptionally(failed(t));
+        }
+        return cf;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    /**
+     * Clear the error of a failed agent, set its state and resume processing any
+     * queued actions.
+     * 
+     * @param newState
+     */
+    public void restart(Object newState) {
+        if (error == null) {
+            throw new PileInvocationException("Agent does not need a restart");
+        }
+        this.state = newState;
+        this.error = null;
+        if (suspended.compareAndSet(true, false)) {
+            Action head = mailbox.peek();
+            head.executor().execute(() -> drain(head.executor()));
+        }
+    }
+
+    public ErrorMode getErrorMode() {
+        return errorMode;
+    }
+
+    public void setErrorMode(ErrorMode errorMode) {
+        this.errorMode = errorMode;
+    }
+
+    public PCall getErrorHandler() {
+        return errorHandler;
+    }
+
+    public void setErrorHandler(PCall errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    @Override
+    public void addWatch(Object key, PCall fn, boolean async) {
+        watches.add(key, fn, async);
+    }
+
+    @Override
+    public void removeWatch(Object key) {
+        watches.remove(key);
+    }
+
+    @Override
+    public void setValidator(PCall fn) {
+        watches.setValidator(fn);
+        if (fn != null) {
+            try {
+                watches.validate(state);
+            } catch (IllegalStateException e) {
+                watches.setValidator(null);
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public PCall getValidator() {
+        return watches.getValidator();
+    }
+
+    private Agent dispatch(Action action) {
+        Throwable t = error;
+        if (t != null) {
+            throw failed(t);
+        }
+        mailbox.add(action);
+        if (pending.getAndIncrement() == 0) {
+            action.executor().execute(() -> drain(action.executor()));
+        }
+        return this;
+    }
+
+    private void drain(Executor current) {
+        int processed = 0;
+        for (;;) {
+            Throwable t = error;
+            if (t != null && suspend()) {
+                // Queued actions won't run until a restart
+                for (Action queued : mailbox) {
+                    if (queued.barrier() != null) {
+                        queued.barrier().completeExceptionally(failed(t));
+                    }
+                }
+                return;
+            }
+            Action action = mailbox.peek();
+            if (action.executor() != current) {
+                action.executor().execute(() -> drain(action.executor()));
+                return;
+            }
+            mailbox.poll();
+            apply(action);
+            if (pending.decrementAndGet() == 0) {
+                return;
+            }
+            if (++processed >= BATCH_SIZE) {
+                current.execute(() -> drain(current));
+                return;
+            }
+        }
+    }
+
+    private boolean suspend() {
+        suspended.set(true);
+        // restart may have run between observing the error and suspending
+        return !(error == null && suspended.compareAndSet(true, false));
+    }
+
+    private void apply(Action action) {
+        Object oldState = state;
+        try {
+            Object[] args = new Object[action.args().length + 1];
+            args[0] = oldState;
+            System.arraycopy(action.args(), 0, args, 1, action.args().length);
+            Object newState = action.fn().invoke(args);
+            watches.validate(newState);
+            state = newState;
+            if (newState != oldState) {
+                watches.notify(this, oldState, newState);
+            }
+        } catch (Throwable t) {
+            PCall handler = errorHandler;
+            if (handler != null) {
+                try {
+                    handler.invoke(this, t);
+                } catch (Throwable handlerError) {
+                    LOG.warnEx("Error while calling agent error handler", handlerError);
+                }
+            }
+            if (errorMode == ErrorMode.FAIL) {
+                error = t;
+            }
+        }
+    }
+
+    private static PileInvocationException failed(Throwable t) {
+        return new PileInvocationException("Agent is failed, needs restart", t);
+    }
+
+    private record Action(PCall fn, Object[] args, Executor executor, CompletableFuture<Object> barrier) {
+        Action(PCall fn, Object[] args, Executor executor) {
+            this(fn, args, executor, null);
+        }
+    }
+
+}
@@ -29,7 +29,7 @@ import java.util.function.Supplier;
 
 public class BufferedChannel implements PileChannel {
 
-    private record PendingPut(Supplier<Boolean> acceptor, Object o) {}
+    private record PendingPut(Supplier<Boolean> acceptor, Object o, Runnable rejected) {}
 
     // TODO Fix these waiters to be fair
     private final LinkedList<Function<Object, Boolean>> waiters = new LinkedList<>();
@@ -51,42 +51,44 @@ public class BufferedChannel implements PileChannel {
             throw new IllegalArgumentException("Cannot put nil into a channel");
         }
         synchronized (this) {
-            if (closed) {
-                throw new IllegalStateException("Cannot put to a closed channel");
-            }
-            Iterator<Function<Object, Boolean>> it = waiters.iterator();
-            while (it.hasNext()) {
-                Function<Object, Boolean> acc = it.next();
-                boolean accepted = acc.apply(val);
-                // If the value was accepted then we can remove the waiter, but if it was
-                // rejected then the waiter is already completed, so we also need to remove it.
-                it.remove();
-                if (accepted) {
-                    return;
-                }
-            }
             for (;;) {
+                if (closed) {
+                    throw new IllegalStateException("Cannot put to a closed channel");
+                }
+                // Waiters may have arrived while we were waiting for space
+                Iterator<Function<Object, Boolean>> it = waiters.iterator();
+                while (it.hasNext()) {
+                    Function<Object, Boolean> acc = it.next();
+                    boolean accepted = acc.apply(val);
+                    // If the value was accepted then we can remove the waiter, but if it was
+                    // rejected then the waiter is already completed, so we also need to remove it.
+                    it.remove();
+                    if (accepted) {
+                        return;
+                    }
+                }
                 if (max == pendingValues.size()) {
                     this.wait();
                 } else {
                     pendingValues.add(val);
-                    break;
+                    return;
                 }
-            }    
+            }
         }
     }
     
     @Override
-    public void put(Supplier<Boolean> acceptor, Object o) {
+    public void put(Supplier<Boolean> acceptor, Object o, Runnable rejected) {
         requireNonNull(acceptor, "acceptor cannot be null");
         requireNonNull(o, "value cannot be null");
+        requireNonNull(rejected, "rejected cannot be null");
         synchronized (this) {
             if (closed) {
                 throw new IllegalStateException("Cannot put to a closed channel");
             }
             // can never have waiters AND pending values
             if (atCapacity()) {
-                pendingPuts.add(new PendingPut(acceptor, o));
+                pendingPuts.add(new PendingPut(acceptor, o, rejected));
                 return;
             } else {
                 // 'take' the object knowing we can always add it to pending.
@@ -137,19 +139,33 @@ public class BufferedChannel implements PileChannel {
     
     @Override
     public void close() {
+        List<PendingPut> rejected;
         synchronized (this) {
+            if (closed) {
+                return;
+            }
             this.closed = true;
             for (var wait : waiters) {
                 // ignore return value
                 wait.apply(null); 
             }
+            waiters.clear();
+            rejected = new ArrayList<>(pendingPuts);
+            pendingPuts.clear();
+            // Blocked puts fail now the channel is closed
+            this.notifyAll();
+        }
+        // Outside the lock, a rejected put may close things using this channel
+        for (PendingPut pp : rejected) {
+            pp.rejected().run();
         }
     }
 
     private void acceptPendingPut() {
         Iterator<PendingPut> it = pendingPuts.iterator();
-        while (it.hasNext()) {
+        while (it.hasNext() && !atCapacity()) {
             PendingPut pp = it.next();
+            it.remove();
             if (pp.acceptor().get()) {
                 pendingValues.add(pp.o());
             }
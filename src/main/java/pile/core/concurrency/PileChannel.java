@@ -37,7 +37,20 @@ public interface PileChannel extends Ref, Closeable {
      * @return True if the object is 'handled' by the channel now, false if the
      *         object was rejected and still requires handling.
      */
-    public void put(Supplier<Boolean> acceptor, Object o);
+    public default void put(Supplier<Boolean> acceptor, Object o) {
+        put(acceptor, o, () -> {});
+    }
+
+    /**
+     * Non-blocking put which is told if the channel is closed before the object
+     * is handled.
+     * 
+     * @param acceptor See {@link #put(Supplier, Object)}.
+     * @param o
+     * @param rejected Called instead of the acceptor if the channel is closed
+     *                 while the object is waiting to be handled.
+     */
+    public void put(Supplier<Boolean> acceptor, Object o, Runnable rejected);
 
     public void get(Function<Object, Boolean> acceptor);
 
@@ -0,0 +1,79 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.data;
+
+/**
+ * Constants for the binary data format read by {@link BinaryReader} and written
+ * by {@link BinaryWriter}. <br>
+ * <br>
+ * A stream starts with {@link #MAGIC} and {@link #VERSION}, followed by any
+ * number of values. Each value is a tag byte followed by:
+ * <ul>
+ * <li>Integers: A zigzag varint.
+ * <li>Floats, doubles and chars: Their fixed width big endian bytes.
+ * <li>Strings: A varint byte count, then UTF-8 bytes.
+ * <li>BigIntegers: A varint byte count, then the two's complement bytes.
+ * BigDecimals are prefixed by a zigzag varint scale.
+ * <li>Keywords and symbols: The first time a name is seen in a stream a
+ * namespace (or nil) and name string. After that a varint reference into the
+ * table of names seen so far.
+ * <li>Collections: A varint count, then each element (or key and value).
+ * <li>Primitive arrays: A varint length, then the fixed width elements.
+ * </ul>
+ * Metadata is not written.
+ */
+final class BinaryFormat {
+
+    static final byte[] MAGIC = { 'P', 'I', 'L', 'B' };
+    static final byte VERSION = 1;
+
+    /**
+     * Names past this many in one stream are written in full each time, so a
+     * long stream of distinct keywords can't grow the table without bound.
+     */
+    static final int MAX_NAMES = 1 << 20;
+
+    static final byte NIL = 0;
+    static final byte TRUE = 1;
+    static final byte FALSE = 2;
+    static final byte INT = 3;
+    static final byte LONG = 4;
+    static final byte SHORT = 5;
+    static final byte BYTE = 6;
+    static final byte DOUBLE = 7;
+    static final byte FLOAT = 8;
+    static final byte CHAR = 9;
+    static final byte STRING = 10;
+    static final byte BIG_INTEGER = 11;
+    static final byte BIG_DECIMAL = 12;
+    static final byte KEYWORD = 13;
+    static final byte KEYWORD_REF = 14;
+    static final byte SYMBOL = 15;
+    static final byte SYMBOL_REF = 16;
+    static final byte LIST = 17;
+    static final byte VECTOR = 18;
+    static final byte MAP = 19;
+    static final byte SET = 20;
+    static final byte BYTE_ARRAY = 21;
+    static final byte INT_ARRAY = 22;
+    static final byte LONG_ARRAY = 23;
+    static final byte FLOAT_ARRAY = 24;
+    static final byte DOUBLE_ARRAY = 25;
+
+    private BinaryFormat() {
+    }
+
+}
@@ -0,0 +1,471 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.data;
+
+import static pile.core.data.BinaryFormat.*;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import pile.collection.PersistentArrayVector;
+import pile.collection.PersistentList;
+import pile.collection.PersistentMap;
+import pile.collection.PersistentSet;
+import pile.core.Keyword;
+import pile.core.Symbol;
+
+/**
+ * Reads values written by {@link BinaryWriter}, see {@link BinaryFormat}. <br>
+ * <br>
+ * Reads either from a channel through a direct buffer, or directly from an
+ * existing buffer (eg. a mapped file). Collections are built in a single pass
+ * since their counts are known up front. <br>
+ * <br>
+ * Streams may be concatenated, eg. by several writers to one channel. Each
+ * header starts a new table of names.
+ */
+public class BinaryReader implements Iterator<Object>, Closeable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private static final int MIN_BUFFER_SIZE = 64;
+
+    private static final int MAX_LENGTH = Integer.MAX_VALUE - 8;
+
+    // Arrays are grown past this as values are read, so a corrupt count can't
+    // allocate a huge array up front
+    private static final int MAX_PREALLOCATE = 1024;
+
+    // Applies to arrays, strings and big integers read from a channel. Those
+    // read from a buffer are bounded by its size.
+    private static final int MAX_PREALLOCATE_ARRAY = 64 * 1024;
+
+    // null when reading from a provided buffer
+    private final ReadableByteChannel in;
+    private final ByteBuffer buf;
+
+    private final List<Object> names = new ArrayList<>();
+    private byte[] scratch = new byte[256];
+    private boolean readHeader = false;
+
+    public BinaryReader(ReadableByteChannel in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    public BinaryReader(ReadableByteChannel in, int bufferSize) {
+        this.in = in;
+        this.buf = ByteBuffer.allocateDirect(Math.max(bufferSize, MIN_BUFFER_SIZE)).flip();
+    }
+
+    /**
+     * Read from the remaining bytes of the provided buffer, without copying. The
+     * buffer's position is not modified.
+     *
+     * @param data
+     */
+    public BinaryReader(ByteBuffer data) {
+        this.in = null;
+        this.buf = data.slice();
+    }
+
+    /**
+     * Decode a single value.
+     *
+     * @param bytes A stream from {@link BinaryWriter#encode(Object)}
+     * @return The first value in the stream.
+     */
+    public static Object decode(byte[] bytes) {
+        try {
+            return new BinaryReader(ByteBuffer.wrap(bytes)).read();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Decode every value in a stream.
+     *
+     * @param bytes A stream from {@link BinaryWriter#encodeAll(Iterable)}
+     * @return The values in the stream.
+     */
+    public static List<Object> decodeAll(byte[] bytes) {
+        List<Object> out = new ArrayList<>();
+        new BinaryReader(ByteBuffer.wrap(bytes)).forEachRemaining(out::add);
+        return out;
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            header();
+            return request(1);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Object next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            return readValue();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Read the next value.
+     *
+     * @return The value.
+     * @throws EOFException If there are no more values.
+     * @throws IOException
+     */
+    public Object read() throws IOException {
+        header();
+        return readValue();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) {
+            in.close();
+        }
+    }
+
+    private void header() throws IOException {
+        // MAGIC doesn't start with a tag, so a header may follow any value
+        while (!readHeader || (request(1) && buf.get(buf.position()) == MAGIC[0])) {
+            fill(MAGIC.length + 1);
+            for (byte b : MAGIC) {
+                if (buf.get() != b) {
+                    throw new StreamCorruptedException("Not a pile binary stream");
+                }
+            }
+            byte version = buf.get();
+            if (version != VERSION) {
+                throw new StreamCorruptedException("Unsupported version: " + version);
+            }
+            names.clear();
+            readHeader = true;
+        }
+    }
+
+    private Object readValue() throws IOException {
+        fill(1);
+        byte tag = buf.get();
+        return switch (tag) {
+            case NIL -> null;
+            case TRUE -> true;
+            case FALSE -> false;
+            case INT -> (int) getSigned();
+            case LONG -> getSigned();
+            case DOUBLE -> {
+                fill(8);
+                yield buf.getDouble();
+            }
+            case FLOAT -> {
+                fill(4);
+                yield buf.getFloat();
+            }
+            case STRING -> getString();
+            case KEYWORD -> addName(Keyword.of(getNamespace(), getName()));
+            case KEYWORD_REF, SYMBOL_REF -> getNameRef();
+            case SYMBOL -> addName(new Symbol(getNamespace(), getName()));
+            case MAP -> {
+                int count = getCount();
+                if (count > MAX_LENGTH / 2) {
+                    throw new StreamCorruptedException("Invalid map size: " + count);
+                }
+                yield PersistentMap.create(readValues(count * 2));
+            }
+            case VECTOR -> {
+                Object[] items = readItems();
+                yield PersistentArrayVector.of(items, 0, items.length);
+            }
+            case SET -> PersistentSet.fromIterable(Arrays.asList(readItems()));
+            case LIST -> {
+                Object[] items = readItems();
+                yield items.length == 0 ? PersistentList.EMPTY : PersistentList.of(items);
+            }
+            case CHAR -> {
+                fill(2);
+                yield buf.getChar();
+            }
+            case SHORT -> (short) getSigned();
+            case BYTE -> {
+                fill(1);
+                yield buf.get();
+            }
+            case BIG_INTEGER -> getBigInteger();
+            case BIG_DECIMAL -> {
+                int scale = (int) getSigned();
+                yield new BigDecimal(getBigInteger(), scale);
+            }
+            case BYTE_ARRAY -> {
+                int count = getCount();
+                yield getBytes(new byte[initialLength(count)], count);
+            }
+            case INT_ARRAY -> {
+                int count = getCount();
+                int[] arr = new int[initialLength(count)];
+                for (int off = 0; off < count;) {
+                    int n = Math.min(count - off, available(Integer.BYTES));
+                    if (off + n > arr.length) {
+                        arr = Arrays.copyOf(arr, grownLength(arr.length, off + n, count));
+                    }
+                    buf.asIntBuffer().get(arr, off, n);
+                    buf.position(buf.position() + n * Integer.BYTES);
+                    off += n;
+                }
+                yield arr;
+            }
+            case LONG_ARRAY -> {
+                int count = getCount();
+                long[] arr = new long[initialLength(count)];
+                for (int off = 0; off < count;) {
+                    int n = Math.min(count - off, available(Long.BYTES));
+                    if (off + n > arr.length) {
+                        arr = Arrays.copyOf(arr, grownLength(arr.length, off + n, count));
+                    }
+                    buf.asLongBuffer().get(arr, off, n);
+                    buf.position(buf.position() + n * Long.BYTES);
+                    off += n;
+                }
+                yield arr;
+            }
+            case FLOAT_ARRAY -> {
+                int count = getCount();
+                float[] arr = new float[initialLength(count)];
+                for (int off = 0; off < count;) {
+                    int n = Math.min(count - off, available(Float.BYTES));
+                    if (off + n > arr.length) {
+                        arr = Arrays.copyOf(arr, grownLength(arr.length, off + n, count));
+                    }
+                    buf.asFloatBuffer().get(arr, off, n);
+                    buf.position(buf.position() + n * Float.BYTES);
+                    off += n;
+                }
+                yield arr;
+            }
+            case DOUBLE_ARRAY -> {
+                int count = getCount();
+                double[] arr = new double[initialLength(count)];
+                for (int off = 0; off < count;) {
+                    int n = Math.min(count - off, available(Double.BYTES));
+                    if (off + n > arr.length) {
+                        arr = Arrays.copyOf(arr, grownLength(arr.length, off + n, count));
+                    }
+                    buf.asDoubleBuffer().get(arr, off, n);
+                    buf.position(buf.position() + n * Double.BYTES);
+                    off += n;
+                }
+                yield arr;
+            }
+            default -> throw new StreamCorruptedException("Unknown tag: " + tag);
+        };
+    }
+
+    private Object[] readItems() throws IOException {
+        return readValues(getCount());
+    }
+
+    private Object[] readValues(int count) throws IOException {
+        Object[] values = new Object[Math.min(count, MAX_PREALLOCATE)];
+        for (int i = 0; i < count; ++i) {
+            if (i == values.length) {
+                values = Arrays.copyOf(values, (int) Math.min(count, values.length * 2L));
+            }
+            values[i] = readValue();
+        }
+        return values;
+    }
+
+    private Object addName(Object name) {
+        if (names.size() < MAX_NAMES) {
+            names.add(name);
+        }
+        return name;
+    }
+
+    private Object getNameRef() throws IOException {
+        long ref = getVarint();
+        if (ref < 0 || ref >= names.size()) {
+            throw new StreamCorruptedException("Unknown name reference: " + ref);
+        }
+        return names.get((int) ref);
+    }
+
+    private String getNamespace() throws IOException {
+        fill(1);
+        byte tag = buf.get();
+        return switch (tag) {
+            case NIL -> null;
+            case STRING -> getString();
+            default -> throw new StreamCorruptedException("Expected a namespace, found tag: " + tag);
+        };
+    }
+
+    private String getName() throws IOException {
+        fill(1);
+        byte tag = buf.get();
+        if (tag != STRING) {
+            throw new StreamCorruptedException("Expected a name, found tag: " + tag);
+        }
+        return getString();
+    }
+
+    private String getString() throws IOException {
+        int len = getCount();
+        if (buf.hasArray() && buf.remaining() >= len) {
+            int pos = buf.position();
+            buf.position(pos + len);
+            return new String(buf.array(), buf.arrayOffset() + pos, len, StandardCharsets.UTF_8);
+        }
+        scratch = getBytes(scratch, len);
+        return new String(scratch, 0, len, StandardCharsets.UTF_8);
+    }
+
+    private BigInteger getBigInteger() throws IOException {
+        int count = getCount();
+        return new BigInteger(getBytes(new byte[initialLength(count)], count));
+    }
+
+    /**
+     * Read bytes into the destination, growing it as they arrive if it is too
+     * small.
+     *
+     * @param dest
+     * @param len
+     * @return The destination, or a larger copy of it.
+     */
+    private byte[] getBytes(byte[] dest, int len) throws IOException {
+        for (int off = 0; off < len;) {
+            int n = Math.min(len - off, available(1));
+            if (off + n > dest.length) {
+                dest = Arrays.copyOf(dest, grownLength(dest.length, off + n, len));
+            }
+            buf.get(dest, off, n);
+            off += n;
+        }
+        return dest;
+    }
+
+    /**
+     * 
+     * @param count
+     * @return The length to allocate for an array of count elements. When reading
+     *         from a channel a large array is grown as its elements arrive
+     *         instead.
+     */
+    private int initialLength(int count) {
+        return in == null ? count : Math.min(count, MAX_PREALLOCATE_ARRAY);
+    }
+
+    private static int grownLength(int length, int needed, int count) {
+        return (int) Math.min(count, Math.max(needed, length * 2L));
+    }
+
+    private int getCount() throws IOException {
+        long count = getVarint();
+        // Every element takes at least a byte
+        if (count < 0 || count > MAX_LENGTH || (in == null && count > buf.remaining())) {
+            throw new StreamCorruptedException("Invalid length: " + count);
+        }
+        return (int) count;
+    }
+
+    private long getSigned() throws IOException {
+        long v = getVarint();
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private long getVarint() throws IOException {
+        long out = 0;
+        // Skip the checks when the longest varint is already buffered
+        boolean buffered = buf.remaining() >= 10;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (!buffered) {
+                fill(1);
+            }
+            byte b = buf.get();
+            out |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return out;
+            }
+        }
+        throw new StreamCorruptedException("Varint too long");
+    }
+
+    /**
+     * Make at least one element of the provided size available.
+     *
+     * @param size
+     * @return The number of elements of the size available in the buffer.
+     */
+    private int available(int size) throws IOException {
+        fill(size);
+        return buf.remaining() / size;
+    }
+
+    private void fill(int count) throws IOException {
+        if (!request(count)) {
+            throw new EOFException();
+        }
+    }
+
+    /**
+     * Attempt to buffer at least count bytes.
+     *
+     * @param count
+     * @return True if count bytes are buffered, false if the input ended first.
+     */
+    private boolean request(int count) throws IOException {
+        if (buf.remaining() >= count) {
+            return true;
+        }
+        if (in == null) {
+            return false;
+        }
+        buf.compact();
+        try {
+            while (buf.position() < count) {
+                if (in.read(buf) == -1) {
+                    return false;
+                }
+            }
+        } finally {
+            buf.flip();
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,364 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.data;
+
+import static pile.core.data.BinaryFormat.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import pile.collection.PersistentList;
+import pile.collection.PersistentMap;
+import pile.collection.PersistentSet;
+import pile.collection.PersistentVector;
+import pile.core.ISeq;
+import pile.core.Keyword;
+import pile.core.Symbol;
+
+/**
+ * Writes values in the binary data format, see {@link BinaryFormat}. <br>
+ * <br>
+ * Supports nil, booleans, boxed primitives, strings, BigIntegers, BigDecimals,
+ * keywords, symbols, lists, seqs (written as lists), vectors, maps, sets and
+ * byte/int/long/float/double arrays. Values are buffered in a direct buffer
+ * until it fills or the writer is {@link #flush() flushed}. <br>
+ * <br>
+ * Keywords and symbols are written once per writer and referenced after that,
+ * so writing many values with the same keys to one writer is much smaller than
+ * {@link #encode(Object) encoding} each of them.
+ */
+public class BinaryWriter implements Closeable, Flushable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private static final int MIN_BUFFER_SIZE = 64;
+
+    // null when writing to a growable heap buffer
+    private final WritableByteChannel out;
+    private ByteBuffer buf;
+
+    private final Map<Object, Integer> names = new HashMap<>();
+
+    public BinaryWriter(WritableByteChannel out) {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+
+    public BinaryWriter(WritableByteChannel out, int bufferSize) {
+        this(out, ByteBuffer.allocateDirect(Math.max(bufferSize, MIN_BUFFER_SIZE)));
+    }
+
+    /**
+     * Write through the provided buffer, eg. one from a
+     * {@link pile.core.io.BufferPool}. The buffer is not released when the writer
+     * is closed.
+     *
+     * @param out The channel, or null to grow the buffer as needed.
+     * @param buf A cleared buffer.
+     */
+    public BinaryWriter(WritableByteChannel out, ByteBuffer buf) {
+        this.out = out;
+        this.buf = buf;
+        buf.put(MAGIC);
+        buf.put(VERSION);
+    }
+
+    /**
+     * Encode a single value.
+     *
+     * @param o
+     * @return The encoded stream, readable with {@link BinaryReader#decode(byte[])}
+     */
+    public static byte[] encode(Object o) {
+        BinaryWriter writer = new BinaryWriter(null, ByteBuffer.allocate(256));
+        try {
+            writer.write(o);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ByteBuffer buf = writer.buf;
+        byte[] out = new byte[buf.position()];
+        buf.flip().get(out);
+        return out;
+    }
+
+    /**
+     * Encode values to a byte array stream, sharing names between them.
+     *
+     * @param values
+     * @return The encoded stream
+     */
+    public static byte[] encodeAll(Iterable<?> values) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (BinaryWriter writer = new BinaryWriter(Channels.newChannel(bos), 8192)) {
+            for (Object o : values) {
+                writer.write(o);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bos.toByteArray();
+    }
+
+    /**
+     * Write a value.
+     *
+     * @param o
+     * @throws IOException
+     * @throws IllegalArgumentException If the value, or anything in it, can't be
+     *                                  written.
+     */
+    public void write(Object o) throws IOException {
+        switch (o) {
+            case null -> tag(NIL);
+            case Boolean b -> tag(b ? TRUE : FALSE);
+            case Integer i -> {
+                tag(INT);
+                putSigned(i);
+            }
+            case Long l -> {
+                tag(LONG);
+                putSigned(l);
+            }
+            case Double d -> {
+                ensure(9);
+                buf.put(DOUBLE).putDouble(d);
+            }
+            case Float f -> {
+                ensure(5);
+                buf.put(FLOAT).putFloat(f);
+            }
+            case String s -> writeString(s);
+            case Keyword k -> writeName(KEYWORD, KEYWORD_REF, k, k.getNamespace(), k.getName());
+            case Symbol s -> writeName(SYMBOL, SYMBOL_REF, s, s.getNamespace(), s.getName());
+            case PersistentMap<?, ?> map -> {
+                tag(MAP);
+                putVarint(map.size());
+                for (var entry : map.entrySet()) {
+                    write(entry.getKey());
+                    write(entry.getValue());
+                }
+            }
+            case PersistentVector<?> vec -> writeAll(VECTOR, vec.size(), vec);
+            case PersistentSet<?> set -> writeAll(SET, set.size(), set);
+            case PersistentList<?> list -> writeAll(LIST, list.count(), list);
+            case ISeq<?> seq -> {
+                List<Object> items = new ArrayList<>();
+                for (Object item : seq) {
+                    items.add(item);
+                }
+                writeAll(LIST, items.size(), items);
+            }
+            case Character c -> {
+                ensure(3);
+                buf.put(CHAR).putChar(c);
+            }
+            case Short s -> {
+                tag(SHORT);
+                putSigned(s);
+            }
+            case Byte b -> {
+                ensure(2);
+                buf.put(BYTE).put(b);
+            }
+            case BigInteger bi -> {
+                tag(BIG_INTEGER);
+                putBigInteger(bi);
+            }
+            case BigDecimal bd -> {
+                tag(BIG_DECIMAL);
+                putSigned(bd.scale());
+                putBigInteger(bd.unscaledValue());
+            }
+            case byte[] arr -> {
+                tag(BYTE_ARRAY);
+                putVarint(arr.length);
+                putBytes(arr, 0, arr.length);
+            }
+            case int[] arr -> {
+                tag(INT_ARRAY);
+                putVarint(arr.length);
+                for (int off = 0; off < arr.length;) {
+                    int n = Math.min(arr.length - off, room(Integer.BYTES));
+                    buf.asIntBuffer().put(arr, off, n);
+                    buf.position(buf.position() + n * Integer.BYTES);
+                    off += n;
+                }
+            }
+            case long[] arr -> {
+                tag(LONG_ARRAY);
+                putVarint(arr.length);
+                for (int off = 0; off < arr.length;) {
+                    int n = Math.min(arr.length - off, room(Long.BYTES));
+                    buf.asLongBuffer().put(arr, off, n);
+                    buf.position(buf.position() + n * Long.BYTES);
+                    off += n;
+                }
+            }
+            case float[] arr -> {
+                tag(FLOAT_ARRAY);
+                putVarint(arr.length);
+                for (int off = 0; off < arr.length;) {
+                    int n = Math.min(arr.length - off, room(Float.BYTES));
+                    buf.asFloatBuffer().put(arr, off, n);
+                    buf.position(buf.position() + n * Float.BYTES);
+                    off += n;
+                }
+            }
+            case double[] arr -> {
+                tag(DOUBLE_ARRAY);
+                putVarint(arr.length);
+                for (int off = 0; off < arr.length;) {
+                    int n = Math.min(arr.length - off, room(Double.BYTES));
+                    buf.asDoubleBuffer().put(arr, off, n);
+                    buf.position(buf.position() + n * Double.BYTES);
+                    off += n;
+                }
+            }
+            default -> throw new IllegalArgumentException("Cannot write type: " + o.getClass());
+        }
+    }
+
+    /**
+     * Write any buffered bytes to the channel.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (out != null) {
+            drain();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (out != null) {
+            flush();
+            out.close();
+        }
+    }
+
+    private void writeAll(byte tag, int count, Iterable<?> items) throws IOException {
+        tag(tag);
+        putVarint(count);
+        for (Object item : items) {
+            write(item);
+        }
+    }
+
+    private void writeName(byte tag, byte refTag, Object name, String ns, String simple) throws IOException {
+        Integer ref = names.get(name);
+        if (ref != null) {
+            tag(refTag);
+            putVarint(ref);
+            return;
+        }
+        if (names.size() < MAX_NAMES) {
+            names.put(name, names.size());
+        }
+        tag(tag);
+        if (ns == null) {
+            tag(NIL);
+        } else {
+            writeString(ns);
+        }
+        writeString(simple);
+    }
+
+    private void writeString(String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        tag(STRING);
+        putVarint(bytes.length);
+        putBytes(bytes, 0, bytes.length);
+    }
+
+    private void putBigInteger(BigInteger bi) throws IOException {
+        byte[] bytes = bi.toByteArray();
+        putVarint(bytes.length);
+        putBytes(bytes, 0, bytes.length);
+    }
+
+    private void tag(byte tag) throws IOException {
+        ensure(1);
+        buf.put(tag);
+    }
+
+    private void putSigned(long v) throws IOException {
+        // zigzag
+        putVarint((v << 1) ^ (v >> 63));
+    }
+
+    private void putVarint(long v) throws IOException {
+        ensure(10);
+        while ((v & ~0x7FL) != 0) {
+            buf.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buf.put((byte) v);
+    }
+
+    private void putBytes(byte[] bytes, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, room(1));
+            buf.put(bytes, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Make room for at least one element of the provided size.
+     *
+     * @param size
+     * @return The number of elements of the size which fit in the buffer.
+     */
+    private int room(int size) throws IOException {
+        ensure(size);
+        return buf.remaining() / size;
+    }
+
+    private void ensure(int count) throws IOException {
+        if (buf.remaining() >= count) {
+            return;
+        }
+        if (out == null) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + count));
+            buf = larger.put(buf.flip());
+        } else {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+        buf.clear();
+    }
+
+}
@@ -0,0 +1,576 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.data;
+
+import static java.lang.invoke.MethodType.*;
+import static org.objectweb.asm.Opcodes.*;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.RecordComponent;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.GeneratorAdapter;
+import org.objectweb.asm.commons.Method;
+
+import pile.collection.PersistentArrayVector;
+import pile.collection.PersistentMap;
+import pile.collection.PersistentSet;
+import pile.collection.PersistentVector;
+import pile.compiler.AbstractClassCompiler;
+import pile.compiler.PileClassWriter;
+import pile.core.CoreConstants;
+import pile.core.Keyword;
+import pile.core.exception.PileInternalException;
+import pile.core.runtime.generated_classes.LookupHolder;
+
+/**
+ * Converts records to and from maps keyed by their component names. <br>
+ * <br>
+ * A converter is created once per record type. When the record type can be
+ * linked against from generated code a class is generated which calls the
+ * accessors and canonical constructor directly, otherwise method handles are
+ * used. <br>
+ * <br>
+ * Components which are records, or {@link List lists}, {@link Set sets} or
+ * {@link Map map} values of records, are converted as well. Lists and sets of
+ * records are converted to persistent vectors and sets in both directions.
+ */
+public abstract class RecordConverter {
+
+    private static final ClassValue<RecordConverter> CONVERTERS = new ClassValue<>() {
+        @Override
+        protected RecordConverter computeValue(Class<?> type) {
+            return create(type);
+        }
+    };
+
+    // Record types whose converters are being created on this thread, so
+    // recursive records can refer to their own converter.
+    private static final ThreadLocal<Set<Class<?>>> IN_PROGRESS = ThreadLocal.withInitial(HashSet::new);
+
+    private static final Type CONVERTER_TYPE = Type.getType(RecordConverter.class);
+    private static final Type MAP_TYPE = Type.getType(PersistentMap.class);
+    private static final Type KEYWORD_ARRAY_TYPE = Type.getType(Keyword[].class);
+    private static final Type NESTED_ARRAY_TYPE = Type.getType(RecordConverter[].class);
+    private static final Type OBJECT_TYPE = Type.getType(Object.class);
+
+    private static final MethodType CONSTRUCTOR_TYPE = methodType(void.class, Class.class, Keyword[].class,
+            RecordConverter[].class);
+    private static final Method INIT = Method.getMethod("void <init>(Class, pile.core.Keyword[], "
+            + "pile.core.data.RecordConverter[])");
+    private static final Method TO_MAP = Method.getMethod("pile.collection.PersistentMap toMap(Object)");
+    private static final Method FROM_MAP = Method.getMethod("Object fromMap(pile.collection.PersistentMap)");
+    private static final Method MAP_CREATE = Method.getMethod("pile.collection.PersistentMap create(Object[])");
+    private static final Method MAP_GET = Method.getMethod("Object get(Object)");
+
+    /**
+     * How a component is converted.
+     */
+    private enum Shape {
+        PLAIN, RECORD, LIST, SET, MAP;
+
+        private final Method toData, fromData;
+
+        private Shape() {
+            String prefix = name().toLowerCase();
+            this.toData = Method.getMethod("Object " + prefix + "ToData(Object)");
+            this.fromData = Method.getMethod("Object " + prefix + "FromData(Object)");
+        }
+    }
+
+    protected final Class<?> type;
+    protected final Keyword[] keys;
+    protected final RecordConverter[] nested;
+
+    protected RecordConverter(Class<?> type, Keyword[] keys, RecordConverter[] nested) {
+        this.type = type;
+        this.keys = keys;
+        this.nested = nested;
+    }
+
+    /**
+     * @param type The record type.
+     * @return The converter for the record type, created on first use.
+     * @throws IllegalArgumentException If the type is not a record.
+     */
+    public static RecordConverter of(Class<?> type) {
+        return CONVERTERS.get(type);
+    }
+
+    public Class<?> type() {
+        return type;
+    }
+
+    /**
+     * @param record
+     * @return A map of each component keyword to its value.
+     */
+    public abstract PersistentMap toMap(Object record) throws Throwable;
+
+    /**
+     * @param map A map containing each component keyword.
+     * @return A new record. Components missing from the map are null.
+     */
+    public abstract Object fromMap(PersistentMap map) throws Throwable;
+
+    // Nested conversions called from generated converters. The receiver is the
+    // converter for the element record type. All of these pass through null.
+
+    public final Object recordToData(Object record) throws Throwable {
+        return record == null ? null : toMap(record);
+    }
+
+    public final Object recordFromData(Object data) throws Throwable {
+        if (data == null || type.isInstance(data)) {
+            return data;
+        }
+        if (data instanceof PersistentMap map) {
+            return fromMap(map);
+        }
+        throw new IllegalArgumentException(
+                "Expected a map or " + type.getName() + " but found " + data.getClass().getName());
+    }
+
+    public final Object listToData(Object items) throws Throwable {
+        if (items == null) {
+            return null;
+        }
+        Object[] out = toArray(items);
+        for (int i = 0; i < out.length; ++i) {
+            out[i] = recordToData(out[i]);
+        }
+        return PersistentArrayVector.of(out, 0, out.length);
+    }
+
+    public final Object listFromData(Object data) throws Throwable {
+        if (data == null) {
+            return null;
+        }
+        Object[] out = toArray(data);
+        for (int i = 0; i < out.length; ++i) {
+            out[i] = recordFromData(out[i]);
+        }
+        return PersistentArrayVector.of(out, 0, out.length);
+    }
+
+    public final Object setToData(Object items) throws Throwable {
+        if (items == null) {
+            return null;
+        }
+        Object[] out = toArray(items);
+        for (int i = 0; i < out.length; ++i) {
+            out[i] = recordToData(out[i]);
+        }
+        return PersistentSet.fromIterable(Arrays.asList(out));
+    }
+
+    public final Object setFromData(Object data) throws Throwable {
+        if (data == null) {
+            return null;
+        }
+        Object[] out = toArray(data);
+        for (int i = 0; i < out.length; ++i) {
+            out[i] = recordFromData(out[i]);
+        }
+        return PersistentSet.fromIterable(Arrays.asList(out));
+    }
+
+    public final Object mapToData(Object items) throws Throwable {
+        if (items == null) {
+            return null;
+        }
+        Map<?, ?> map = (Map<?, ?>) items;
+        // Keys are already distinct
+        Object[] kvs = new Object[map.size() * 2];
+        int i = 0;
+        for (var entry : map.entrySet()) {
+            kvs[i++] = entry.getKey();
+            kvs[i++] = recordToData(entry.getValue());
+        }
+        return PersistentMap.create(kvs);
+    }
+
+    public final Object mapFromData(Object data) throws Throwable {
+        if (data == null) {
+            return null;
+        }
+        Map<?, ?> map = (Map<?, ?>) data;
+        Object[] kvs = new Object[map.size() * 2];
+        int i = 0;
+        for (var entry : map.entrySet()) {
+            kvs[i++] = entry.getKey();
+            kvs[i++] = recordFromData(entry.getValue());
+        }
+        return PersistentMap.create(kvs);
+    }
+
+    private static Object[] toArray(Object items) {
+        if (items instanceof Collection<?> coll) {
+            return coll.toArray();
+        }
+        List<Object> out = new ArrayList<>();
+        for (Object o : (Iterable<?>) items) {
+            out.add(o);
+        }
+        return out.toArray();
+    }
+
+    private static RecordConverter create(Class<?> type) {
+        RecordComponent[] components = type.getRecordComponents();
+        if (components == null) {
+            throw new IllegalArgumentException(type + " is not a record");
+        }
+
+        Set<Class<?>> inProgress = IN_PROGRESS.get();
+        inProgress.add(type);
+        try {
+            int size = components.length;
+            Keyword[] keys = new Keyword[size];
+            Shape[] shapes = new Shape[size];
+            RecordConverter[] nested = new RecordConverter[size];
+            boolean linkable = isLinkable(type);
+            for (int i = 0; i < size; ++i) {
+                RecordComponent rc = components[i];
+                keys[i] = Keyword.of(rc.getName());
+                linkable &= isLinkable(rc.getType());
+
+                Class<?> raw = rc.getType();
+                Shape shape = shapeOf(raw);
+                Class<?> element = switch (shape) {
+                    case PLAIN -> null;
+                    case RECORD -> raw;
+                    case LIST, SET -> recordArgument(rc.getGenericType(), 0);
+                    case MAP -> recordArgument(rc.getGenericType(), 1);
+                };
+                if (element == null) {
+                    shape = Shape.PLAIN;
+                } else {
+                    nested[i] = inProgress.contains(element) ? new Deferred(element) : of(element);
+                }
+                shapes[i] = shape;
+            }
+
+            if (linkable) {
+                return generate(type, components, shapes, keys, nested);
+            } else {
+                return new HandleConverter(type, components, shapes, keys, nested);
+            }
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new PileInternalException("Could not create record converter for " + type, t);
+        } finally {
+            inProgress.remove(type);
+        }
+    }
+
+    private static Shape shapeOf(Class<?> raw) {
+        if (raw.isRecord()) {
+            return Shape.RECORD;
+        } else if (raw == List.class || raw == Collection.class || raw == Iterable.class
+                || raw == PersistentVector.class) {
+            return Shape.LIST;
+        } else if (raw == Set.class || raw == PersistentSet.class) {
+            return Shape.SET;
+        } else if (raw == Map.class || raw == PersistentMap.class) {
+            return Shape.MAP;
+        } else {
+            return Shape.PLAIN;
+        }
+    }
+
+    /**
+     * @return The type argument at the index if it's a record, otherwise null.
+     */
+    private static Class<?> recordArgument(java.lang.reflect.Type generic, int index) {
+        if (generic instanceof ParameterizedType pt) {
+            java.lang.reflect.Type arg = pt.getActualTypeArguments()[index];
+            if (arg instanceof WildcardType wt) {
+                arg = wt.getUpperBounds()[0];
+            }
+            if (arg instanceof Class<?> c && c.isRecord()) {
+                return c;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Generated converters live in the generated classes package, so every type
+     * they name must be public, loadable from there and exported to us.
+     */
+    private static boolean isLinkable(Class<?> c) {
+        while (c.isArray()) {
+            c = c.getComponentType();
+        }
+        if (c.isPrimitive()) {
+            return true;
+        }
+        if (c.isHidden() || !Modifier.isPublic(c.getModifiers())) {
+            return false;
+        }
+        try {
+            if (Class.forName(c.getName(), false, LookupHolder.class.getClassLoader()) != c) {
+                return false;
+            }
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+        Module ours = RecordConverter.class.getModule();
+        Module theirs = c.getModule();
+        if (!theirs.isExported(c.getPackageName(), ours)) {
+            return false;
+        }
+        // Nothing if we're unnamed or already read it
+        ours.addReads(theirs);
+        return true;
+    }
+
+    private static RecordConverter generate(Class<?> type, RecordComponent[] components, Shape[] shapes,
+            Keyword[] keys, RecordConverter[] nested) throws Throwable {
+        Type recordType = Type.getType(type);
+        String internalName = CoreConstants.GEN_PACKAGE + "/" + type.getSimpleName() + "$Converter";
+
+        ClassWriter cw = new PileClassWriter();
+        cw.visit(V15, ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC, internalName, null,
+                CONVERTER_TYPE.getInternalName(), null);
+
+        GeneratorAdapter init = new GeneratorAdapter(ACC_PUBLIC, INIT, null, null, cw);
+        init.loadThis();
+        init.loadArgs();
+        init.invokeConstructor(CONVERTER_TYPE, INIT);
+        init.returnValue();
+        init.endMethod();
+
+        writeToMap(cw, recordType, components, shapes);
+        writeFromMap(cw, recordType, components, shapes);
+        cw.visitEnd();
+
+        byte[] classArray = cw.toByteArray();
+        AbstractClassCompiler.printDebug(classArray);
+
+        // Not STRONG, so the class may be unloaded along with the converter
+        Lookup lookup = LookupHolder.PRIVATE_LOOKUP.defineHiddenClass(classArray, false);
+        MethodHandle cons = lookup.findConstructor(lookup.lookupClass(), CONSTRUCTOR_TYPE);
+        return (RecordConverter) cons.invoke(type, keys, nested);
+    }
+
+    /**
+     * <pre>
+     * Object[] kvs = new Object[size * 2];
+     * kvs[0] = keys[0];
+     * kvs[1] = Integer.valueOf(record.a());
+     * kvs[2] = keys[1];
+     * kvs[3] = nested[1].listToData(record.b());
+     * ...
+     * return PersistentMap.create(kvs);
+     * </pre>
+     */
+    private static void writeToMap(ClassWriter cw, Type recordType, RecordComponent[] components, Shape[] shapes) {
+        GeneratorAdapter ga = new GeneratorAdapter(ACC_PUBLIC | ACC_FINAL, TO_MAP, null, null, cw);
+        int record = ga.newLocal(recordType);
+        int keys = ga.newLocal(KEYWORD_ARRAY_TYPE);
+        int nested = ga.newLocal(NESTED_ARRAY_TYPE);
+        int kvs = ga.newLocal(Type.getType(Object[].class));
+        loadFields(ga, keys, nested);
+        ga.loadArg(0);
+        ga.checkCast(recordType);
+        ga.storeLocal(record);
+        ga.push(components.length * 2);
+        ga.newArray(OBJECT_TYPE);
+        ga.storeLocal(kvs);
+
+        for (int i = 0; i < components.length; ++i) {
+            ga.loadLocal(kvs);
+            ga.push(i * 2);
+            ga.loadLocal(keys);
+            ga.push(i);
+            ga.arrayLoad(OBJECT_TYPE);
+            ga.arrayStore(OBJECT_TYPE);
+
+            ga.loadLocal(kvs);
+            ga.push(i * 2 + 1);
+            if (shapes[i] != Shape.PLAIN) {
+                ga.loadLocal(nested);
+                ga.push(i);
+                ga.arrayLoad(CONVERTER_TYPE);
+            }
+            ga.loadLocal(record);
+            ga.invokeVirtual(recordType, Method.getMethod(components[i].getAccessor()));
+            ga.valueOf(Type.getType(components[i].getType()));
+            if (shapes[i] != Shape.PLAIN) {
+                ga.invokeVirtual(CONVERTER_TYPE, shapes[i].toData);
+            }
+            ga.arrayStore(OBJECT_TYPE);
+        }
+
+        ga.loadLocal(kvs);
+        ga.invokeStatic(MAP_TYPE, MAP_CREATE);
+        ga.returnValue();
+        ga.endMethod();
+    }
+
+    /**
+     * <pre>
+     * return new Record(((Number) map.get(keys[0])).intValue(),
+     *         (List) nested[1].listFromData(map.get(keys[1])), ...);
+     * </pre>
+     */
+    private static void writeFromMap(ClassWriter cw, Type recordType, RecordComponent[] components,
+            Shape[] shapes) {
+        GeneratorAdapter ga = new GeneratorAdapter(ACC_PUBLIC | ACC_FINAL, FROM_MAP, null, null, cw);
+        int keys = ga.newLocal(KEYWORD_ARRAY_TYPE);
+        int nested = ga.newLocal(NESTED_ARRAY_TYPE);
+        loadFields(ga, keys, nested);
+
+        Type[] params = new Type[components.length];
+        ga.newInstance(recordType);
+        ga.dup();
+        for (int i = 0; i < components.length; ++i) {
+            Type param = Type.getType(components[i].getType());
+            params[i] = param;
+            if (shapes[i] != Shape.PLAIN) {
+                ga.loadLocal(nested);
+                ga.push(i);
+                ga.arrayLoad(CONVERTER_TYPE);
+            }
+            ga.loadArg(0);
+            ga.loadLocal(keys);
+            ga.push(i);
+            ga.arrayLoad(OBJECT_TYPE);
+            ga.invokeVirtual(MAP_TYPE, MAP_GET);
+            if (shapes[i] != Shape.PLAIN) {
+                ga.invokeVirtual(CONVERTER_TYPE, shapes[i].fromData);
+            }
+            switch (param.getSort()) {
+                case Type.OBJECT, Type.ARRAY -> ga.checkCast(param);
+                default -> ga.unbox(param);
+            }
+        }
+        ga.invokeConstructor(recordType, new Method("<init>", Type.VOID_TYPE, params));
+        ga.returnValue();
+        ga.endMethod();
+    }
+
+    private static void loadFields(GeneratorAdapter ga, int keys, int nested) {
+        ga.loadThis();
+        ga.getField(CONVERTER_TYPE, "keys", KEYWORD_ARRAY_TYPE);
+        ga.storeLocal(keys);
+        ga.loadThis();
+        ga.getField(CONVERTER_TYPE, "nested", NESTED_ARRAY_TYPE);
+        ga.storeLocal(nested);
+    }
+
+    /**
+     * Used when the record type isn't visible to generated classes.
+     */
+    private static final class HandleConverter extends RecordConverter {
+
+        private final Shape[] shapes;
+        // (Object)Object
+        private final MethodHandle[] accessors;
+        // (Object[])Object
+        private final MethodHandle constructor;
+
+        private HandleConverter(Class<?> type, RecordComponent[] components, Shape[] shapes, Keyword[] keys,
+                RecordConverter[] nested) throws ReflectiveOperationException {
+            super(type, keys, nested);
+            this.shapes = shapes;
+
+            Lookup lookup = LookupHolder.PUBLIC_LOOKUP;
+            int size = components.length;
+            this.accessors = new MethodHandle[size];
+            Class<?>[] types = new Class<?>[size];
+            for (int i = 0; i < size; ++i) {
+                accessors[i] = lookup.unreflect(components[i].getAccessor()).asType(genericMethodType(1));
+                types[i] = components[i].getType();
+            }
+            this.constructor = lookup.unreflectConstructor(type.getDeclaredConstructor(types))
+                    .asType(genericMethodType(size))
+                    .asSpreader(Object[].class, size);
+        }
+
+        @Override
+        public PersistentMap toMap(Object record) throws Throwable {
+            int size = accessors.length;
+            Object[] kvs = new Object[size * 2];
+            for (int i = 0; i < size; ++i) {
+                Object v = (Object) accessors[i].invokeExact(record);
+                kvs[i * 2] = keys[i];
+                kvs[i * 2 + 1] = switch (shapes[i]) {
+                    case PLAIN -> v;
+                    case RECORD -> nested[i].recordToData(v);
+                    case LIST -> nested[i].listToData(v);
+                    case SET -> nested[i].setToData(v);
+                    case MAP -> nested[i].mapToData(v);
+                };
+            }
+            return PersistentMap.create(kvs);
+        }
+
+        @Override
+        public Object fromMap(PersistentMap map) throws Throwable {
+            int size = accessors.length;
+            Object[] args = new Object[size];
+            for (int i = 0; i < size; ++i) {
+                Object v = map.get(keys[i]);
+                args[i] = switch (shapes[i]) {
+                    case PLAIN -> v;
+                    case RECORD -> nested[i].recordFromData(v);
+                    case LIST -> nested[i].listFromData(v);
+                    case SET -> nested[i].setFromData(v);
+                    case MAP -> nested[i].mapFromData(v);
+                };
+            }
+            return (Object) constructor.invokeExact(args);
+        }
+    }
+
+    /**
+     * Stands in for a converter which is still being created, for recursive
+     * records.
+     */
+    private static final class Deferred extends RecordConverter {
+
+        private Deferred(Class<?> type) {
+            super(type, new Keyword[0], new RecordConverter[0]);
+        }
+
+        @Override
+        public PersistentMap toMap(Object record) throws Throwable {
+            return of(type).toMap(record);
+        }
+
+        @Override
+        public Object fromMap(PersistentMap map) throws Throwable {
+            return of(type).fromMap(map);
+        }
+    }
+
+}
@@ -0,0 +1,459 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousByteChannel;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.Channel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import pile.core.concurrency.PileChannel;
+
+/**
+ * Non-blocking file and socket I/O. Every operation returns a
+ * {@link CompletableFuture}, which may be used with await, and no thread is
+ * blocked while the I/O is in flight. Cancelling a returned future closes the
+ * channels it opened. <br>
+ * <br>
+ * Streams of bytes are delivered as byte[] chunks into a {@link PileChannel},
+ * and the next chunk is not read until the channel accepts the previous one,
+ * so a slow consumer holds back the reads rather than buffering the source.
+ */
+public final class AsyncIO {
+
+    public static final int DEFAULT_CHUNK_SIZE = BufferPool.DEFAULT_BUFFER_SIZE;
+
+    private AsyncIO() {
+    }
+
+    /**
+     * @param path
+     * @return A task completing with all the bytes of the file.
+     */
+    public static CompletableFuture<byte[]> read(Path path) {
+        CompletableFuture<byte[]> cf = new CompletableFuture<>();
+        try {
+            AsynchronousFileChannel ch = AsynchronousFileChannel.open(path, StandardOpenOption.READ);
+            closeOnCompletion(cf, ch);
+            long size = ch.size();
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new IOException("File is too large to read into an array: " + path);
+            }
+            readFully(ch, ByteBuffer.allocate((int) size), 0, cf);
+        } catch (IOException | RuntimeException e) {
+            cf.completeExceptionally(e);
+        }
+        return cf;
+    }
+
+    /**
+     * @param path
+     * @param position
+     * @param length
+     * @return A task completing with at most length bytes of the file from the
+     *         position, fewer if the file ends first.
+     */
+    public static CompletableFuture<byte[]> read(Path path, long position, int length) {
+        CompletableFuture<byte[]> cf = new CompletableFuture<>();
+        try {
+            AsynchronousFileChannel ch = AsynchronousFileChannel.open(path, StandardOpenOption.READ);
+            closeOnCompletion(cf, ch);
+            readFully(ch, ByteBuffer.allocate(length), position, cf);
+        } catch (IOException | RuntimeException e) {
+            cf.completeExceptionally(e);
+        }
+        return cf;
+    }
+
+    /**
+     * Replace the contents of the file, creating it if needed.
+     *
+     * @param path
+     * @param bytes
+     * @return A task completing with the number of bytes written.
+     */
+    public static CompletableFuture<Long> write(Path path, byte[] bytes) {
+        CompletableFuture<Long> cf = new CompletableFuture<>();
+        try {
+            AsynchronousFileChannel ch = AsynchronousFileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            closeOnCompletion(cf, ch);
+            writeFully(ch, ByteBuffer.wrap(bytes), 0).whenComplete((n, t) -> complete(cf, n, t));
+        } catch (IOException | RuntimeException e) {
+            cf.completeExceptionally(e);
+        }
+        return cf;
+    }
+
+    /**
+     * Write all the bytes to the channel, eg. a socket.
+     *
+     * @param ch
+     * @param bytes
+     * @return A task completing with the number of bytes written.
+     */
+    public static CompletableFuture<Long> write(AsynchronousByteChannel ch, byte[] bytes) {
+        CompletableFuture<Long> cf = new CompletableFuture<>();
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        ch.write(buf, null, new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer n, Void ignored) {
+                if (buf.hasRemaining()) {
+                    ch.write(buf, null, this);
+                } else {
+                    cf.complete((long) bytes.length);
+                }
+            }
+
+            @Override
+            public void failed(Throwable t, Void ignored) {
+                cf.completeExceptionally(t);
+            }
+        });
+        return cf;
+    }
+
+    /**
+     * @param host
+     * @param port
+     * @return A task completing with the connected socket.
+     */
+    public static CompletableFuture<AsynchronousSocketChannel> connect(String host, int port) {
+        CompletableFuture<AsynchronousSocketChannel> cf = new CompletableFuture<>();
+        try {
+            AsynchronousSocketChannel ch = AsynchronousSocketChannel.open();
+            cf.whenComplete((r, t) -> {
+                if (t != null) {
+                    closeQuietly(ch);
+                }
+            });
+            ch.connect(new InetSocketAddress(host, port), null, new CompletionHandler<Void, Void>() {
+                @Override
+                public void completed(Void result, Void ignored) {
+                    cf.complete(ch);
+                }
+
+                @Override
+                public void failed(Throwable t, Void ignored) {
+                    cf.completeExceptionally(t);
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            cf.completeExceptionally(e);
+        }
+        return cf;
+    }
+
+    public static CompletableFuture<Long> readChunks(Object source, PileChannel out) {
+        return readChunks(source, out, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Read the source in chunks into the channel, closing both once the source
+     * is exhausted. Sources may be a file (Path, File or String), or an
+     * asynchronous or blocking channel. Blocking channels are read from a
+     * virtual thread.
+     *
+     * @param source
+     * @param out
+     * @param chunkSize The largest chunk to read, smaller chunks are delivered
+     *                  as they arrive.
+     * @return A task completing with the number of bytes read.
+     */
+    public static CompletableFuture<Long> readChunks(Object source, PileChannel out, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        try {
+            return switch (source) {
+                case Path p -> new FilePump(AsynchronousFileChannel.open(p, StandardOpenOption.READ), out, chunkSize)
+                        .start();
+                case File f -> readChunks(f.toPath(), out, chunkSize);
+                case String s -> readChunks(Path.of(s), out, chunkSize);
+                case AsynchronousFileChannel ch -> new FilePump(ch, out, chunkSize).start();
+                case AsynchronousByteChannel ch -> new StreamPump(ch, out, chunkSize).start();
+                case ReadableByteChannel ch -> readBlocking(ch, out, chunkSize);
+                case null -> throw new IllegalArgumentException("Cannot read chunks from nil");
+                default -> throw new IllegalArgumentException("Cannot read chunks from a " + source.getClass());
+            };
+        } catch (IOException e) {
+            closeQuietly(out);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Write every chunk (byte[] or ByteBuffer) taken from the channel to the
+     * file, replacing its contents, until the channel is closed.
+     *
+     * @param in
+     * @param path
+     * @return A task completing with the number of bytes written.
+     */
+    public static CompletableFuture<Long> writeChunks(PileChannel in, Path path) {
+        CompletableFuture<Long> cf = new CompletableFuture<>();
+        try {
+            AsynchronousFileChannel ch = AsynchronousFileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            closeOnCompletion(cf, ch);
+            drain(in, ch, 0, cf);
+        } catch (IOException | RuntimeException e) {
+            cf.completeExceptionally(e);
+        }
+        return cf;
+    }
+
+    private static void drain(PileChannel in, AsynchronousFileChannel ch, long position,
+            CompletableFuture<Long> cf) {
+        in.get(chunk -> {
+            if (cf.isDone()) {
+                // Cancelled, drop it
+                return true;
+            }
+            switch (chunk) {
+                case null -> cf.complete(position);
+                // Called while the channel is locked, so write (and take the next chunk)
+                // from elsewhere.
+                case byte[] b -> CompletableFuture.runAsync(() -> writeNext(in, ch, position, ByteBuffer.wrap(b), cf));
+                case ByteBuffer b -> CompletableFuture
+                        .runAsync(() -> writeNext(in, ch, position, b.duplicate(), cf));
+                default -> cf.completeExceptionally(
+                        new IllegalArgumentException("Expected byte chunks but found a " + chunk.getClass()));
+            }
+            return true;
+        });
+    }
+
+    private static void writeNext(PileChannel in, AsynchronousFileChannel ch, long position, ByteBuffer buf,
+            CompletableFuture<Long> cf) {
+        writeFully(ch, buf, position).whenComplete((n, t) -> {
+            if (t != null) {
+                cf.completeExceptionally(t);
+            } else {
+                drain(in, ch, position + n, cf);
+            }
+        });
+    }
+
+    private static void readFully(AsynchronousFileChannel ch, ByteBuffer buf, long position,
+            CompletableFuture<byte[]> cf) {
+        ch.read(buf, position, null, new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer n, Void ignored) {
+                if (n == -1 || !buf.hasRemaining()) {
+                    byte[] arr = buf.array();
+                    cf.complete(buf.position() == arr.length ? arr : Arrays.copyOf(arr, buf.position()));
+                } else {
+                    readFully(ch, buf, position + n, cf);
+                }
+            }
+
+            @Override
+            public void failed(Throwable t, Void ignored) {
+                cf.completeExceptionally(t);
+            }
+        });
+    }
+
+    private static CompletableFuture<Long> writeFully(AsynchronousFileChannel ch, ByteBuffer buf, long position) {
+        CompletableFuture<Long> cf = new CompletableFuture<>();
+        long start = position;
+        ch.write(buf, position, start, new CompletionHandler<Integer, Long>() {
+            @Override
+            public void completed(Integer n, Long at) {
+                long next = at + n;
+                if (buf.hasRemaining()) {
+                    ch.write(buf, next, next, this);
+                } else {
+                    cf.complete(next - start);
+                }
+            }
+
+            @Override
+            public void failed(Throwable t, Long at) {
+                cf.completeExceptionally(t);
+            }
+        });
+        return cf;
+    }
+
+    private static CompletableFuture<Long> readBlocking(ReadableByteChannel ch, PileChannel out, int chunkSize) {
+        CompletableFuture<Long> cf = new CompletableFuture<>();
+        Thread t = Thread.startVirtualThread(() -> {
+            try (ch; out) {
+                ByteBuffer buf = ByteBuffer.allocate(chunkSize);
+                long total = 0;
+                int n;
+                while ((n = ch.read(buf)) != -1) {
+                    if (n > 0) {
+                        // Blocks while the channel is full
+                        out.put(Arrays.copyOf(buf.array(), buf.position()));
+                        total += n;
+                        buf.clear();
+                    }
+                }
+                cf.complete(total);
+            } catch (Throwable e) {
+                cf.completeExceptionally(e);
+            }
+        });
+        cf.whenComplete((r, e) -> {
+            if (cf.isCancelled()) {
+                t.interrupt();
+            }
+        });
+        return cf;
+    }
+
+    private static <T> void complete(CompletableFuture<T> cf, T value, Throwable t) {
+        if (t != null) {
+            cf.completeExceptionally(t);
+        } else {
+            cf.complete(value);
+        }
+    }
+
+    private static void closeOnCompletion(CompletableFuture<?> cf, Channel ch) {
+        cf.whenComplete((r, t) -> closeQuietly(ch));
+    }
+
+    static void closeQuietly(AutoCloseable c) {
+        try {
+            c.close();
+        } catch (Exception e) {
+            // Already failed or finished
+        }
+    }
+
+    /**
+     * Reads chunks, only starting the next read once the channel accepts the
+     * last chunk.
+     */
+    private static abstract class Pump implements CompletionHandler<Integer, Void> {
+
+        private final Channel source;
+        private final PileChannel out;
+        private final ByteBuffer buf;
+        private final CompletableFuture<Long> done = new CompletableFuture<>();
+        protected long total = 0;
+
+        Pump(Channel source, PileChannel out, int chunkSize) {
+            this.source = source;
+            this.out = out;
+            this.buf = ByteBuffer.allocate(chunkSize);
+            done.whenComplete((r, t) -> {
+                closeQuietly(source);
+                closeQuietly(out);
+            });
+        }
+
+        abstract void read(ByteBuffer buf);
+
+        CompletableFuture<Long> start() {
+            next();
+            return done;
+        }
+
+        private void next() {
+            if (done.isDone()) {
+                return;
+            }
+            try {
+                read(buf);
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public void completed(Integer n, Void ignored) {
+            if (n == -1) {
+                done.complete(total);
+                return;
+            }
+            if (n == 0) {
+                next();
+                return;
+            }
+            total += n;
+            byte[] chunk = Arrays.copyOf(buf.array(), buf.position());
+            buf.clear();
+            AtomicBoolean accepted = new AtomicBoolean();
+            try {
+                out.put(() -> {
+                    if (!accepted.compareAndSet(false, true)) {
+                        return false;
+                    }
+                    // Called while the channel is locked, and reads may complete on this thread,
+                    // so read from elsewhere to keep chunks in order.
+                    CompletableFuture.runAsync(this::next);
+                    return true;
+                }, chunk, () -> done.completeExceptionally(
+                        new IllegalStateException("Cannot put to a closed channel")));
+            } catch (RuntimeException e) {
+                // Closed by the consumer
+                done.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public void failed(Throwable t, Void ignored) {
+            done.completeExceptionally(t);
+        }
+    }
+
+    private static final class FilePump extends Pump {
+
+        private final AsynchronousFileChannel ch;
+
+        FilePump(AsynchronousFileChannel ch, PileChannel out, int chunkSize) {
+            super(ch, out, chunkSize);
+            this.ch = ch;
+        }
+
+        @Override
+        void read(ByteBuffer buf) {
+            ch.read(buf, total, null, this);
+        }
+    }
+
+    private static final class StreamPump extends Pump {
+
+        private final AsynchronousByteChannel ch;
+
+        StreamPump(AsynchronousByteChannel ch, PileChannel out, int chunkSize) {
+            super(ch, out, chunkSize);
+            this.ch = ch;
+        }
+
+        @Override
+        void read(ByteBuffer buf) {
+            ch.read(buf, null, this);
+        }
+    }
+
+}
@@ -0,0 +1,280 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.io;
+
+import static java.lang.foreign.ValueLayout.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reads a {@link BlockGzipOutputStream block gzip} file, inflating several
+ * blocks ahead in parallel. The file is mapped, blocks are inflated into pooled
+ * arrays, and are read back in order. <br>
+ * <br>
+ * Use {@link #open(Path, int)}, which falls back to a {@link GZIPInputStream}
+ * for gzip files without block sizes.
+ */
+public class BlockGzipInputStream extends InputStream {
+
+    private static final ValueLayout.OfShort SHORT = JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfInt INT = JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    private static final byte FEXTRA = 4;
+
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(() -> new Inflater(true));
+    // Mapped buffers of shared arenas can't be passed to the inflater
+    private static final ThreadLocal<byte[]> INPUTS = ThreadLocal
+            .withInitial(() -> new byte[BlockGzipOutputStream.MAX_BLOCK]);
+
+    private record Block(byte[] data, int length) {
+    }
+
+    private final MappedFile file;
+    private final MemorySegment segment;
+    // Block starts, then the end of the last block
+    private final long[] offsets;
+    private final int parallelism;
+
+    private final ArrayDeque<CompletableFuture<Block>> ahead = new ArrayDeque<>();
+    private final ArrayBlockingQueue<byte[]> free;
+    private int nextBlock = 0;
+
+    private Block current = new Block(new byte[0], 0);
+    private int pos = 0;
+    private boolean closed = false;
+
+    private BlockGzipInputStream(MappedFile file, long[] offsets, int parallelism) {
+        this.file = file;
+        this.segment = file.segment();
+        this.offsets = offsets;
+        this.parallelism = parallelism;
+        this.free = new ArrayBlockingQueue<>(parallelism + 1);
+    }
+
+    public static InputStream open(Path path) throws IOException {
+        return open(path, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param path
+     * @param parallelism The most blocks to inflate ahead of the reader.
+     * @return A stream of the inflated file.
+     * @throws IOException
+     */
+    public static InputStream open(Path path, int parallelism) throws IOException {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        MappedFile file = MappedFile.open(path);
+        long[] offsets = blockOffsets(file.segment());
+        if (offsets == null) {
+            file.close();
+            return new GZIPInputStream(Files.newInputStream(path), BufferPool.DEFAULT_BUFFER_SIZE);
+        }
+        return new BlockGzipInputStream(file, offsets, parallelism);
+    }
+
+    /**
+     * @return The offsets of every block, or null if the file isn't entirely
+     *         made of gzip members with block sizes.
+     */
+    private static long[] blockOffsets(MemorySegment segment) {
+        long size = segment.byteSize();
+        long[] offsets = new long[16];
+        int count = 0;
+        long at = 0;
+        while (at < size) {
+            int blockSize = blockSize(segment, at);
+            if (blockSize < 0) {
+                return null;
+            }
+            if (count == offsets.length - 1) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[count++] = at;
+            at += blockSize;
+        }
+        if (count == 0 || at != size) {
+            return null;
+        }
+        offsets[count] = at;
+        return Arrays.copyOf(offsets, count + 1);
+    }
+
+    private static int blockSize(MemorySegment segment, long at) {
+        long size = segment.byteSize();
+        // Only FEXTRA may be set, as the data is read from just after the extra
+        // field. Members with a name, comment or header crc fall back to gzip.
+        if (size - at < BlockGzipOutputStream.HEADER + BlockGzipOutputStream.TRAILER
+                || segment.get(JAVA_BYTE, at) != 0x1f || segment.get(JAVA_BYTE, at + 1) != (byte) 0x8b
+                || segment.get(JAVA_BYTE, at + 2) != 8 || segment.get(JAVA_BYTE, at + 3) != FEXTRA) {
+            return -1;
+        }
+        int extraLength = Short.toUnsignedInt(segment.get(SHORT, at + 10));
+        long extra = at + 12;
+        long extraEnd = Math.min(extra + extraLength, size);
+        while (extra + 4 <= extraEnd) {
+            int fieldLength = Short.toUnsignedInt(segment.get(SHORT, extra + 2));
+            if (segment.get(JAVA_BYTE, extra) == 'B' && segment.get(JAVA_BYTE, extra + 1) == 'C' && fieldLength == 2
+                    && extra + 6 <= extraEnd) {
+                return Short.toUnsignedInt(segment.get(SHORT, extra + 4)) + 1;
+            }
+            extra += 4 + fieldLength;
+        }
+        return -1;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!available(1)) {
+            return -1;
+        }
+        return current.data()[pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!available(1)) {
+            return -1;
+        }
+        int n = Math.min(len, current.length() - pos);
+        System.arraycopy(current.data(), pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return closed ? 0 : current.length() - pos;
+    }
+
+    private boolean available(int count) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        while (current.length() - pos < count) {
+            submit();
+            CompletableFuture<Block> next = ahead.poll();
+            if (next == null) {
+                return false;
+            }
+            Block block;
+            try {
+                block = next.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof IOException ioe) {
+                    throw ioe;
+                }
+                throw e;
+            }
+            if (current.data().length == BlockGzipOutputStream.MAX_INPUT) {
+                free.offer(current.data());
+            }
+            current = block;
+            pos = 0;
+        }
+        return true;
+    }
+
+    private void submit() {
+        while (ahead.size() < parallelism && nextBlock < offsets.length - 1) {
+            int index = nextBlock++;
+            byte[] into = free.poll();
+            byte[] out = into == null ? new byte[BlockGzipOutputStream.MAX_INPUT] : into;
+            ahead.add(CompletableFuture.supplyAsync(() -> inflate(index, out)));
+        }
+    }
+
+    private Block inflate(int index, byte[] out) {
+        long start = offsets[index];
+        long end = offsets[index + 1];
+        try {
+            long data = start + 12 + Short.toUnsignedInt(segment.get(SHORT, start + 10));
+            long trailer = end - BlockGzipOutputStream.TRAILER;
+            int crc = segment.get(INT, trailer);
+            int length = segment.get(INT, trailer + 4);
+            if (data > trailer || length < 0 || length > out.length) {
+                throw new ZipException("Corrupt block at byte " + start);
+            }
+            byte[] input = INPUTS.get();
+            int inputLength = (int) (trailer - data);
+            MemorySegment.copy(segment, JAVA_BYTE, data, input, 0, inputLength);
+
+            Inflater inflater = INFLATERS.get();
+            inflater.reset();
+            inflater.setInput(input, 0, inputLength);
+            int n = 0;
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(out, n, out.length - n);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary() || n == out.length)) {
+                    break;
+                }
+                n += inflated;
+            }
+            if (n != length || !inflater.finished()) {
+                throw new ZipException("Corrupt block at byte " + start);
+            }
+            CRC32 check = new CRC32();
+            check.update(out, 0, length);
+            if ((int) check.getValue() != crc) {
+                throw new ZipException("CRC mismatch in block at byte " + start);
+            }
+            return new Block(out, length);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        } catch (DataFormatException e) {
+            throw new CompletionException(new ZipException("Corrupt block at byte " + start + ": " + e.getMessage()));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        // Blocks read from the mapping, so let them finish before unmapping it
+        for (CompletableFuture<Block> f : ahead) {
+            try {
+                f.join();
+            } catch (CompletionException e) {
+                // Never read
+            }
+        }
+        ahead.clear();
+        file.close();
+    }
+
+}
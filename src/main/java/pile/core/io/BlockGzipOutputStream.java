@@ -0,0 +1,155 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes gzip as a series of small independent members (the BGZF layout), each
+ * recording its own compressed size in a header extra field. Any gzip reader
+ * can read the output, and {@link BlockGzipInputStream} can find the members
+ * without inflating them, to inflate them in parallel.
+ */
+public class BlockGzipOutputStream extends OutputStream {
+
+    // Worst case (stored) blocks of this much input still fit in 64k
+    static final int MAX_INPUT = 0xff00;
+    static final int MAX_BLOCK = 0x10000;
+    static final int HEADER = 18;
+    static final int TRAILER = 8;
+
+    // An empty block, marking the end of the stream
+    static final byte[] EOF_BLOCK = { 0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0,
+            0x1b, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0 };
+
+    private final OutputStream out;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] input = new byte[MAX_INPUT];
+    private final byte[] block = new byte[MAX_BLOCK];
+    private int count = 0;
+    private boolean closed = false;
+
+    public BlockGzipOutputStream(OutputStream out) {
+        this(out, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public BlockGzipOutputStream(OutputStream out, int level) {
+        this.out = out;
+        this.deflater = new Deflater(level, true);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == MAX_INPUT) {
+            writeBlock();
+        }
+        input[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == MAX_INPUT) {
+                writeBlock();
+            }
+            int n = Math.min(len, MAX_INPUT - count);
+            System.arraycopy(b, off, input, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Ends the current block early, so everything written so far can be read.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (count > 0) {
+            writeBlock();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (count > 0) {
+                writeBlock();
+            }
+            out.write(EOF_BLOCK);
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        deflater.reset();
+        deflater.setInput(input, 0, count);
+        deflater.finish();
+        int size = deflater.deflate(block, HEADER, MAX_BLOCK - HEADER - TRAILER);
+        if (!deflater.finished()) {
+            // Incompressible, so write a single stored deflate block
+            block[HEADER] = 1;
+            writeShort(HEADER + 1, count);
+            writeShort(HEADER + 3, ~count);
+            System.arraycopy(input, 0, block, HEADER + 5, count);
+            size = count + 5;
+        }
+        int total = HEADER + size + TRAILER;
+
+        block[0] = 0x1f;
+        block[1] = (byte) 0x8b;
+        block[2] = 8;
+        // FEXTRA
+        block[3] = 4;
+        block[4] = block[5] = block[6] = block[7] = block[8] = 0;
+        block[9] = (byte) 0xff;
+        writeShort(10, 6);
+        block[12] = 'B';
+        block[13] = 'C';
+        writeShort(14, 2);
+        writeShort(16, total - 1);
+
+        crc.reset();
+        crc.update(input, 0, count);
+        writeInt(HEADER + size, (int) crc.getValue());
+        writeInt(HEADER + size + 4, count);
+
+        out.write(block, 0, total);
+        count = 0;
+    }
+
+    private void writeShort(int at, int value) {
+        block[at] = (byte) value;
+        block[at + 1] = (byte) (value >>> 8);
+    }
+
+    private void writeInt(int at, int value) {
+        writeShort(at, value);
+        writeShort(at + 2, value >>> 16);
+    }
+
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.io;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * A pool of buffers of a single size, direct unless stated otherwise. Direct
+ * buffers are expensive to allocate and are only freed by the garbage
+ * collector, so reusing them keeps I/O from churning native memory. Heap
+ * buffers are for stream I/O, which needs an array. <br>
+ * <br>
+ * {@link #acquire()} never blocks, allocating a new buffer if none are free.
+ * At most maxPooled released buffers are kept, extras are left to the garbage
+ * collector.
+ */
+public class BufferPool {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private static final BufferPool SHARED = new BufferPool(DEFAULT_BUFFER_SIZE, 64);
+    private static final BufferPool SHARED_HEAP = new BufferPool(DEFAULT_BUFFER_SIZE, 64, false);
+
+    private final int bufferSize;
+    private final boolean direct;
+    private final ArrayBlockingQueue<ByteBuffer> free;
+
+    public BufferPool(int bufferSize, int maxPooled) {
+        this(bufferSize, maxPooled, true);
+    }
+
+    public BufferPool(int bufferSize, int maxPooled, boolean direct) {
+        if (bufferSize <= 0 || maxPooled <= 0) {
+            throw new IllegalArgumentException("Buffer size and max pooled must be positive");
+        }
+        this.bufferSize = bufferSize;
+        this.direct = direct;
+        this.free = new ArrayBlockingQueue<>(maxPooled);
+    }
+
+    /**
+     * @return A pool of {@link #DEFAULT_BUFFER_SIZE} buffers shared by the
+     *         runtime.
+     */
+    public static BufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * @return A pool of {@link #DEFAULT_BUFFER_SIZE} heap buffers shared by the
+     *         runtime.
+     */
+    public static BufferPool sharedHeap() {
+        return SHARED_HEAP;
+    }
+
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return A cleared buffer, which should be {@link #release(ByteBuffer)
+     *         released} once it is no longer used.
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buf = free.poll();
+        if (buf == null) {
+            buf = direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        }
+        return buf;
+    }
+
+    /**
+     * Return a buffer to the pool. Buffers not from this pool are ignored.
+     *
+     * @param buf
+     */
+    public void release(ByteBuffer buf) {
+        if (buf.isDirect() == direct && buf.capacity() == bufferSize && !buf.isReadOnly()) {
+            buf.clear();
+            free.offer(buf);
+        }
+    }
+
+}
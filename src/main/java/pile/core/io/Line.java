@@ -0,0 +1,150 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.io;
+
+import static java.lang.foreign.ValueLayout.*;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A line of a {@link MappedLines mapped file}, without its line terminator. The
+ * line is only decoded into a string the first time it is used as one, so
+ * lines which are only counted, or checked with {@link #startsWith(String)} or
+ * {@link #contains(String)}, never allocate a string.
+ */
+public final class Line implements CharSequence {
+
+    private final MemorySegment segment;
+    private final long offset;
+    private final int length;
+    private final Charset charset;
+
+    private String text;
+
+    Line(MemorySegment segment, long offset, int length, Charset charset) {
+        this.segment = segment;
+        this.offset = offset;
+        this.length = length;
+        this.charset = charset;
+    }
+
+    /**
+     * @return The length of the line in bytes.
+     */
+    public int byteLength() {
+        return length;
+    }
+
+    public byte byteAt(int index) {
+        return segment.get(JAVA_BYTE, offset + index);
+    }
+
+    /**
+     * @return A copy of the bytes of the line.
+     */
+    public byte[] bytes() {
+        return segment.asSlice(offset, length).toArray(JAVA_BYTE);
+    }
+
+    public boolean startsWith(String prefix) {
+        if (!isAsciiComparable(prefix)) {
+            return toString().startsWith(prefix);
+        }
+        return prefix.length() <= length && matchesAt(prefix, 0);
+    }
+
+    public boolean contains(String part) {
+        if (!isAsciiComparable(part)) {
+            return toString().contains(part);
+        }
+        int last = length - part.length();
+        for (int i = 0; i <= last; ++i) {
+            if (matchesAt(part, i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesAt(String part, int at) {
+        for (int i = 0; i < part.length(); ++i) {
+            if (byteAt(at + i) != part.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * ASCII strings can be compared byte for byte if the charset encodes ASCII
+     * as itself, and never uses ASCII bytes within other characters.
+     */
+    private boolean isAsciiComparable(String part) {
+        if (!charset.equals(StandardCharsets.UTF_8) && !charset.equals(StandardCharsets.US_ASCII)
+                && !charset.equals(StandardCharsets.ISO_8859_1)) {
+            return false;
+        }
+        for (int i = 0; i < part.length(); ++i) {
+            if (part.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int length() {
+        return toString().length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    @Override
+    public String toString() {
+        String local = text;
+        if (local == null) {
+            local = new String(bytes(), charset);
+            text = local;
+        }
+        return local;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Line other && toString().equals(other.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+
+}
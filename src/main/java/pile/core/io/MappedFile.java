@@ -0,0 +1,133 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.io;
+
+import static java.lang.foreign.ValueLayout.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import pile.core.AbstractSeq;
+import pile.core.ISeq;
+import pile.core.Seqable;
+import pile.core.Streamable;
+
+/**
+ * A read only file mapped into memory. Mappings are not limited to 2GB, and are
+ * unmapped as soon as the file is {@link #close() closed}. Using the file, or
+ * any bytes or lines from it, after closing throws
+ * {@link IllegalStateException}. <br>
+ * <br>
+ * As a sequence or stream this is the bytes of the file. See
+ * {@link #lines(Charset)} for lines.
+ */
+public class MappedFile implements Closeable, Seqable<Byte>, Streamable<Byte> {
+
+    private final Arena arena;
+    private final MemorySegment segment;
+
+    private MappedFile(Arena arena, MemorySegment segment) {
+        this.arena = arena;
+        this.segment = segment;
+    }
+
+    public static MappedFile open(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            return map(ch, 0, ch.size());
+        }
+    }
+
+    public static MappedFile open(Path path, long offset, long length) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            return map(ch, offset, length);
+        }
+    }
+
+    private static MappedFile map(FileChannel ch, long offset, long length) throws IOException {
+        // Shared so lines may be processed in parallel
+        Arena arena = Arena.ofShared();
+        try {
+            // The mapping outlives the channel
+            return new MappedFile(arena, ch.map(MapMode.READ_ONLY, offset, length, arena));
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+    public MemorySegment segment() {
+        return segment;
+    }
+
+    public long size() {
+        return segment.byteSize();
+    }
+
+    public byte get(long index) {
+        return segment.get(JAVA_BYTE, index);
+    }
+
+    public MappedLines lines(Charset charset) {
+        return new MappedLines(segment, charset);
+    }
+
+    @Override
+    public ISeq<Byte> seq() {
+        return segment.byteSize() == 0 ? ISeq.EMPTY : new ByteSeq(segment, 0);
+    }
+
+    @Override
+    public Stream<Byte> toStream() {
+        return LongStream.range(0, segment.byteSize()).mapToObj(this::get);
+    }
+
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    private static final class ByteSeq extends AbstractSeq<Byte> {
+
+        private final MemorySegment segment;
+        private final long index;
+
+        private ByteSeq(MemorySegment segment, long index) {
+            this.segment = segment;
+            this.index = index;
+        }
+
+        @Override
+        public Byte first() {
+            return segment.get(JAVA_BYTE, index);
+        }
+
+        @Override
+        public ISeq<Byte> next() {
+            long next = index + 1;
+            return next == segment.byteSize() ? ISeq.EMPTY : new ByteSeq(segment, next);
+        }
+    }
+
+}
@@ -0,0 +1,220 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.io;
+
+import static java.lang.foreign.ValueLayout.*;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import pile.core.ISeq;
+import pile.core.Seqable;
+import pile.core.Streamable;
+import pile.core.PCall;
+import pile.nativebase.NativeCore;
+
+/**
+ * The lines of a mapped region, split on '\n' with any trailing '\r' removed.
+ * A final line terminator does not start another line. <br>
+ * <br>
+ * Line ends are found 8 bytes at a time directly in the mapping, and each line
+ * is a {@link Line} view of the mapping until it is used as a string. Streams
+ * of lines split at line boundaries so they may be processed in parallel.
+ */
+public class MappedLines implements Seqable<Line>, Streamable<Line> {
+
+    private static final ValueLayout.OfLong WORD = JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+
+    // Don't split streams into pieces smaller than this
+    private static final long MIN_SPLIT = 64 * 1024;
+
+    private final MemorySegment segment;
+    private final Charset charset;
+
+    MappedLines(MemorySegment segment, Charset charset) {
+        this.segment = segment;
+        this.charset = charset;
+    }
+
+    /**
+     * Reduce the lines without creating a sequence or stream.
+     *
+     * @param fn   (fn [acc line])
+     * @param init
+     * @return The reduced value.
+     * @throws Throwable
+     */
+    public Object reduce(PCall fn, Object init) throws Throwable {
+        Object acc = init;
+        long pos = 0;
+        long end = segment.byteSize();
+        while (pos < end) {
+            long lineEnd = lineEnd(segment, pos, end);
+            acc = fn.invoke(acc, line(pos, lineEnd));
+            pos = lineEnd + 1;
+        }
+        return acc;
+    }
+
+    /**
+     * @return The number of lines, without creating any.
+     */
+    public long count() {
+        long count = 0;
+        long pos = 0;
+        long end = segment.byteSize();
+        while (pos < end) {
+            pos = lineEnd(segment, pos, end) + 1;
+            ++count;
+        }
+        return count;
+    }
+
+    @Override
+    public ISeq<Line> seq() {
+        return NativeCore.seqIterator(iterator());
+    }
+
+    @Override
+    public Iterator<Line> iterator() {
+        return new Iterator<>() {
+            long pos = 0;
+            final long end = segment.byteSize();
+
+            @Override
+            public boolean hasNext() {
+                return pos < end;
+            }
+
+            @Override
+            public Line next() {
+                if (pos >= end) {
+                    throw new NoSuchElementException();
+                }
+                long lineEnd = lineEnd(segment, pos, end);
+                Line out = line(pos, lineEnd);
+                pos = lineEnd + 1;
+                return out;
+            }
+        };
+    }
+
+    @Override
+    public Stream<Line> toStream() {
+        return StreamSupport.stream(new LineSpliterator(0, segment.byteSize()), false);
+    }
+
+    private Line line(long start, long end) {
+        if (end > start && segment.get(JAVA_BYTE, end - 1) == '\r') {
+            --end;
+        }
+        long length = end - start;
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Line at byte " + start + " is too long: " + length);
+        }
+        return new Line(segment, start, (int) length, charset);
+    }
+
+    /**
+     * @return The index of the next '\n', or end if there isn't one.
+     */
+    static long lineEnd(MemorySegment segment, long from, long end) {
+        long i = from;
+        for (; i + Long.BYTES <= end; i += Long.BYTES) {
+            // Bytes equal to '\n' become zero, then find the first zero byte
+            long word = segment.get(WORD, i) ^ (ONES * '\n');
+            long found = (word - ONES) & ~word & HIGHS;
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < end; ++i) {
+            if (segment.get(JAVA_BYTE, i) == '\n') {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    private class LineSpliterator implements Spliterator<Line> {
+
+        private long pos;
+        private final long end;
+
+        private LineSpliterator(long pos, long end) {
+            this.pos = pos;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Line> action) {
+            if (pos >= end) {
+                return false;
+            }
+            long lineEnd = lineEnd(segment, pos, end);
+            action.accept(line(pos, lineEnd));
+            pos = lineEnd + 1;
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Line> action) {
+            long local = pos;
+            while (local < end) {
+                long lineEnd = lineEnd(segment, local, end);
+                action.accept(line(local, lineEnd));
+                local = lineEnd + 1;
+            }
+            pos = local;
+        }
+
+        @Override
+        public Spliterator<Line> trySplit() {
+            long size = end - pos;
+            if (size < MIN_SPLIT) {
+                return null;
+            }
+            long split = lineEnd(segment, pos + size / 2, end) + 1;
+            if (split >= end) {
+                return null;
+            }
+            LineSpliterator prefix = new LineSpliterator(pos, split);
+            pos = split;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - pos;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL | IMMUTABLE;
+        }
+    }
+
+}
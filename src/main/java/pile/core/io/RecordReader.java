@@ -0,0 +1,281 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import pile.core.ISeq;
+import pile.core.PCall;
+import pile.core.Seqable;
+import pile.core.Streamable;
+import pile.nativebase.NativeCore;
+
+/**
+ * Reads framed records, as byte arrays, from a stream. Records are either
+ * lines (split on '\n' with any trailing '\r' removed) or length prefixed (a
+ * 4 byte big endian length, then the record). <br>
+ * <br>
+ * The stream is read through a pooled buffer, and each record is copied out of
+ * it exactly once. Records may be larger than the buffer, up to the max record
+ * size. The records may only be read once, by {@link #reduce(PCall, Object)}
+ * or as a seq or stream. Closing the reader closes the stream.
+ */
+public class RecordReader implements Seqable<byte[]>, Streamable<byte[]>, Closeable {
+
+    public static final int DEFAULT_MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+    private final InputStream in;
+    private final boolean lengthPrefixed;
+    private final int maxRecordSize;
+    private final BufferPool pool;
+
+    private ByteBuffer buffer;
+    private final byte[] buf;
+    private final MemorySegment segment;
+    private int pos = 0, limit = 0;
+    private boolean eof = false;
+
+    // Start of a line longer than the buffer
+    private ByteArrayOutputStream spill;
+
+    private RecordReader(InputStream in, boolean lengthPrefixed, int maxRecordSize, BufferPool pool) {
+        this.in = in;
+        this.lengthPrefixed = lengthPrefixed;
+        this.maxRecordSize = maxRecordSize;
+        this.pool = pool;
+        this.buffer = pool.acquire();
+        this.buf = buffer.array();
+        this.segment = MemorySegment.ofArray(buf);
+    }
+
+    public static RecordReader lines(InputStream in) {
+        return lines(in, DEFAULT_MAX_RECORD_SIZE);
+    }
+
+    public static RecordReader lines(InputStream in, int maxRecordSize) {
+        return new RecordReader(in, false, maxRecordSize, BufferPool.sharedHeap());
+    }
+
+    public static RecordReader lengthPrefixed(InputStream in) {
+        return lengthPrefixed(in, DEFAULT_MAX_RECORD_SIZE);
+    }
+
+    public static RecordReader lengthPrefixed(InputStream in, int maxRecordSize) {
+        return new RecordReader(in, true, maxRecordSize, BufferPool.sharedHeap());
+    }
+
+    /**
+     * @return The next record, or null if there are no more.
+     * @throws IOException If the stream fails, ends within a length prefixed
+     *                     record, or a record is larger than the max size.
+     */
+    public byte[] next() throws IOException {
+        if (buffer == null) {
+            throw new IOException("Reader is closed");
+        }
+        return lengthPrefixed ? nextPrefixed() : nextLine();
+    }
+
+    /**
+     * Reduce the remaining records.
+     *
+     * @param fn   (fn [acc record])
+     * @param init
+     * @return The reduced value.
+     * @throws Throwable
+     */
+    public Object reduce(PCall fn, Object init) throws Throwable {
+        Object acc = init;
+        byte[] record;
+        while ((record = next()) != null) {
+            acc = fn.invoke(acc, record);
+        }
+        return acc;
+    }
+
+    @Override
+    public ISeq<byte[]> seq() {
+        return NativeCore.seqIterator(iterator());
+    }
+
+    @Override
+    public Iterator<byte[]> iterator() {
+        return new Iterator<>() {
+            byte[] pending;
+
+            @Override
+            public boolean hasNext() {
+                if (pending == null) {
+                    try {
+                        pending = RecordReader.this.next();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return pending != null;
+            }
+
+            @Override
+            public byte[] next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                byte[] out = pending;
+                pending = null;
+                return out;
+            }
+        };
+    }
+
+    @Override
+    public Stream<byte[]> toStream() {
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+        }
+        in.close();
+    }
+
+    private byte[] nextLine() throws IOException {
+        for (;;) {
+            int nl = (int) MappedLines.lineEnd(segment, pos, limit);
+            if (nl < limit) {
+                byte[] out = take(nl);
+                pos = nl + 1;
+                return out;
+            }
+            if (eof) {
+                if (pos == limit && (spill == null || spill.size() == 0)) {
+                    return null;
+                }
+                byte[] out = take(limit);
+                pos = limit;
+                return out;
+            }
+            if (pos == 0 && limit == buf.length) {
+                // No line end in a full buffer
+                if (spill == null) {
+                    spill = new ByteArrayOutputStream();
+                }
+                if (spill.size() + limit > maxRecordSize) {
+                    throw new IOException("Record is larger than " + maxRecordSize + " bytes");
+                }
+                spill.write(buf, 0, limit);
+                limit = 0;
+            }
+            fill();
+        }
+    }
+
+    /**
+     * @return The spilled line start, then the buffer up to end, without a
+     *         trailing '\r'.
+     */
+    private byte[] take(int end) throws IOException {
+        int spilled = spill == null ? 0 : spill.size();
+        int length = spilled + end - pos;
+        if (length > maxRecordSize) {
+            throw new IOException("Record is larger than " + maxRecordSize + " bytes");
+        }
+        byte[] out;
+        if (spilled == 0) {
+            out = Arrays.copyOfRange(buf, pos, end);
+        } else {
+            spill.write(buf, pos, end - pos);
+            out = spill.toByteArray();
+            spill.reset();
+        }
+        if (out.length > 0 && out[out.length - 1] == '\r') {
+            out = Arrays.copyOf(out, out.length - 1);
+        }
+        return out;
+    }
+
+    private byte[] nextPrefixed() throws IOException {
+        if (!ensure(4)) {
+            if (pos == limit) {
+                return null;
+            }
+            throw new EOFException("Stream ended within a record length");
+        }
+        int length = ((buf[pos] & 0xff) << 24) | ((buf[pos + 1] & 0xff) << 16) | ((buf[pos + 2] & 0xff) << 8)
+                | (buf[pos + 3] & 0xff);
+        pos += 4;
+        if (length < 0 || length > maxRecordSize) {
+            throw new IOException("Record of " + Integer.toUnsignedString(length) + " bytes is larger than "
+                    + maxRecordSize + " bytes");
+        }
+        byte[] out = new byte[length];
+        int buffered = Math.min(length, limit - pos);
+        System.arraycopy(buf, pos, out, 0, buffered);
+        pos += buffered;
+        // Read the rest of large records directly
+        int read = buffered;
+        while (read < length) {
+            int n = in.read(out, read, length - read);
+            if (n == -1) {
+                throw new EOFException("Stream ended within a record");
+            }
+            read += n;
+        }
+        return out;
+    }
+
+    private boolean ensure(int count) throws IOException {
+        while (limit - pos < count) {
+            if (eof) {
+                return false;
+            }
+            fill();
+        }
+        return true;
+    }
+
+    private void fill() throws IOException {
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        int n = in.read(buf, limit, buf.length - limit);
+        if (n == -1) {
+            eof = true;
+        } else {
+            limit += n;
+        }
+    }
+
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.io;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes records framed for a {@link RecordReader}, either as lines or length
+ * prefixed. Strings are written as UTF-8.
+ */
+public class RecordWriter implements Closeable, Flushable {
+
+    private final OutputStream out;
+    private final boolean lengthPrefixed;
+
+    private RecordWriter(OutputStream out, boolean lengthPrefixed) {
+        this.out = new BufferedOutputStream(out, BufferPool.DEFAULT_BUFFER_SIZE);
+        this.lengthPrefixed = lengthPrefixed;
+    }
+
+    public static RecordWriter lines(OutputStream out) {
+        return new RecordWriter(out, false);
+    }
+
+    public static RecordWriter lengthPrefixed(OutputStream out) {
+        return new RecordWriter(out, true);
+    }
+
+    /**
+     * @param record
+     * @throws IOException
+     * @throws IllegalArgumentException If a line record contains a line end, or
+     *                                  ends with '\r' which would be read as part
+     *                                  of the line end.
+     */
+    public void write(byte[] record) throws IOException {
+        if (lengthPrefixed) {
+            int length = record.length;
+            out.write(length >>> 24);
+            out.write(length >>> 16);
+            out.write(length >>> 8);
+            out.write(length);
+            out.write(record);
+        } else {
+            for (byte b : record) {
+                if (b == '\n') {
+                    throw new IllegalArgumentException("Line records cannot contain a line end");
+                }
+            }
+            if (record.length > 0 && record[record.length - 1] == '\r') {
+                throw new IllegalArgumentException("Line records cannot end with a carriage return");
+            }
+            out.write(record);
+            out.write('\n');
+        }
+    }
+
+    public void write(String record) throws IOException {
+        write(record.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+}
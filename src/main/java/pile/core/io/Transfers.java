@@ -0,0 +1,109 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Copies between channels without passing the bytes through the heap. Files
+ * use {@link FileChannel#transferTo(long, long, WritableByteChannel)}, which
+ * the OS may complete without copying at all (eg. sendfile), and other
+ * channels copy through a pooled direct buffer.
+ */
+public final class Transfers {
+
+    private Transfers() {
+    }
+
+    /**
+     * Copy the rest of the file, from its position, to the destination. The
+     * position of the file is advanced past the copied bytes.
+     *
+     * @param source
+     * @param dest
+     * @return The number of bytes copied.
+     * @throws IOException
+     */
+    public static long transferTo(FileChannel source, WritableByteChannel dest) throws IOException {
+        long start = source.position();
+        long count = source.size() - start;
+        long done = 0;
+        while (done < count) {
+            long n = source.transferTo(start + done, count - done, dest);
+            if (n <= 0) {
+                // Truncated while copying
+                break;
+            }
+            done += n;
+        }
+        source.position(start + done);
+        return done;
+    }
+
+    /**
+     * Append all bytes of the source file to dest, creating it if needed.
+     *
+     * @param source
+     * @param dest
+     * @return The number of bytes copied.
+     * @throws IOException
+     */
+    public static long transferTo(Path source, Path dest) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(dest, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND)) {
+            return transferTo(in, out);
+        }
+    }
+
+    /**
+     * Copy all remaining bytes from source to dest, using a buffer from the pool
+     * unless the source is a file.
+     *
+     * @param source
+     * @param dest
+     * @param pool
+     * @return The number of bytes copied.
+     * @throws IOException
+     */
+    public static long copy(ReadableByteChannel source, WritableByteChannel dest, BufferPool pool)
+            throws IOException {
+        if (source instanceof FileChannel fc) {
+            return transferTo(fc, dest);
+        }
+        ByteBuffer buf = pool.acquire();
+        try {
+            long done = 0;
+            while (source.read(buf) != -1) {
+                buf.flip();
+                while (buf.hasRemaining()) {
+                    done += dest.write(buf);
+                }
+                buf.clear();
+            }
+            return done;
+        } finally {
+            pool.release(buf);
+        }
+    }
+
+}
@@ -0,0 +1,672 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+import pile.collection.PersistentArrayVector;
+import pile.collection.PersistentMap;
+import pile.core.Keyword;
+import pile.core.parse.LexicalEnvironment;
+import pile.core.parse.NumberReader;
+import pile.core.parse.ParserException;
+
+/**
+ * Reads JSON values into persistent collections. <br>
+ * <br>
+ * <ul>
+ * <li>Objects: A {@link PersistentMap}, with string or (optionally)
+ * {@link #keywordize(boolean) keyword} keys.
+ * <li>Arrays: A {@link PersistentArrayVector}.
+ * <li>Numbers: An int, long or BigInteger when integral, otherwise a double.
+ * <li>Strings, true, false and null.
+ * </ul>
+ * Collections are built directly from the elements read, and object keys are
+ * interned through a small cache so repeated keys don't allocate. <br>
+ * <br>
+ * Consecutive top level values (eg. newline delimited JSON) may be read one at a
+ * time. Input from a {@link java.io.Reader} is buffered, so only the value
+ * being read is held in memory. <br>
+ * <br>
+ * In {@link #lazy(boolean) lazy} mode nested objects and arrays are only
+ * scanned, and are decoded the first time they are used. Errors within them are
+ * thrown at that point. The whole input is held in memory in this mode.
+ */
+public class JsonReader implements Iterator<Object>, Closeable {
+
+    private static final String SOURCE = "<json>";
+
+    private static final int KEY_CACHE_SIZE = 512;
+
+    private static final int MAX_DEPTH = 512;
+
+    private final java.io.Reader source;
+    // Null once the whole input is buffered
+    private java.io.Reader in;
+
+    private char[] buf;
+    private int pos, limit;
+
+    // Characters dropped from the front of the buffer, and line tracking, for
+    // errors
+    private long discarded = 0;
+    private int line = 1;
+    private long lineStart = 0;
+
+    private boolean keywordize = false;
+    private boolean lazy = false;
+    private Object[] keyCache = new Object[KEY_CACHE_SIZE];
+
+    // Elements of the collections currently being read.
+    private Object[] stack = new Object[64];
+    private int top = 0;
+    private int depth = 0;
+
+    private JsonReader(java.io.Reader in, char[] buf, int pos, int limit) {
+        this.source = in;
+        this.in = in;
+        this.buf = buf;
+        this.pos = pos;
+        this.limit = limit;
+    }
+
+    public static JsonReader of(CharSequence cs) {
+        if (cs instanceof CharBuffer cb && cb.hasArray()) {
+            return new JsonReader(null, cb.array(), cb.arrayOffset() + cb.position(),
+                    cb.arrayOffset() + cb.limit());
+        }
+        char[] chars = cs.toString().toCharArray();
+        return new JsonReader(null, chars, 0, chars.length);
+    }
+
+    /**
+     * In lazy mode the array must not be modified while there are unrealized
+     * values.
+     *
+     * @param buf
+     * @param offset
+     * @param length
+     * @return
+     */
+    public static JsonReader of(char[] buf, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, buf.length);
+        return new JsonReader(null, buf, offset, offset + length);
+    }
+
+    public static JsonReader of(java.io.Reader in) {
+        return new JsonReader(in, new char[8192], 0, 0);
+    }
+
+    /**
+     * Read the first value of the input.
+     *
+     * @param cs
+     * @return The first value, or null if there are none.
+     */
+    public static Object read(CharSequence cs) {
+        JsonReader reader = of(cs);
+        return reader.hasNext() ? reader.next() : null;
+    }
+
+    /**
+     * Read object keys as keywords rather than strings.
+     *
+     * @param keywordize
+     * @return This reader.
+     */
+    public JsonReader keywordize(boolean keywordize) {
+        this.keywordize = keywordize;
+        Arrays.fill(keyCache, null);
+        return this;
+    }
+
+    /**
+     * Only decode nested objects and arrays when they are first used.
+     *
+     * @param lazy
+     * @return This reader.
+     */
+    public JsonReader lazy(boolean lazy) {
+        this.lazy = lazy;
+        return this;
+    }
+
+    /**
+     *
+     * @return True if there is another value to read.
+     * @throws UncheckedIOException If the underlying reader fails.
+     */
+    @Override
+    public boolean hasNext() {
+        if (lazy && in != null) {
+            readFully();
+        }
+        skipWhitespace();
+        return pos < limit;
+    }
+
+    /**
+     *
+     * @return The next value.
+     * @throws NoSuchElementException If there are no more values.
+     * @throws ParserException        If the input is malformed.
+     */
+    @Override
+    public Object next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return readValue();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (source != null) {
+            source.close();
+        }
+    }
+
+    /**
+     * Decode a value which was skipped in lazy mode.
+     */
+    static Object decodeLazy(char[] buf, int start, int end, boolean keywordize, Object[] keyCache) {
+        JsonReader reader = new JsonReader(null, buf, start, end);
+        reader.keywordize = keywordize;
+        reader.keyCache = keyCache;
+        reader.lazy = true;
+        return reader.readValue();
+    }
+
+    private Object readValue() {
+        skipWhitespace();
+        int c = peek();
+        switch (c) {
+            case '{':
+                ++pos;
+                return readObject();
+            case '[':
+                ++pos;
+                return readArray();
+            case '"':
+                ++pos;
+                return readString();
+            case 't':
+                literal("true");
+                return Boolean.TRUE;
+            case 'f':
+                literal("false");
+                return Boolean.FALSE;
+            case 'n':
+                literal("null");
+                return null;
+            case -1:
+                throw error("Unexpected end of input");
+            default:
+                if (c == '-' || isDigit(c)) {
+                    return readNumber();
+                }
+                throw error("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    /**
+     * In lazy mode nested collections are skipped over rather than read.
+     */
+    private Object readChild() {
+        if (lazy) {
+            skipWhitespace();
+            int c = peek();
+            if (c == '{' || c == '[') {
+                int start = pos;
+                skipCollection();
+                return c == '{' ? new LazyMap(buf, start, pos, keywordize, keyCache)
+                        : new LazyVector(buf, start, pos, keywordize, keyCache);
+            }
+        }
+        return readValue();
+    }
+
+    private PersistentMap readObject() {
+        enter();
+        int base = top;
+        skipWhitespace();
+        if (peek() == '}') {
+            ++pos;
+            --depth;
+            return PersistentMap.EMPTY;
+        }
+        for (;;) {
+            skipWhitespace();
+            if (peek() != '"') {
+                throw error("Expected a string key");
+            }
+            ++pos;
+            push(readKey());
+            skipWhitespace();
+            if (peek() != ':') {
+                throw error("Expected ':'");
+            }
+            ++pos;
+            push(readChild());
+            skipWhitespace();
+            int c = peek();
+            if (c == ',') {
+                ++pos;
+            } else if (c == '}') {
+                ++pos;
+                break;
+            } else {
+                throw error(c == -1 ? "Unexpected end of input, expected '}'" : "Expected ',' or '}'");
+            }
+        }
+        --depth;
+        return toMap(base);
+    }
+
+    private PersistentArrayVector<Object> readArray() {
+        enter();
+        int base = top;
+        skipWhitespace();
+        if (peek() == ']') {
+            ++pos;
+        } else {
+            for (;;) {
+                push(readChild());
+                skipWhitespace();
+                int c = peek();
+                if (c == ',') {
+                    ++pos;
+                } else if (c == ']') {
+                    ++pos;
+                    break;
+                } else {
+                    throw error(c == -1 ? "Unexpected end of input, expected ']'" : "Expected ',' or ']'");
+                }
+            }
+        }
+        --depth;
+        PersistentArrayVector<Object> vec = PersistentArrayVector.of(stack, base, top - base);
+        clear(base);
+        return vec;
+    }
+
+    private void enter() {
+        if (++depth > MAX_DEPTH) {
+            throw error("Values nested deeper than " + MAX_DEPTH);
+        }
+    }
+
+    private void push(Object o) {
+        if (top == stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[top++] = o;
+    }
+
+    private void clear(int base) {
+        Arrays.fill(stack, base, top, null);
+        top = base;
+    }
+
+    private PersistentMap toMap(int base) {
+        Object[] kvs = Arrays.copyOfRange(stack, base, top);
+        clear(base);
+        // Small maps are array maps which don't check for duplicates. Like
+        // most readers, the last duplicate wins.
+        if (kvs.length < 8 && hasDuplicateKeys(kvs)) {
+            PersistentMap map = PersistentMap.EMPTY;
+            for (int i = 0; i < kvs.length; i += 2) {
+                map = map.assoc(kvs[i], kvs[i + 1]);
+            }
+            return map;
+        }
+        return PersistentMap.create(kvs);
+    }
+
+    private static boolean hasDuplicateKeys(Object[] kvs) {
+        for (int i = 0; i < kvs.length; i += 2) {
+            for (int j = i + 2; j < kvs.length; j += 2) {
+                if (kvs[i].equals(kvs[j])) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private Object readKey() {
+        int i = pos;
+        int hash = 0;
+        for (;;) {
+            if (i == limit) {
+                int offset = i - pos;
+                if (!more()) {
+                    throw error("Unexpected end of input while reading string");
+                }
+                i = pos + offset;
+                continue;
+            }
+            char c = buf[i];
+            if (c == '"') {
+                Object key = cachedKey(pos, i - pos, hash);
+                pos = i + 1;
+                return key;
+            } else if (c == '\\' || c < 0x20) {
+                // Rare enough to skip the cache
+                String s = readString();
+                return keywordize ? Keyword.of(s) : s;
+            }
+            hash = 31 * hash + c;
+            ++i;
+        }
+    }
+
+    private Object cachedKey(int start, int len, int hash) {
+        int slot = (hash ^ (hash >>> 16)) & (KEY_CACHE_SIZE - 1);
+        Object cached = keyCache[slot];
+        if (cached != null) {
+            String name = cached instanceof Keyword k ? k.getName() : (String) cached;
+            if (matches(name, start, len)) {
+                return cached;
+            }
+        }
+        String s = new String(buf, start, len);
+        Object key = keywordize ? Keyword.of(s) : s;
+        keyCache[slot] = key;
+        return key;
+    }
+
+    private boolean matches(String name, int start, int len) {
+        if (name.length() != len) {
+            return false;
+        }
+        for (int i = 0; i < len; ++i) {
+            if (name.charAt(i) != buf[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readString() {
+        int i = pos;
+        // Most strings have no escapes
+        for (;;) {
+            if (i == limit) {
+                int offset = i - pos;
+                if (!more()) {
+                    throw error("Unexpected end of input while reading string");
+                }
+                i = pos + offset;
+                continue;
+            }
+            char c = buf[i];
+            if (c == '"') {
+                String s = new String(buf, pos, i - pos);
+                pos = i + 1;
+                return s;
+            } else if (c == '\\') {
+                break;
+            } else if (c < 0x20) {
+                pos = i;
+                throw error("Unescaped control character in string");
+            }
+            ++i;
+        }
+
+        StringBuilder sb = new StringBuilder(i - pos + 16);
+        sb.append(buf, pos, i - pos);
+        pos = i;
+        for (;;) {
+            int c = read();
+            if (c == '"') {
+                return sb.toString();
+            } else if (c == -1) {
+                throw error("Unexpected end of input while reading string");
+            } else if (c < 0x20) {
+                throw error("Unescaped control character in string");
+            } else if (c != '\\') {
+                sb.append((char) c);
+                continue;
+            }
+            int esc = read();
+            switch (esc) {
+                //@formatter:off
+                case '"': sb.append('"'); break;
+                case '\\': sb.append('\\'); break;
+                case '/': sb.append('/'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u': sb.append(readUnicode()); break;
+                case -1: throw error("Unexpected end of input while reading string");
+                default: throw error("Unexpected string escape '\\" + (char) esc + "'");
+                //@formatter:on
+            }
+        }
+    }
+
+    private char readUnicode() {
+        int value = 0;
+        for (int i = 0; i < 4; ++i) {
+            int c = read();
+            int digit = c == -1 ? -1 : Character.digit((char) c, 16);
+            if (digit < 0) {
+                throw error("Invalid unicode escape");
+            }
+            value = (value << 4) | digit;
+        }
+        return (char) value;
+    }
+
+    private Number readNumber() {
+        int len = 0;
+        for (;;) {
+            if (pos + len == limit && !more()) {
+                break;
+            }
+            char c = buf[pos + len];
+            if (!isDigit(c) && c != '-' && c != '+' && c != '.' && c != 'e' && c != 'E') {
+                break;
+            }
+            ++len;
+        }
+        if (!isNumber(pos, pos + len)) {
+            throw error("Invalid number: " + new String(buf, pos, len));
+        }
+        int start = pos;
+        pos += len;
+        return NumberReader.parse(buf, start, start + len);
+    }
+
+    /**
+     * -?(0|[1-9][0-9]*)(\.[0-9]+)?([eE][+-]?[0-9]+)?
+     */
+    private boolean isNumber(int i, int end) {
+        if (i < end && buf[i] == '-') {
+            ++i;
+        }
+        if (i == end || !isDigit(buf[i])) {
+            return false;
+        }
+        if (buf[i] == '0') {
+            ++i;
+        } else {
+            i = digits(i, end);
+        }
+        if (i < end && buf[i] == '.') {
+            int from = ++i;
+            i = digits(i, end);
+            if (i == from) {
+                return false;
+            }
+        }
+        if (i < end && (buf[i] == 'e' || buf[i] == 'E')) {
+            ++i;
+            if (i < end && (buf[i] == '-' || buf[i] == '+')) {
+                ++i;
+            }
+            int from = i;
+            i = digits(i, end);
+            if (i == from) {
+                return false;
+            }
+        }
+        return i == end;
+    }
+
+    private int digits(int i, int end) {
+        while (i < end && isDigit(buf[i])) {
+            ++i;
+        }
+        return i;
+    }
+
+    private void literal(String word) {
+        for (int i = 0; i < word.length(); ++i) {
+            if (read() != word.charAt(i)) {
+                throw error("Invalid literal, expected '" + word + "'");
+            }
+        }
+    }
+
+    /**
+     * Skip over an object or array, only matching brackets and strings.
+     */
+    private void skipCollection() {
+        int open = 0;
+        do {
+            int c = read();
+            switch (c) {
+                case '{', '[' -> ++open;
+                case '}', ']' -> --open;
+                case '"' -> skipString();
+                case '\n' -> newLine();
+                case -1 -> throw error("Unexpected end of input");
+                default -> {
+                }
+            }
+        } while (open > 0);
+    }
+
+    private void skipString() {
+        for (;;) {
+            int c = read();
+            if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                read();
+            } else if (c == -1) {
+                throw error("Unexpected end of input while reading string");
+            }
+        }
+    }
+
+    private void skipWhitespace() {
+        for (;;) {
+            if (pos == limit && !more()) {
+                return;
+            }
+            char c = buf[pos];
+            if (c == '\n') {
+                ++pos;
+                newLine();
+            } else if (c == ' ' || c == '\t' || c == '\r') {
+                ++pos;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void newLine() {
+        ++line;
+        lineStart = discarded + pos;
+    }
+
+    private int peek() {
+        if (pos == limit && !more()) {
+            return -1;
+        }
+        return buf[pos];
+    }
+
+    private int read() {
+        if (pos == limit && !more()) {
+            return -1;
+        }
+        return buf[pos++];
+    }
+
+    /**
+     * Read more input, keeping everything from the current position on.
+     *
+     * @return False at the end of the input.
+     */
+    private boolean more() {
+        if (in == null) {
+            return false;
+        }
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            discarded += pos;
+            limit -= pos;
+            pos = 0;
+        }
+        if (limit == buf.length) {
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+        try {
+            int read = in.read(buf, limit, buf.length - limit);
+            if (read == -1) {
+                in = null;
+                return false;
+            }
+            limit += read;
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Lazy values refer to the buffer, so it may no longer move.
+     */
+    private void readFully() {
+        while (more()) {
+            // more() grows the buffer when it is full
+        }
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private ParserException error(String msg) {
+        long at = discarded + pos;
+        return new ParserException(new LexicalEnvironment(SOURCE, (int) (at - lineStart), line) + ": " + msg);
+    }
+
+}
@@ -0,0 +1,278 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.json;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.CharBuffer;
+import java.util.Map;
+
+import pile.core.Keyword;
+
+/**
+ * Writes values as JSON to an {@link Appendable}, through a buffer which is
+ * drained to it when full and on {@link #flush()}. <br>
+ * <br>
+ * <ul>
+ * <li>Maps: Objects. Keys are written as strings, keywords by their name.
+ * <li>Lists, sets, seqs and other iterables, and arrays: Arrays.
+ * <li>Strings, characters and keywords: Strings.
+ * <li>Numbers, booleans and nil.
+ * </ul>
+ * Nested values read {@link JsonReader#lazy(boolean) lazily} which haven't
+ * been used yet are written as their source text. Other values, and
+ * non-finite doubles, are an {@link IllegalArgumentException}.
+ */
+public class JsonWriter implements Flushable {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Appendable out;
+    private final char[] buf = new char[8192];
+    private int pos = 0;
+
+    public JsonWriter(Appendable out) {
+        this.out = out;
+    }
+
+    /**
+     * @param o
+     * @return The value as a JSON string.
+     * @throws IllegalArgumentException If the value cannot be written as JSON.
+     */
+    public static String writeString(Object o) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            new JsonWriter(sb).write(o).flush();
+        } catch (IOException e) {
+            // StringBuilders don't throw
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write a value. It may be buffered until {@link #flush()}.
+     *
+     * @param o
+     * @return This writer.
+     * @throws IOException
+     * @throws IllegalArgumentException If the value cannot be written as JSON.
+     */
+    public JsonWriter write(Object o) throws IOException {
+        writeValue(o);
+        return this;
+    }
+
+    /**
+     * Drain the buffer to the output, and flush the output if it's
+     * {@link Flushable}.
+     */
+    @Override
+    public void flush() throws IOException {
+        drain();
+        if (out instanceof Flushable f) {
+            f.flush();
+        }
+    }
+
+    private void writeValue(Object o) throws IOException {
+        if (o == null) {
+            raw("null");
+        } else if (o instanceof String s) {
+            string(s);
+        } else if (o instanceof Boolean b) {
+            raw(b ? "true" : "false");
+        } else if (o instanceof Integer || o instanceof Long || o instanceof Short || o instanceof Byte) {
+            integer(((Number) o).longValue());
+        } else if (o instanceof Double || o instanceof Float) {
+            double d = ((Number) o).doubleValue();
+            if (!Double.isFinite(d)) {
+                throw new IllegalArgumentException("JSON numbers must be finite: " + d);
+            }
+            raw(o.toString());
+        } else if (o instanceof BigInteger || o instanceof BigDecimal) {
+            raw(o.toString());
+        } else if (o instanceof Keyword k) {
+            string(name(k));
+        } else if (o instanceof Character c) {
+            string(String.valueOf(c));
+        } else if (o instanceof LazyMap<?, ?> lazy && lazy.appendSource(this)) {
+            // Written as is
+        } else if (o instanceof LazyVector<?> lazy && lazy.appendSource(this)) {
+            // Written as is
+        } else if (o instanceof Map<?, ?> map) {
+            object(map);
+        } else if (o instanceof Iterable<?> it) {
+            char sep = '[';
+            for (Object v : it) {
+                raw(sep);
+                sep = ',';
+                writeValue(v);
+            }
+            if (sep == '[') {
+                raw('[');
+            }
+            raw(']');
+        } else if (o.getClass().isArray()) {
+            raw('[');
+            int len = Array.getLength(o);
+            for (int i = 0; i < len; ++i) {
+                if (i > 0) {
+                    raw(',');
+                }
+                writeValue(Array.get(o, i));
+            }
+            raw(']');
+        } else if (o instanceof Number n) {
+            raw(n.toString());
+        } else {
+            throw new IllegalArgumentException("Cannot write " + o.getClass().getName() + " as JSON");
+        }
+    }
+
+    private void object(Map<?, ?> map) throws IOException {
+        char sep = '{';
+        for (var entry : map.entrySet()) {
+            raw(sep);
+            sep = ',';
+            Object key = entry.getKey();
+            string(key instanceof Keyword k ? name(k) : String.valueOf(key));
+            raw(':');
+            writeValue(entry.getValue());
+        }
+        if (sep == '{') {
+            raw('{');
+        }
+        raw('}');
+    }
+
+    private static String name(Keyword k) {
+        String ns = k.getNamespace();
+        return ns == null ? k.getName() : ns + "/" + k.getName();
+    }
+
+    private void integer(long v) throws IOException {
+        if (v == Long.MIN_VALUE) {
+            raw(Long.toString(v));
+            return;
+        }
+        if (buf.length - pos < 20) {
+            drain();
+        }
+        if (v < 0) {
+            buf[pos++] = '-';
+            v = -v;
+        }
+        int digits = 1;
+        for (long rest = v / 10; rest > 0; rest /= 10) {
+            ++digits;
+        }
+        int at = pos + digits;
+        pos = at;
+        do {
+            buf[--at] = (char) ('0' + v % 10);
+            v /= 10;
+        } while (v > 0);
+    }
+
+    private void string(String s) throws IOException {
+        raw('"');
+        int len = s.length();
+        int run = 0;
+        for (int i = 0; i < len; ++i) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+            raw(s, run, i);
+            run = i + 1;
+            switch (c) {
+                //@formatter:off
+                case '"': raw("\\\""); break;
+                case '\\': raw("\\\\"); break;
+                case '\n': raw("\\n"); break;
+                case '\r': raw("\\r"); break;
+                case '\t': raw("\\t"); break;
+                case '\b': raw("\\b"); break;
+                case '\f': raw("\\f"); break;
+                default: raw("\\u00"); raw(HEX[c >> 4]); raw(HEX[c & 0xF]); break;
+                //@formatter:on
+            }
+        }
+        raw(s, run, len);
+        raw('"');
+    }
+
+    private void raw(char c) throws IOException {
+        if (pos == buf.length) {
+            drain();
+        }
+        buf[pos++] = c;
+    }
+
+    private void raw(String s) throws IOException {
+        raw(s, 0, s.length());
+    }
+
+    private void raw(String s, int from, int to) throws IOException {
+        while (from < to) {
+            if (pos == buf.length) {
+                drain();
+            }
+            int count = Math.min(to - from, buf.length - pos);
+            s.getChars(from, from + count, buf, pos);
+            pos += count;
+            from += count;
+        }
+    }
+
+    void raw(char[] chars, int offset, int length) throws IOException {
+        if (length > buf.length - pos) {
+            drain();
+            if (length > buf.length) {
+                append(chars, offset, length);
+                return;
+            }
+        }
+        System.arraycopy(chars, offset, buf, pos, length);
+        pos += length;
+    }
+
+    private void drain() throws IOException {
+        append(buf, 0, pos);
+        pos = 0;
+    }
+
+    private void append(char[] chars, int offset, int length) throws IOException {
+        if (length == 0) {
+            return;
+        }
+        if (out instanceof Writer w) {
+            w.write(chars, offset, length);
+        } else if (out instanceof StringBuilder sb) {
+            sb.append(chars, offset, length);
+        } else {
+            out.append(CharBuffer.wrap(chars, offset, length));
+        }
+    }
+
+}
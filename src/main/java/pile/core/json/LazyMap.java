@@ -0,0 +1,116 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.json;
+
+import pile.collection.PersistentMap;
+import pile.core.ISeq;
+import pile.util.Pair;
+
+/**
+ * A JSON object which is decoded the first time it is used.
+ *
+ * @see JsonReader#lazy(boolean)
+ */
+final class LazyMap<K, V> extends PersistentMap<K, V> {
+
+    private final char[] buf;
+    private final int start, end;
+    private final boolean keywordize;
+    private final Object[] keyCache;
+
+    // Decoding twice on a race is harmless
+    private volatile PersistentMap<K, V> map;
+
+    LazyMap(char[] buf, int start, int end, boolean keywordize, Object[] keyCache) {
+        this.buf = buf;
+        this.start = start;
+        this.end = end;
+        this.keywordize = keywordize;
+        this.keyCache = keyCache;
+    }
+
+    boolean isRealized() {
+        return map != null;
+    }
+
+    /**
+     * Append the source text of the object, if it hasn't been decoded.
+     *
+     * @return True if the text was appended.
+     */
+    boolean appendSource(JsonWriter writer) throws java.io.IOException {
+        if (map != null) {
+            return false;
+        }
+        writer.raw(buf, start, end - start);
+        return true;
+    }
+
+    private PersistentMap<K, V> map() {
+        PersistentMap<K, V> local = map;
+        if (local == null) {
+            local = (PersistentMap<K, V>) JsonReader.decodeLazy(buf, start, end, keywordize, keyCache);
+            map = local;
+        }
+        return local;
+    }
+
+    @Override
+    public Pair<K, V> entryAt(K key) {
+        return map().entryAt(key);
+    }
+
+    @Override
+    public int count() {
+        return map().count();
+    }
+
+    @Override
+    public ISeq<Entry<K, V>> seq() {
+        return map().seq();
+    }
+
+    @Override
+    public PersistentMap meta() {
+        return PersistentMap.EMPTY;
+    }
+
+    @Override
+    public PersistentMap<K, V> withMeta(PersistentMap newMeta) {
+        return map().withMeta(newMeta);
+    }
+
+    @Override
+    public PersistentMap<K, V> assoc(K key, V val) {
+        return map().assoc(key, val);
+    }
+
+    @Override
+    public PersistentMap<K, V> dissoc(K key) {
+        return map().dissoc(key);
+    }
+
+    @Override
+    public PersistentMap<K, V> dissoc(K key, V val) {
+        return map().dissoc(key, val);
+    }
+
+    @Override
+    protected PersistentMap<K, V> assocGeneric(Object key, Object val) {
+        return map().assoc((K) key, (V) val);
+    }
+
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.json;
+
+import java.util.Iterator;
+
+import pile.collection.Associative;
+import pile.collection.PersistentMap;
+import pile.collection.PersistentVector;
+import pile.core.ISeq;
+import pile.util.Pair;
+
+/**
+ * A JSON array which is decoded the first time it is used.
+ *
+ * @see JsonReader#lazy(boolean)
+ */
+final class LazyVector<E> extends PersistentVector<E> {
+
+    private final char[] buf;
+    private final int start, end;
+    private final boolean keywordize;
+    private final Object[] keyCache;
+
+    // Decoding twice on a race is harmless
+    private volatile PersistentVector<E> vec;
+
+    LazyVector(char[] buf, int start, int end, boolean keywordize, Object[] keyCache) {
+        this.buf = buf;
+        this.start = start;
+        this.end = end;
+        this.keywordize = keywordize;
+        this.keyCache = keyCache;
+    }
+
+    boolean isRealized() {
+        return vec != null;
+    }
+
+    /**
+     * Append the source text of the array, if it hasn't been decoded.
+     *
+     * @return True if the text was appended.
+     */
+    boolean appendSource(JsonWriter writer) throws java.io.IOException {
+        if (vec != null) {
+            return false;
+        }
+        writer.raw(buf, start, end - start);
+        return true;
+    }
+
+    private PersistentVector<E> vec() {
+        PersistentVector<E> local = vec;
+        if (local == null) {
+            local = (PersistentVector<E>) JsonReader.decodeLazy(buf, start, end, keywordize, keyCache);
+            vec = local;
+        }
+        return local;
+    }
+
+    @Override
+    public int count() {
+        return vec().count();
+    }
+
+    @Override
+    public E get(int index) {
+        return vec().get(index);
+    }
+
+    @Override
+    public boolean containsKey(Integer key) {
+        return vec().containsKey(key);
+    }
+
+    @Override
+    public Pair<Integer, E> entryAt(Integer key) {
+        return vec().entryAt(key);
+    }
+
+    @Override
+    public Associative<Integer, E> assoc(Integer key, E val) {
+        return vec().assoc(key, val);
+    }
+
+    @Override
+    public Associative<Integer, E> dissoc(Integer key, E val) {
+        return vec().dissoc(key, val);
+    }
+
+    @Override
+    public Associative<Integer, E> dissoc(Integer key) {
+        return vec().dissoc(key);
+    }
+
+    @Override
+    public PersistentVector<E> conj(E t) {
+        return vec().conj(t);
+    }
+
+    @Override
+    public ISeq<E> seq() {
+        return vec().seq();
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return vec().iterator();
+    }
+
+    @Override
+    public PersistentMap meta() {
+        return PersistentMap.EMPTY;
+    }
+
+    @Override
+    public PersistentVector<E> withMeta(PersistentMap newMeta) {
+        return (PersistentVector<E>) vec().withMeta(newMeta);
+    }
+
+}
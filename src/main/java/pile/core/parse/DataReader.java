@@ -0,0 +1,483 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.parse;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+import pile.collection.PersistentArrayVector;
+import pile.collection.PersistentList;
+import pile.collection.PersistentMap;
+import pile.collection.PersistentSet;
+import pile.core.Keyword;
+import pile.core.Symbol;
+
+/**
+ * A reader for pile data, as opposed to syntax. Reads the same literals as
+ * {@link PileParser#parseData(java.io.Reader)}:
+ * <ul>
+ * <li>nil, true, false
+ * <li>Numbers, with the same suffixes as the syntax reader (1, 1L, 1.5, 1.5f,
+ * 1N, 1.5b)
+ * <li>Strings, characters, keywords and symbols
+ * <li>Lists, vectors, maps, sets and #_ discards
+ * </ul>
+ * Unlike the syntax reader no lexical metadata is attached to the results and
+ * reader macros (quote, deref, metadata, anonymous functions, regexes) are not
+ * supported. The whole input is held in a {@code char[]} which is scanned once,
+ * and collections are built directly from the elements read rather than element
+ * by element. <br>
+ * <br>
+ * Line and column numbers are only computed when reporting an error.
+ */
+public class DataReader {
+
+    private static final String SOURCE = "<data>";
+
+    // ASCII characters which may appear in a symbol, see SymbolReader.
+    private static final boolean[] SYMBOL_CHARS = new boolean[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; ++c) {
+            SYMBOL_CHARS[c] = true;
+        }
+        for (char c = 'A'; c <= 'Z'; ++c) {
+            SYMBOL_CHARS[c] = true;
+        }
+        for (char c = '0'; c <= '9'; ++c) {
+            SYMBOL_CHARS[c] = true;
+        }
+        for (char c : "$&*+!-_'?<>=/%#.:".toCharArray()) {
+            SYMBOL_CHARS[c] = true;
+        }
+    }
+
+    private final char[] buf;
+    private final int offset, end;
+    private int pos;
+
+    // Elements of the collections currently being read.
+    private Object[] stack = new Object[64];
+    private int top = 0;
+
+    public DataReader(char[] buf, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, buf.length);
+        this.buf = buf;
+        this.offset = offset;
+        this.pos = offset;
+        this.end = offset + length;
+    }
+
+    public DataReader(CharSequence cs) {
+        if (cs instanceof CharBuffer cb && cb.hasArray()) {
+            this.buf = cb.array();
+            this.offset = cb.arrayOffset() + cb.position();
+            this.pos = offset;
+            this.end = cb.arrayOffset() + cb.limit();
+        } else {
+            this.buf = cs.toString().toCharArray();
+            this.offset = 0;
+            this.pos = 0;
+            this.end = buf.length;
+        }
+    }
+
+    /**
+     * Read the first form of the input.
+     *
+     * @param cs
+     * @return The first form, or null if there are none.
+     */
+    public static Object read(CharSequence cs) {
+        DataReader reader = new DataReader(cs);
+        return reader.hasNext() ? reader.next() : null;
+    }
+
+    /**
+     * Read the first form of the input. The reader is read fully.
+     *
+     * @param r
+     * @return The first form, or null if there are none.
+     */
+    public static Object read(java.io.Reader r) {
+        char[] chars = new char[8192];
+        int len = 0;
+        try {
+            int read;
+            while ((read = r.read(chars, len, chars.length - len)) != -1) {
+                len += read;
+                if (len == chars.length) {
+                    chars = Arrays.copyOf(chars, chars.length * 2);
+                }
+            }
+        } catch (IOException e) {
+            throw new ParserException(e);
+        }
+        DataReader reader = new DataReader(chars, 0, len);
+        return reader.hasNext() ? reader.next() : null;
+    }
+
+    /**
+     *
+     * @return True if there is another form to read.
+     */
+    public boolean hasNext() {
+        skipIgnored();
+        return pos < end;
+    }
+
+    /**
+     *
+     * @return The next form.
+     * @throws NoSuchElementException If there are no more forms.
+     * @throws ParserException        If the input is malformed.
+     */
+    public Object next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return readForm();
+    }
+
+    private Object readForm() {
+        skipIgnored();
+        if (pos >= end) {
+            throw error("Unexpected end of input");
+        }
+        char c = buf[pos];
+        switch (c) {
+            case '(': {
+                ++pos;
+                int base = readElements(')');
+                if (base == top) {
+                    return PersistentList.EMPTY;
+                }
+                return PersistentList.fromList(Arrays.asList(pop(base)));
+            }
+            case '[': {
+                ++pos;
+                int base = readElements(']');
+                PersistentArrayVector<Object> vec = PersistentArrayVector.of(stack, base, top - base);
+                clear(base);
+                return vec;
+            }
+            case '{': {
+                ++pos;
+                return toMap(readElements('}'));
+            }
+            case '"':
+                return readString();
+            case ':':
+                return readKeyword();
+            case '\\':
+                return readCharacter();
+            case '#': {
+                if (pos + 1 < end && buf[pos + 1] == '{') {
+                    pos += 2;
+                    int base = readElements('}');
+                    return PersistentSet.fromIterable(Arrays.asList(pop(base)));
+                }
+                throw error("Unsupported dispatch character");
+            }
+            case ')':
+            case ']':
+            case '}':
+                throw error("Unexpected '" + c + "'");
+            default:
+                return readToken();
+        }
+    }
+
+    /**
+     * Read elements onto the stack until the closing character.
+     *
+     * @param close
+     * @return The stack index of the first element.
+     */
+    private int readElements(char close) {
+        int base = top;
+        for (;;) {
+            skipIgnored();
+            if (pos >= end) {
+                throw error("Unexpected end of input, expected '" + close + "'");
+            }
+            if (buf[pos] == close) {
+                ++pos;
+                return base;
+            }
+            Object o = readForm();
+            if (top == stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            stack[top++] = o;
+        }
+    }
+
+    private Object[] pop(int base) {
+        Object[] out = Arrays.copyOfRange(stack, base, top);
+        clear(base);
+        return out;
+    }
+
+    private void clear(int base) {
+        Arrays.fill(stack, base, top, null);
+        top = base;
+    }
+
+    private PersistentMap toMap(int base) {
+        int size = top - base;
+        if (size % 2 != 0) {
+            throw error("Map literal must contain an even number of forms");
+        }
+        Object[] kvs = pop(base);
+        PersistentMap map = PersistentMap.create(kvs);
+        // Small maps are array maps which don't check for duplicates
+        boolean duplicate = size <= 16 ? hasDuplicateKeys(kvs) : map.count() != size / 2;
+        if (duplicate) {
+            throw error("Duplicate key in map literal");
+        }
+        return map;
+    }
+
+    private static boolean hasDuplicateKeys(Object[] kvs) {
+        for (int i = 0; i < kvs.length; i += 2) {
+            for (int j = i + 2; j < kvs.length; j += 2) {
+                if (Objects.equals(kvs[i], kvs[j])) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private String readString() {
+        int start = ++pos;
+        if (pos + 1 < end && buf[pos] == '"' && buf[pos + 1] == '"') {
+            throw error("Triple quoted strings are not supported in data");
+        }
+        // Most strings have no escapes
+        while (pos < end) {
+            char c = buf[pos];
+            if (c == '"') {
+                return new String(buf, start, pos++ - start);
+            } else if (c == '\\') {
+                break;
+            }
+            ++pos;
+        }
+
+        StringBuilder sb = new StringBuilder(pos - start + 16);
+        sb.append(buf, start, pos - start);
+        while (pos < end) {
+            char c = buf[pos++];
+            if (c == '"') {
+                return sb.toString();
+            } else if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (pos >= end) {
+                break;
+            }
+            char esc = buf[pos++];
+            switch (esc) {
+                //@formatter:off
+                case 't': sb.append('\t'); break;
+                case 'b': sb.append('\b'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 'f': sb.append('\f'); break;
+                case '"': sb.append('"'); break;
+                case '\'': sb.append('\''); break;
+                case '\\': sb.append('\\'); break;
+                case 'u': sb.append(readUnicode()); break;
+                default: throw error("Unexpected string escape '\\" + esc + "'");
+                //@formatter:on
+            }
+        }
+        throw error("Unexpected end of input while reading string");
+    }
+
+    private char readUnicode() {
+        if (pos + 4 > end) {
+            throw error("Unexpected end of input while reading unicode escape");
+        }
+        int value = 0;
+        for (int i = 0; i < 4; ++i) {
+            int digit = Character.digit(buf[pos++], 16);
+            if (digit < 0) {
+                throw error("Invalid unicode escape");
+            }
+            value = (value << 4) | digit;
+        }
+        return (char) value;
+    }
+
+    private Keyword readKeyword() {
+        int start = ++pos;
+        scanToken();
+        if (pos == start) {
+            throw error("Empty keyword");
+        }
+        int slash = indexOf('/', start, pos);
+        if (slash < 0 || slash == start || slash == pos - 1) {
+            return Keyword.of(null, new String(buf, start, pos - start));
+        }
+        return Keyword.of(new String(buf, start, slash - start), new String(buf, slash + 1, pos - slash - 1));
+    }
+
+    private Character readCharacter() {
+        int start = ++pos;
+        if (pos >= end) {
+            throw error("Unexpected end of input while reading character");
+        }
+        scanToken();
+        if (pos == start) {
+            // \( \space-less \, etc.
+            return buf[pos++];
+        }
+        if (pos - start == 1) {
+            return buf[start];
+        }
+        String name = new String(buf, start, pos - start);
+        return switch (name) {
+            case "space" -> ' ';
+            case "newline" -> '\n';
+            case "tab" -> '\t';
+            case "return" -> '\r';
+            case "backspace" -> '\b';
+            case "formfeed" -> '\f';
+            default -> {
+                if (name.length() == 5 && name.charAt(0) == 'u') {
+                    pos = start + 1;
+                    yield readUnicode();
+                }
+                throw error("Unexpected character literal name " + name);
+            }
+        };
+    }
+
+    private Object readToken() {
+        int start = pos;
+        scanToken();
+        int len = pos - start;
+        if (len == 0) {
+            throw error("Unexpected character '" + buf[pos] + "'");
+        }
+
+        char first = buf[start];
+        boolean negative = first == '-' && len > 1 && isDigit(buf[start + 1]);
+        if (isDigit(first) || negative) {
+            return readNumber(start, len);
+        }
+
+        if (len == 3 && first == 'n' && buf[start + 1] == 'i' && buf[start + 2] == 'l') {
+            return null;
+        }
+        String token = new String(buf, start, len);
+        switch (token) {
+            case "true":
+                return true;
+            case "false":
+                return false;
+        }
+        int slash = token.indexOf('/');
+        if (slash <= 0 || slash == len - 1) {
+            // /, /', foo/
+            return new Symbol(token);
+        }
+        if (token.indexOf('/', slash + 1) >= 0) {
+            throw error("Unexpected symbol part size: " + token);
+        }
+        return new Symbol(token.substring(0, slash), token.substring(slash + 1));
+    }
+
+    private Number readNumber(int start, int len) {
+        try {
+            return NumberReader.parse(buf, start, start + len);
+        } catch (NumberFormatException e) {
+            throw error("Invalid number: " + new String(buf, start, len), e);
+        }
+    }
+
+    private void scanToken() {
+        while (pos < end && isSymbolChar(buf[pos])) {
+            ++pos;
+        }
+    }
+
+    private void skipIgnored() {
+        while (pos < end) {
+            char c = buf[pos];
+            if (c == ',' || Character.isWhitespace(c)) {
+                ++pos;
+            } else if (c == ';') {
+                while (pos < end && buf[pos] != '\n') {
+                    ++pos;
+                }
+            } else if (c == '#' && pos + 1 < end && buf[pos + 1] == '_') {
+                pos += 2;
+                readForm();
+            } else {
+                return;
+            }
+        }
+    }
+
+    private int indexOf(char c, int from, int to) {
+        for (int i = from; i < to; ++i) {
+            if (buf[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isSymbolChar(char c) {
+        if (c < 128) {
+            return SYMBOL_CHARS[c];
+        }
+        return Character.isAlphabetic(c) || Character.isDigit(c);
+    }
+
+    private ParserException error(String msg) {
+        return error(msg, null);
+    }
+
+    private ParserException error(String msg, Throwable cause) {
+        // Only work out where we are when something went wrong.
+        int line = 1;
+        int column = 0;
+        int at = Math.min(pos, end);
+        for (int i = offset; i < at; ++i) {
+            if (buf[i] == '\n') {
+                ++line;
+                column = 0;
+            } else {
+                ++column;
+            }
+        }
+        return new ParserException(new LexicalEnvironment(SOURCE, column, line) + ": " + msg, cause);
+    }
+
+}
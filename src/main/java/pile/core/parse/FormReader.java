@@ -0,0 +1,440 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.parse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Reads top level forms from a {@link java.io.Reader} one at a time, as they
+ * are requested, rather than parsing the whole input up front like
+ * {@link PileParser#parse(java.io.Reader, String)}. <br>
+ * <br>
+ * The text of each top level form is first cut out of the input by matching
+ * brackets and strings, then read as either syntax (with lexical metadata) or
+ * {@link DataReader data}. Only one form is held in memory at a time, and no
+ * form may be larger than the max form size. <br>
+ * <br>
+ * A form which fails to parse does not end the iteration. The error is thrown
+ * from {@link #next()} (or passed to the {@link #onError(Consumer) error
+ * handler}) and reading resumes. If the form couldn't be cut out of the input
+ * (eg. unbalanced brackets) reading resumes at the line after the one the form
+ * started on, so an unclosed form on one line doesn't swallow the lines after
+ * it.
+ */
+public class FormReader implements Iterator<Object>, Closeable {
+
+    public static final int DEFAULT_MAX_FORM_SIZE = 64 * 1024 * 1024;
+
+    private java.io.Reader in;
+    private final String source;
+    private final boolean data;
+    private final int maxFormSize;
+    private Consumer<? super ParserException> onError;
+
+    private final char[] buf = new char[8192];
+    private int pos = 0, limit = 0;
+    private int line = 1, column = 0;
+
+    // Text of the form being read
+    private final StringBuilder form = new StringBuilder();
+
+    private boolean hasPending = false;
+    private Object pending;
+    private ParserException pendingError;
+
+    private FormReader(java.io.Reader in, String source, boolean data, int maxFormSize) {
+        this.in = in;
+        this.source = source;
+        this.data = data;
+        this.maxFormSize = maxFormSize;
+    }
+
+    /**
+     * Read syntax forms, as the compiler would.
+     *
+     * @param in
+     * @param source The file name to use in lexical metadata.
+     * @return
+     */
+    public static FormReader syntax(java.io.Reader in, String source) {
+        return new FormReader(in, source, false, DEFAULT_MAX_FORM_SIZE);
+    }
+
+    /**
+     * Read data forms, see {@link DataReader}.
+     *
+     * @param in
+     * @return
+     */
+    public static FormReader data(java.io.Reader in) {
+        return data(in, DEFAULT_MAX_FORM_SIZE);
+    }
+
+    public static FormReader data(java.io.Reader in, int maxFormSize) {
+        return new FormReader(in, "<data>", true, maxFormSize);
+    }
+
+    /**
+     * Pass forms which fail to parse to the provided handler and skip them,
+     * rather than throwing them from {@link #next()}.
+     *
+     * @param handler
+     * @return This reader.
+     */
+    public FormReader onError(Consumer<? super ParserException> handler) {
+        this.onError = handler;
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            while (!hasPending) {
+                skipIgnored();
+                if (peek() == -1) {
+                    return false;
+                }
+                readPending();
+            }
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return The next form.
+     * @throws ParserException If the next form could not be read. The following
+     *                         forms may still be read.
+     */
+    @Override
+    public Object next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        hasPending = false;
+        Object out = pending;
+        ParserException error = pendingError;
+        pending = null;
+        pendingError = null;
+        if (error != null) {
+            throw error;
+        }
+        return out;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void readPending() throws IOException {
+        int startLine = line;
+        int startColumn = column;
+        form.setLength(0);
+        try {
+            scanForm();
+        } catch (ParserException e) {
+            resumeAfterLine(startLine);
+            setError(e);
+            return;
+        }
+
+        try {
+            if (data) {
+                DataReader reader = new DataReader(form);
+                if (reader.hasNext()) {
+                    setPending(reader.next());
+                }
+            } else {
+                LexicalEnvironment env = new LexicalEnvironment(source, startColumn, startLine);
+                Optional<ParserResult> result = PileParser.parseSingle(env, new StringReader(form.toString()));
+                // #_ results are empty
+                if (result.isPresent() && result.get().tag() != null) {
+                    setPending(result.get().result());
+                }
+            }
+        } catch (RuntimeException e) {
+            LexicalEnvironment env = new LexicalEnvironment(source, startColumn, startLine);
+            ParserException error = new ParserException(env, "Could not read form: " + e.getMessage());
+            error.initCause(e);
+            setError(error);
+        }
+    }
+
+    private void setPending(Object o) {
+        hasPending = true;
+        pending = o;
+    }
+
+    private void setError(ParserException e) {
+        if (onError != null) {
+            onError.accept(e);
+        } else {
+            hasPending = true;
+            pendingError = e;
+        }
+    }
+
+    private void scanForm() throws IOException {
+        skipInForm();
+        int c = peek();
+        switch (c) {
+            case -1 -> throw error("Unexpected end of input");
+            case '\'', '`', '@' -> {
+                take();
+                scanForm();
+            }
+            case '~' -> {
+                take();
+                if (peek() == '@') {
+                    take();
+                }
+                scanForm();
+            }
+            case '^' -> {
+                // Metadata and its target
+                take();
+                scanForm();
+                scanForm();
+            }
+            case '#' -> {
+                take();
+                int next = peek();
+                if (next == '_' || next == '\'') {
+                    take();
+                    scanForm();
+                } else if (next == '"') {
+                    // Regexes have no escapes
+                    take();
+                    while (take() != '"') {
+                    }
+                } else if (next == '{' || next == '(') {
+                    scanForm();
+                } else {
+                    scanToken();
+                }
+            }
+            case '(' -> scanCollection(')');
+            case '[' -> scanCollection(']');
+            case '{' -> scanCollection('}');
+            case ')', ']', '}' -> {
+                take();
+                throw error("Unexpected '" + (char) c + "'");
+            }
+            case '"' -> scanString();
+            default -> scanToken();
+        }
+    }
+
+    private void scanCollection(char close) throws IOException {
+        take();
+        for (;;) {
+            skipInForm();
+            int c = peek();
+            if (c == close) {
+                take();
+                return;
+            }
+            if (c == ')' || c == ']' || c == '}') {
+                take();
+                throw error("Unexpected '" + (char) c + "', expected '" + close + "'");
+            }
+            scanForm();
+        }
+    }
+
+    private void scanString() throws IOException {
+        take();
+        if (ensure(2) && buf[pos] == '"' && buf[pos + 1] == '"') {
+            // """ ... """
+            take();
+            take();
+            int quotes = 0;
+            while (quotes < 3) {
+                quotes = take() == '"' ? quotes + 1 : 0;
+            }
+            return;
+        }
+        for (;;) {
+            char c = take();
+            if (c == '\\') {
+                take();
+            } else if (c == '"') {
+                return;
+            }
+        }
+    }
+
+    private void scanToken() throws IOException {
+        for (;;) {
+            int c = peek();
+            if (c == '\\') {
+                // Character literals: \( \space
+                take();
+                take();
+                continue;
+            }
+            if (c == -1 || isSeparator(c)) {
+                return;
+            }
+            switch (c) {
+                case '(', ')', '[', ']', '{', '}', '"', ';':
+                    return;
+            }
+            take();
+        }
+    }
+
+    /**
+     * Skip whitespace and comments between top level forms.
+     */
+    private void skipIgnored() throws IOException {
+        for (;;) {
+            int c = peek();
+            if (c == ';') {
+                skipLine();
+            } else if (c != -1 && isSeparator(c)) {
+                advance();
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Keep whitespace and comments within a form, so lexical positions still
+     * line up.
+     */
+    private void skipInForm() throws IOException {
+        for (;;) {
+            int c = peek();
+            if (c == ';') {
+                while (peek() != -1 && take() != '\n') {
+                }
+            } else if (c != -1 && isSeparator(c)) {
+                take();
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Continue reading from the start of the line after the failed form's first
+     * line, replaying what was already consumed past it.
+     *
+     * @param startLine The line the failed form started on.
+     */
+    private void resumeAfterLine(int startLine) throws IOException {
+        int newline = form.indexOf("\n");
+        if (newline < 0) {
+            skipLine();
+            return;
+        }
+        String rest = form.substring(newline + 1) + new String(buf, pos, limit - pos);
+        if (!rest.isEmpty()) {
+            PushbackReader replay = new PushbackReader(in, rest.length());
+            replay.unread(rest.toCharArray());
+            in = replay;
+        }
+        pos = limit = 0;
+        line = startLine + 1;
+        column = 0;
+    }
+
+    private void skipLine() throws IOException {
+        int c;
+        while ((c = peek()) != -1) {
+            advance();
+            if (c == '\n') {
+                return;
+            }
+        }
+    }
+
+    private static boolean isSeparator(int c) {
+        return c == ',' || Character.isWhitespace(c);
+    }
+
+    private int peek() throws IOException {
+        if (pos == limit && !ensure(1)) {
+            return -1;
+        }
+        return buf[pos];
+    }
+
+    /**
+     * Consume a character which is part of the form.
+     */
+    private char take() throws IOException {
+        int c = peek();
+        if (c == -1) {
+            throw error("Unexpected end of input");
+        }
+        if (form.length() == maxFormSize) {
+            throw error("Form is larger than " + maxFormSize + " characters");
+        }
+        form.append((char) c);
+        return advance();
+    }
+
+    private char advance() {
+        char c = buf[pos++];
+        if (c == '\n') {
+            ++line;
+            column = 0;
+        } else {
+            ++column;
+        }
+        return c;
+    }
+
+    /**
+     * Make sure at least count characters are buffered, if possible.
+     *
+     * @param count
+     * @return True if there are at least count characters buffered.
+     */
+    private boolean ensure(int count) throws IOException {
+        while (limit - pos < count) {
+            if (pos > 0) {
+                System.arraycopy(buf, pos, buf, 0, limit - pos);
+                limit -= pos;
+                pos = 0;
+            }
+            int read = in.read(buf, limit, buf.length - limit);
+            if (read == -1) {
+                return false;
+            }
+            limit += read;
+        }
+        return true;
+    }
+
+    private ParserException error(String msg) {
+        return new ParserException(new LexicalEnvironment(source, column, line), msg);
+    }
+
+}
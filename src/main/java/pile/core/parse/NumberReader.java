@@ -17,12 +17,38 @@ package pile.core.parse;
 
 import java.io.IOException;
 import java.io.PushbackReader;
-import java.text.NumberFormat;
-import java.text.ParseException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.Optional;
 
+/**
+ * Reads number literals without going through a locale or intermediate
+ * objects for the common cases. <br>
+ * <br>
+ * Integers:
+ * <ul>
+ * <li>123: An int, or a long or BigInteger if it doesn't fit.
+ * <li>123L: A long.
+ * <li>123N: A BigInteger.
+ * <li>0xFF, 017, 2r1010, 36rZZ: Hex, octal and radix integers.
+ * </ul>
+ * Decimals:
+ * <ul>
+ * <li>1.5, 1e10, 1.5E-3: A double.
+ * <li>1.5d, 1.5f: A double or float.
+ * <li>1.5M, 1.5b: A BigDecimal.
+ * </ul>
+ * Doubles with at most 15 significant digits and a small exponent are computed
+ * directly, everything else uses the JDK parsers.
+ */
 public class NumberReader implements Reader {
 
+    // Exactly representable powers of ten
+    private static final double[] POW10 = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13,
+            1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private static final int MAX_FAST_DIGITS = 15;
+
 	public NumberReader() {
 	}
 
@@ -34,30 +60,246 @@ public class NumberReader implements Reader {
 		if (read == '-' || (read >= 48 && read <= 57)) {
 			sb.append((char)read);
 			read = pr.read();
-			while (! PileParser.isEndOfForm((char)read)) {
+			while (read != -1 && ! PileParser.isEndOfForm((char)read)) {
 				sb.append((char)read);
 				read = pr.read();
 			}
 			if (read != -1) {
 				pr.unread(read);
 			}
-			Number num = parseNumber(env, sb.toString());
+			Number num = parseNumber(lex, sb.toString());
 			ParserResult out = new ParserResult(num, TypeTag.NUMBER);
-			return Optional.of(lex.enrich(out));				
+			return Optional.of(lex.enrich(out));
 		} else {
-			pr.unread(sb.toString().toCharArray());
+			if (read != -1) {
+				pr.unread(read);
+			}
 			return Optional.empty();
 		}
-		
+
 	}
-	
+
     private static Number parseNumber(LexicalEnvironment env, String in) {
         try {
-            // TODO BigInt
-            return NumberFormat.getInstance().parse(in);
-        } catch (ParseException e) {
+            return parse(in);
+        } catch (NumberFormatException e) {
             throw env.makeError("Invalid number: '" + in + "'", e);
         }
     }
 
+    /**
+     *
+     * @param in
+     * @return The number
+     * @throws NumberFormatException If the string is not a number literal.
+     */
+    public static Number parse(String in) {
+        return parse(in.toCharArray(), 0, in.length());
+    }
+
+    /**
+     *
+     * @param buf
+     * @param start
+     * @param end
+     * @return The number in the range
+     * @throws NumberFormatException If the range is not a number literal.
+     */
+    public static Number parse(char[] buf, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buf[i] == '-' || buf[i] == '+')) {
+            negative = buf[i] == '-';
+            ++i;
+        }
+        if (i == end || !isDigit(buf[i])) {
+            throw invalid(buf, start, end);
+        }
+
+        int digitsStart = i;
+        if (buf[i] == '0' && i + 1 < end && (buf[i + 1] == 'x' || buf[i + 1] == 'X')) {
+            return radixInteger(buf, start, end, i + 2, 16, negative);
+        }
+        while (i < end && isDigit(buf[i])) {
+            ++i;
+        }
+        int digitsEnd = i;
+        if (i < end && (buf[i] == 'r' || buf[i] == 'R')) {
+            int radix = 0;
+            for (int r = digitsStart; r < digitsEnd; ++r) {
+                radix = radix * 10 + (buf[r] - '0');
+                if (radix > Character.MAX_RADIX) {
+                    throw invalid(buf, start, end);
+                }
+            }
+            if (radix < Character.MIN_RADIX) {
+                throw invalid(buf, start, end);
+            }
+            return radixInteger(buf, start, end, i + 1, radix, negative);
+        }
+
+        boolean decimal = false;
+        if (i < end && buf[i] == '.') {
+            decimal = true;
+            ++i;
+            while (i < end && isDigit(buf[i])) {
+                ++i;
+            }
+        }
+        if (i < end && (buf[i] == 'e' || buf[i] == 'E')) {
+            decimal = true;
+            ++i;
+            if (i < end && (buf[i] == '-' || buf[i] == '+')) {
+                ++i;
+            }
+            int exponentStart = i;
+            while (i < end && isDigit(buf[i])) {
+                ++i;
+            }
+            if (i == exponentStart) {
+                throw invalid(buf, start, end);
+            }
+        }
+
+        char suffix = 0;
+        if (i == end - 1) {
+            suffix = buf[i];
+        } else if (i != end) {
+            throw invalid(buf, start, end);
+        }
+
+        if (!decimal && (suffix == 0 || suffix == 'N' || suffix == 'L')) {
+            boolean octal = buf[digitsStart] == '0' && digitsEnd - digitsStart > 1;
+            return integer(buf, start, end, digitsStart, digitsEnd, octal ? 8 : 10, negative, suffix);
+        }
+
+        return switch (suffix) {
+            case 0, 'd' -> parseDouble(buf, start, i, digitsStart, negative);
+            case 'f' -> Float.parseFloat(new String(buf, start, i - start));
+            case 'M', 'b' -> new BigDecimal(buf, start, i - start);
+            default -> throw invalid(buf, start, end);
+        };
+    }
+
+    private static Number radixInteger(char[] buf, int start, int end, int from, int radix, boolean negative) {
+        int to = end;
+        char suffix = 0;
+        // N is a digit in large radixes
+        if (to > from && buf[to - 1] == 'N' && Character.digit('N', radix) < 0) {
+            suffix = 'N';
+            --to;
+        }
+        return integer(buf, start, end, from, to, radix, negative, suffix);
+    }
+
+    private static Number integer(char[] buf, int start, int end, int from, int to, int radix, boolean negative,
+            char suffix) {
+        if (from == to) {
+            throw invalid(buf, start, end);
+        }
+
+        long limit = Long.MAX_VALUE / radix;
+        long value = 0;
+        boolean overflow = false;
+        for (int i = from; i < to; ++i) {
+            int digit = Character.digit(buf[i], radix);
+            if (digit < 0) {
+                throw invalid(buf, start, end);
+            }
+            if (value > limit || value * radix > Long.MAX_VALUE - digit) {
+                overflow = true;
+                break;
+            }
+            value = value * radix + digit;
+        }
+
+        if (overflow) {
+            BigInteger big = new BigInteger(new String(buf, from, to - from), radix);
+            if (negative) {
+                big = big.negate();
+            }
+            if (suffix == 'N') {
+                return big;
+            }
+            // Long.MIN_VALUE
+            if (big.bitLength() <= 63) {
+                return big.longValue();
+            }
+            if (suffix == 'L') {
+                throw invalid(buf, start, end);
+            }
+            return big;
+        }
+
+        long signed = negative ? -value : value;
+        return switch (suffix) {
+            case 'N' -> BigInteger.valueOf(signed);
+            case 'L' -> signed;
+            default -> (int) signed == signed ? (Number) (int) signed : (Number) signed;
+        };
+    }
+
+    private static double parseDouble(char[] buf, int start, int end, int from, boolean negative) {
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        int i = from;
+        boolean fraction = false;
+        for (; i < end; ++i) {
+            char c = buf[i];
+            if (c == '.') {
+                fraction = true;
+                continue;
+            }
+            if (!isDigit(c)) {
+                break;
+            }
+            if (mantissa != 0 || c != '0') {
+                if (++digits > MAX_FAST_DIGITS) {
+                    return Double.parseDouble(new String(buf, start, end - start));
+                }
+                mantissa = mantissa * 10 + (c - '0');
+            }
+            if (fraction) {
+                --scale;
+            }
+        }
+
+        int exponent = 0;
+        if (i < end) {
+            // e/E
+            ++i;
+            boolean negativeExponent = false;
+            if (buf[i] == '-' || buf[i] == '+') {
+                negativeExponent = buf[i] == '-';
+                ++i;
+            }
+            if (end - i > 3) {
+                return Double.parseDouble(new String(buf, start, end - start));
+            }
+            for (; i < end; ++i) {
+                exponent = exponent * 10 + (buf[i] - '0');
+            }
+            if (negativeExponent) {
+                exponent = -exponent;
+            }
+        }
+
+        int power = exponent + scale;
+        if (power < -22 || power > 22) {
+            return Double.parseDouble(new String(buf, start, end - start));
+        }
+        // Both exact, so a single correctly rounded operation
+        double value = power >= 0 ? mantissa * POW10[power] : mantissa / POW10[-power];
+        return negative ? -value : value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static NumberFormatException invalid(char[] buf, int start, int end) {
+        return new NumberFormatException("Invalid number: " + new String(buf, start, end - start));
+    }
+
 }
@@ -37,6 +37,7 @@ import pile.compiler.DeferredRegex;
 import pile.core.Keyword;
 import pile.core.Metadata;
 import pile.core.Symbol;
+import pile.core.compiler.stats.CompileStats;
 
 @SuppressWarnings("rawtypes")
 public class PileParser {
@@ -88,10 +89,8 @@ public class PileParser {
 	}
 	
 	private static final DeferredDelegateReader TOP_READER = new DeferredDelegateReader();
-	private static final DeferredDelegateReader TOP_DATA_READER = new DeferredDelegateReader();
 
 	private static final Map<Character, Supplier<? extends Reader>> DISPATCH_MAP = new HashMap<>();
-	private static final Map<Character, Supplier<? extends Reader>> DATA_DISPATCH_MAP = new HashMap<>();
 
 	static {
 		DISPATCH_MAP.put('{', 
@@ -134,19 +133,9 @@ public class PileParser {
             };
         });
 		
-		// Data
-		DATA_DISPATCH_MAP.put('{', (Supplier<? extends Reader>) () -> new MultiFormReader(TypeTag.SET, TOP_DATA_READER, new ExactStringReader("}", null)));
-		DATA_DISPATCH_MAP.put('_', (Supplier<? extends Reader>) () -> {
-			return (env, pr) -> {
-				var _ = unwrap(TOP_DATA_READER.parse(env, pr));
-				return Optional.of(new ParserResult(null, null));
-			};
-		});
-		
 	}
 
 	private static final Map<Character, Supplier<? extends Reader>> TOP_EXPR_MAP = new HashMap<>();
-	private static final Map<Character, Supplier<? extends Reader>> TOP_DATA_EXPR_MAP = new HashMap<>();
 	
 
     private static final ParserResult toAnon(ParserResult pr) {
@@ -275,26 +264,6 @@ public class PileParser {
 				
 		TOP_READER.setDelegate(oneOf);
 		
-		// Data
-		{
-			TOP_DATA_EXPR_MAP.put('"', StringFormReader::new);
-			TOP_DATA_EXPR_MAP.put('(', () -> new MultiFormReader(TypeTag.SEXP, TOP_DATA_READER, new ExactStringReader(")", null)));
-			TOP_DATA_EXPR_MAP.put('[',
-					() -> new TransformerReader(
-							new MultiFormReader(TypeTag.VEC, TOP_DATA_READER, new ExactStringReader("]", null)),
-							PileParser::toVec));
-			TOP_DATA_EXPR_MAP.put('{',
-					() -> new TransformerReader(
-							new MultiFormReader(TypeTag.MAP, TOP_DATA_READER, new ExactStringReader("}", null)),
-							PileParser::toMap));
-			TOP_DATA_EXPR_MAP.put('\\', CHAR_SUPPLIER);
-			TOP_DATA_EXPR_MAP.put(':', KEYWORD_SUPPLIER);
-			TOP_DATA_EXPR_MAP.put('#', () -> new CharTokenDispatchReader(DATA_DISPATCH_MAP));
-	
-			CharTokenDispatchReader dataDispatch = new CharTokenDispatchReader(TOP_DATA_EXPR_MAP);
-			OneOfReader dataOneOf = new OneOfReader(dataDispatch, /*trueReader, falseReader, nilReader, numberReader,*/ symbolReader);
-			TOP_DATA_READER.setDelegate(dataOneOf);
-		}
 	}
 
 
@@ -356,13 +325,27 @@ public class PileParser {
         }
     }
 	
+	/**
+	 * Reads a single data form, see {@link DataReader}.
+	 * 
+	 * @param sr
+	 * @return The form, or null if there isn't one.
+	 */
 	public static Object parseData(java.io.Reader sr) {
-		try {
-			var packed = TOP_DATA_READER.parse(new LexicalEnvironment("<reader>"), new PushbackReader(sr, 5));
-			return packed.get().result();
-		} catch (IOException e) {
-			throw new ParserException(e);
-		}
+		return DataReader.read(sr);
+	}
+	
+	/**
+	 * Reads the top level forms of the reader as they are requested, rather than
+	 * all up front.
+	 * 
+	 * @param r
+	 * @param filename
+	 * @return
+	 * @see FormReader
+	 */
+	public static FormReader forms(java.io.Reader r, String filename) {
+		return FormReader.syntax(r, filename);
 	}
 	
 	public static PersistentList parse(java.io.Reader r, String filename) throws IOException {
@@ -381,7 +364,8 @@ public class PileParser {
     }
 
 	private static PersistentList parse(PushbackReader pr, String filename, LexicalEnvironment env) throws IOException {
-		MultiFormReader fileReader = new MultiFormReader(null, TOP_READER, (environ, reader) -> {
+		Reader each = CompileStats.isEnabled() ? PileParser::parseTimed : TOP_READER;
+		MultiFormReader fileReader = new MultiFormReader(null, each, (environ, reader) -> {
 			int read = reader.read();
 			if (read == -1) {
 				return Optional.of(new ParserResult(null, null));
@@ -395,4 +379,11 @@ public class PileParser {
 		return (PersistentList) top.get().result();
 	}
 
+	private static Optional<ParserResult> parseTimed(LexicalEnvironment env, PushbackReader pr) throws IOException {
+		long start = System.nanoTime();
+		var result = TOP_READER.parse(env, pr);
+		result.ifPresent(r -> CompileStats.formParsed(r.result(), System.nanoTime() - start));
+		return result;
+	}
+
 }
@@ -17,8 +17,6 @@ package pile.core.parse;
 
 import java.io.IOException;
 import java.io.PushbackReader;
-import java.math.BigDecimal;
-import java.math.BigInteger;
 import java.text.NumberFormat;
 import java.text.ParsePosition;
 import java.util.Arrays;
@@ -105,7 +103,7 @@ public class SymbolReader implements Reader {
 
     }
     
-    private static Optional<Number> parseNumber(final String in, LexicalEnvironment start) {
+    static Optional<Number> parseNumber(final String in, LexicalEnvironment start) {
         char first = in.charAt(0);
         // [-0-9]
         // not just "-"
@@ -117,46 +115,11 @@ public class SymbolReader implements Reader {
         else if (!isNumeric(first)) {
             return Optional.empty();
         }
-        Number out;
-        char lastChar = in.charAt(in.length() - 1);
-        if (lastChar == 'N') {
-            out = new BigInteger(in.substring(0, in.length() - 1));
-            return Optional.of(out);
-        } else if (lastChar == 'b') {
-            out = new BigDecimal(in.substring(0, in.length() - 1));
-            return Optional.of(out);
+        try {
+            return Optional.of(NumberReader.parse(in));
+        } catch (NumberFormatException e) {
+            throw new ParseException("Invalid number: " + in, start, e);
         }
-        boolean hasSuffix = ! isNumeric(lastChar);
-        String test = in;
-        if (hasSuffix) {
-            test = in.substring(0, in.length() - 1);
-        }
-        
-        if (test.contains(".")) {
-            BigDecimal bd = new BigDecimal(test);
-            if (hasSuffix) {
-                switch (lastChar) {
-                    case 'f': out = bd.floatValue(); break;
-                    case 'd': out = bd.doubleValue(); break;
-                    default: throw new ParseException("Unexpected suffix: " + lastChar, start);
-                }
-            } else {
-                out = bd.doubleValue();
-            }
-        } else {
-            BigInteger bi = new BigInteger(test);
-            if (hasSuffix) {
-                switch (lastChar) {
-                    case 'L': out = bi.longValueExact(); break;
-                    case 'f': out = bi.floatValue(); break;
-                    case 'd': out = bi.doubleValue(); break;
-                    default: throw new ParseException("Unexpected suffix: " + lastChar, start);
-                }
-            } else {
-                out = bi.intValueExact();
-            }
-        }
-        return Optional.of(out);
     }
 
     private static boolean isNumeric(char first) {
@@ -0,0 +1,500 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.print;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import pile.collection.PersistentList;
+import pile.collection.PersistentMap;
+import pile.collection.PersistentSet;
+import pile.collection.PersistentVector;
+import pile.core.ISeq;
+import pile.core.Keyword;
+import pile.core.PCall;
+import pile.core.Seqable;
+import pile.core.Symbol;
+import pile.core.binding.NativeDynamicBinding;
+import pile.nativebase.method.PileInvocationException;
+
+/**
+ * Prints values straight to an {@link Appendable} rather than building
+ * {@link Object#toString()} strings for each nested collection. <br>
+ * <br>
+ * Output is collected in a per thread buffer which is written to the target
+ * whenever it fills, so printing a large collection only ever holds a small
+ * amount of text. Readable printing quotes and escapes strings and chars, and
+ * adds the reader suffixes to big numbers and floats so the output can be read
+ * back in. Longs are printed without a suffix, so those small enough to be an
+ * int are read back as one. <br>
+ * <br>
+ * Values which aren't collections, strings, numbers etc. can be handed to a
+ * {@link #dispatch(PCall)} function, eg. to print them with a protocol. The
+ * function may print to the printer itself, which is an {@link Appendable}.
+ * <br>
+ * Limits:
+ * <ul>
+ * <li>Length: Print at most this many items of each collection, followed by
+ * "...".
+ * <li>Level: Print collections nested at least this deep as "#".
+ * <li>Max chars: Stop printing after this many characters, see
+ * {@link #isTruncated()}.
+ * </ul>
+ * {@link #readable(Appendable)} and {@link #display(Appendable)} take their
+ * length and level from {@code *print-length*} and {@code *print-level*}.
+ */
+public final class Printer implements Appendable {
+
+    public static final int NO_LIMIT = -1;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    // Don't hold on to buffers grown by a single large print
+    private static final int MAX_RETAINED_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<StringBuilder> BUFFERS = new ThreadLocal<>();
+
+    private static final ThreadLocal<char[]> CHARS = ThreadLocal.withInitial(() -> new char[BUFFER_SIZE]);
+
+    private final Appendable out;
+    private final boolean readable;
+    private int length = NO_LIMIT;
+    private int level = NO_LIMIT;
+    private int maxChars = NO_LIMIT;
+    private PCall dispatch;
+
+    private StringBuilder buf;
+    private long written = 0;
+    private boolean truncated = false;
+
+    // The value handed to the dispatch function
+    private Object dispatching;
+    private int dispatchDepth;
+
+    private Printer(Appendable out, boolean readable) {
+        this.out = out;
+        this.readable = readable;
+    }
+
+    /**
+     * A printer which writes values so they may be read back in, as pr-str.
+     *
+     * @param out
+     * @return
+     */
+    public static Printer readable(Appendable out) {
+        return new Printer(out, true).withDynamicLimits();
+    }
+
+    /**
+     * A printer which writes strings and chars without quotes, as prn.
+     *
+     * @param out
+     * @return
+     */
+    public static Printer display(Appendable out) {
+        return new Printer(out, false).withDynamicLimits();
+    }
+
+    /**
+     * Readably print a value without any limits.
+     *
+     * @param o
+     * @return The printed value.
+     */
+    public static String printString(Object o) {
+        StringBuilder sb = acquire();
+        return printString(new Printer(sb, true), sb, new Object[] { o });
+    }
+
+    /**
+     * Readably print values separated by spaces, as pr-str.
+     *
+     * @param values
+     * @return The printed values.
+     */
+    public static String prStr(Object... values) {
+        StringBuilder sb = acquire();
+        return printString(new Printer(sb, true).withDynamicLimits(), sb, values);
+    }
+
+    private static String printString(Printer printer, StringBuilder sb, Object... values) {
+        // Print straight into the result
+        printer.buf = sb;
+        try {
+            for (int i = 0; i < values.length; ++i) {
+                if (i > 0) {
+                    printer.write(" ");
+                }
+                printer.print(values[i]);
+            }
+            return sb.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            release(sb);
+        }
+    }
+
+    public Printer length(int length) {
+        this.length = length;
+        return this;
+    }
+
+    public Printer level(int level) {
+        this.level = level;
+        return this;
+    }
+
+    public Printer maxChars(int maxChars) {
+        this.maxChars = maxChars;
+        return this;
+    }
+
+    /**
+     * Print values which aren't core types by calling fn with the value and this
+     * printer. Printing the same value again from fn prints its
+     * {@link Object#toString()}.
+     *
+     * @param fn
+     * @return This printer.
+     */
+    public Printer dispatch(PCall fn) {
+        this.dispatch = fn;
+        return this;
+    }
+
+    /**
+     * Print a value and write it to the target. When called from the dispatch
+     * function the value is printed as part of the dispatched value.
+     *
+     * @param o
+     * @return This printer.
+     * @throws IOException If the target could not be written to.
+     */
+    public Printer print(Object o) throws IOException {
+        boolean owned = buf == null;
+        if (owned) {
+            buf = acquire();
+        }
+        try {
+            print(o, owned ? 0 : dispatchDepth + 1);
+            if (buf != out) {
+                drain();
+            }
+        } finally {
+            if (owned) {
+                release(buf);
+                buf = null;
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public Printer append(CharSequence csq) throws IOException {
+        CharSequence s = csq == null ? "null" : csq;
+        return append(s, 0, s.length());
+    }
+
+    @Override
+    public Printer append(CharSequence csq, int start, int end) throws IOException {
+        boolean owned = buf == null;
+        if (owned) {
+            buf = acquire();
+        }
+        try {
+            write(csq == null ? "null" : csq, start, end);
+            if (buf != out) {
+                drain();
+            }
+        } finally {
+            if (owned) {
+                release(buf);
+                buf = null;
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public Printer append(char c) throws IOException {
+        return append(String.valueOf(c));
+    }
+
+    /**
+     * @return True if printing stopped at the max chars.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    private Printer withDynamicLimits() {
+        Object len = NativeDynamicBinding.PRINT_LENGTH.deref();
+        Object lvl = NativeDynamicBinding.PRINT_LEVEL.deref();
+        if (len instanceof Number n) {
+            length = n.intValue();
+        }
+        if (lvl instanceof Number n) {
+            level = n.intValue();
+        }
+        return this;
+    }
+
+    private void print(Object o, int depth) throws IOException {
+        if (truncated) {
+            return;
+        }
+        switch (o) {
+            case null -> write("nil");
+            case String s -> {
+                if (readable) {
+                    printString(s);
+                } else {
+                    write(s);
+                }
+            }
+            case Keyword k -> write(k.toString());
+            case Symbol s -> write(s.toString());
+            case Integer i -> write(i.toString());
+            case Long l -> write(l.toString());
+            case Double d -> write(d.toString());
+            case Float f -> {
+                write(f.toString());
+                if (readable) {
+                    write("f");
+                }
+            }
+            case Boolean b -> write(b ? "true" : "false");
+            case Character c -> {
+                if (readable) {
+                    printChar(c);
+                } else {
+                    write(c.toString());
+                }
+            }
+            case BigInteger bi -> {
+                write(bi.toString());
+                if (readable) {
+                    write("N");
+                }
+            }
+            case BigDecimal bd -> {
+                write(bd.toString());
+                if (readable) {
+                    write("b");
+                }
+            }
+            case PersistentMap<?, ?> map -> printMap(map, depth);
+            case PersistentVector<?> vec -> printAll("[", vec, "]", depth);
+            case PersistentSet<?> set -> printAll("#{", set, "}", depth);
+            case PersistentList<?> list -> printAll("(", list, ")", depth);
+            case ISeq<?> seq -> printAll("(", seq, ")", depth);
+            case Seqable<?> seqable -> {
+                ISeq<?> seq = seqable.seq();
+                printAll("(", seq == null ? ISeq.EMPTY : seq, ")", depth);
+            }
+            case Pattern p -> {
+                write("#\"");
+                write(p.pattern());
+                write("\"");
+            }
+            default -> {
+                if (dispatch != null && o != dispatching) {
+                    dispatch(o, depth);
+                } else {
+                    write(String.valueOf(o));
+                }
+            }
+        }
+    }
+
+    private void dispatch(Object o, int depth) throws IOException {
+        Object previous = dispatching;
+        int previousDepth = dispatchDepth;
+        dispatching = o;
+        dispatchDepth = depth;
+        try {
+            dispatch.invoke(o, this);
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new PileInvocationException("Error while printing " + o.getClass(), t);
+        } finally {
+            dispatching = previous;
+            dispatchDepth = previousDepth;
+        }
+    }
+
+    private void printMap(PersistentMap<?, ?> map, int depth) throws IOException {
+        if (level != NO_LIMIT && depth >= level) {
+            write("#");
+            return;
+        }
+        write("{");
+        int count = 0;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (truncated) {
+                return;
+            }
+            if (count > 0) {
+                write(" ");
+            }
+            if (length != NO_LIMIT && count == length) {
+                write("...");
+                break;
+            }
+            print(entry.getKey(), depth + 1);
+            write(" ");
+            print(entry.getValue(), depth + 1);
+            ++count;
+        }
+        write("}");
+    }
+
+    private void printAll(String open, Iterable<?> items, String close, int depth) throws IOException {
+        if (level != NO_LIMIT && depth >= level) {
+            write("#");
+            return;
+        }
+        write(open);
+        int count = 0;
+        Iterator<?> it = items.iterator();
+        while (it.hasNext()) {
+            if (truncated) {
+                return;
+            }
+            if (count > 0) {
+                write(" ");
+            }
+            if (length != NO_LIMIT && count == length) {
+                // Don't realize the rest of a lazy seq
+                write("...");
+                break;
+            }
+            print(it.next(), depth + 1);
+            ++count;
+        }
+        write(close);
+    }
+
+    private void printString(String s) throws IOException {
+        write("\"");
+        int start = 0;
+        int len = s.length();
+        for (int i = 0; i < len; ++i) {
+            char c = s.charAt(i);
+            String escape = switch (c) {
+                case '"' -> "\\\"";
+                case '\\' -> "\\\\";
+                case '\n' -> "\\n";
+                case '\t' -> "\\t";
+                case '\r' -> "\\r";
+                case '\b' -> "\\b";
+                case '\f' -> "\\f";
+                default -> c < ' ' ? String.format("\\u%04x", (int) c) : null;
+            };
+            if (escape != null) {
+                write(s, start, i);
+                write(escape);
+                start = i + 1;
+            }
+        }
+        write(s, start, len);
+        write("\"");
+    }
+
+    private void printChar(char c) throws IOException {
+        String name = switch (c) {
+            case ' ' -> "space";
+            case '\n' -> "newline";
+            case '\t' -> "tab";
+            case '\r' -> "return";
+            case '\b' -> "backspace";
+            case '\f' -> "formfeed";
+            default -> null;
+        };
+        write("\\");
+        if (name != null) {
+            write(name);
+        } else if (c < ' ') {
+            write(String.format("u%04x", (int) c));
+        } else {
+            write(String.valueOf(c));
+        }
+    }
+
+    private void write(String s) throws IOException {
+        write(s, 0, s.length());
+    }
+
+    private void write(CharSequence s, int start, int end) throws IOException {
+        if (start == end || truncated) {
+            return;
+        }
+        if (maxChars != NO_LIMIT && written + (end - start) > maxChars) {
+            end = start + (int) (maxChars - written);
+            truncated = true;
+        }
+        written += end - start;
+        buf.append(s, start, end);
+        if (buf != out && buf.length() >= BUFFER_SIZE) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        int len = buf.length();
+        if (len == 0) {
+            return;
+        }
+        if (out instanceof Writer writer) {
+            char[] chars = CHARS.get();
+            for (int off = 0; off < len; off += chars.length) {
+                int n = Math.min(chars.length, len - off);
+                buf.getChars(off, off + n, chars, 0);
+                writer.write(chars, 0, n);
+            }
+        } else {
+            out.append(buf);
+        }
+        buf.setLength(0);
+    }
+
+    private static StringBuilder acquire() {
+        StringBuilder sb = BUFFERS.get();
+        if (sb == null) {
+            return new StringBuilder(BUFFER_SIZE);
+        }
+        // Nested prints (eg. from a toString) get their own buffer
+        BUFFERS.set(null);
+        return sb;
+    }
+
+    private static void release(StringBuilder sb) {
+        if (sb.capacity() <= MAX_RETAINED_SIZE) {
+            sb.setLength(0);
+            BUFFERS.set(sb);
+        }
+    }
+
+}
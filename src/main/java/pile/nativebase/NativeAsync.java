@@ -29,11 +29,14 @@ import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import pile.collection.PersistentList;
 import pile.collection.PersistentVector;
 import pile.core.Keyword;
 import pile.core.PCall;
+import pile.core.binding.BindingFrame;
+import pile.core.concurrency.Agent;
 import pile.core.concurrency.BufferedChannel;
 import pile.core.concurrency.Delay;
 import pile.core.concurrency.PileChannel;
@@ -164,9 +167,10 @@ public class NativeAsync {
             If completed exceptionally, this attached task is not run.
             """)
     public static void and_then(CompletableFuture<Object> source, PCall fn) {
+        PCall conveyed = BindingFrame.convey(fn);
         source.thenAcceptAsync(o -> {
             try {
-                fn.invoke(o);
+                conveyed.invoke(o);
             } catch (Throwable e) {
                 LOG.warn("Error while running attached stage", e);
             }
@@ -174,6 +178,72 @@ public class NativeAsync {
 
     }
     
+    @PileDoc("Creates a new agent with the provided initial state.")
+    public static Agent agent(Object state) {
+        return new Agent(state);
+    }
+
+    @PileDoc("""
+            Sends an action to the agent which will asynchronously set the agent state to (apply fn state args).
+            Actions are run on a fixed size pool and should not block, see send-off.
+            """)
+    public static Agent send(Agent agent, PCall fn, Object... args) {
+        return agent.send(BindingFrame.convey(fn), args);
+    }
+
+    @PileDoc("""
+            Sends an action to the agent which will asynchronously set the agent state to (apply fn state args).
+            Actions are run on virtual threads and may block.
+            """)
+    public static Agent send_off(Agent agent, PCall fn, Object... args) {
+        return agent.sendOff(BindingFrame.convey(fn), args);
+    }
+
+    @PileDoc("""
+            Waits, at most the provided number of milliseconds, for all actions sent to the agents so far
+            to complete. Returns false if the timeout elapsed or an agent failed first, true otherwise.
+            """)
+    public static boolean await_for(long ms, Object... agents) throws InterruptedException {
+        CompletableFuture[] barriers = new CompletableFuture[agents.length];
+        for (int i = 0; i < agents.length; ++i) {
+            barriers[i] = ((Agent) agents[i]).barrier();
+        }
+        try {
+            CompletableFuture.allOf(barriers).get(ms, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException | ExecutionException e) {
+            return false;
+        }
+    }
+
+    @PileDoc("Returns the exception thrown by the action which failed the agent, or nil.")
+    public static Throwable agent_error(Agent agent) {
+        return agent.getError();
+    }
+
+    @PileDoc("Clears the error of a failed agent, sets the new state and resumes processing queued actions.")
+    public static Agent restart_agent(Agent agent, Object newState) {
+        agent.restart(newState);
+        return agent;
+    }
+
+    @PileDoc("Sets the error mode of the agent to either :fail (default) or :continue.")
+    @RenamedMethod("set-error-mode!")
+    public static void setErrorMode(Agent agent, Keyword mode) {
+        agent.setErrorMode(Agent.ErrorMode.valueOf(mode.getName().toUpperCase()));
+    }
+
+    @PileDoc("Returns the error mode of the agent, :fail or :continue")
+    public static Keyword error_mode(Agent agent) {
+        return Keyword.of(agent.getErrorMode().name().toLowerCase());
+    }
+
+    @PileDoc("Sets a function (fn [agent exception]) called when an action throws.")
+    @RenamedMethod("set-error-handler!")
+    public static void setErrorHandler(Agent agent, PCall handler) {
+        agent.setErrorHandler(handler);
+    }
+
     @RenamedMethod("delay*")
     public static Delay delay_star(PCall fn) {
         return new Delay(fn);
@@ -199,7 +269,8 @@ public class NativeAsync {
                 cf.completeExceptionally(t);
             }
         };
-        return r;
+        // Task sees the dynamic bindings in effect where it was created
+        return BindingFrame.convey(r);
     }
 
     private static CompletableFuture<Object> awaitFuture(Object... vals) {
@@ -20,8 +20,10 @@ import static java.util.Objects.*;
 import static pile.compiler.Helpers.*;
 import static pile.util.CollectionUtils.*;
 
+import java.io.IOException;
 import java.io.PrintStream;
 import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.lang.invoke.CallSite;
 import java.lang.invoke.ConstantCallSite;
 import java.lang.invoke.MethodHandle;
@@ -80,9 +82,12 @@ import pile.compiler.specialization.StrCatSpecializer;
 import pile.compiler.typed.FunctionalInterfaceAdapter;
 import pile.core.AbstractSeq;
 import pile.core.Atom;
+import pile.core.BackoffAtom;
+import pile.core.CombiningAtom;
 import pile.core.Conjable;
 import pile.core.Cons;
 import pile.core.ConsSequence;
+import pile.core.CounterAtom;
 import pile.core.Coroutine;
 import pile.core.Coroutine.CoroutineSync;
 import pile.core.Hierarchy;
@@ -107,19 +112,25 @@ import pile.core.StandardLibraryLoader;
 import pile.core.Streamable;
 import pile.core.Symbol;
 import pile.core.Var;
+import pile.core.Watchable;
 import pile.core.binding.Binding;
+import pile.core.binding.BindingFrame;
 import pile.core.binding.BindingType;
 import pile.core.binding.ImmutableBinding;
 import pile.core.binding.NativeDynamicBinding;
+import pile.core.compiler.stats.CompileStats;
 import pile.core.indy.CallSiteType;
 import pile.core.indy.CompilerFlags;
 import pile.core.indy.PileMethodLinker;
 import pile.core.log.LogLevel;
 import pile.core.method.FunctionUtils;
 import pile.core.method.LinkableMethod;
+import pile.core.parse.DataReader;
+import pile.core.parse.FormReader;
 import pile.core.parse.ParserConstants;
 import pile.core.parse.ParserResult;
 import pile.core.parse.PileParser;
+import pile.core.print.Printer;
 import pile.core.runtime.ArrayGetMethod;
 import pile.core.runtime.generated_classes.LookupHolder;
 import pile.nativebase.method.PileInvocationException;
@@ -165,7 +176,36 @@ public class NativeCore {
     public static Object read_string(String s) {
         var pr = PileParser.parseSingle(s);
         return pr.result();
-    }
+    }
+    
+    @Precedence(0)
+    @PileDoc("Reads a single piece of data (not syntax) from the provided string/reader. Faster than read, but without line numbers or reader macros.")
+    public static Object read_data(String s) {
+        return DataReader.read(s);
+    }
+    
+    @Precedence(1)
+    @PileDoc("Reads a single piece of data (not syntax) from the provided string/reader. Faster than read, but without line numbers or reader macros.")
+    public static Object read_data(Reader r) {
+        return DataReader.read(r);
+    }
+    
+    @PileDoc("Lazily reads each top level data form from the reader, eg. a file of one map per line. Forms are read as the sequence is consumed. A form which fails to parse throws when it is reached.")
+    public static ISeq read_seq(Reader r) {
+        return seqIterator(FormReader.data(r));
+    }
+    
+    @PileDoc("Lazily reads each top level data form from the reader. Forms which fail to parse are passed to on-error and skipped.")
+    public static ISeq read_seq(Reader r, PCall onError) {
+        FormReader forms = FormReader.data(r).onError(e -> {
+            try {
+                onError.invoke(e);
+            } catch (Throwable t) {
+                throw new RuntimeException(t);
+            }
+        });
+        return seqIterator(forms);
+    }
     
     @PileDoc("Takes any number of arguments and just returns.")
     public static void pass(Object... ignored) {
@@ -354,6 +394,91 @@ public class NativeCore {
     @Precedence(LAST)
     public static Atom atom(Object initial) {
         return new Atom<>(initial);
+    }
+
+    @PileDoc("""
+            Creates a new atom which backs off exponentially when an update loses a race with another
+            thread. Prefer this for atoms which are updated by many threads at once.
+            """)
+    @RenamedMethod("backoff-atom")
+    public static Atom backoffAtom(Object initial) {
+        return new BackoffAtom<>(initial);
+    }
+
+    @PileDoc("""
+            Creates a new atom which applies concurrent updates in batches on a single thread. Update
+            functions are called exactly once per update and never retried.
+            """)
+    @RenamedMethod("combining-atom")
+    public static Atom combiningAtom(Object initial) {
+        return new CombiningAtom<>(initial);
+    }
+
+    @PileDoc("Creates a new counter with a zero initial value.")
+    @Precedence(1)
+    @RenamedMethod("counter-atom")
+    public static CounterAtom counterAtom() {
+        return new CounterAtom();
+    }
+
+    @PileDoc("""
+            Creates a new striped counter with the provided initial value. Counters may be used with
+            swap!/reset!/deref but updates must be additive (eg. inc, dec, +).
+            """)
+    @Precedence(LAST)
+    @RenamedMethod("counter-atom")
+    public static CounterAtom counterAtom(long initial) {
+        return new CounterAtom(initial);
+    }
+
+    @PileDoc("Returns a map of {:updates :retries :contended :batches} for a backoff or combining atom, or nil.")
+    @RenamedMethod("atom-stats")
+    public static PersistentMap atomStats(Object atom) {
+        return switch (atom) {
+            case BackoffAtom ba -> ba.getStats().toMap();
+            case CombiningAtom ca -> ca.getStats().toMap();
+            default -> null;
+        };
+    }
+
+    @PileDoc("""
+            Adds a watch function to the reference which is called with (key ref old-value new-value)
+            after the reference changes. Adding a watch with an existing key replaces it.
+            """)
+    public static Object add_watch(Watchable ref, Object key, PCall fn) {
+        ref.addWatch(key, fn);
+        return ref;
+    }
+
+    @PileDoc("""
+            Adds a watch function to the reference which is called on a virtual thread with
+            (key ref old-value new-value) after the reference changes. If changes occur faster than the
+            watch can process them they are coalesced and only the latest new value is delivered.
+            """)
+    public static Object add_async_watch(Watchable ref, Object key, PCall fn) {
+        ref.addWatch(key, fn, true);
+        return ref;
+    }
+
+    @PileDoc("Removes the watch with the provided key from the reference.")
+    public static Object remove_watch(Watchable ref, Object key) {
+        ref.removeWatch(key);
+        return ref;
+    }
+
+    @PileDoc("""
+            Sets the validator function of the reference, or removes it if nil. The validator is called
+            with each proposed new value and must return a truthy value or the change is rejected with an
+            exception. Throws if the current value is not valid.
+            """)
+    @RenamedMethod("set-validator!")
+    public static void setValidator(Watchable ref, PCall fn) {
+        ref.setValidator(fn);
+    }
+
+    @PileDoc("Returns the validator function of the reference, or nil.")
+    public static PCall get_validator(Watchable ref) {
+        return ref.getValidator();
     }
 
     @PileDoc("Tests whether the argument is a sequence.")
@@ -816,11 +941,13 @@ public class NativeCore {
     }
 
     @Precedence(1)
+    @PureFunction
     public static Keyword keyword(String name) {
         return Keyword.of(null, name);
     }
 
     @Precedence(2)
+    @PureFunction
     public static Keyword keyword(String ns, String name) {
         return Keyword.of(ns, name);
     }
@@ -940,7 +1067,8 @@ public class NativeCore {
     }
 
     // ~~ logic
-    @RenamedMethod("=")
+    @RenamedMethod("=")
+    @PureFunction
     public static boolean equals(Object lhs, Object rhs) {
         if (lhs instanceof Number lhsnum) {
             if (rhs instanceof Number rhsnum) {
@@ -1041,13 +1169,24 @@ public class NativeCore {
     }
     // ~~ Printing
 
-    public static void prn(Object... s) {
+    @PileDoc("Prints each argument to *out*, followed by a newline. Strings and chars are printed as is, collections are written directly to *out* limited by *print-length* and *print-level*.")
+    public static void prn(Object... s) {
         PrintStream out = NativeDynamicBinding.STANDARD_OUT.deref();
-        for (Object o : s) {
-            out.print(o);
+        Printer printer = Printer.display(out);
+        try {
+            for (Object o : s) {
+                printer.print(o);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
         out.println();
     }
+
+    @PileDoc("Prints the arguments readably (so they can be read back in), separated by spaces. Limited by *print-length* and *print-level*. Longs are printed without a suffix, so small longs read back as ints.")
+    public static String pr_str(Object... parts) {
+        return Printer.prStr(parts);
+    }
 
     /**
      * Concatenates string parts.
@@ -1056,6 +1195,7 @@ public class NativeCore {
      * @return
      * @see StrCatSpecializer
      */
+    @PureFunction
     public static String str(Object... parts) {
         var len = parts.length;
         switch (len) {
@@ -1199,6 +1339,7 @@ public class NativeCore {
         return v.subList(start, end);
     }
 
+    @PureFunction
     public static String name(Named sym) {
         return sym.getName();
     }
@@ -1314,6 +1455,7 @@ public class NativeCore {
         return seq;
     }
     
+    @PureFunction
     public static boolean not(Object o) {
         return ! Helpers.ifCheck(o);
     }
@@ -1934,6 +2076,28 @@ public class NativeCore {
         }
     }
     
+    // Bindings
+    
+    @RenamedMethod("bound-fn*")
+    @PileDoc("""
+            Returns a function which calls the provided function with the dynamic bindings in effect
+            when bound-fn* was called. Each call sees its own copy of those bindings, so set! within
+            the function does not affect the caller.
+            """)
+    public static PCall bound_fn_star(PCall fn) {
+        return BindingFrame.convey(fn);
+    }
+    
+    // Compiler
+    
+    @PileDoc("""
+            Returns a map of compile statistics collected so far, keyed by :namespaces, :forms and
+            :macros. Statistics are only collected when started with -Dpile.compile.stats=true.
+            """)
+    public static PersistentMap compile_stats() {
+        return CompileStats.toMap();
+    }
+    
     // Coroutine
     
     @PileDoc("""
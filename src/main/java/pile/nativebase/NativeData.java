@@ -15,28 +15,19 @@
  */
 package pile.nativebase;
 
-import static java.lang.invoke.MethodHandles.*;
-import static java.lang.invoke.MethodType.*;
-import static pile.compiler.Helpers.*;
 import static pile.nativebase.NativeCore.*;
 
-import java.lang.invoke.MethodHandle;
-import java.lang.invoke.MethodHandles;
-import java.lang.invoke.MethodHandles.Lookup;
-import java.lang.invoke.MethodType;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Method;
-import java.lang.reflect.RecordComponent;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 
 import pile.collection.PersistentMap;
-import pile.core.exception.PileInternalException;
-import pile.core.indy.DebugHelpers;
-import pile.core.runtime.generated_classes.LookupHolder;
+import pile.core.ISeq;
+import pile.core.data.BinaryReader;
+import pile.core.data.BinaryWriter;
+import pile.core.data.RecordConverter;
+import pile.core.io.BufferPool;
 
 /**
  * See pile.core.data
@@ -44,117 +35,44 @@ import pile.core.runtime.generated_classes.LookupHolder;
  */
 public class NativeData {
 
-    private static final MethodHandle RECORD_MAP_HANDLE, MAP_GET, TO_RECORD_HANDLE;
-    static {
-        try {
-            RECORD_MAP_HANDLE = lookup().findStatic(NativeData.class, "record_map",
-                    methodType(PersistentMap.class, Object.class));
-            TO_RECORD_HANDLE = lookup().findStatic(NativeData.class, "to_record",
-                    methodType(Object.class, PersistentMap.class, Class.class));
-            MAP_GET = lookup().findVirtual(PersistentMap.class, "get", 
-                    methodType(Object.class, Object.class));
-        } catch (NoSuchMethodException | IllegalAccessException e) {
-            throw new PileInternalException("Shouldn't happen.");
-        }
-    }
-
     private NativeData() {}
 
     public static final PersistentMap record_map(Object v) throws Throwable {
-        Map<String, MethodHandle> getters = Holder.GETTERS.get(v.getClass());
-        if (getters == null) {
-            getters = createGetters(v.getClass());
-        }
-        PersistentMap out = PersistentMap.empty();
-        for (var kv : getters.entrySet()) {
-            String key = kv.getKey();
-            MethodHandle getter = kv.getValue();
-            out = out.assoc(keyword(key), getter.invoke(v));
-        }
-        return out;
-    }
-
-    private static Map<String, MethodHandle> createGetters(Class<? extends Object> clz) throws IllegalAccessException {
-        Map<String, MethodHandle> getters = new HashMap<>();
-        Lookup lookup = LookupHolder.PUBLIC_LOOKUP;
-    
-        RecordComponent[] recordComponents = clz.getRecordComponents();
-        ensure(recordComponents != null, clz + " is not a record");
-        for (var rc : recordComponents) {
-            Class<?> fieldType = rc.getType();
-            Method method = rc.getAccessor();
-            MethodHandle handle = lookup.unreflect(method);
-            
-            if (fieldType.isRecord()) {
-                MethodType typed = RECORD_MAP_HANDLE.type().changeParameterType(0, handle.type().returnType());
-                handle = MethodHandles.filterReturnValue(handle, RECORD_MAP_HANDLE.asType(typed));
-            }
-            getters.put(rc.getName(), handle);
-        }
-        Holder.GETTERS.putIfAbsent(clz, getters);
-        return getters;
+        return RecordConverter.of(v.getClass()).toMap(v);
     }
 
     public static final Object to_record(PersistentMap map, Class clz) throws Throwable {
-        SetRec setters = Holder.SETTERS.get(clz);
-        if (setters == null) {
-            setters = createSetters(clz);
-        }
-        List<Object> part = new ArrayList<>();
-        for (var h : setters.accessors()) {
-            part.add(h.invoke(map));
-        }
-        return setters.cons().invokeWithArguments(part);
+        return RecordConverter.of(clz).fromMap(map);
     }
 
-    private static SetRec createSetters(Class<? extends Object> clz)
-            throws IllegalAccessException, NoSuchMethodException, SecurityException {
-        List<MethodHandle> order = new ArrayList<>();
-        List<Class> types = new ArrayList<>();
-
-        Lookup lookup = LookupHolder.PUBLIC_LOOKUP;
+    @PileDoc("Encodes a value in the compact binary data format. Supports nil, booleans, numbers, chars, strings, keywords, symbols, lists, seqs, vectors, maps, sets and primitive arrays. Metadata is not kept.")
+    public static byte[] encode(Object v) {
+        return BinaryWriter.encode(v);
+    }
 
-        RecordComponent[] recordComponents = clz.getRecordComponents();
-        ensure(recordComponents != null, clz + " is not a record");
-        for (var rc : recordComponents) {
-            Class<?> fieldType = rc.getType();
-            String name = rc.getName();
-            MethodHandle handle = MAP_GET;
-            if (fieldType.isRecord()) {
-                final MethodHandle bound = insertArguments(TO_RECORD_HANDLE, 1, fieldType);
-                final MethodHandle typedGet = handle.asType(handle.type().changeReturnType(PersistentMap.class));
+    @PileDoc("Decodes a value written by encode.")
+    public static Object decode(byte[] bytes) {
+        return BinaryReader.decode(bytes);
+    }
 
-                final MethodHandle maybeDebugHandle;
-                if (DebugHelpers.isDebugEnabled()) {
-                    maybeDebugHandle = DebugHelpers.catchFormatted(typedGet, "Expected value at key %2$s in '%1$s' to be a " + PersistentMap.class);
-                } else {
-                    maybeDebugHandle = typedGet;
-                }
-                final MethodHandle withKey = insertArguments(maybeDebugHandle, 1, keyword(name));
-                handle = MethodHandles.filterReturnValue(withKey, bound);
-            } else {
-                handle = insertArguments(handle, 1, keyword(name));
+    @PileDoc("Writes each value to the channel in the binary data format. Keywords and symbols are only written in full once per call. Each call writes a new stream, so calls may be repeated on the same channel. The channel is not closed.")
+    public static void write_binary(WritableByteChannel ch, Iterable values) throws IOException {
+        BufferPool pool = BufferPool.shared();
+        ByteBuffer buf = pool.acquire();
+        try {
+            BinaryWriter writer = new BinaryWriter(ch, buf);
+            for (Object v : values) {
+                writer.write(v);
             }
-            order.add(handle);
-            types.add(fieldType);
+            writer.flush();
+        } finally {
+            pool.release(buf);
         }
-
-        Constructor<? extends Object> cons = clz.getDeclaredConstructor(types.toArray(Class[]::new));
-
-        MethodHandle mhCons = lookup.unreflectConstructor(cons);
-
-        SetRec setRec = new SetRec(order, mhCons);
-
-        Holder.SETTERS.putIfAbsent(clz, setRec);
-        return setRec;
-    }
-
-    private record SetRec(List<MethodHandle> accessors, MethodHandle cons) {
     }
 
-    private static class Holder {
-        private static final ConcurrentHashMap<Class, Map<String, MethodHandle>> GETTERS = new ConcurrentHashMap<>();
-        private static final ConcurrentHashMap<Class, SetRec> SETTERS = new ConcurrentHashMap<>();
+    @PileDoc("Lazily reads each value from a channel written by one or more calls to write-binary.")
+    public static ISeq read_binary(ReadableByteChannel ch) {
+        return seqIterator(new BinaryReader(ch));
     }
 
 }
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.nativebase;
+
+import static pile.nativebase.NativeCore.*;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import pile.collection.PersistentMap;
+import pile.core.ISeq;
+import pile.core.Keyword;
+import pile.core.json.JsonReader;
+import pile.core.json.JsonWriter;
+
+/**
+ * See pile.core.json
+ *
+ */
+public class NativeJson {
+
+    private static final Keyword KEYWORDIZE = Keyword.of("keywordize");
+    private static final Keyword LAZY = Keyword.of("lazy");
+
+    private NativeJson() {}
+
+    @PileDoc("Reads the first JSON value from the string. Objects are maps with string keys, arrays are vectors.")
+    public static Object read_str(CharSequence s) {
+        return JsonReader.read(s);
+    }
+
+    @PileDoc("Reads the first JSON value from the string. Options: :keywordize to read object keys as keywords, :lazy to decode nested objects and arrays only when they are first used.")
+    public static Object read_str(CharSequence s, PersistentMap opts) {
+        JsonReader reader = configure(JsonReader.of(s), opts);
+        return reader.hasNext() ? reader.next() : null;
+    }
+
+    @PileDoc("Reads the first JSON value from the reader, see read-str.")
+    public static Object read(Reader r) {
+        return read(r, PersistentMap.EMPTY);
+    }
+
+    @PileDoc("Reads the first JSON value from the reader, see read-str for options.")
+    public static Object read(Reader r, PersistentMap opts) {
+        JsonReader reader = configure(JsonReader.of(r), opts);
+        return reader.hasNext() ? reader.next() : null;
+    }
+
+    @PileDoc("Lazily reads each consecutive JSON value from the reader, eg. newline delimited JSON. See read-str for options.")
+    public static ISeq read_seq(Reader r) {
+        return read_seq(r, PersistentMap.EMPTY);
+    }
+
+    @PileDoc("Lazily reads each consecutive JSON value from the reader, eg. newline delimited JSON. See read-str for options.")
+    public static ISeq read_seq(Reader r, PersistentMap opts) {
+        return seqIterator(configure(JsonReader.of(r), opts));
+    }
+
+    @PileDoc("Returns the value as a JSON string. Keywords are written as strings of their name.")
+    public static String write_str(Object v) {
+        return JsonWriter.writeString(v);
+    }
+
+    @PileDoc("Writes the value as JSON to the writer (or any appendable), then flushes it.")
+    public static void write(Object v, Appendable out) throws IOException {
+        new JsonWriter(out).write(v).flush();
+    }
+
+    private static JsonReader configure(JsonReader reader, PersistentMap opts) {
+        return reader.keywordize(option(opts, KEYWORDIZE)).lazy(option(opts, LAZY));
+    }
+
+    private static boolean option(PersistentMap opts, Keyword key) {
+        Object v = opts.get(key);
+        return v != null && !Boolean.FALSE.equals(v);
+    }
+
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.repl;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Copies everything read from the REPL input to a writer, so that the session
+ * can be replayed later, eg. as an AOT cache training workload.
+ */
+public class RecordingReader extends FilterReader {
+
+    private final Writer out;
+
+    public RecordingReader(Reader in, Writer out) {
+        super(in);
+        this.out = out;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int c = super.read();
+        if (c != -1) {
+            out.write(c);
+            if (c == '\n') {
+                out.flush();
+            }
+        }
+        return c;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        int count = super.read(cbuf, off, len);
+        if (count > 0) {
+            out.write(cbuf, off, count);
+            out.flush();
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            out.close();
+        }
+    }
+
+}
@@ -20,6 +20,10 @@ import static pile.compiler.Helpers.*;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.io.PushbackReader;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Optional;
 
 import pile.collection.PersistentList;
@@ -44,7 +48,13 @@ public class ReplMain {
 
     public void run() throws Throwable {
 
-        InputStreamReader isr = new InputStreamReader(System.in);
+        Reader isr = new InputStreamReader(System.in);
+        String record = System.getProperty("pile.repl.record");
+        if (record != null) {
+            // Session can be replayed by TrainingMain
+            isr = new RecordingReader(isr, Files.newBufferedWriter(Path.of(record), StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND));
+        }
         PushbackReader pr = new PushbackReader(isr, 5);
         
         PCall pprint = Pile.getFunction("pile.pprint", "pretty-print");         
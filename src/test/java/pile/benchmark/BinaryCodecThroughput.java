@@ -0,0 +1,95 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import pile.core.data.BinaryReader;
+import pile.core.data.BinaryWriter;
+import pile.core.parse.DataReader;
+
+/**
+ * Binary codec throughput against printing and reading text, reported in
+ * records per second.
+ */
+public class BinaryCodecThroughput {
+
+    @Fork(value = 1, warmups = 1, jvmArgsAppend = "--enable-preview")
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 3)
+    @OperationsPerInvocation(SetupData.RECORD_COUNT)
+    public void binaryEncode(SetupBinary plan, Blackhole hole) {
+        hole.consume(BinaryWriter.encodeAll(plan.records));
+    }
+
+    @Fork(value = 1, warmups = 1, jvmArgsAppend = "--enable-preview")
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 3)
+    @OperationsPerInvocation(SetupData.RECORD_COUNT)
+    public void textEncode(SetupBinary plan, Blackhole hole) {
+        for (Object record : plan.records) {
+            hole.consume(record.toString());
+        }
+    }
+
+    @Fork(value = 1, warmups = 1, jvmArgsAppend = "--enable-preview")
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 3)
+    @OperationsPerInvocation(SetupData.RECORD_COUNT)
+    public void binaryDecode(SetupBinary plan, Blackhole hole) {
+        hole.consume(BinaryReader.decodeAll(plan.binary));
+    }
+
+    @Fork(value = 1, warmups = 1, jvmArgsAppend = "--enable-preview")
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 3)
+    @OperationsPerInvocation(SetupData.RECORD_COUNT)
+    public void textDecode(SetupBinary plan, Blackhole hole) {
+        for (String record : plan.text) {
+            hole.consume(DataReader.read(record));
+        }
+    }
+
+    /**
+     * Encoding then decoding each record on its own, without shared names.
+     */
+    @Fork(value = 1, warmups = 1, jvmArgsAppend = "--enable-preview")
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 3)
+    @OperationsPerInvocation(SetupData.RECORD_COUNT)
+    public void binaryRoundTrip(SetupBinary plan, Blackhole hole) {
+        for (Object record : plan.records) {
+            hole.consume(BinaryReader.decode(BinaryWriter.encode(record)));
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.benchmark;
+
+import java.io.StringReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import pile.core.parse.DataReader;
+import pile.core.parse.PileParser;
+
+/**
+ * Data reading throughput, reported in records per second.
+ */
+public class DataReaderThroughput {
+
+    @Fork(value = 1, warmups = 1, jvmArgsAppend = "--enable-preview")
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 3)
+    @OperationsPerInvocation(SetupData.RECORD_COUNT)
+    public void dataReader(SetupData plan, Blackhole hole) {
+        hole.consume(DataReader.read(plan.source));
+    }
+
+    @Fork(value = 1, warmups = 1, jvmArgsAppend = "--enable-preview")
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 3)
+    @OperationsPerInvocation(SetupData.RECORD_COUNT)
+    public void syntaxReader(SetupData plan, Blackhole hole) {
+        hole.consume(PileParser.parseSingle(new StringReader(plan.source)));
+    }
+}
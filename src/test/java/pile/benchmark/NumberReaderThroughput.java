@@ -0,0 +1,91 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.benchmark;
+
+import java.io.StringReader;
+import java.math.BigInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import pile.core.parse.DataReader;
+import pile.core.parse.NumberReader;
+import pile.core.parse.PileParser;
+
+/**
+ * Number reading throughput, reported in numbers per second.
+ */
+public class NumberReaderThroughput {
+
+    @Fork(value = 1, warmups = 1, jvmArgsAppend = "--enable-preview")
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 3)
+    @OperationsPerInvocation(SetupNumbers.NUMBER_COUNT)
+    public void numberReader(SetupNumbers plan, Blackhole hole) {
+        for (String token : plan.tokens) {
+            hole.consume(NumberReader.parse(token));
+        }
+    }
+
+    /**
+     * Baseline: the JDK parsers, with the type picked ahead of time.
+     */
+    @Fork(value = 1, warmups = 1, jvmArgsAppend = "--enable-preview")
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 3)
+    @OperationsPerInvocation(SetupNumbers.NUMBER_COUNT)
+    public void jdkParse(SetupNumbers plan, Blackhole hole) {
+        for (String token : plan.tokens) {
+            if (token.endsWith("N")) {
+                hole.consume(new BigInteger(token.substring(0, token.length() - 1)));
+            } else if (token.indexOf('.') >= 0) {
+                hole.consume(Double.parseDouble(token));
+            } else {
+                hole.consume(Long.parseLong(token));
+            }
+        }
+    }
+
+    @Fork(value = 1, warmups = 1, jvmArgsAppend = "--enable-preview")
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 3)
+    @OperationsPerInvocation(SetupNumbers.NUMBER_COUNT)
+    public void dataReader(SetupNumbers plan, Blackhole hole) {
+        hole.consume(DataReader.read(plan.source));
+    }
+
+    @Fork(value = 1, warmups = 1, jvmArgsAppend = "--enable-preview")
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 3)
+    @OperationsPerInvocation(SetupNumbers.NUMBER_COUNT)
+    public void syntaxReader(SetupNumbers plan, Blackhole hole) {
+        hole.consume(PileParser.parseSingle(new StringReader(plan.source)));
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.benchmark;
+
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import pile.core.data.BinaryWriter;
+import pile.core.parse.DataReader;
+
+@State(Scope.Thread)
+public class SetupBinary {
+
+    /**
+     * The {@link SetupData} records, each as text, and all of them encoded in
+     * one binary stream.
+     */
+    public List<Object> records;
+
+    public String[] text;
+
+    public byte[] binary;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SetupData data = new SetupData();
+        data.setUp();
+        records = (List<Object>) DataReader.read(data.source);
+        text = new String[records.size()];
+        for (int i = 0; i < text.length; ++i) {
+            text[i] = records.get(i).toString();
+        }
+        binary = BinaryWriter.encodeAll(records);
+    }
+
+}
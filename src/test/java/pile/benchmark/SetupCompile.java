@@ -0,0 +1,58 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.benchmark;
+
+import java.io.StringReader;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import pile.collection.PersistentList;
+import pile.core.RuntimeRoot;
+import pile.core.binding.NativeDynamicBinding;
+import pile.core.parse.PileParser;
+
+@State(Scope.Thread)
+public class SetupCompile {
+
+    /**
+     * Must match the number of forms in {@link #SOURCE}.
+     */
+    public static final int FORM_COUNT = 6;
+
+    private static final String SOURCE = """
+            (defn bench-branch [x] (if (> x 10) (str "big " x) (inc x)))
+            (defn bench-seq [xs] (reduce + 0 (map inc xs)))
+            (defn bench-let [m k] (let [v (get m k)] (when v (assoc m k (inc v)))))
+            (defn bench-loop [a b] (loop [i 0 acc a] (if (< i b) (recur (inc i) (+ acc i)) acc)))
+            (defn bench-closure [x] (fn [y] (fn [z] (+ x y z))))
+            (defn bench-interop [^String s] (.length (.trim s)))
+            """;
+
+    public PersistentList forms;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        NativeDynamicBinding.NAMESPACE.set(RuntimeRoot.defineOrGet("pile.benchmark.compile"));
+        forms = PileParser.parse(new StringReader(SOURCE), "compile-bench.pile");
+        if (forms.count() != FORM_COUNT) {
+            throw new IllegalStateException("Expected " + FORM_COUNT + " forms, found " + forms.count());
+        }
+    }
+
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+public class SetupData {
+
+    /**
+     * Number of records in {@link #source}, roughly 100 bytes each.
+     */
+    public static final int RECORD_COUNT = 10_000;
+
+    public String source;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < RECORD_COUNT; ++i) {
+            sb.append("{:id ").append(i)
+              .append(" :name \"record-").append(i).append('"')
+              .append(" :score ").append(i * 1.5d)
+              .append(" :tags #{:a :b}")
+              .append(" :refs [").append(i - 1).append(' ').append(i + 1).append("]}\n");
+        }
+        sb.append(']');
+        source = sb.toString();
+    }
+
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.benchmark;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+public class SetupNumbers {
+
+    /**
+     * Number of numbers in {@link #source} and {@link #tokens}.
+     */
+    public static final int NUMBER_COUNT = 50_000;
+
+    /**
+     * A vector of mixed ints, longs, doubles and big numbers.
+     */
+    public String source;
+
+    public String[] tokens;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        tokens = new String[NUMBER_COUNT];
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < NUMBER_COUNT; ++i) {
+            String token = switch (i % 8) {
+                case 0, 1, 2 -> Integer.toString(random.nextInt(1_000_000) - 500_000);
+                case 3 -> Long.toString(random.nextLong());
+                case 4, 5 -> Double.toString(random.nextDouble() * 1000);
+                case 6 -> String.format("%.4f", random.nextGaussian());
+                default -> random.nextLong() + "" + Math.abs(random.nextInt()) + "N";
+            };
+            tokens[i] = token;
+            sb.append(token).append(i % 16 == 15 ? '\n' : ' ');
+        }
+        sb.append(']');
+        source = sb.toString();
+    }
+
+}
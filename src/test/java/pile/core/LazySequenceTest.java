@@ -0,0 +1,58 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class LazySequenceTest {
+
+    @Test
+    public void testRealizeOnce() {
+        AtomicInteger calls = new AtomicInteger();
+        LazySequence<Integer> lazy = new LazySequence<>(args -> {
+            calls.incrementAndGet();
+            return ISeq.of(1, 2);
+        });
+        assertFalse(lazy.isRealized());
+        assertEquals(1, lazy.seq().first().intValue());
+        assertTrue(lazy.isRealized());
+        assertSame(lazy.seq(), lazy.seq());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testNestedUnwrap() {
+        // Deep enough to overflow if unwrapped recursively
+        LazySequence<Integer> lazy = new LazySequence<>(args -> ISeq.single(1));
+        for (int i = 0; i < 100_000; ++i) {
+            final LazySequence<Integer> inner = lazy;
+            lazy = new LazySequence<>(args -> inner);
+        }
+        assertEquals(1, lazy.seq().first().intValue());
+    }
+
+    @Test
+    public void testEmpty() {
+        LazySequence<Integer> lazy = new LazySequence<>(args -> null);
+        assertNull(lazy.seq());
+        assertTrue(lazy.isRealized());
+    }
+
+}
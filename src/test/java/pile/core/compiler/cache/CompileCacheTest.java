@@ -0,0 +1,129 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.compiler.cache;
+
+import static org.junit.Assert.*;
+import static pile.core.TestHelpers.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import pile.core.AbstractTest;
+import pile.core.Namespace;
+import pile.core.binding.NativeDynamicBinding;
+import pile.core.method.AbstractCompiledMethod;
+
+public class CompileCacheTest extends AbstractTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path dir;
+
+    @Before
+    public void setup() throws IOException {
+        dir = folder.newFolder().toPath();
+        CompileCache.reset(dir);
+    }
+
+    @After
+    public void teardown() {
+        CompileCache.reset(null);
+    }
+
+    private static Class<?> backing(String name) {
+        return ((AbstractCompiledMethod) e(name)).getBacking();
+    }
+
+    private long cached() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(p -> p.toString().endsWith(".classes")).count();
+        }
+    }
+
+    @Test
+    public void testHitOnReload() throws IOException {
+        pre("(defn f [a] (+ a 1))");
+        Class<?> first = backing("f");
+        assertEquals(1, cached());
+
+        pre("(defn f [a] (+ a 1))");
+        assertSame(first, backing("f"));
+        assertEquals(2L, e("(f 1)"));
+        assertEquals(1, cached());
+    }
+
+    @Test
+    public void testDependencyChanged() throws IOException {
+        pre("""
+                (defn g [] 1)
+                (defn f [] (g))
+                """);
+        Class<?> first = backing("f");
+
+        pre("""
+                (defn g [] 2)
+                (defn f [] (g))
+                """);
+        assertNotSame(first, backing("f"));
+        assertEquals(2L, e("(f)"));
+    }
+
+    @Test
+    public void testImportChanged() {
+        Namespace ns = NativeDynamicBinding.NAMESPACE.getValue();
+        ns.createClassSymbol("Coll", ArrayList.class);
+        pre("(defn f [] (new Coll))");
+        Class<?> first = backing("f");
+        assertEquals(ArrayList.class, e("(f)").getClass());
+
+        ns.createClassSymbol("Coll", LinkedList.class);
+        pre("(defn f [] (new Coll))");
+        assertNotSame(first, backing("f"));
+        assertEquals(LinkedList.class, e("(f)").getClass());
+    }
+
+    @Test
+    public void testUncacheableValue() throws IOException {
+        pre("(def v (+ 1 2))");
+        assertEquals(3L, e("v"));
+        pre("(def v (+ 1 3))");
+        assertEquals(4L, e("v"));
+        assertEquals(0, cached());
+    }
+
+    @Test
+    public void testNestedDef() throws IOException {
+        pre("(do (defn h [] 1))");
+        Class<?> first = backing("h");
+
+        pre("(do (defn h [] 1))");
+        assertNotSame(first, backing("h"));
+        assertEquals(1L, e("(h)"));
+        assertEquals(0, cached());
+    }
+
+}
@@ -0,0 +1,253 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.data;
+
+import static org.junit.Assert.*;
+import static pile.core.data.BinaryFormat.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import pile.collection.PersistentList;
+import pile.collection.PersistentMap;
+import pile.collection.PersistentSet;
+import pile.collection.PersistentVector;
+import pile.core.Keyword;
+import pile.core.Symbol;
+import pile.core.parse.DataReader;
+
+public class BinaryCodecTest {
+
+    private static Object roundTrip(Object o) {
+        return BinaryReader.decode(BinaryWriter.encode(o));
+    }
+
+    @Test
+    public void testScalars() {
+        assertNull(roundTrip(null));
+        assertEquals(true, roundTrip(true));
+        assertEquals(false, roundTrip(false));
+        assertEquals(-12, roundTrip(-12));
+        assertEquals(Integer.MIN_VALUE, roundTrip(Integer.MIN_VALUE));
+        assertEquals(Long.MAX_VALUE, roundTrip(Long.MAX_VALUE));
+        assertEquals((short) 7, roundTrip((short) 7));
+        assertEquals((byte) -1, roundTrip((byte) -1));
+        assertEquals(1.5d, roundTrip(1.5d));
+        assertEquals(2.5f, roundTrip(2.5f));
+        assertEquals('x', roundTrip('x'));
+        assertEquals("", roundTrip(""));
+        assertEquals("h\u00e9llo \u2603", roundTrip("h\u00e9llo \u2603"));
+        assertEquals(new BigInteger("-123456789012345678901234567890"),
+                roundTrip(new BigInteger("-123456789012345678901234567890")));
+        assertEquals(new BigDecimal("1.250"), roundTrip(new BigDecimal("1.250")));
+    }
+
+    @Test
+    public void testNames() {
+        assertSame(Keyword.of("a"), roundTrip(Keyword.of("a")));
+        assertSame(Keyword.of("ns", "b"), roundTrip(Keyword.of("ns", "b")));
+        assertEquals(new Symbol("foo"), roundTrip(new Symbol("foo")));
+        assertEquals(new Symbol("ns", "bar"), roundTrip(new Symbol("ns", "bar")));
+    }
+
+    @Test
+    public void testCollections() {
+        Object data = DataReader.read("""
+                {:id 1 :name "one" :tags #{:a :b} :refs [1 2 3] :list (1 :two "three")
+                 :nested {:deep [{:x 1} {:x 2}]} :empty-vec [] :empty-map {} :sym foo/bar}
+                """);
+        Object out = roundTrip(data);
+        assertEquals(data, out);
+        assertTrue(out instanceof PersistentMap);
+        PersistentMap map = (PersistentMap) out;
+        assertTrue(map.get(Keyword.of("tags")) instanceof PersistentSet);
+        assertTrue(map.get(Keyword.of("refs")) instanceof PersistentVector);
+        assertTrue(map.get(Keyword.of("list")) instanceof PersistentList);
+
+        PersistentVector large = PersistentVector.fromList(new ArrayList<>(Collections.nCopies(1000, 7)));
+        assertEquals(large, roundTrip(large));
+    }
+
+    @Test
+    public void testArrays() {
+        assertArrayEquals(new byte[] { 1, -2, 3 }, (byte[]) roundTrip(new byte[] { 1, -2, 3 }));
+        assertArrayEquals(new int[] { 1, -2, 3 }, (int[]) roundTrip(new int[] { 1, -2, 3 }));
+        assertArrayEquals(new long[] { Long.MIN_VALUE, 0 }, (long[]) roundTrip(new long[] { Long.MIN_VALUE, 0 }));
+        assertArrayEquals(new float[] { 1.5f }, (float[]) roundTrip(new float[] { 1.5f }), 0f);
+        assertArrayEquals(new double[] { 1.5d, -0.25d }, (double[]) roundTrip(new double[] { 1.5d, -0.25d }), 0d);
+    }
+
+    @Test
+    public void testStreaming() throws IOException {
+        List<Object> values = new ArrayList<>();
+        for (int i = 0; i < 500; ++i) {
+            values.add(DataReader.read("{:id " + i + " :name \"record-" + i + "\" :score " + (i * 1.5d) + "}"));
+        }
+        double[] doubles = new double[1000];
+        for (int i = 0; i < doubles.length; ++i) {
+            doubles[i] = i / 3d;
+        }
+        String longString = "abc".repeat(1000);
+
+        // Small buffers so values span many refills
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (BinaryWriter writer = new BinaryWriter(Channels.newChannel(bos), 64)) {
+            for (Object v : values) {
+                writer.write(v);
+            }
+            writer.write(doubles);
+            writer.write(longString);
+        }
+        byte[] bytes = bos.toByteArray();
+
+        try (BinaryReader reader = new BinaryReader(Channels.newChannel(new ByteArrayInputStream(bytes)), 64)) {
+            for (Object v : values) {
+                assertEquals(v, reader.next());
+            }
+            assertArrayEquals(doubles, (double[]) reader.next(), 0d);
+            assertEquals(longString, reader.next());
+            assertFalse(reader.hasNext());
+        }
+
+        // Shared names make the stream smaller than encoding each value
+        int separate = values.stream().mapToInt(v -> BinaryWriter.encode(v).length).sum();
+        assertTrue(BinaryWriter.encodeAll(values).length < separate);
+        assertEquals(values, BinaryReader.decodeAll(BinaryWriter.encodeAll(values)));
+    }
+
+    @Test
+    public void testBuffer() throws IOException {
+        byte[] bytes = BinaryWriter.encodeAll(List.of(1, "two", Keyword.of("three")));
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+        BinaryReader reader = new BinaryReader(direct);
+        assertEquals(1, reader.read());
+        assertEquals("two", reader.read());
+        assertSame(Keyword.of("three"), reader.read());
+        assertFalse(reader.hasNext());
+        assertEquals(0, direct.position());
+    }
+
+    @Test
+    public void testConcatenated() throws IOException {
+        Keyword key = Keyword.of("key");
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        WritableByteChannel ch = Channels.newChannel(bos);
+        // Each writer starts its own names, as separate write-binary calls do
+        for (int i = 0; i < 2; ++i) {
+            BinaryWriter writer = new BinaryWriter(ch, ByteBuffer.allocate(64));
+            writer.write(key);
+            writer.write(key);
+            writer.flush();
+        }
+        assertEquals(List.of(key, key, key, key), BinaryReader.decodeAll(bos.toByteArray()));
+    }
+
+    @Test
+    public void testCorruptCount() throws IOException {
+        // A map of 2^29 entries
+        byte[] bytes = { 'P', 'I', 'L', 'B', 1, 19, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x02 };
+        try {
+            BinaryReader.decode(bytes);
+            fail();
+        } catch (UncheckedIOException e) {
+            assertTrue(e.getCause() instanceof StreamCorruptedException);
+        }
+        try (BinaryReader reader = new BinaryReader(Channels.newChannel(new ByteArrayInputStream(bytes)))) {
+            reader.read();
+            fail();
+        } catch (EOFException e) {
+            // Ran out of values rather than allocating them all
+        }
+    }
+
+    @Test
+    public void testCorruptLength() throws IOException {
+        // Lengths of 2^30 followed by a few bytes
+        for (byte tag : new byte[] { STRING, BIG_INTEGER, BYTE_ARRAY, INT_ARRAY, LONG_ARRAY, FLOAT_ARRAY,
+                DOUBLE_ARRAY }) {
+            byte[] bytes = { 'P', 'I', 'L', 'B', 1, tag, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x04, 1, 2,
+                    3 };
+            try (BinaryReader reader = new BinaryReader(Channels.newChannel(new ByteArrayInputStream(bytes)))) {
+                reader.read();
+                fail();
+            } catch (EOFException e) {
+                // Ran out of input rather than allocating the full length
+            }
+        }
+    }
+
+    @Test
+    public void testLargeArrays() throws IOException {
+        byte[] bytes = new byte[300_000];
+        int[] ints = new int[200_000];
+        double[] doubles = new double[100_000];
+        for (int i = 0; i < ints.length; ++i) {
+            bytes[i] = (byte) i;
+            ints[i] = i * 31;
+            doubles[i / 2] = i / 7d;
+        }
+        String string = "pile".repeat(50_000);
+        BigInteger big = BigInteger.ONE.shiftLeft(800_000).subtract(BigInteger.TEN);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (BinaryWriter writer = new BinaryWriter(Channels.newChannel(bos), 1024)) {
+            writer.write(bytes);
+            writer.write(ints);
+            writer.write(doubles);
+            writer.write(string);
+            writer.write(big);
+        }
+        try (BinaryReader reader = new BinaryReader(Channels.newChannel(new ByteArrayInputStream(bos.toByteArray())),
+                1024)) {
+            assertArrayEquals(bytes, (byte[]) reader.read());
+            assertArrayEquals(ints, (int[]) reader.read());
+            assertArrayEquals(doubles, (double[]) reader.read(), 0d);
+            assertEquals(string, reader.read());
+            assertEquals(big, reader.read());
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupported() {
+        BinaryWriter.encode(new Object());
+    }
+
+    @Test
+    public void testCorrupt() {
+        try {
+            BinaryReader.decode(new byte[] { 'n', 'o', 'p', 'e', 1, 0 });
+            fail();
+        } catch (UncheckedIOException e) {
+            assertTrue(e.getCause() instanceof StreamCorruptedException);
+        }
+    }
+
+}
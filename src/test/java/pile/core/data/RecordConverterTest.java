@@ -0,0 +1,106 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.data;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import pile.collection.PersistentMap;
+import pile.core.Keyword;
+import pile.core.parse.DataReader;
+
+public class RecordConverterTest {
+
+    public record Point(int x, long y, double weight, boolean visible, char label, String name) {
+    }
+
+    public record Shape(Point origin, List<Point> points, Set<Point> corners, Map<String, Point> named,
+            List<String> tags) {
+    }
+
+    public record Chain(int value, Chain next) {
+    }
+
+    @Test
+    public void testPrimitives() throws Throwable {
+        Point p = new Point(1, 2L, 0.5, true, 'p', "one");
+        RecordConverter conv = RecordConverter.of(Point.class);
+        assertSame(conv, RecordConverter.of(Point.class));
+
+        PersistentMap map = conv.toMap(p);
+        assertEquals(PersistentMap.createArr(Keyword.of("x"), 1, Keyword.of("y"), 2L, Keyword.of("weight"), 0.5,
+                Keyword.of("visible"), true, Keyword.of("label"), 'p', Keyword.of("name"), "one"), map);
+        assertEquals(p, conv.fromMap(map));
+        // Numbers are narrowed as needed
+        assertEquals(p, conv.fromMap(map.assoc(Keyword.of("y"), 2).assoc(Keyword.of("x"), 1L)));
+    }
+
+    @Test
+    public void testNestedCollections() throws Throwable {
+        Point a = new Point(1, 2L, 0.5, true, 'a', "a");
+        Point b = new Point(3, 4L, 1.5, false, 'b', "b");
+        Shape shape = new Shape(a, List.of(a, b), Set.of(b), Map.of("first", a), List.of("x", "y"));
+        RecordConverter conv = RecordConverter.of(Shape.class);
+        RecordConverter points = RecordConverter.of(Point.class);
+
+        PersistentMap map = conv.toMap(shape);
+        assertEquals(points.toMap(a), map.get(Keyword.of("origin")));
+        assertEquals(List.of(points.toMap(a), points.toMap(b)), map.get(Keyword.of("points")));
+        assertEquals(Set.of(points.toMap(b)), map.get(Keyword.of("corners")));
+        assertEquals(Map.of("first", points.toMap(a)), map.get(Keyword.of("named")));
+        assertEquals(List.of("x", "y"), map.get(Keyword.of("tags")));
+
+        assertEquals(shape, conv.fromMap(map));
+    }
+
+    @Test
+    public void testRecordsInMap() throws Throwable {
+        Point a = new Point(1, 2L, 0.5, true, 'a', "a");
+        RecordConverter conv = RecordConverter.of(Shape.class);
+        PersistentMap map = conv.toMap(new Shape(null, List.of(), Set.of(), Map.of(), null));
+        assertNull(map.get(Keyword.of("origin")));
+        assertNull(map.get(Keyword.of("tags")));
+
+        // Records are allowed where maps of them are expected
+        Shape shape = (Shape) conv.fromMap(map.assoc(Keyword.of("origin"), a));
+        assertSame(a, shape.origin());
+    }
+
+    @Test
+    public void testRecursive() throws Throwable {
+        Chain chain = new Chain(1, new Chain(2, new Chain(3, null)));
+        RecordConverter conv = RecordConverter.of(Chain.class);
+        PersistentMap map = conv.toMap(chain);
+        assertEquals(DataReader.read("{:value 1 :next {:value 2 :next {:value 3 :next nil}}}"), map);
+        assertEquals(chain, conv.fromMap(map));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotRecord() {
+        RecordConverter.of(String.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongNestedType() throws Throwable {
+        RecordConverter.of(Shape.class).fromMap(PersistentMap.createArr(Keyword.of("origin"), "nope"));
+    }
+
+}
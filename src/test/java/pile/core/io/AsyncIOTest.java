@@ -0,0 +1,159 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import pile.core.concurrency.BufferedChannel;
+import pile.core.concurrency.PileChannel;
+
+public class AsyncIOTest {
+
+    private static Path tempFile() throws IOException {
+        Path p = Files.createTempFile("pile-async", null);
+        p.toFile().deleteOnExit();
+        return p;
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] b = new byte[size];
+        new Random(size).nextBytes(b);
+        return b;
+    }
+
+    private static byte[] drain(PileChannel chan) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Object chunk;
+        while ((chunk = chan.get()) != null) {
+            out.write((byte[]) chunk);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testReadWrite() throws Exception {
+        Path p = tempFile();
+        byte[] data = randomBytes(100_000);
+        assertEquals(100_000L, (long) AsyncIO.write(p, data).get(5, TimeUnit.SECONDS));
+        assertArrayEquals(data, AsyncIO.read(p).get(5, TimeUnit.SECONDS));
+        byte[] part = AsyncIO.read(p, 99_990, 100).get(5, TimeUnit.SECONDS);
+        assertEquals(10, part.length);
+        assertEquals(data[99_990], part[0]);
+    }
+
+    @Test
+    public void testMissingFile() throws Exception {
+        try {
+            AsyncIO.read(Path.of("does-not-exist-" + System.nanoTime())).get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof NoSuchFileException);
+        }
+    }
+
+    @Test
+    public void testFileChunks() throws Exception {
+        Path p = tempFile();
+        byte[] data = randomBytes(50_000);
+        Files.write(p, data);
+        // Smaller than the file so reads wait on the consumer
+        PileChannel chan = new BufferedChannel(2);
+        CompletableFuture<Long> done = AsyncIO.readChunks(p, chan, 1000);
+        assertArrayEquals(data, drain(chan));
+        assertEquals(50_000L, (long) done.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testBlockingChunks() throws Exception {
+        byte[] data = randomBytes(10_000);
+        PileChannel chan = new BufferedChannel(1);
+        CompletableFuture<Long> done = AsyncIO.readChunks(Channels.newChannel(new ByteArrayInputStream(data)), chan,
+                333);
+        assertArrayEquals(data, drain(chan));
+        assertEquals(10_000L, (long) done.get(5, TimeUnit.SECONDS));
+    }
+
+    private static void assertClosedEarly(CompletableFuture<Long> done) throws Exception {
+        try {
+            done.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testConsumerClosesEarly() throws Exception {
+        Path p = tempFile();
+        Files.write(p, randomBytes(50_000));
+        AsynchronousFileChannel source = AsynchronousFileChannel.open(p, StandardOpenOption.READ);
+        PileChannel chan = new BufferedChannel(1);
+        CompletableFuture<Long> done = AsyncIO.readChunks(source, chan, 1000);
+        assertNotNull(chan.get());
+        // Let the pump fill the channel and queue its next chunk
+        Thread.sleep(100);
+        chan.close();
+        assertClosedEarly(done);
+        for (int i = 0; i < 500 && source.isOpen(); ++i) {
+            Thread.sleep(10);
+        }
+        assertFalse(source.isOpen());
+    }
+
+    @Test
+    public void testBlockingConsumerClosesEarly() throws Exception {
+        ReadableByteChannel source = Channels.newChannel(new ByteArrayInputStream(randomBytes(10_000)));
+        PileChannel chan = new BufferedChannel(1);
+        CompletableFuture<Long> done = AsyncIO.readChunks(source, chan, 100);
+        assertNotNull(chan.get());
+        // Let the reader fill the channel and block on its next chunk
+        Thread.sleep(100);
+        chan.close();
+        assertClosedEarly(done);
+        assertFalse(source.isOpen());
+    }
+
+    @Test
+    public void testCopyChunks() throws Exception {
+        Path source = tempFile();
+        Path dest = tempFile();
+        byte[] data = randomBytes(200_000);
+        Files.write(source, data);
+        PileChannel chan = new BufferedChannel(4);
+        CompletableFuture<Long> written = AsyncIO.writeChunks(chan, dest);
+        AsyncIO.readChunks(source, chan, 4096);
+        assertEquals(200_000L, (long) written.get(5, TimeUnit.SECONDS));
+        assertArrayEquals(data, Files.readAllBytes(dest));
+    }
+
+}
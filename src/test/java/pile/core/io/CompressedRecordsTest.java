@@ -0,0 +1,223 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import org.junit.Test;
+
+public class CompressedRecordsTest {
+
+    private static Path tempFile() throws IOException {
+        Path p = Files.createTempFile("pile-gz", ".gz");
+        p.toFile().deleteOnExit();
+        return p;
+    }
+
+    /**
+     * Compressible text followed by incompressible bytes, over many blocks.
+     */
+    private static byte[] sample() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < 20_000; ++i) {
+            out.writeBytes(("record " + i + " of the sample\n").getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] noise = new byte[200_000];
+        new Random(7).nextBytes(noise);
+        out.writeBytes(noise);
+        return out.toByteArray();
+    }
+
+    private static List<String> lines(RecordReader reader) {
+        List<String> out = new ArrayList<>();
+        for (byte[] record : reader) {
+            out.add(new String(record, StandardCharsets.UTF_8));
+        }
+        return out;
+    }
+
+    @Test
+    public void testBlockGzip() throws IOException {
+        byte[] data = sample();
+        Path p = tempFile();
+        try (OutputStream out = new BlockGzipOutputStream(Files.newOutputStream(p))) {
+            out.write(data, 0, 1000);
+            out.flush();
+            out.write(data, 1000, data.length - 1000);
+        }
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(p))) {
+            assertArrayEquals(data, in.readAllBytes());
+        }
+        for (int parallelism : new int[] { 1, 4 }) {
+            try (InputStream in = BlockGzipInputStream.open(p, parallelism)) {
+                assertTrue(in instanceof BlockGzipInputStream);
+                assertArrayEquals(data, in.readAllBytes());
+            }
+        }
+    }
+
+    @Test
+    public void testPlainGzipFallback() throws IOException {
+        byte[] data = sample();
+        Path p = tempFile();
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(p))) {
+            out.write(data);
+        }
+        try (InputStream in = BlockGzipInputStream.open(p)) {
+            assertFalse(in instanceof BlockGzipInputStream);
+            assertArrayEquals(data, in.readAllBytes());
+        }
+    }
+
+    @Test
+    public void testOptionalHeaderFallback() throws IOException {
+        byte[] data = "some text to compress".getBytes(StandardCharsets.UTF_8);
+        Path p = tempFile();
+        try (OutputStream out = new BlockGzipOutputStream(Files.newOutputStream(p))) {
+            out.write(data);
+        }
+        byte[] bytes = Files.readAllBytes(p);
+
+        // Add a file name to the first block, keeping its block size correct
+        byte[] name = "name\0".getBytes(StandardCharsets.US_ASCII);
+        int dataAt = 12 + ((bytes[10] & 0xff) | (bytes[11] & 0xff) << 8);
+        int blockSize = ((bytes[16] & 0xff) | (bytes[17] & 0xff) << 8) + name.length;
+        bytes[3] |= 8;
+        bytes[16] = (byte) blockSize;
+        bytes[17] = (byte) (blockSize >> 8);
+        ByteArrayOutputStream named = new ByteArrayOutputStream();
+        named.write(bytes, 0, dataAt);
+        named.writeBytes(name);
+        named.write(bytes, dataAt, bytes.length - dataAt);
+        Files.write(p, named.toByteArray());
+
+        try (InputStream in = BlockGzipInputStream.open(p)) {
+            assertFalse(in instanceof BlockGzipInputStream);
+            assertArrayEquals(data, in.readAllBytes());
+        }
+    }
+
+    @Test(expected = ZipException.class)
+    public void testCorruptBlock() throws IOException {
+        Path p = tempFile();
+        try (OutputStream out = new BlockGzipOutputStream(Files.newOutputStream(p))) {
+            out.write("some text to compress".getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] bytes = Files.readAllBytes(p);
+        // First block's CRC
+        int crcAt = bytes.length - BlockGzipOutputStream.EOF_BLOCK.length - 8;
+        bytes[crcAt] ^= 1;
+        Files.write(p, bytes);
+        try (InputStream in = BlockGzipInputStream.open(p)) {
+            in.readAllBytes();
+        }
+    }
+
+    @Test
+    public void testLines() throws IOException {
+        String longLine = "x".repeat(200_000);
+        String text = "a\r\n\nb\n" + longLine + "\nlast";
+        RecordReader reader = RecordReader.lines(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(List.of("a", "", "b", longLine, "last"), lines(reader));
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void testLineEndsRejected() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (RecordWriter writer = RecordWriter.lines(out)) {
+            for (String bad : List.of("a\nb", "trailing\r")) {
+                try {
+                    writer.write(bad);
+                    fail();
+                } catch (IllegalArgumentException e) {
+                    // expected
+                }
+            }
+            writer.write("in\rside");
+        }
+        RecordReader reader = RecordReader.lines(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(List.of("in\rside"), lines(reader));
+    }
+
+    @Test(expected = IOException.class)
+    public void testMaxRecordSize() throws IOException {
+        byte[] line = "x".repeat(100_000).getBytes(StandardCharsets.UTF_8);
+        RecordReader.lines(new ByteArrayInputStream(line), 1000).next();
+    }
+
+    @Test
+    public void testLengthPrefixed() throws Throwable {
+        byte[] big = new byte[300_000];
+        new Random(3).nextBytes(big);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (RecordWriter writer = RecordWriter.lengthPrefixed(out)) {
+            writer.write("one");
+            writer.write(new byte[0]);
+            writer.write(big);
+            writer.write("line\nbreaks are fine");
+        }
+        RecordReader reader = RecordReader.lengthPrefixed(new ByteArrayInputStream(out.toByteArray()));
+        assertArrayEquals("one".getBytes(StandardCharsets.UTF_8), reader.next());
+        assertEquals(0, reader.next().length);
+        assertArrayEquals(big, reader.next());
+        Object count = reader.reduce(args -> ((Long) args[0]) + 1, 0L);
+        assertEquals(1L, count);
+        assertNull(reader.next());
+    }
+
+    @Test(expected = EOFException.class)
+    public void testTruncated() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (RecordWriter writer = RecordWriter.lengthPrefixed(out)) {
+            writer.write("truncated");
+        }
+        byte[] bytes = out.toByteArray();
+        RecordReader.lengthPrefixed(new ByteArrayInputStream(bytes, 0, bytes.length - 1)).next();
+    }
+
+    @Test
+    public void testCompressedRecords() throws IOException {
+        Path p = tempFile();
+        try (RecordWriter writer = RecordWriter.lines(new BlockGzipOutputStream(Files.newOutputStream(p)))) {
+            for (int i = 0; i < 50_000; ++i) {
+                writer.write("record " + i);
+            }
+        }
+        try (RecordReader reader = RecordReader.lines(BlockGzipInputStream.open(p, 4))) {
+            List<String> lines = lines(reader);
+            assertEquals(50_000, lines.size());
+            assertEquals("record 49999", lines.get(49_999));
+        }
+    }
+
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import pile.core.ISeq;
+
+public class MappedFileTest {
+
+    private static Path tempFile(String content) throws IOException {
+        Path p = Files.createTempFile("pile-mapped", null);
+        p.toFile().deleteOnExit();
+        Files.writeString(p, content, StandardCharsets.UTF_8);
+        return p;
+    }
+
+    private static List<String> lines(String content) throws IOException {
+        try (MappedFile m = MappedFile.open(tempFile(content))) {
+            List<String> out = new ArrayList<>();
+            for (Line line : m.lines(StandardCharsets.UTF_8)) {
+                out.add(line.toString());
+            }
+            assertEquals(out.size(), m.lines(StandardCharsets.UTF_8).count());
+            return out;
+        }
+    }
+
+    @Test
+    public void testLines() throws IOException {
+        assertEquals(List.of(), lines(""));
+        assertEquals(List.of("a"), lines("a"));
+        assertEquals(List.of("a"), lines("a\n"));
+        assertEquals(List.of("a", "", "b"), lines("a\r\n\nb"));
+        assertEquals(List.of("abcdefghijkl", "mnopqrstuvwxyz0123", "é"), lines("abcdefghijkl\nmnopqrstuvwxyz0123\né\n"));
+    }
+
+    @Test
+    public void testLineMatching() throws IOException {
+        try (MappedFile m = MappedFile.open(tempFile("ERROR disk full\nINFO café ok\n"))) {
+            List<Line> lines = m.lines(StandardCharsets.UTF_8).toStream().toList();
+            assertTrue(lines.get(0).startsWith("ERROR"));
+            assertFalse(lines.get(1).startsWith("ERROR"));
+            assertTrue(lines.get(1).contains("ok"));
+            assertTrue(lines.get(1).contains("café"));
+            assertFalse(lines.get(0).contains("full!"));
+            assertEquals(15, lines.get(0).byteLength());
+            assertEquals(12, lines.get(1).length());
+        }
+    }
+
+    @Test
+    public void testParallelLines() throws Throwable {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100_000; ++i) {
+            sb.append("line ").append(i).append('\n');
+        }
+        try (MappedFile m = MappedFile.open(tempFile(sb.toString()))) {
+            MappedLines lines = m.lines(StandardCharsets.UTF_8);
+            List<String> all = lines.toStream().parallel().map(Line::toString).collect(Collectors.toList());
+            assertEquals(100_000, all.size());
+            for (int i = 0; i < all.size(); ++i) {
+                assertEquals("line " + i, all.get(i));
+            }
+            Object count = lines.reduce(args -> ((Long) args[0]) + 1, 0L);
+            assertEquals(100_000L, count);
+        }
+    }
+
+    @Test
+    public void testBytes() throws IOException {
+        try (MappedFile m = MappedFile.open(tempFile("abc"), 1, 2)) {
+            assertEquals(2, m.size());
+            ISeq<Byte> seq = m.seq();
+            assertEquals((byte) 'b', (byte) seq.first());
+            assertEquals((byte) 'c', (byte) seq.next().first());
+            assertNull(seq.next().next());
+            assertEquals(List.of((byte) 'b', (byte) 'c'), m.toStream().toList());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosed() throws IOException {
+        MappedFile m = MappedFile.open(tempFile("abc"));
+        m.close();
+        m.get(0);
+    }
+
+    @Test
+    public void testTransfer() throws IOException {
+        Path source = tempFile("0123456789");
+        Path dest = tempFile("start:");
+        assertEquals(10, Transfers.transferTo(source, dest));
+        assertEquals("start:0123456789", Files.readString(dest));
+
+        BufferPool pool = new BufferPool(4, 1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long n = Transfers.copy(Channels.newChannel(new ByteArrayInputStream(new byte[10])),
+                Channels.newChannel(out), pool);
+        assertEquals(10, n);
+        assertEquals(10, out.size());
+    }
+
+    @Test
+    public void testPool() {
+        BufferPool pool = new BufferPool(16, 1);
+        ByteBuffer a = pool.acquire();
+        assertTrue(a.isDirect());
+        a.put((byte) 1);
+        pool.release(a);
+        ByteBuffer b = pool.acquire();
+        assertSame(a, b);
+        assertEquals(0, b.position());
+        assertNotSame(b, pool.acquire());
+        pool.release(ByteBuffer.allocateDirect(8));
+        assertNotEquals(8, pool.acquire().capacity());
+    }
+
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.json;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import pile.collection.PersistentMap;
+import pile.collection.PersistentVector;
+import pile.core.Keyword;
+import pile.core.parse.DataReader;
+import pile.core.parse.ParserException;
+
+public class JsonCodecTest {
+
+    /**
+     * Returns at most a few characters per read, to split tokens across buffer
+     * refills.
+     */
+    private static Reader trickle(String s) {
+        return new StringReader(s) {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                return super.read(cbuf, off, Math.min(len, 3));
+            }
+        };
+    }
+
+    @Test
+    public void testValues() {
+        Object v = JsonReader.read("""
+                {"id": 12, "big": 3000000000, "bigger": 123456789012345678901234,
+                 "ratio": -1.5e-3, "ok": true, "no": false, "none": null,
+                 "list": [1, "two", [], {}], "text": "a\\"b\\\\c\\n\\u00e9"}
+                """);
+        Object expected = DataReader.read("""
+                {"id" 12 "big" 3000000000 "bigger" 123456789012345678901234N
+                 "ratio" -1.5e-3 "ok" true "no" false "none" nil
+                 "list" [1 "two" [] {}] "text" "a\\"b\\\\c\\n\\u00e9"}
+                """);
+        assertEquals(expected, v);
+        Map<?, ?> map = (Map<?, ?>) v;
+        assertEquals(Integer.class, map.get("id").getClass());
+        assertEquals(Long.class, map.get("big").getClass());
+        assertEquals(BigInteger.class, map.get("bigger").getClass());
+        assertTrue(map.get("list") instanceof PersistentVector);
+    }
+
+    @Test
+    public void testKeywordize() {
+        Map<?, ?> map = (Map<?, ?>) JsonReader.of("{\"a\": {\"a\": 1}}").keywordize(true).next();
+        Keyword a = Keyword.of("a");
+        assertSame(a, map.keySet().iterator().next());
+        assertEquals(PersistentMap.createArr(a, 1), map.get(a));
+    }
+
+    @Test
+    public void testStream() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; ++i) {
+            sb.append("{\"n\": ").append(i).append(", \"s\": \"").append("x".repeat(i * 100)).append("\"}\n");
+        }
+        JsonReader reader = JsonReader.of(trickle(sb.toString()));
+        List<Object> all = new ArrayList<>();
+        reader.forEachRemaining(all::add);
+        assertEquals(100, all.size());
+        assertEquals(99, ((Map<?, ?>) all.get(99)).get("n"));
+        assertEquals(9900, ((String) ((Map<?, ?>) all.get(99)).get("s")).length());
+    }
+
+    @Test
+    public void testLazy() {
+        String json = "{\"a\": {\"b\": [1, {\"c\": 2}]}, \"z\": 1, \"bad\": [1,,]}";
+        Map<?, ?> map = (Map<?, ?>) JsonReader.of(json).lazy(true).next();
+        assertEquals(1, map.get("z"));
+        LazyMap<?, ?> a = (LazyMap<?, ?>) map.get("a");
+        assertFalse(a.isRealized());
+        // Unused values are written as they were read
+        assertEquals("{\"a\":{\"b\": [1, {\"c\": 2}]},\"z\":1,\"bad\":[1,,]}", JsonWriter.writeString(map));
+
+        assertEquals(PersistentMap.createArr("c", 2), ((List<?>) a.get("b")).get(1));
+        assertTrue(a.isRealized());
+        assertThrows(ParserException.class, () -> ((List<?>) map.get("bad")).size());
+    }
+
+    @Test
+    public void testErrors() {
+        for (String bad : List.of("01", "1.", "-", "+1", "[1,]", "[1 2]", "{\"a\" 1}", "{1: 2}", "tru", "\"abc",
+                "\"\\x\"", "\"a\nb\"", "{\"a\": 1,}", "[".repeat(1000))) {
+            assertThrows(bad, ParserException.class, () -> JsonReader.read(bad));
+        }
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+        Object data = DataReader.read("""
+                {:id 1 :ns/key "a\\"b\\n" :tags #{:x} :list [1 2.5 nil true] :empty {}}
+                """);
+        String json = JsonWriter.writeString(data);
+        Map<?, ?> back = (Map<?, ?>) JsonReader.of(json).keywordize(true).next();
+        assertEquals(5, back.size());
+        assertEquals("a\"b\n", back.get(Keyword.of("ns/key")));
+        assertEquals(List.of("x"), back.get(Keyword.of("tags")));
+        assertEquals(DataReader.read("[1 2.5 nil true]"), back.get(Keyword.of("list")));
+        assertEquals(PersistentMap.EMPTY, back.get(Keyword.of("empty")));
+
+        assertEquals("\"\\u0001\\t\"", JsonWriter.writeString("\u0001\t"));
+        assertEquals("[1,2]", JsonWriter.writeString(new int[] { 1, 2 }));
+        assertThrows(IllegalArgumentException.class, () -> JsonWriter.writeString(Double.NaN));
+        assertThrows(IllegalArgumentException.class, () -> JsonWriter.writeString(new Object()));
+
+        // Larger than the buffer
+        StringWriter sw = new StringWriter();
+        String big = "x".repeat(20_000);
+        new JsonWriter(sw).write(List.of(big, big)).flush();
+        assertEquals(JsonWriter.writeString(List.of(big, big)), sw.toString());
+        assertEquals(List.of(big, big), JsonReader.read(sw.toString()));
+    }
+
+}
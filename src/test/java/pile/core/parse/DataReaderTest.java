@@ -0,0 +1,112 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.parse;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.math.BigInteger;
+
+import org.junit.Test;
+
+import pile.collection.PersistentArrayVector;
+import pile.collection.PersistentList;
+import pile.collection.PersistentMap;
+import pile.collection.PersistentSet;
+import pile.collection.PersistentVector;
+import pile.core.Keyword;
+import pile.core.Symbol;
+
+public class DataReaderTest {
+
+    @Test
+    public void testScalars() {
+        assertNull(DataReader.read("nil"));
+        assertEquals(true, DataReader.read("true"));
+        assertEquals(false, DataReader.read(" false "));
+        assertEquals(12, DataReader.read("12"));
+        assertEquals(-7, DataReader.read("-7"));
+        assertEquals(1.5d, DataReader.read("1.5"));
+        assertEquals(12L, DataReader.read("12L"));
+        assertEquals(new BigInteger("123456789012345678901234"), DataReader.read("123456789012345678901234N"));
+        assertEquals(' ', DataReader.read("\\space"));
+        assertEquals('a', DataReader.read("\\a"));
+        assertEquals(Keyword.of("a"), DataReader.read(":a"));
+        assertEquals(Keyword.of("ns", "b"), DataReader.read(":ns/b"));
+        assertEquals(new Symbol("foo"), DataReader.read("foo"));
+        assertEquals(new Symbol("ns", "bar"), DataReader.read("ns/bar"));
+        assertEquals(new Symbol("-"), DataReader.read("-"));
+    }
+
+    @Test
+    public void testStrings() {
+        assertEquals("abc", DataReader.read("\"abc\""));
+        assertEquals("a\n\"b\"\\", DataReader.read("\"a\\n\\\"b\\\"\\\\\""));
+        assertEquals("A", DataReader.read("\"\\u0041\""));
+    }
+
+    @Test
+    public void testCollections() {
+        assertEquals(PersistentList.EMPTY, DataReader.read("()"));
+        assertEquals(PersistentList.of(1, 2, 3), DataReader.read("(1 2 3)"));
+        assertEquals(PersistentVector.createArr(1, "a", Keyword.of("b")), DataReader.read("[1, \"a\" :b]"));
+        assertEquals(PersistentMap.createArr(Keyword.of("a"), 1, Keyword.of("b"), PersistentVector.createArr(2)),
+                DataReader.read("{:a 1 :b [2]}"));
+        assertEquals(PersistentSet.createArr(1, 2), DataReader.read("#{1 2}"));
+        assertEquals(PersistentVector.createArr(1, 3), DataReader.read("[1 #_2 3 #_ 4] ; comment"));
+    }
+
+    @Test
+    public void testLargeVector() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 5000; ++i) {
+            sb.append(i).append(' ');
+        }
+        sb.append(']');
+        PersistentVector<?> vec = (PersistentVector<?>) DataReader.read(sb);
+        assertEquals(5000, vec.count());
+        for (int i = 0; i < 5000; ++i) {
+            assertEquals(i, vec.get(i));
+        }
+        assertEquals(5001, vec.conj(5000).count());
+        assertEquals(4999, ((PersistentArrayVector<?>) vec).pop().count());
+    }
+
+    @Test
+    public void testMultipleForms() {
+        DataReader reader = new DataReader("1 {:a 2} [3]");
+        assertEquals(1, reader.next());
+        assertEquals(PersistentMap.createArr(Keyword.of("a"), 2), reader.next());
+        assertEquals(PersistentVector.createArr(3), reader.next());
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void testReader() {
+        assertEquals(PersistentVector.createArr(1, 2), DataReader.read(new StringReader("[1 2]")));
+    }
+
+    @Test(expected = ParserException.class)
+    public void testUnclosed() {
+        DataReader.read("[1 2");
+    }
+
+    @Test(expected = ParserException.class)
+    public void testDuplicateKey() {
+        DataReader.read("{:a 1 :a 2}");
+    }
+
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.parse;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import pile.collection.PersistentList;
+import pile.collection.PersistentMap;
+import pile.collection.PersistentVector;
+import pile.core.Keyword;
+import pile.core.Symbol;
+
+public class FormReaderTest {
+
+    @Test
+    public void testData() {
+        FormReader forms = FormReader.data(new StringReader("{:a 1}\n{:a 2} ; two\n\n[3 \"]\" \\]]\n#_ 4 5"));
+        assertEquals(PersistentMap.createArr(Keyword.of("a"), 1), forms.next());
+        assertEquals(PersistentMap.createArr(Keyword.of("a"), 2), forms.next());
+        assertEquals(PersistentVector.createArr(3, "]", ']'), forms.next());
+        assertEquals(5, forms.next());
+        assertFalse(forms.hasNext());
+    }
+
+    @Test
+    public void testResumeAfterError() {
+        FormReader forms = FormReader.data(new StringReader("{:a 1}\n{:a}\n{:a 3 ]\n{:a 4}"));
+        assertEquals(PersistentMap.createArr(Keyword.of("a"), 1), forms.next());
+        assertThrows(ParserException.class, forms::next);
+        assertThrows(ParserException.class, forms::next);
+        assertEquals(PersistentMap.createArr(Keyword.of("a"), 4), forms.next());
+        assertFalse(forms.hasNext());
+    }
+
+    @Test
+    public void testResumeAfterTruncatedLine() {
+        FormReader forms = FormReader.data(new StringReader("{:a 1\n{:a 2}\n[3\n{:a 4}\n"));
+        assertThrows(ParserException.class, forms::next);
+        assertEquals(PersistentMap.createArr(Keyword.of("a"), 2), forms.next());
+        assertThrows(ParserException.class, forms::next);
+        assertEquals(PersistentMap.createArr(Keyword.of("a"), 4), forms.next());
+        assertFalse(forms.hasNext());
+    }
+
+    @Test
+    public void testErrorHandler() {
+        List<ParserException> errors = new ArrayList<>();
+        FormReader forms = FormReader.data(new StringReader("1 {:a} 3")).onError(errors::add);
+        List<Object> read = new ArrayList<>();
+        forms.forEachRemaining(read::add);
+        assertEquals(List.of(1, 3), read);
+        assertEquals(1, errors.size());
+    }
+
+    @Test
+    public void testMaxFormSize() {
+        FormReader forms = FormReader.data(new StringReader("[1 2 3 4 5 6 7 8 9]\n[1]"), 8);
+        assertThrows(ParserException.class, forms::next);
+        assertEquals(PersistentVector.createArr(1), forms.next());
+    }
+
+    @Test
+    public void testSyntax() {
+        String source = """
+                (ns foo)
+                ;; comment
+                (defn bar
+                  \"""
+                  Doc ) with a paren
+                  \"""
+                  [a] '(a))
+                ^:private sym
+                """;
+        FormReader forms = PileParser.forms(new StringReader(source), "foo.pile");
+        PersistentList ns = (PersistentList) forms.next();
+        assertEquals(new Symbol("ns"), ns.head());
+        PersistentList defn = (PersistentList) forms.next();
+        assertEquals(new Symbol("defn"), defn.head());
+        assertEquals(3, LexicalEnvironment.extract(defn).get().getLineAt());
+        Symbol sym = (Symbol) forms.next();
+        assertEquals(new Symbol("sym"), sym);
+        assertFalse(forms.hasNext());
+    }
+
+}
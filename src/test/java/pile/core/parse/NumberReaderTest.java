@@ -0,0 +1,84 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.parse;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import org.junit.Test;
+
+public class NumberReaderTest {
+
+    @Test
+    public void testIntegers() {
+        assertEquals(0, NumberReader.parse("0"));
+        assertEquals(-12, NumberReader.parse("-12"));
+        assertEquals(Integer.MIN_VALUE, NumberReader.parse("-2147483648"));
+        assertEquals(2147483648L, NumberReader.parse("2147483648"));
+        assertEquals(Long.MIN_VALUE, NumberReader.parse("-9223372036854775808"));
+        assertEquals(new BigInteger("9223372036854775808"), NumberReader.parse("9223372036854775808"));
+        assertEquals(12L, NumberReader.parse("12L"));
+        assertEquals(BigInteger.valueOf(12), NumberReader.parse("12N"));
+    }
+
+    @Test
+    public void testRadix() {
+        assertEquals(255, NumberReader.parse("0xff"));
+        assertEquals(-255, NumberReader.parse("-0XFF"));
+        assertEquals(15, NumberReader.parse("017"));
+        assertEquals(10, NumberReader.parse("2r1010"));
+        assertEquals(1295, NumberReader.parse("36rZZ"));
+        assertEquals(BigInteger.valueOf(31), NumberReader.parse("0x1FN"));
+        assertEquals(new BigInteger("ffffffffffffffffff", 16), NumberReader.parse("0xffffffffffffffffff"));
+    }
+
+    @Test
+    public void testDecimals() {
+        assertEquals(1.5d, NumberReader.parse("1.5"));
+        assertEquals(-0.1d, NumberReader.parse("-0.1"));
+        assertEquals(1e10d, NumberReader.parse("1e10"));
+        assertEquals(1.5e-3d, NumberReader.parse("1.5E-3"));
+        assertEquals(1.5f, NumberReader.parse("1.5f"));
+        assertEquals(2d, NumberReader.parse("2d"));
+        assertEquals(new BigDecimal("1.50"), NumberReader.parse("1.50M"));
+        assertEquals(new BigDecimal("1.50"), NumberReader.parse("1.50b"));
+        assertEquals(Math.PI, NumberReader.parse(Double.toString(Math.PI)));
+        assertEquals(Double.MAX_VALUE, NumberReader.parse(Double.toString(Double.MAX_VALUE)));
+        assertEquals(1.2345678901234568E17, NumberReader.parse("123456789012345678.5"));
+    }
+
+    @Test
+    public void testRange() {
+        char[] buf = "[12 3.5]".toCharArray();
+        assertEquals(12, NumberReader.parse(buf, 1, 3));
+        assertEquals(3.5d, NumberReader.parse(buf, 4, 7));
+    }
+
+    @Test
+    public void testInvalid() {
+        for (String bad : new String[] { "-", "1x", "1.2.3", "1e", "08", "1.5N", "1.5L", "37r1", "0x" }) {
+            try {
+                NumberReader.parse(bad);
+                fail("Expected failure: " + bad);
+            } catch (NumberFormatException e) {
+                // expected
+            }
+        }
+    }
+
+}
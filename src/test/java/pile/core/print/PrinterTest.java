@@ -0,0 +1,104 @@
+/**
+ * Copyright 2023 John Hinchberger
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pile.core.print;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import pile.collection.PersistentVector;
+import pile.core.PCall;
+import pile.core.parse.DataReader;
+
+public class PrinterTest {
+
+    @Test
+    public void testReadable() {
+        String text = "{:a [1 2.5 \"x\\ty\" \\space] :b #{ns/sym} :c (3N 4.5b) :d nil}";
+        Object data = DataReader.read(text);
+        String printed = Printer.printString(data);
+        assertEquals(data, DataReader.read(printed));
+        assertEquals("\"a\\\"b\\\\\"", Printer.printString("a\"b\\"));
+        assertEquals("\\newline", Printer.printString('\n'));
+    }
+
+    @Test
+    public void testFloat() {
+        assertEquals("1.5f", Printer.printString(1.5f));
+        assertEquals(1.5f, DataReader.read(Printer.printString(1.5f)));
+    }
+
+    @Test
+    public void testDispatch() throws IOException {
+        Object data = PersistentVector.fromList(List.<Object> of(1, Thread.State.NEW,
+                PersistentVector.fromList(List.<Object> of("a", Thread.State.BLOCKED))));
+
+        StringBuilder sb = new StringBuilder();
+        PCall tagged = args -> ((Printer) args[1]).append("#state ").print(args[0]);
+        Printer.readable(sb).dispatch(tagged).print(data);
+        assertEquals("[1 #state NEW [\"a\" #state BLOCKED]]", sb.toString());
+
+        sb.setLength(0);
+        Printer.readable(sb).level(1).dispatch(tagged).print(data);
+        assertEquals("[1 #state NEW #]", sb.toString());
+    }
+
+    @Test
+    public void testToString() {
+        Object data = DataReader.read("[1 {:a \"b\"} (c)]");
+        assertEquals("[1 {:a \"b\"} (c)]", data.toString());
+    }
+
+    @Test
+    public void testLimits() throws IOException {
+        Object data = DataReader.read("[1 [2 [3 [4]]] 5 6]");
+
+        StringBuilder sb = new StringBuilder();
+        Printer.readable(sb).length(2).print(data);
+        assertEquals("[1 [2 [3 [4]]] ...]", sb.toString());
+
+        sb.setLength(0);
+        Printer.readable(sb).level(2).print(data);
+        assertEquals("[1 [2 #] 5 6]", sb.toString());
+
+        sb.setLength(0);
+        Printer printer = Printer.readable(sb).maxChars(5);
+        printer.print(data);
+        assertEquals("[1 [2", sb.toString());
+        assertTrue(printer.isTruncated());
+    }
+
+    @Test
+    public void testWriter() throws IOException {
+        // Larger than the internal buffer
+        StringBuilder text = new StringBuilder("[");
+        for (int i = 0; i < 10_000; ++i) {
+            text.append(i).append(' ');
+        }
+        text.setCharAt(text.length() - 1, ']');
+        Object data = DataReader.read(text);
+
+        StringWriter out = new StringWriter();
+        Printer.display(out).print(data);
+        assertEquals(text.toString(), out.toString());
+    }
+
+}